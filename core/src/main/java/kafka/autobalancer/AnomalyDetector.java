@@ -40,7 +40,6 @@ public class AnomalyDetector {
     private final Logger logger;
     private final List<AbstractGoal> goalsByPriority;
     private final int maxActionsNumPerExecution;
-    private final long executionInterval;
     private final ClusterModel clusterModel;
     private final ScheduledExecutorService executorService;
     private final ExecutionManager executionManager;
@@ -59,7 +58,6 @@ public class AnomalyDetector {
         Collections.sort(this.goalsByPriority);
         logger.info("Goals: {}", this.goalsByPriority);
         this.detectInterval = config.getLong(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_ANOMALY_DETECT_INTERVAL_MS);
-        this.executionInterval = config.getLong(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_EXECUTION_INTERVAL_MS);
         fetchExcludedConfig(config);
         this.clusterModel = clusterModel;
         this.executorService = Executors.newSingleThreadScheduledExecutor(new AutoBalancerThreadFactory("anomaly-detector"));
@@ -106,6 +104,12 @@ public class AnomalyDetector {
         if (!this.running) {
             return;
         }
+        if (!this.executionManager.isIdle()) {
+            // the cluster snapshot is outdated until the previous actions are executed
+            logger.info("Previous actions are being executed, skip this detect");
+            this.executorService.schedule(this::detect, this.detectInterval, TimeUnit.MILLISECONDS);
+            return;
+        }
         logger.info("Start detect");
         // The delay in processing kraft log could result in outdated cluster snapshot
         ClusterModelSnapshot snapshot = this.clusterModel.snapshot(excludedBrokers, excludedTopics);
@@ -132,8 +136,7 @@ public class AnomalyDetector {
             }
         }
 
-        long nextDelay = (maxActionsNumPerExecution - availableActionNum) * this.executionInterval + this.detectInterval;
-        this.executorService.schedule(this::detect, nextDelay, TimeUnit.MILLISECONDS);
-        logger.info("Detect finished, next detect will be after {} ms", nextDelay);
+        this.executorService.schedule(this::detect, this.detectInterval, TimeUnit.MILLISECONDS);
+        logger.info("Detect finished, next detect will be after {} ms", this.detectInterval);
     }
 }
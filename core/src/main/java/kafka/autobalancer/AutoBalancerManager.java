@@ -70,7 +70,8 @@ public class AutoBalancerManager {
         ClusterStatusListenerRegistry registry = new ClusterStatusListenerRegistry();
         registry.register((BrokerStatusListener) clusterModel);
         registry.register((TopicPartitionStatusListener) clusterModel);
-        registry.register(executionManager);
+        registry.register((BrokerStatusListener) executionManager);
+        registry.register((TopicPartitionStatusListener) executionManager);
         registry.register(this.loadRetriever);
         raftClient.register(new AutoBalancerListener(registry, this.loadRetriever, this.anomalyDetector));
     }
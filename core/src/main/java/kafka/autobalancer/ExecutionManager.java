@@ -17,41 +17,93 @@
 
 package kafka.autobalancer;
 
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
 import kafka.autobalancer.common.Action;
 import kafka.autobalancer.common.ActionType;
 import kafka.autobalancer.config.AutoBalancerControllerConfig;
 import kafka.autobalancer.listeners.BrokerStatusListener;
+import kafka.autobalancer.listeners.TopicPartitionStatusListener;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.Uuid;
 import org.apache.kafka.common.message.AlterPartitionReassignmentsRequestData;
+import org.apache.kafka.common.message.AlterPartitionReassignmentsResponseData;
 import org.apache.kafka.common.metadata.BrokerRegistrationChangeRecord;
+import org.apache.kafka.common.metadata.PartitionChangeRecord;
+import org.apache.kafka.common.metadata.PartitionRecord;
 import org.apache.kafka.common.metadata.RegisterBrokerRecord;
+import org.apache.kafka.common.metadata.RemoveTopicRecord;
+import org.apache.kafka.common.metadata.TopicRecord;
 import org.apache.kafka.common.metadata.UnregisterBrokerRecord;
+import org.apache.kafka.common.protocol.Errors;
 import org.apache.kafka.common.utils.KafkaThread;
 import org.apache.kafka.common.utils.LogContext;
-import org.apache.kafka.common.utils.Time;
 import org.apache.kafka.controller.Controller;
 import org.apache.kafka.controller.ControllerRequestContext;
 import org.apache.kafka.metadata.BrokerRegistrationFencingChange;
 import org.apache.kafka.metadata.BrokerRegistrationInControlledShutdownChange;
+import org.apache.kafka.server.metrics.KafkaYammerMetrics;
 import org.slf4j.Logger;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.OptionalLong;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class ExecutionManager implements Runnable, BrokerStatusListener {
+/**
+ * Execute the actions in batches.
+ * <p>
+ * The actions which neither touch a partition being reassigned nor exceed the per-broker concurrency are sent to the
+ * controller in a single reassignment request. A reassignment is in flight until the partition change is seen in the
+ * metadata, and the next batch is sent as soon as some reassignments complete, or after the execution interval.
+ * The actions on the same partition are executed in the order they are appended.
+ */
+public class ExecutionManager implements Runnable, BrokerStatusListener, TopicPartitionStatusListener {
+    private static final String METRICS_GROUP = "kafka.controller";
+    private static final String METRICS_TYPE = "AutoBalancerExecutionManager";
+    private static final MetricName COMPLETED_REASSIGNMENTS = KafkaYammerMetrics.getMetricName(METRICS_GROUP, METRICS_TYPE, "CompletedReassignmentsPerSec");
+    private static final MetricName FAILED_REASSIGNMENTS = KafkaYammerMetrics.getMetricName(METRICS_GROUP, METRICS_TYPE, "FailedReassignmentsPerSec");
+    private static final MetricName REASSIGNMENT_LATENCY = KafkaYammerMetrics.getMetricName(METRICS_GROUP, METRICS_TYPE, "ReassignmentLatencyMs");
+    private static final MetricName INFLIGHT_REASSIGNMENTS = KafkaYammerMetrics.getMetricName(METRICS_GROUP, METRICS_TYPE, "InflightReassignmentCount");
+    private static final MetricName PENDING_ACTIONS = KafkaYammerMetrics.getMetricName(METRICS_GROUP, METRICS_TYPE, "PendingActionCount");
     private final Logger logger;
     private final Controller controller;
     private final BlockingQueue<Action> actionQueue = new ArrayBlockingQueue<>(1000);
     private final Set<Integer> fencedBrokers = ConcurrentHashMap.newKeySet();
+    private final Map<Uuid, String> idToTopicNameMap = new ConcurrentHashMap<>();
+    // the reassignments sent to the controller, which are not seen in the metadata yet
+    private final Map<TopicPartition, Reassignment> inflightReassignments = new ConcurrentHashMap<>();
+    // the actions taken from the queue which are waiting for their partitions and brokers, only accessed by the dispatch thread
+    private final Deque<Action> pendingActions = new ArrayDeque<>();
+    private final Lock lock = new ReentrantLock();
+    private final Condition wakeupCondition = lock.newCondition();
     private final long executionInterval;
+    private final int executionConcurrency;
+    private final long executionTimeout;
     private final KafkaThread dispatchThread;
-    // TODO: optimize to per-broker concurrency control
-    private long lastExecutionTime = 0L;
+    private final Meter completedMeter;
+    private final Meter failedMeter;
+    private final Histogram latencyHist;
+    // the actions appended but not sent or skipped yet
+    private final AtomicInteger pendingActionCount = new AtomicInteger();
+    private boolean wakeup;
     private volatile boolean shutdown;
 
     public ExecutionManager(AutoBalancerControllerConfig config, Controller controller) {
@@ -65,11 +117,29 @@ public class ExecutionManager implements Runnable, BrokerStatusListener {
         this.logger = logContext.logger(ExecutionManager.class);
         this.controller = controller;
         this.executionInterval = config.getLong(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_EXECUTION_INTERVAL_MS);
+        this.executionConcurrency = config.getInt(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_EXECUTION_CONCURRENCY);
+        this.executionTimeout = config.getLong(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_EXECUTION_TIMEOUT_MS);
         this.dispatchThread = KafkaThread.daemon("executor-dispatcher", this);
+        this.completedMeter = KafkaYammerMetrics.defaultRegistry().newMeter(COMPLETED_REASSIGNMENTS, "reassignments", TimeUnit.SECONDS);
+        this.failedMeter = KafkaYammerMetrics.defaultRegistry().newMeter(FAILED_REASSIGNMENTS, "reassignments", TimeUnit.SECONDS);
+        this.latencyHist = KafkaYammerMetrics.defaultRegistry().newHistogram(REASSIGNMENT_LATENCY, true);
     }
 
     public void start() {
         this.shutdown = false;
+        // the gauges refer to this instance, so they're registered for its lifetime, and removed on shutdown
+        KafkaYammerMetrics.defaultRegistry().newGauge(INFLIGHT_REASSIGNMENTS, new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return inflightReassignments.size();
+            }
+        });
+        KafkaYammerMetrics.defaultRegistry().newGauge(PENDING_ACTIONS, new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return pendingActionCount.get();
+            }
+        });
         this.dispatchThread.start();
         logger.info("Started");
     }
@@ -77,68 +147,206 @@ public class ExecutionManager implements Runnable, BrokerStatusListener {
     public void shutdown() {
         this.shutdown = true;
         this.dispatchThread.interrupt();
+        KafkaYammerMetrics.defaultRegistry().removeMetric(COMPLETED_REASSIGNMENTS);
+        KafkaYammerMetrics.defaultRegistry().removeMetric(FAILED_REASSIGNMENTS);
+        KafkaYammerMetrics.defaultRegistry().removeMetric(REASSIGNMENT_LATENCY);
+        KafkaYammerMetrics.defaultRegistry().removeMetric(INFLIGHT_REASSIGNMENTS);
+        KafkaYammerMetrics.defaultRegistry().removeMetric(PENDING_ACTIONS);
         logger.info("Shutdown completed");
     }
 
+    /**
+     * @return true if there isn't any action waiting or being executed.
+     */
+    public boolean isIdle() {
+        return pendingActionCount.get() == 0 && inflightReassignments.isEmpty();
+    }
+
     @Override
     public void run() {
         while (!shutdown) {
             try {
-                Action action = actionQueue.take();
-                if (fencedBrokers.contains(action.getDestBrokerId())) {
-                    logger.info("Broker {} is fenced, skip action {}", action.getDestBrokerId(), action);
-                    continue;
-                }
-                long now = System.currentTimeMillis();
-                long nextExecutionTime = lastExecutionTime + executionInterval;
-                while (!shutdown && lastExecutionTime != 0 && now < nextExecutionTime) {
-                    try {
-                        Thread.sleep(nextExecutionTime - now);
-                    } catch (InterruptedException ignored) {
-                        break;
-                    }
-                    now = System.currentTimeMillis();
+                if (pendingActions.isEmpty() && inflightReassignments.isEmpty()) {
+                    // nothing to track, wait for the new actions
+                    pendingActions.add(actionQueue.take());
                 }
-                if (shutdown) {
-                    break;
+                actionQueue.drainTo(pendingActions);
+                expireReassignments(System.currentTimeMillis());
+                List<Action> batch = nextBatch();
+                if (!batch.isEmpty()) {
+                    doReassign(batch);
+                    // decrease after the reassignments are in flight, so the execution won't be seen as idle in between
+                    pendingActionCount.addAndGet(-batch.size());
                 }
-                doReassign(action);
-                lastExecutionTime = Time.SYSTEM.milliseconds();
-                logger.info("Executing {}", action.prettyString());
+                awaitWakeup();
             } catch (InterruptedException ignored) {
 
             }
         }
     }
 
-    private void doReassign(Action action) {
+    /**
+     * Take the actions which can be executed now from the pending actions. An action is deferred if any of its
+     * partitions is being reassigned or taken by an earlier deferred action, or if it makes the in-flight
+     * reassignments of a broker exceed the concurrency.
+     */
+    private List<Action> nextBatch() {
+        Set<TopicPartition> busyPartitions = new HashSet<>(inflightReassignments.keySet());
+        Map<Integer, Integer> brokerReassignments = new HashMap<>();
+        for (Reassignment reassignment : inflightReassignments.values()) {
+            brokerReassignments.merge(reassignment.srcBrokerId, 1, Integer::sum);
+            brokerReassignments.merge(reassignment.destBrokerId, 1, Integer::sum);
+        }
+        List<Action> batch = new ArrayList<>();
+        Iterator<Action> iterator = pendingActions.iterator();
+        while (iterator.hasNext()) {
+            Action action = iterator.next();
+            boolean swap = action.getType() == ActionType.SWAP;
+            if (fencedBrokers.contains(action.getDestBrokerId()) || swap && fencedBrokers.contains(action.getSrcBrokerId())) {
+                logger.info("Broker of action {} is fenced, skip it", action.prettyString());
+                iterator.remove();
+                pendingActionCount.decrementAndGet();
+                continue;
+            }
+            int reassignments = swap ? 2 : 1;
+            boolean deferred = busyPartitions.contains(action.getSrcTopicPartition())
+                    || swap && busyPartitions.contains(action.getDestTopicPartition())
+                    || exceedsConcurrency(brokerReassignments, action.getSrcBrokerId(), reassignments)
+                    || exceedsConcurrency(brokerReassignments, action.getDestBrokerId(), reassignments);
+            // the partitions of a deferred action are busy too, so the later actions on them won't overtake it
+            busyPartitions.add(action.getSrcTopicPartition());
+            if (swap) {
+                busyPartitions.add(action.getDestTopicPartition());
+            }
+            if (deferred) {
+                continue;
+            }
+            iterator.remove();
+            batch.add(action);
+            brokerReassignments.merge(action.getSrcBrokerId(), reassignments, Integer::sum);
+            brokerReassignments.merge(action.getDestBrokerId(), reassignments, Integer::sum);
+        }
+        return batch;
+    }
+
+    /**
+     * An action is always admitted if the broker has nothing in flight, so the action which needs more reassignments
+     * than the concurrency, e.g. a swap with a concurrency of 1, isn't deferred forever.
+     */
+    private boolean exceedsConcurrency(Map<Integer, Integer> brokerReassignments, int brokerId, int reassignments) {
+        int inflight = brokerReassignments.getOrDefault(brokerId, 0);
+        return inflight > 0 && inflight + reassignments > executionConcurrency;
+    }
+
+    private void doReassign(List<Action> batch) {
+        long now = System.currentTimeMillis();
+        List<Reassignment> reassignments = new ArrayList<>();
+        for (Action action : batch) {
+            reassignments.add(new Reassignment(action.getSrcTopicPartition(), action.getSrcBrokerId(), action.getDestBrokerId(), now));
+            if (action.getType() == ActionType.SWAP) {
+                reassignments.add(new Reassignment(action.getDestTopicPartition(), action.getDestBrokerId(), action.getSrcBrokerId(), now));
+            }
+            logger.info("Executing {}", action.prettyString());
+        }
+        Map<String, AlterPartitionReassignmentsRequestData.ReassignableTopic> topics = new LinkedHashMap<>();
+        for (Reassignment reassignment : reassignments) {
+            inflightReassignments.put(reassignment.tp, reassignment);
+            AlterPartitionReassignmentsRequestData.ReassignableTopic topic = topics.computeIfAbsent(reassignment.tp.topic(),
+                    name -> new AlterPartitionReassignmentsRequestData.ReassignableTopic().setName(name).setPartitions(new ArrayList<>()));
+            topic.partitions().add(new AlterPartitionReassignmentsRequestData.ReassignablePartition()
+                    .setPartitionIndex(reassignment.tp.partition())
+                    .setReplicas(List.of(reassignment.destBrokerId)));
+        }
         ControllerRequestContext context = new ControllerRequestContext(null, null, OptionalLong.empty());
         AlterPartitionReassignmentsRequestData request = new AlterPartitionReassignmentsRequestData();
-        List<AlterPartitionReassignmentsRequestData.ReassignableTopic> topicList = new ArrayList<>();
-        topicList.add(buildTopic(action.getSrcTopicPartition(), action.getDestBrokerId()));
-        if (action.getType() == ActionType.SWAP) {
-            topicList.add(buildTopic(action.getDestTopicPartition(), action.getSrcBrokerId()));
+        request.setTopics(new ArrayList<>(topics.values()));
+        this.controller.alterPartitionReassignments(context, request)
+                .whenComplete((response, e) -> onReassignResponse(reassignments, response, e));
+        logger.info("Sent {} reassignments of {} actions, {} actions pending", reassignments.size(), batch.size(), pendingActions.size());
+    }
+
+    private void onReassignResponse(List<Reassignment> reassignments, AlterPartitionReassignmentsResponseData response, Throwable e) {
+        if (e != null || response.errorCode() != Errors.NONE.code()) {
+            logger.error("Failed to reassign {} partitions, error: {}", reassignments.size(),
+                    e != null ? e.getMessage() : Errors.forCode(response.errorCode()));
+            for (Reassignment reassignment : reassignments) {
+                fail(reassignment);
+            }
+            wakeup();
+            return;
+        }
+        Map<TopicPartition, Reassignment> reassignmentMap = new HashMap<>();
+        for (Reassignment reassignment : reassignments) {
+            reassignmentMap.put(reassignment.tp, reassignment);
+        }
+        boolean failed = false;
+        for (AlterPartitionReassignmentsResponseData.ReassignableTopicResponse topic : response.responses()) {
+            for (AlterPartitionReassignmentsResponseData.ReassignablePartitionResponse partition : topic.partitions()) {
+                if (partition.errorCode() == Errors.NONE.code()) {
+                    continue;
+                }
+                Reassignment reassignment = reassignmentMap.get(new TopicPartition(topic.name(), partition.partitionIndex()));
+                if (reassignment != null) {
+                    logger.warn("Failed to reassign {} to broker {}, error: {}", reassignment.tp, reassignment.destBrokerId,
+                            Errors.forCode(partition.errorCode()));
+                    fail(reassignment);
+                    failed = true;
+                }
+            }
+        }
+        if (failed) {
+            wakeup();
+        }
+    }
+
+    private void fail(Reassignment reassignment) {
+        if (inflightReassignments.remove(reassignment.tp, reassignment)) {
+            failedMeter.mark();
+        }
+    }
+
+    /**
+     * Give up the reassignments which are not seen in the metadata in time, so their brokers won't be blocked forever.
+     */
+    private void expireReassignments(long now) {
+        for (Reassignment reassignment : inflightReassignments.values()) {
+            if (now - reassignment.timestamp > executionTimeout) {
+                logger.warn("Reassignment of {} to broker {} is not completed in {} ms, give up tracking it",
+                        reassignment.tp, reassignment.destBrokerId, executionTimeout);
+                fail(reassignment);
+            }
         }
-        request.setTopics(topicList);
-        this.controller.alterPartitionReassignments(context, request);
     }
 
-    private AlterPartitionReassignmentsRequestData.ReassignableTopic buildTopic(TopicPartition tp, int brokerId) {
-        String topicName = tp.topic();
-        AlterPartitionReassignmentsRequestData.ReassignableTopic topic = new AlterPartitionReassignmentsRequestData.ReassignableTopic()
-                .setName(topicName)
-                .setPartitions(new ArrayList<>());
-        AlterPartitionReassignmentsRequestData.ReassignablePartition partition = new AlterPartitionReassignmentsRequestData.ReassignablePartition();
-        partition.setPartitionIndex(tp.partition());
-        partition.setReplicas(List.of(brokerId));
-        topic.setPartitions(List.of(partition));
-        return topic;
+    private void awaitWakeup() throws InterruptedException {
+        lock.lock();
+        try {
+            if (!wakeup) {
+                wakeupCondition.await(executionInterval, TimeUnit.MILLISECONDS);
+            }
+            wakeup = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void wakeup() {
+        lock.lock();
+        try {
+            wakeup = true;
+            wakeupCondition.signal();
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void appendAction(Action action) {
+        pendingActionCount.incrementAndGet();
         try {
             this.actionQueue.put(action);
+            wakeup();
         } catch (InterruptedException ignored) {
+            pendingActionCount.decrementAndGet();
 
         }
     }
@@ -169,4 +377,60 @@ public class ExecutionManager implements Runnable, BrokerStatusListener {
             fencedBrokers.remove(record.brokerId());
         }
     }
+
+    @Override
+    public void onTopicCreate(TopicRecord record) {
+        idToTopicNameMap.put(record.topicId(), record.name());
+    }
+
+    @Override
+    public void onTopicDelete(RemoveTopicRecord record) {
+        String topicName = idToTopicNameMap.remove(record.topicId());
+        if (topicName == null) {
+            return;
+        }
+        if (inflightReassignments.keySet().removeIf(tp -> tp.topic().equals(topicName))) {
+            wakeup();
+        }
+    }
+
+    @Override
+    public void onPartitionCreate(PartitionRecord record) {
+
+    }
+
+    @Override
+    public void onPartitionChange(PartitionChangeRecord record) {
+        if (record.replicas() == null || record.replicas().size() != 1) {
+            return;
+        }
+        String topicName = idToTopicNameMap.get(record.topicId());
+        if (topicName == null) {
+            return;
+        }
+        TopicPartition tp = new TopicPartition(topicName, record.partitionId());
+        Reassignment reassignment = inflightReassignments.get(tp);
+        if (reassignment == null || reassignment.destBrokerId != record.replicas().get(0)) {
+            return;
+        }
+        if (inflightReassignments.remove(tp, reassignment)) {
+            completedMeter.mark();
+            latencyHist.update(System.currentTimeMillis() - reassignment.timestamp);
+            wakeup();
+        }
+    }
+
+    private static class Reassignment {
+        private final TopicPartition tp;
+        private final int srcBrokerId;
+        private final int destBrokerId;
+        private final long timestamp;
+
+        Reassignment(TopicPartition tp, int srcBrokerId, int destBrokerId, long timestamp) {
+            this.tp = tp;
+            this.srcBrokerId = srcBrokerId;
+            this.destBrokerId = destBrokerId;
+            this.timestamp = timestamp;
+        }
+    }
 }
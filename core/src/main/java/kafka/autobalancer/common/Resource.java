@@ -27,11 +27,15 @@ import java.util.List;
  * CPU: a host and broker-level resource.
  * NW (in and out): a host-level resource.
  * DISK: a broker-level resource.
+ * STREAM_READ (bytes and requests): a broker-level resource, the reads of the streams of the partitions. The cache
+ * hits are counted too, so it's the load of the stream reads rather than of the object storage.
  */
 public enum Resource {
     CPU("cpu", 0, 0.001),
     NW_IN("networkInbound", 1, 10),
-    NW_OUT("networkOutbound", 2, 10);
+    NW_OUT("networkOutbound", 2, 10),
+    STREAM_READ("streamRead", 3, 10),
+    STREAM_READ_REQUEST("streamReadRequest", 4, 1);
 
     // EPSILON_PERCENT defines the acceptable nuance when comparing the utilization of the resource.
     // This nuance is generated due to precision loss when summing up float type utilization value.
@@ -45,9 +45,21 @@ public class AutoBalancerControllerConfig extends AutoBalancerConfig {
     public static final String AUTO_BALANCER_CONTROLLER_NETWORK_OUT_DISTRIBUTION_DETECT_AVG_DEVIATION = PREFIX + "network.out.distribution.detect.avg.deviation";
     public static final String AUTO_BALANCER_CONTROLLER_NETWORK_IN_UTILIZATION_THRESHOLD = PREFIX + "network.in.utilization.threshold";
     public static final String AUTO_BALANCER_CONTROLLER_NETWORK_OUT_UTILIZATION_THRESHOLD = PREFIX + "network.out.utilization.threshold";
+    public static final String AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_THRESHOLD = PREFIX + "cpu.distribution.detect.threshold";
+    public static final String AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_AVG_DEVIATION = PREFIX + "cpu.distribution.detect.avg.deviation";
+    public static final String AUTO_BALANCER_CONTROLLER_CPU_UTILIZATION_THRESHOLD = PREFIX + "cpu.utilization.threshold";
+    public static final String AUTO_BALANCER_CONTROLLER_STREAM_READ_UTILIZATION_THRESHOLD = PREFIX + "stream.read.utilization.threshold";
+    public static final String AUTO_BALANCER_CONTROLLER_STREAM_READ_REQUEST_UTILIZATION_THRESHOLD = PREFIX + "stream.read.request.utilization.threshold";
     public static final String AUTO_BALANCER_CONTROLLER_EXECUTION_INTERVAL_MS = PREFIX + "execution.interval.ms";
     public static final String AUTO_BALANCER_CONTROLLER_EXECUTION_STEPS = PREFIX + "execution.steps";
+    public static final String AUTO_BALANCER_CONTROLLER_EXECUTION_CONCURRENCY = PREFIX + "execution.concurrency";
+    public static final String AUTO_BALANCER_CONTROLLER_EXECUTION_TIMEOUT_MS = PREFIX + "execution.timeout.ms";
     public static final String AUTO_BALANCER_CONTROLLER_LOAD_AGGREGATION = PREFIX + "load.aggregation";
+    public static final String AUTO_BALANCER_CONTROLLER_LOAD_ESTIMATOR = PREFIX + "load.estimator";
+    public static final String AUTO_BALANCER_CONTROLLER_LOAD_WINDOW_SIZE = PREFIX + "load.window.size";
+    public static final String AUTO_BALANCER_CONTROLLER_LOAD_EWMA_ALPHA = PREFIX + "load.ewma.alpha";
+    public static final String AUTO_BALANCER_CONTROLLER_LOAD_PERCENTILE = PREFIX + "load.percentile";
+    public static final String AUTO_BALANCER_CONTROLLER_LOAD_FORECAST_HORIZON_MS = PREFIX + "load.forecast.horizon.ms";
     public static final String AUTO_BALANCER_CONTROLLER_EXCLUDE_BROKER_IDS = PREFIX + "exclude.broker.ids";
     public static final String AUTO_BALANCER_CONTROLLER_EXCLUDE_TOPICS = PREFIX + "exclude.topics";
     /* Default values */
@@ -69,9 +81,21 @@ public class AutoBalancerControllerConfig extends AutoBalancerConfig {
     public static final double DEFAULT_AUTO_BALANCER_CONTROLLER_NETWORK_OUT_DISTRIBUTION_DETECT_AVG_DEVIATION = 0.2;
     public static final double DEFAULT_AUTO_BALANCER_CONTROLLER_NETWORK_IN_USAGE_THRESHOLD = 0.8;
     public static final double DEFAULT_AUTO_BALANCER_CONTROLLER_NETWORK_OUT_USAGE_THRESHOLD = 0.8;
+    public static final double DEFAULT_AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_THRESHOLD = 0.2;
+    public static final double DEFAULT_AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_AVG_DEVIATION = 0.2;
+    public static final double DEFAULT_AUTO_BALANCER_CONTROLLER_CPU_USAGE_THRESHOLD = 0.8;
+    public static final double DEFAULT_AUTO_BALANCER_CONTROLLER_STREAM_READ_USAGE_THRESHOLD = 0.8;
+    public static final double DEFAULT_AUTO_BALANCER_CONTROLLER_STREAM_READ_REQUEST_USAGE_THRESHOLD = 0.8;
     public static final long DEFAULT_AUTO_BALANCER_CONTROLLER_EXECUTION_INTERVAL_MS = 1000;
     public static final int DEFAULT_AUTO_BALANCER_CONTROLLER_EXECUTION_STEPS = 60;
+    public static final int DEFAULT_AUTO_BALANCER_CONTROLLER_EXECUTION_CONCURRENCY = 50;
+    public static final long DEFAULT_AUTO_BALANCER_CONTROLLER_EXECUTION_TIMEOUT_MS = 60000;
     public static final boolean DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_AGGREGATION = false;
+    public static final String DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_ESTIMATOR = "latest";
+    public static final int DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_WINDOW_SIZE = 10;
+    public static final double DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_EWMA_ALPHA = 0.3;
+    public static final double DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_PERCENTILE = 0.9;
+    public static final long DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_FORECAST_HORIZON_MS = 60000;
     public static final String DEFAULT_AUTO_BALANCER_CONTROLLER_EXCLUDE_BROKER_IDS = "";
     public static final String DEFAULT_AUTO_BALANCER_CONTROLLER_EXCLUDE_TOPICS = "";
     /* Documents */
@@ -89,9 +113,23 @@ public class AutoBalancerControllerConfig extends AutoBalancerConfig {
     public static final String AUTO_BALANCER_CONTROLLER_NETWORK_OUT_DISTRIBUTION_DETECT_AVG_DEVIATION_DOC = "The acceptable range of deviation for average network output bandwidth usage";
     public static final String AUTO_BALANCER_CONTROLLER_NETWORK_IN_USAGE_THRESHOLD_DOC = "The maximum network input bandwidth usage of broker before trigger load balance";
     public static final String AUTO_BALANCER_CONTROLLER_NETWORK_OUT_USAGE_THRESHOLD_DOC = PREFIX + "network.out.usage.threshold";
-    public static final String AUTO_BALANCER_CONTROLLER_EXECUTION_INTERVAL_MS_DOC = "Time interval between reassignments per broker in milliseconds";
+    public static final String AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_THRESHOLD_DOC = "The cpu usage detect threshold";
+    public static final String AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_AVG_DEVIATION_DOC = "The acceptable range of deviation for average cpu usage";
+    public static final String AUTO_BALANCER_CONTROLLER_CPU_USAGE_THRESHOLD_DOC = "The maximum cpu usage of broker before trigger load balance";
+    public static final String AUTO_BALANCER_CONTROLLER_STREAM_READ_USAGE_THRESHOLD_DOC = "The maximum stream read bandwidth usage of broker before trigger load balance";
+    public static final String AUTO_BALANCER_CONTROLLER_STREAM_READ_REQUEST_USAGE_THRESHOLD_DOC = "The maximum stream read request rate usage of broker before trigger load balance";
+    public static final String AUTO_BALANCER_CONTROLLER_EXECUTION_INTERVAL_MS_DOC = "The max time interval between reassignment batches in milliseconds, a batch is sent earlier once some reassignments complete";
     public static final String AUTO_BALANCER_CONTROLLER_EXECUTION_STEPS_DOC = "The max number of reassignments per broker in one execution";
+    public static final String AUTO_BALANCER_CONTROLLER_EXECUTION_CONCURRENCY_DOC = "The max number of in-flight reassignments per broker, a swap takes two of them. "
+            + "An action is always executed when its brokers have no reassignment in flight";
+    public static final String AUTO_BALANCER_CONTROLLER_EXECUTION_TIMEOUT_MS_DOC = "The time in milliseconds to wait for a reassignment to be seen in the metadata before giving up tracking it";
     public static final String AUTO_BALANCER_CONTROLLER_LOAD_AGGREGATION_DOC = "Use aggregation of partition load as broker load, instead of using reported broker metrics directly";
+    public static final String AUTO_BALANCER_CONTROLLER_LOAD_ESTIMATOR_DOC = "How to estimate the load from the recent metrics samples of partitions and brokers, "
+            + "one of latest, ewma, percentile and forecast";
+    public static final String AUTO_BALANCER_CONTROLLER_LOAD_WINDOW_SIZE_DOC = "The number of recent metrics samples kept for load estimation";
+    public static final String AUTO_BALANCER_CONTROLLER_LOAD_EWMA_ALPHA_DOC = "The weight of the latest sample in the exponentially weighted moving average of load, used by ewma estimator";
+    public static final String AUTO_BALANCER_CONTROLLER_LOAD_PERCENTILE_DOC = "The percentile of the samples in window to use as load, used by percentile estimator";
+    public static final String AUTO_BALANCER_CONTROLLER_LOAD_FORECAST_HORIZON_MS_DOC = "How far in milliseconds to forecast the load on the trend of the samples in window, used by forecast estimator";
     public static final String AUTO_BALANCER_CONTROLLER_EXCLUDE_BROKER_IDS_DOC = "Broker ids that auto balancer will ignore during balancing, separated by comma";
     public static final String AUTO_BALANCER_CONTROLLER_EXCLUDE_TOPICS_DOC = "Topics that auto balancer will ignore during balancing, separated by comma";
 
@@ -135,6 +173,21 @@ public class AutoBalancerControllerConfig extends AutoBalancerConfig {
                 .define(AUTO_BALANCER_CONTROLLER_NETWORK_OUT_UTILIZATION_THRESHOLD, ConfigDef.Type.DOUBLE,
                         DEFAULT_AUTO_BALANCER_CONTROLLER_NETWORK_OUT_USAGE_THRESHOLD, ConfigDef.Importance.HIGH,
                         AUTO_BALANCER_CONTROLLER_NETWORK_OUT_USAGE_THRESHOLD_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_THRESHOLD, ConfigDef.Type.DOUBLE,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_THRESHOLD, ConfigDef.Importance.MEDIUM,
+                        AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_THRESHOLD_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_AVG_DEVIATION, ConfigDef.Type.DOUBLE,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_AVG_DEVIATION, ConfigDef.Importance.MEDIUM,
+                        AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_AVG_DEVIATION_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_CPU_UTILIZATION_THRESHOLD, ConfigDef.Type.DOUBLE,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_CPU_USAGE_THRESHOLD, ConfigDef.Importance.MEDIUM,
+                        AUTO_BALANCER_CONTROLLER_CPU_USAGE_THRESHOLD_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_STREAM_READ_UTILIZATION_THRESHOLD, ConfigDef.Type.DOUBLE,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_STREAM_READ_USAGE_THRESHOLD, ConfigDef.Importance.MEDIUM,
+                        AUTO_BALANCER_CONTROLLER_STREAM_READ_USAGE_THRESHOLD_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_STREAM_READ_REQUEST_UTILIZATION_THRESHOLD, ConfigDef.Type.DOUBLE,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_STREAM_READ_REQUEST_USAGE_THRESHOLD, ConfigDef.Importance.MEDIUM,
+                        AUTO_BALANCER_CONTROLLER_STREAM_READ_REQUEST_USAGE_THRESHOLD_DOC)
                 .define(AUTO_BALANCER_CONTROLLER_EXECUTION_INTERVAL_MS, ConfigDef.Type.LONG,
                         DEFAULT_AUTO_BALANCER_CONTROLLER_EXECUTION_INTERVAL_MS, ConfigDef.Importance.HIGH,
                         AUTO_BALANCER_CONTROLLER_EXECUTION_INTERVAL_MS_DOC)
@@ -144,9 +197,31 @@ public class AutoBalancerControllerConfig extends AutoBalancerConfig {
                 .define(AUTO_BALANCER_CONTROLLER_EXECUTION_STEPS, ConfigDef.Type.INT,
                         DEFAULT_AUTO_BALANCER_CONTROLLER_EXECUTION_STEPS, ConfigDef.Importance.HIGH,
                         AUTO_BALANCER_CONTROLLER_EXECUTION_STEPS_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_EXECUTION_CONCURRENCY, ConfigDef.Type.INT,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_EXECUTION_CONCURRENCY, ConfigDef.Range.atLeast(1), ConfigDef.Importance.MEDIUM,
+                        AUTO_BALANCER_CONTROLLER_EXECUTION_CONCURRENCY_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_EXECUTION_TIMEOUT_MS, ConfigDef.Type.LONG,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_EXECUTION_TIMEOUT_MS, ConfigDef.Importance.MEDIUM,
+                        AUTO_BALANCER_CONTROLLER_EXECUTION_TIMEOUT_MS_DOC)
                 .define(AUTO_BALANCER_CONTROLLER_LOAD_AGGREGATION, ConfigDef.Type.BOOLEAN,
                         DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_AGGREGATION, ConfigDef.Importance.HIGH,
                         AUTO_BALANCER_CONTROLLER_LOAD_AGGREGATION_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_LOAD_ESTIMATOR, ConfigDef.Type.STRING,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_ESTIMATOR,
+                        ConfigDef.CaseInsensitiveValidString.in("latest", "ewma", "percentile", "forecast"),
+                        ConfigDef.Importance.MEDIUM, AUTO_BALANCER_CONTROLLER_LOAD_ESTIMATOR_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_LOAD_WINDOW_SIZE, ConfigDef.Type.INT,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_WINDOW_SIZE, ConfigDef.Range.atLeast(1), ConfigDef.Importance.MEDIUM,
+                        AUTO_BALANCER_CONTROLLER_LOAD_WINDOW_SIZE_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_LOAD_EWMA_ALPHA, ConfigDef.Type.DOUBLE,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_EWMA_ALPHA, ConfigDef.Range.between(0, 1), ConfigDef.Importance.LOW,
+                        AUTO_BALANCER_CONTROLLER_LOAD_EWMA_ALPHA_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_LOAD_PERCENTILE, ConfigDef.Type.DOUBLE,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_PERCENTILE, ConfigDef.Range.between(0, 1), ConfigDef.Importance.LOW,
+                        AUTO_BALANCER_CONTROLLER_LOAD_PERCENTILE_DOC)
+                .define(AUTO_BALANCER_CONTROLLER_LOAD_FORECAST_HORIZON_MS, ConfigDef.Type.LONG,
+                        DEFAULT_AUTO_BALANCER_CONTROLLER_LOAD_FORECAST_HORIZON_MS, ConfigDef.Range.atLeast(0), ConfigDef.Importance.LOW,
+                        AUTO_BALANCER_CONTROLLER_LOAD_FORECAST_HORIZON_MS_DOC)
                 .define(AUTO_BALANCER_CONTROLLER_EXCLUDE_BROKER_IDS, ConfigDef.Type.LIST,
                         DEFAULT_AUTO_BALANCER_CONTROLLER_EXCLUDE_BROKER_IDS, ConfigDef.Importance.HIGH,
                         AUTO_BALANCER_CONTROLLER_EXCLUDE_BROKER_IDS_DOC)
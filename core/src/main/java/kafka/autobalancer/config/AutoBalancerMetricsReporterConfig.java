@@ -36,6 +36,8 @@ public class AutoBalancerMetricsReporterConfig extends AutoBalancerConfig {
     private static final String PREFIX = "autobalancer.reporter.";
     public static final String AUTO_BALANCER_BROKER_NW_IN_CAPACITY = PREFIX + "network.in.capacity";
     public static final String AUTO_BALANCER_BROKER_NW_OUT_CAPACITY = PREFIX + "network.out.capacity";
+    public static final String AUTO_BALANCER_BROKER_STREAM_READ_CAPACITY = PREFIX + "stream.read.capacity";
+    public static final String AUTO_BALANCER_BROKER_STREAM_READ_REQUEST_CAPACITY = PREFIX + "stream.read.request.capacity";
     public static final String AUTO_BALANCER_METRICS_TOPIC_AUTO_CREATE_TIMEOUT_MS_CONFIG = PREFIX + "topic.auto.create.timeout.ms";
     public static final String AUTO_BALANCER_METRICS_TOPIC_AUTO_CREATE_RETRIES_CONFIG = PREFIX + "topic.auto.create.retries";
     public static final String AUTO_BALANCER_METRICS_REPORTER_CREATE_RETRIES_CONFIG = PREFIX + "producer.create.retries";
@@ -47,6 +49,8 @@ public class AutoBalancerMetricsReporterConfig extends AutoBalancerConfig {
     /* Default values */
     public static final double DEFAULT_AUTO_BALANCER_BROKER_NW_IN_CAPACITY = 100 * 1024; // 100MB/s
     public static final double DEFAULT_AUTO_BALANCER_BROKER_NW_OUT_CAPACITY = 100 * 1024; // 100MB/s
+    public static final double DEFAULT_AUTO_BALANCER_BROKER_STREAM_READ_CAPACITY = 100 * 1024; // 100MB/s
+    public static final double DEFAULT_AUTO_BALANCER_BROKER_STREAM_READ_REQUEST_CAPACITY = 1000; // 1000 requests/s
     public static final String DEFAULT_AUTO_BALANCER_METRICS_REPORTER_PRODUCER_CLIENT_ID = "AutoBalancerMetricsReporterProducer";
     public static final long DEFAULT_AUTO_BALANCER_METRICS_TOPIC_AUTO_CREATE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
     public static final Integer DEFAULT_AUTO_BALANCER_METRICS_TOPIC_AUTO_CREATE_RETRIES = 5;
@@ -59,6 +63,8 @@ public class AutoBalancerMetricsReporterConfig extends AutoBalancerConfig {
     /* Documents */
     public static final String AUTO_BALANCER_BROKER_NW_IN_CAPACITY_DOC = "Maximum network input bandwidth available for the broker in KB/s";
     public static final String AUTO_BALANCER_BROKER_NW_OUT_CAPACITY_DOC = "Maximum network output bandwidth available for the broker in KB/s";
+    public static final String AUTO_BALANCER_BROKER_STREAM_READ_CAPACITY_DOC = "Maximum bandwidth of the stream reads available for the broker in KB/s";
+    public static final String AUTO_BALANCER_BROKER_STREAM_READ_REQUEST_CAPACITY_DOC = "Maximum rate of the stream read requests available for the broker per second";
     private static final String AUTO_BALANCER_METRICS_TOPIC_AUTO_CREATE_TIMEOUT_MS_DOC = "Timeout on the Auto Balancer metrics topic creation";
     private static final String AUTO_BALANCER_METRICS_TOPIC_AUTO_CREATE_RETRIES_DOC = "Number of retries of the Auto Balancer metrics reporter"
             + " for the topic creation";
@@ -86,6 +92,16 @@ public class AutoBalancerMetricsReporterConfig extends AutoBalancerConfig {
                         DEFAULT_AUTO_BALANCER_BROKER_NW_OUT_CAPACITY,
                         ConfigDef.Importance.HIGH,
                         AUTO_BALANCER_BROKER_NW_OUT_CAPACITY_DOC)
+                .define(AUTO_BALANCER_BROKER_STREAM_READ_CAPACITY,
+                        ConfigDef.Type.DOUBLE,
+                        DEFAULT_AUTO_BALANCER_BROKER_STREAM_READ_CAPACITY,
+                        ConfigDef.Importance.MEDIUM,
+                        AUTO_BALANCER_BROKER_STREAM_READ_CAPACITY_DOC)
+                .define(AUTO_BALANCER_BROKER_STREAM_READ_REQUEST_CAPACITY,
+                        ConfigDef.Type.DOUBLE,
+                        DEFAULT_AUTO_BALANCER_BROKER_STREAM_READ_REQUEST_CAPACITY,
+                        ConfigDef.Importance.MEDIUM,
+                        AUTO_BALANCER_BROKER_STREAM_READ_REQUEST_CAPACITY_DOC)
                 .define(AUTO_BALANCER_METRICS_REPORTER_INTERVAL_MS_CONFIG,
                         ConfigDef.Type.LONG,
                         DEFAULT_AUTO_BALANCER_METRICS_REPORTER_INTERVAL_MS,
@@ -61,7 +61,7 @@ public abstract class AbstractGoal implements Goal, Configurable, Comparable<Abs
      * @return normalized score. 0 means not allowed action
      * > 0 means permitted action, but can be positive or negative for this goal
      */
-    private double calculateAcceptanceScore(Broker srcBrokerBefore, Broker destBrokerBefore, Broker srcBrokerAfter, Broker destBrokerAfter) {
+    double calculateAcceptanceScore(Broker srcBrokerBefore, Broker destBrokerBefore, Broker srcBrokerAfter, Broker destBrokerAfter) {
         double score = scoreDelta(srcBrokerBefore, destBrokerBefore, srcBrokerAfter, destBrokerAfter);
         boolean isSrcBrokerAcceptedBefore = isBrokerAcceptable(srcBrokerBefore);
         boolean isDestBrokerAcceptedBefore = isBrokerAcceptable(destBrokerBefore);
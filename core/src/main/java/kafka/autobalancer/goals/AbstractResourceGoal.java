@@ -22,99 +22,128 @@ import kafka.autobalancer.common.ActionType;
 import kafka.autobalancer.common.Resource;
 import kafka.autobalancer.model.BrokerUpdater;
 import kafka.autobalancer.model.ClusterModelSnapshot;
+import kafka.autobalancer.model.ModelUtils;
 import kafka.autobalancer.model.TopicPartitionReplicaUpdater;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class AbstractResourceGoal extends AbstractGoal {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractGoal.class);
+    /**
+     * The swap candidates are evaluated in parallel if there are at least this many replicas on the candidate brokers.
+     */
+    private static final int PARALLEL_SWAP_THRESHOLD = 1024;
 
     abstract Resource resource();
 
-    private Optional<Action> getAcceptableAction(List<Map.Entry<Action, Double>> candidateActionScores) {
-        Action acceptableAction = null;
-        Optional<Map.Entry<Action, Double>> optionalEntry = candidateActionScores.stream()
-                .max(Comparator.comparingDouble(Map.Entry::getValue));
-        if (optionalEntry.isPresent() && optionalEntry.get().getValue() > POSITIVE_ACTION_SCORE_THRESHOLD) {
-            acceptableAction = optionalEntry.get().getKey();
-        }
-        return Optional.ofNullable(acceptableAction);
-    }
-
-    private double normalizeGoalsScore(Map<AbstractGoal, Double> scoreMap) {
-        int totalWeight = scoreMap.keySet().stream().mapToInt(AbstractGoal::priority).sum();
-        return scoreMap.entrySet().stream()
-                .mapToDouble(entry -> entry.getValue() * (double) entry.getKey().priority() / totalWeight)
-                .sum();
-    }
-
     private Optional<Action> trySwapPartitionOut(ClusterModelSnapshot cluster,
                                                  TopicPartitionReplicaUpdater.TopicPartitionReplica srcReplica,
                                                  BrokerUpdater.Broker srcBroker,
                                                  List<BrokerUpdater.Broker> candidates,
-                                                 Collection<AbstractGoal> goalsByPriority) {
-        List<Map.Entry<Action, Double>> candidateActionScores = new ArrayList<>();
-        for (BrokerUpdater.Broker candidate : candidates) {
-            for (TopicPartitionReplicaUpdater.TopicPartitionReplica candidateReplica : cluster.replicasFor(candidate.getBrokerId())) {
-                if (candidate.load(resource()) > srcReplica.load(resource())) {
-                    continue;
-                }
-                boolean isHardGoalViolated = false;
-                Action action = new Action(ActionType.SWAP, srcReplica.getTopicPartition(), srcBroker.getBrokerId(),
-                        candidate.getBrokerId(), candidateReplica.getTopicPartition());
-                Map<AbstractGoal, Double> scoreMap = new HashMap<>();
-                for (AbstractGoal goal : goalsByPriority) {
-                    double score = goal.actionAcceptanceScore(action, cluster);
-                    if (goal.isHardGoal() && score == 0) {
-                        isHardGoalViolated = true;
-                        break;
-                    }
-                    scoreMap.put(goal, score);
-                }
-                if (!isHardGoalViolated) {
-                    candidateActionScores.add(new AbstractMap.SimpleEntry<>(action, normalizeGoalsScore(scoreMap)));
-                }
+                                                 ActionScorer scorer) {
+        if (!isValidReplica(cluster, srcBroker, srcReplica)) {
+            return Optional.empty();
+        }
+        double srcReplicaLoad = srcReplica.load(resource());
+        // the candidate brokers with more load than the replica can't take it
+        List<BrokerUpdater.Broker> swappableCandidates = candidates.stream()
+                .filter(candidate -> candidate.load(resource()) <= srcReplicaLoad)
+                .collect(Collectors.toList());
+        int candidateReplicaCount = swappableCandidates.stream().mapToInt(candidate -> cluster.replicasFor(candidate.getBrokerId()).size()).sum();
+        Stream<BrokerUpdater.Broker> candidateStream = candidateReplicaCount >= PARALLEL_SWAP_THRESHOLD ?
+                swappableCandidates.parallelStream() : swappableCandidates.stream();
+        // the earlier candidate wins a tie, just like the sequential evaluation
+        Optional<SwapCandidate> bestCandidate = candidateStream
+                .map(candidate -> bestSwapWith(cluster, srcReplica, srcBroker, candidate, scorer))
+                .filter(Objects::nonNull)
+                .reduce((c1, c2) -> c2.score > c1.score ? c2 : c1);
+        if (bestCandidate.isEmpty() || bestCandidate.get().score <= POSITIVE_ACTION_SCORE_THRESHOLD) {
+            return Optional.empty();
+        }
+        SwapCandidate swap = bestCandidate.get();
+        LOGGER.debug("Best swap action score: {} for {}", swap.score, name());
+        return Optional.of(new Action(ActionType.SWAP, srcReplica.getTopicPartition(), srcBroker.getBrokerId(),
+                swap.broker.getBrokerId(), swap.replica.getTopicPartition()));
+    }
+
+    /**
+     * Find the best replica of the candidate broker to swap with the source replica.
+     *
+     * @return the best swap, or null if there isn't any swap accepted by the hard goals
+     */
+    private SwapCandidate bestSwapWith(ClusterModelSnapshot cluster,
+                                       TopicPartitionReplicaUpdater.TopicPartitionReplica srcReplica,
+                                       BrokerUpdater.Broker srcBroker,
+                                       BrokerUpdater.Broker candidate,
+                                       ActionScorer scorer) {
+        double srcReplicaLoad = srcReplica.load(resource());
+        // reused for all the replicas of the candidate, as the tasks of the candidates may run in parallel
+        BrokerUpdater.Broker srcBrokerAfter = new BrokerUpdater.Broker(srcBroker);
+        BrokerUpdater.Broker destBrokerAfter = new BrokerUpdater.Broker(candidate);
+        TopicPartitionReplicaUpdater.TopicPartitionReplica bestReplica = null;
+        double bestScore = ActionScorer.HARD_GOAL_VIOLATED;
+        for (TopicPartitionReplicaUpdater.TopicPartitionReplica candidateReplica : cluster.replicasFor(candidate.getBrokerId())) {
+            if (candidateReplica.load(resource()) >= srcReplicaLoad) {
+                // swapping in a replica with no less load can't move any load of the resource out
+                continue;
+            }
+            srcBrokerAfter.copyLoadFrom(srcBroker);
+            destBrokerAfter.copyLoadFrom(candidate);
+            ModelUtils.moveReplicaLoad(srcBrokerAfter, destBrokerAfter, srcReplica);
+            ModelUtils.moveReplicaLoad(destBrokerAfter, srcBrokerAfter, candidateReplica);
+            double score = scorer.score(srcBroker, candidate, srcBrokerAfter, destBrokerAfter);
+            if (score > bestScore) {
+                bestScore = score;
+                bestReplica = candidateReplica;
             }
         }
-        LOGGER.debug("All possible action score: {}", candidateActionScores);
-        return getAcceptableAction(candidateActionScores);
+        return bestReplica == null ? null : new SwapCandidate(candidate, bestReplica, bestScore);
     }
 
     private Optional<Action> tryMovePartitionOut(ClusterModelSnapshot cluster,
                                                  TopicPartitionReplicaUpdater.TopicPartitionReplica replica,
                                                  BrokerUpdater.Broker srcBroker,
                                                  List<BrokerUpdater.Broker> candidates,
-                                                 Collection<AbstractGoal> goalsByPriority) {
-        List<Map.Entry<Action, Double>> candidateActionScores = new ArrayList<>();
+                                                 ActionScorer scorer) {
+        if (!isValidReplica(cluster, srcBroker, replica)) {
+            return Optional.empty();
+        }
+        BrokerUpdater.Broker srcBrokerAfter = new BrokerUpdater.Broker(srcBroker);
+        BrokerUpdater.Broker destBrokerAfter = new BrokerUpdater.Broker(srcBroker);
+        BrokerUpdater.Broker bestCandidate = null;
+        double bestScore = POSITIVE_ACTION_SCORE_THRESHOLD;
         for (BrokerUpdater.Broker candidate : candidates) {
-            boolean isHardGoalViolated = false;
-            Action action = new Action(ActionType.MOVE, replica.getTopicPartition(), srcBroker.getBrokerId(), candidate.getBrokerId());
-            Map<AbstractGoal, Double> scoreMap = new HashMap<>();
-            for (AbstractGoal goal : goalsByPriority) {
-                double score = goal.actionAcceptanceScore(action, cluster);
-                if (goal.isHardGoal() && score == 0) {
-                    isHardGoalViolated = true;
-                    break;
-                }
-                scoreMap.put(goal, score);
-            }
-            if (isHardGoalViolated) {
+            srcBrokerAfter.copyLoadFrom(srcBroker);
+            destBrokerAfter.copyLoadFrom(candidate);
+            ModelUtils.moveReplicaLoad(srcBrokerAfter, destBrokerAfter, replica);
+            double score = scorer.score(srcBroker, candidate, srcBrokerAfter, destBrokerAfter);
+            if (score == ActionScorer.HARD_GOAL_VIOLATED) {
                 break;
             }
-            candidateActionScores.add(new AbstractMap.SimpleEntry<>(action, normalizeGoalsScore(scoreMap)));
+            if (score > bestScore) {
+                bestScore = score;
+                bestCandidate = candidate;
+            }
+        }
+        if (bestCandidate == null) {
+            return Optional.empty();
         }
-        LOGGER.debug("All possible action score: {} for {}", candidateActionScores, name());
-        return getAcceptableAction(candidateActionScores);
+        LOGGER.debug("Best move action score: {} for {}", bestScore, name());
+        return Optional.of(new Action(ActionType.MOVE, replica.getTopicPartition(), srcBroker.getBrokerId(), bestCandidate.getBrokerId()));
+    }
+
+    private boolean isValidReplica(ClusterModelSnapshot cluster, BrokerUpdater.Broker broker,
+                                   TopicPartitionReplicaUpdater.TopicPartitionReplica replica) {
+        return cluster.replica(broker.getBrokerId(), replica.getTopicPartition()) != null;
     }
 
     /**
@@ -133,6 +162,7 @@ public abstract class AbstractResourceGoal extends AbstractGoal {
                                                  List<BrokerUpdater.Broker> candidateBrokers,
                                                  Collection<AbstractGoal> goalsByPriority) {
         List<Action> actionList = new ArrayList<>();
+        ActionScorer scorer = new ActionScorer(goalsByPriority);
         List<TopicPartitionReplicaUpdater.TopicPartitionReplica> srcReplicas = cluster
                 .replicasFor(srcBroker.getBrokerId())
                 .stream()
@@ -142,9 +172,9 @@ public abstract class AbstractResourceGoal extends AbstractGoal {
             candidateBrokers.sort(Comparator.comparingDouble(b -> b.utilizationFor(resource()))); // lower load first
             Optional<Action> optionalAction;
             if (actionType == ActionType.MOVE) {
-                optionalAction = tryMovePartitionOut(cluster, tp, srcBroker, candidateBrokers, goalsByPriority);
+                optionalAction = tryMovePartitionOut(cluster, tp, srcBroker, candidateBrokers, scorer);
             } else {
-                optionalAction = trySwapPartitionOut(cluster, tp, srcBroker, candidateBrokers, goalsByPriority);
+                optionalAction = trySwapPartitionOut(cluster, tp, srcBroker, candidateBrokers, scorer);
             }
 
             if (optionalAction.isPresent()) {
@@ -176,6 +206,7 @@ public abstract class AbstractResourceGoal extends AbstractGoal {
                                                    List<BrokerUpdater.Broker> candidateBrokers,
                                                    Collection<AbstractGoal> goalsByPriority) {
         List<Action> actionList = new ArrayList<>();
+        ActionScorer scorer = new ActionScorer(goalsByPriority);
         candidateBrokers.sort(Comparator.comparingDouble(b -> -b.utilizationFor(resource()))); // higher load first
         for (BrokerUpdater.Broker candidateBroker : candidateBrokers) {
             List<TopicPartitionReplicaUpdater.TopicPartitionReplica> candidateReplicas = cluster
@@ -186,9 +217,9 @@ public abstract class AbstractResourceGoal extends AbstractGoal {
             for (TopicPartitionReplicaUpdater.TopicPartitionReplica tp : candidateReplicas) {
                 Optional<Action> optionalAction;
                 if (actionType == ActionType.MOVE) {
-                    optionalAction = tryMovePartitionOut(cluster, tp, candidateBroker, List.of(srcBroker), goalsByPriority);
+                    optionalAction = tryMovePartitionOut(cluster, tp, candidateBroker, List.of(srcBroker), scorer);
                 } else {
-                    optionalAction = trySwapPartitionOut(cluster, tp, candidateBroker, List.of(srcBroker), goalsByPriority);
+                    optionalAction = trySwapPartitionOut(cluster, tp, candidateBroker, List.of(srcBroker), scorer);
                 }
 
                 if (optionalAction.isPresent()) {
@@ -204,4 +235,16 @@ public abstract class AbstractResourceGoal extends AbstractGoal {
         }
         return actionList;
     }
+
+    private static class SwapCandidate {
+        private final BrokerUpdater.Broker broker;
+        private final TopicPartitionReplicaUpdater.TopicPartitionReplica replica;
+        private final double score;
+
+        SwapCandidate(BrokerUpdater.Broker broker, TopicPartitionReplicaUpdater.TopicPartitionReplica replica, double score) {
+            this.broker = broker;
+            this.replica = replica;
+            this.score = score;
+        }
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.autobalancer.goals;
+
+import kafka.autobalancer.model.BrokerUpdater.Broker;
+
+import java.util.Collection;
+
+/**
+ * Scores the candidate actions by all goals. The weights and hard goal flags are resolved once and kept in arrays
+ * indexed by the goal, so scoring an action doesn't allocate.
+ * <p>
+ * It's thread-safe as long as the goals and the brokers are not modified while scoring.
+ */
+class ActionScorer {
+    /**
+     * The score of the actions violating a hard goal.
+     */
+    static final double HARD_GOAL_VIOLATED = -1.0;
+
+    private final AbstractGoal[] goals;
+    private final double[] weights;
+    private final boolean[] hardGoals;
+
+    ActionScorer(Collection<AbstractGoal> goalsByPriority) {
+        this.goals = goalsByPriority.toArray(new AbstractGoal[0]);
+        this.weights = new double[goals.length];
+        this.hardGoals = new boolean[goals.length];
+        int totalWeight = 0;
+        for (int i = 0; i < goals.length; i++) {
+            weights[i] = goals[i].priority();
+            hardGoals[i] = goals[i].isHardGoal();
+            totalWeight += goals[i].priority();
+        }
+        for (int i = 0; i < goals.length; i++) {
+            weights[i] /= totalWeight;
+        }
+    }
+
+    /**
+     * Calculate the weighted acceptance score of all goals based on status change of src and dest brokers.
+     *
+     * @return the normalized score, or {@link #HARD_GOAL_VIOLATED} if any hard goal doesn't accept the action
+     */
+    double score(Broker srcBrokerBefore, Broker destBrokerBefore, Broker srcBrokerAfter, Broker destBrokerAfter) {
+        double score = 0;
+        for (int i = 0; i < goals.length; i++) {
+            double goalScore = goals[i].calculateAcceptanceScore(srcBrokerBefore, destBrokerBefore, srcBrokerAfter, destBrokerAfter);
+            if (hardGoals[i] && goalScore == 0) {
+                return HARD_GOAL_VIOLATED;
+            }
+            score += goalScore * weights[i];
+        }
+        return score;
+    }
+}
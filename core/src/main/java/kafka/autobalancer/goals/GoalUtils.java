@@ -32,6 +32,10 @@ public class GoalUtils {
         GOALS_PRIORITY_MAP.put(NetworkOutCapacityGoal.class.getSimpleName(), 10);
         GOALS_PRIORITY_MAP.put(NetworkInDistributionGoal.class.getSimpleName(), 8);
         GOALS_PRIORITY_MAP.put(NetworkOutDistributionGoal.class.getSimpleName(), 8);
+        GOALS_PRIORITY_MAP.put(CpuCapacityGoal.class.getSimpleName(), 10);
+        GOALS_PRIORITY_MAP.put(StreamReadCapacityGoal.class.getSimpleName(), 10);
+        GOALS_PRIORITY_MAP.put(StreamReadRequestCapacityGoal.class.getSimpleName(), 10);
+        GOALS_PRIORITY_MAP.put(CpuDistributionGoal.class.getSimpleName(), 8);
     }
 
     public static int priority(AbstractGoal goal) {
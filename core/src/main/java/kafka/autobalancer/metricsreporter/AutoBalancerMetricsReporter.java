@@ -49,6 +49,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -78,6 +79,8 @@ public class AutoBalancerMetricsReporter implements MetricsRegistryListener, Met
     private boolean kubernetesMode;
     private double brokerNwInCapacity;
     private double brokerNwOutCapacity;
+    private double brokerStreamReadCapacity;
+    private double brokerStreamReadRequestCapacity;
 
     static String getBootstrapServers(Map<String, ?> configs) {
         Object port = configs.get("port");
@@ -215,6 +218,8 @@ public class AutoBalancerMetricsReporter implements MetricsRegistryListener, Met
         }
         brokerNwInCapacity = reporterConfig.getDouble(AutoBalancerMetricsReporterConfig.AUTO_BALANCER_BROKER_NW_IN_CAPACITY);
         brokerNwOutCapacity = reporterConfig.getDouble(AutoBalancerMetricsReporterConfig.AUTO_BALANCER_BROKER_NW_OUT_CAPACITY);
+        brokerStreamReadCapacity = reporterConfig.getDouble(AutoBalancerMetricsReporterConfig.AUTO_BALANCER_BROKER_STREAM_READ_CAPACITY);
+        brokerStreamReadRequestCapacity = reporterConfig.getDouble(AutoBalancerMetricsReporterConfig.AUTO_BALANCER_BROKER_STREAM_READ_REQUEST_CAPACITY);
 
         autoBalancerMetricsTopic = reporterConfig.getString(AutoBalancerMetricsReporterConfig.AUTO_BALANCER_TOPIC_CONFIG);
         reportingIntervalMs = reporterConfig.getLong(AutoBalancerMetricsReporterConfig.AUTO_BALANCER_METRICS_REPORTER_INTERVAL_MS_CONFIG);
@@ -319,6 +324,7 @@ public class AutoBalancerMetricsReporter implements MetricsRegistryListener, Met
         YammerMetricProcessor.Context context = new YammerMetricProcessor.Context(now, brokerId, brokerRack, reportingIntervalMs);
         processYammerMetrics(context);
         processCpuMetrics(context);
+        processPartitionCostMetrics(context);
         for (Map.Entry<String, AutoBalancerMetrics> entry : context.getMetricMap().entrySet()) {
             sendAutoBalancerMetric(entry.getValue());
         }
@@ -334,7 +340,9 @@ public class AutoBalancerMetricsReporter implements MetricsRegistryListener, Met
         // add broker capacity info
         context.merge(new BrokerMetrics(context.time(), brokerId, brokerRack)
                 .put(RawMetricType.BROKER_CAPACITY_NW_IN, brokerNwInCapacity)
-                .put(RawMetricType.BROKER_CAPACITY_NW_OUT, brokerNwOutCapacity));
+                .put(RawMetricType.BROKER_CAPACITY_NW_OUT, brokerNwOutCapacity)
+                .put(RawMetricType.BROKER_CAPACITY_STREAM_READ, brokerStreamReadCapacity)
+                .put(RawMetricType.BROKER_CAPACITY_STREAM_READ_REQUEST, brokerStreamReadRequestCapacity));
         addMandatoryPartitionMetrics(context);
     }
 
@@ -368,6 +376,21 @@ public class AutoBalancerMetricsReporter implements MetricsRegistryListener, Met
         context.merge(brokerMetrics);
     }
 
+    private void processPartitionCostMetrics(YammerMetricProcessor.Context context) {
+        AutoBalancerMetrics brokerMetrics = null;
+        List<AutoBalancerMetrics> partitionMetrics = new ArrayList<>();
+        for (AutoBalancerMetrics metrics : context.getMetricMap().values()) {
+            if (metrics.metricClassId() == AutoBalancerMetrics.MetricClassId.BROKER_METRIC) {
+                brokerMetrics = metrics;
+            } else if (metrics.metricClassId() == AutoBalancerMetrics.MetricClassId.PARTITION_METRIC) {
+                partitionMetrics.add(metrics);
+            }
+        }
+        if (brokerMetrics != null) {
+            MetricsUtils.estimatePartitionCost(brokerMetrics, partitionMetrics);
+        }
+    }
+
     private void addMetricIfInterested(MetricName name, Metric metric) {
         LOGGER.debug("Checking Yammer metric {}", name);
         if (MetricsUtils.isInterested(name)) {
@@ -55,6 +55,10 @@ public abstract class AutoBalancerMetrics {
         for (int i = 0; i < metricNumber; i++) {
             byte id = buffer.get();
             double value = buffer.getDouble();
+            if (id >= RawMetricType.allMetricTypes().size()) {
+                // skip the metrics added by the newer brokers
+                continue;
+            }
             metricsMap.put(RawMetricType.forId(id), value);
         }
         return metricsMap;
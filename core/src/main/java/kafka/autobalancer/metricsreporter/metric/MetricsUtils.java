@@ -28,6 +28,7 @@ import scala.jdk.javaapi.CollectionConverters;
 
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,6 +44,9 @@ public final class MetricsUtils {
     public static final String BYTES_OUT_PER_SEC = "BytesOutPerSec";
     /* Used to identify idle partitions  */
     public static final String SIZE = "Size";
+    /* The reads of the streams of a partition, see kafka.log.streamaspect.ElasticUnifiedLog */
+    public static final String STREAM_READ_BYTES_PER_SEC = "StreamReadBytesPerSec";
+    public static final String STREAM_READ_REQUESTS_PER_SEC = "StreamReadRequestsPerSec";
     // Attribute
     static final String ATTRIBUTE_MEAN = "Mean";
     static final String ATTRIBUTE_MAX = "Max";
@@ -61,7 +65,7 @@ public final class MetricsUtils {
     // Name Set.
     private static final Set<String> INTERESTED_TOPIC_PARTITION_METRIC_NAMES =
             Set.of(BYTES_IN_PER_SEC, BYTES_OUT_PER_SEC);
-    private static final Set<String> INTERESTED_LOG_METRIC_NAMES = Set.of(SIZE);
+    private static final Set<String> INTERESTED_LOG_METRIC_NAMES = Set.of(SIZE, STREAM_READ_BYTES_PER_SEC, STREAM_READ_REQUESTS_PER_SEC);
 
     private MetricsUtils() {
 
@@ -200,6 +204,18 @@ public final class MetricsUtils {
                     return null;
                 }
                 return new TopicPartitionMetrics(nowMs, brokerId, brokerRack, topic, partition).put(RawMetricType.PARTITION_SIZE, value);
+            case STREAM_READ_BYTES_PER_SEC:
+                if (partition == -1) {
+                    return null;
+                }
+                // stream read capacity is in KB/s
+                value = value / 1024;
+                return new TopicPartitionMetrics(nowMs, brokerId, brokerRack, topic, partition).put(RawMetricType.TOPIC_PARTITION_STREAM_READ_BYTES, value);
+            case STREAM_READ_REQUESTS_PER_SEC:
+                if (partition == -1) {
+                    return null;
+                }
+                return new TopicPartitionMetrics(nowMs, brokerId, brokerRack, topic, partition).put(RawMetricType.TOPIC_PARTITION_STREAM_READ_REQUESTS, value);
             default:
                 return null;
         }
@@ -229,6 +245,41 @@ public final class MetricsUtils {
         return brokerMetric;
     }
 
+    /**
+     * Estimate the cost of the partitions on the broker. The cpu utilization of the broker is apportioned to the
+     * partitions by their share of the network traffic, and the stream reads of the partitions are summed up to the
+     * broker.
+     *
+     * @param brokerMetrics    The metrics of the broker.
+     * @param partitionMetrics The metrics of the partitions on the broker.
+     */
+    public static void estimatePartitionCost(AutoBalancerMetrics brokerMetrics, Collection<AutoBalancerMetrics> partitionMetrics) {
+        double totalBytes = 0;
+        double totalStreamReadBytes = 0;
+        double totalStreamReadRequests = 0;
+        for (AutoBalancerMetrics metrics : partitionMetrics) {
+            Map<RawMetricType, Double> values = metrics.getMetricTypeValueMap();
+            totalBytes += networkBytes(values);
+            totalStreamReadBytes += values.getOrDefault(RawMetricType.TOPIC_PARTITION_STREAM_READ_BYTES, 0.0);
+            totalStreamReadRequests += values.getOrDefault(RawMetricType.TOPIC_PARTITION_STREAM_READ_REQUESTS, 0.0);
+        }
+        double cpuUtil = brokerMetrics.getMetricTypeValueMap().getOrDefault(RawMetricType.BROKER_CPU_UTIL, 0.0);
+        for (AutoBalancerMetrics metrics : partitionMetrics) {
+            Map<RawMetricType, Double> values = metrics.getMetricTypeValueMap();
+            double share = totalBytes > 0 ? networkBytes(values) / totalBytes : 0;
+            values.put(RawMetricType.TOPIC_PARTITION_CPU_UTIL, cpuUtil * share);
+            values.putIfAbsent(RawMetricType.TOPIC_PARTITION_STREAM_READ_BYTES, 0.0);
+            values.putIfAbsent(RawMetricType.TOPIC_PARTITION_STREAM_READ_REQUESTS, 0.0);
+        }
+        brokerMetrics.put(RawMetricType.ALL_TOPIC_STREAM_READ_BYTES, totalStreamReadBytes);
+        brokerMetrics.put(RawMetricType.ALL_TOPIC_STREAM_READ_REQUESTS, totalStreamReadRequests);
+    }
+
+    private static double networkBytes(Map<RawMetricType, Double> values) {
+        return values.getOrDefault(RawMetricType.TOPIC_PARTITION_BYTES_IN, 0.0)
+                + values.getOrDefault(RawMetricType.TOPIC_PARTITION_BYTES_OUT, 0.0);
+    }
+
     /**
      * Check whether the yammer metric name is an interested metric.
      *
@@ -318,10 +369,10 @@ public final class MetricsUtils {
     }
 
     public static boolean sanityCheckBrokerMetricsCompleteness(AutoBalancerMetrics metrics) {
-        return metrics.getMetricTypeValueMap().keySet().containsAll(RawMetricType.brokerMetricTypes());
+        return metrics.getMetricTypeValueMap().keySet().containsAll(RawMetricType.requiredBrokerMetricTypes());
     }
 
     public static boolean sanityCheckTopicPartitionMetricsCompleteness(AutoBalancerMetrics metrics) {
-        return metrics.getMetricTypeValueMap().keySet().containsAll(RawMetricType.partitionMetricTypes());
+        return metrics.getMetricTypeValueMap().keySet().containsAll(RawMetricType.requiredPartitionMetricTypes());
     }
 }
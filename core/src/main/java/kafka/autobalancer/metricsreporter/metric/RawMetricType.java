@@ -48,12 +48,22 @@ public enum RawMetricType {
     TOPIC_PARTITION_BYTES_IN(PARTITION, (byte) 4, (byte) 0),
     TOPIC_PARTITION_BYTES_OUT(PARTITION, (byte) 5, (byte) 0),
     PARTITION_SIZE(PARTITION, (byte) 6, (byte) 0),
-    BROKER_CPU_UTIL(BROKER, (byte) 7, (byte) 0);
+    BROKER_CPU_UTIL(BROKER, (byte) 7, (byte) 0),
+    // the metrics since version 1 are optional, so the metrics of the older brokers are still accepted
+    TOPIC_PARTITION_CPU_UTIL(PARTITION, (byte) 8, (byte) 1),
+    TOPIC_PARTITION_STREAM_READ_BYTES(PARTITION, (byte) 9, (byte) 1),
+    TOPIC_PARTITION_STREAM_READ_REQUESTS(PARTITION, (byte) 10, (byte) 1),
+    BROKER_CAPACITY_STREAM_READ(BROKER, (byte) 11, (byte) 1),
+    BROKER_CAPACITY_STREAM_READ_REQUEST(BROKER, (byte) 12, (byte) 1),
+    ALL_TOPIC_STREAM_READ_BYTES(BROKER, (byte) 13, (byte) 1),
+    ALL_TOPIC_STREAM_READ_REQUESTS(BROKER, (byte) 14, (byte) 1);
 
     private static final List<RawMetricType> CACHED_VALUES = List.of(RawMetricType.values());
     private static final SortedMap<Byte, Set<RawMetricType>> BROKER_METRIC_TYPES_DIFF_BY_VERSION = buildBrokerMetricTypesDiffByVersion();
     private static final List<RawMetricType> BROKER_METRIC_TYPES = Collections.unmodifiableList(buildMetricTypeList(BROKER));
     private static final List<RawMetricType> PARTITION_METRIC_TYPES = Collections.unmodifiableList(buildMetricTypeList(PARTITION));
+    private static final List<RawMetricType> REQUIRED_BROKER_METRIC_TYPES = Collections.unmodifiableList(buildRequiredMetricTypeList(BROKER));
+    private static final List<RawMetricType> REQUIRED_PARTITION_METRIC_TYPES = Collections.unmodifiableList(buildRequiredMetricTypeList(PARTITION));
     private final byte id;
     private final MetricScope metricScope;
     private final byte supportedVersionSince;
@@ -88,6 +98,20 @@ public enum RawMetricType {
         return BROKER_METRIC_TYPES;
     }
 
+    /**
+     * @return the partition metric types which must be reported by the brokers of all versions.
+     */
+    public static List<RawMetricType> requiredPartitionMetricTypes() {
+        return REQUIRED_PARTITION_METRIC_TYPES;
+    }
+
+    /**
+     * @return the broker metric types which must be reported by the brokers of all versions.
+     */
+    public static List<RawMetricType> requiredBrokerMetricTypes() {
+        return REQUIRED_BROKER_METRIC_TYPES;
+    }
+
     /**
      * @param id Auto Balancer Metric type.
      * @return Raw metric type.
@@ -121,6 +145,16 @@ public enum RawMetricType {
         return brokerMetricTypes;
     }
 
+    private static List<RawMetricType> buildRequiredMetricTypeList(MetricScope metricScope) {
+        List<RawMetricType> requiredMetricTypes = new ArrayList<>();
+        for (RawMetricType type : buildMetricTypeList(metricScope)) {
+            if (type.supportedVersionSince() <= 0) {
+                requiredMetricTypes.add(type);
+            }
+        }
+        return requiredMetricTypes;
+    }
+
     public byte id() {
         return id;
     }
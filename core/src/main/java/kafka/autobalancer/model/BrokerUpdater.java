@@ -25,7 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.EnumSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -36,30 +36,48 @@ public class BrokerUpdater {
     private static final Logger LOGGER = LoggerFactory.getLogger(BrokerUpdater.class);
     private final Lock lock = new ReentrantLock();
     private final Broker broker;
+    private final LoadEstimator loadEstimator;
+    private final LoadWindow[] loadWindows = new LoadWindow[Resource.cachedValues().size()];
 
     public BrokerUpdater(int brokerId) {
+        this(brokerId, LoadEstimator.LATEST);
+    }
+
+    public BrokerUpdater(int brokerId, LoadEstimator loadEstimator) {
         this.broker = new Broker(brokerId);
+        this.loadEstimator = loadEstimator;
     }
 
     public static class Broker {
         private final int brokerId;
         private final double[] brokerCapacity = new double[Resource.cachedValues().size()];
         private final double[] brokerLoad = new double[Resource.cachedValues().size()];
-        private final Set<Resource> resources = new HashSet<>();
+        private final Set<Resource> resources = EnumSet.noneOf(Resource.class);
         private boolean active;
         private long timestamp;
 
         public Broker(int brokerId) {
             this.brokerId = brokerId;
+            // the cpu load is reported as the utilization of the broker
+            this.brokerCapacity[Resource.CPU.id()] = 1.0;
         }
 
         public Broker(Broker other) {
             this.brokerId = other.brokerId;
+            copyLoadFrom(other);
+            this.active = other.active;
+            this.timestamp = other.timestamp;
+        }
+
+        /**
+         * Overwrite the capacity and load with the other broker's, so a broker can be reused to evaluate the actions
+         * without allocating a copy for each of them.
+         */
+        public void copyLoadFrom(Broker other) {
             System.arraycopy(other.brokerCapacity, 0, this.brokerCapacity, 0, other.brokerCapacity.length);
             System.arraycopy(other.brokerLoad, 0, this.brokerLoad, 0, other.brokerLoad.length);
+            this.resources.clear();
             this.resources.addAll(other.resources);
-            this.active = other.active;
-            this.timestamp = other.timestamp;
         }
 
         public int getBrokerId() {
@@ -173,13 +191,25 @@ public class BrokerUpdater {
                         broker.setCapacity(Resource.NW_OUT, entry.getValue());
                         break;
                     case ALL_TOPIC_BYTES_IN:
-                        broker.setLoad(Resource.NW_IN, entry.getValue());
+                        broker.setLoad(Resource.NW_IN, loadEstimator.update(loadWindows, Resource.NW_IN, metrics.time(), entry.getValue()));
                         break;
                     case ALL_TOPIC_BYTES_OUT:
-                        broker.setLoad(Resource.NW_OUT, entry.getValue());
+                        broker.setLoad(Resource.NW_OUT, loadEstimator.update(loadWindows, Resource.NW_OUT, metrics.time(), entry.getValue()));
                         break;
                     case BROKER_CPU_UTIL:
-                        broker.setLoad(Resource.CPU, entry.getValue());
+                        broker.setLoad(Resource.CPU, loadEstimator.update(loadWindows, Resource.CPU, metrics.time(), entry.getValue()));
+                        break;
+                    case BROKER_CAPACITY_STREAM_READ:
+                        broker.setCapacity(Resource.STREAM_READ, entry.getValue());
+                        break;
+                    case BROKER_CAPACITY_STREAM_READ_REQUEST:
+                        broker.setCapacity(Resource.STREAM_READ_REQUEST, entry.getValue());
+                        break;
+                    case ALL_TOPIC_STREAM_READ_BYTES:
+                        broker.setLoad(Resource.STREAM_READ, loadEstimator.update(loadWindows, Resource.STREAM_READ, metrics.time(), entry.getValue()));
+                        break;
+                    case ALL_TOPIC_STREAM_READ_REQUESTS:
+                        broker.setLoad(Resource.STREAM_READ_REQUEST, loadEstimator.update(loadWindows, Resource.STREAM_READ_REQUEST, metrics.time(), entry.getValue()));
                         break;
                     default:
                         LOGGER.error("Unsupported broker metrics type {}", entry.getKey());
@@ -35,12 +35,15 @@ import org.apache.kafka.common.metadata.UnregisterBrokerRecord;
 import org.apache.kafka.common.utils.LogContext;
 import org.apache.kafka.metadata.BrokerRegistrationFencingChange;
 import org.apache.kafka.metadata.BrokerRegistrationInControlledShutdownChange;
+import org.apache.kafka.server.immutable.ImmutableMap;
 import org.slf4j.Logger;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -56,13 +59,22 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
 
     /* cluster structure indices*/
     private final Map<Integer, String> brokerIdToRackMap = new HashMap<>();
-    private final Map<Integer, BrokerUpdater> brokerMap = new HashMap<>();
-    private final Map<Integer, Map<TopicPartition, TopicPartitionReplicaUpdater>> brokerReplicaMap = new HashMap<>();
+    // the updaters are looked up without the lock, so the load updates never wait for the snapshots
+    private final Map<Integer, BrokerUpdater> brokerMap = new ConcurrentHashMap<>();
+    private final Map<Integer, Map<TopicPartition, TopicPartitionReplicaUpdater>> brokerReplicaMap = new ConcurrentHashMap<>();
     private final Map<Uuid, String> idToTopicNameMap = new HashMap<>();
     private final Map<String, Map<Integer, Integer>> topicPartitionReplicaMap = new HashMap<>();
 
+    /*
+     * The replicas published to the snapshots. They're only patched with the changed partitions on each snapshot,
+     * and the snapshots share the unchanged maps.
+     */
+    private final Map<Integer, PublishedReplicas> publishedReplicaMap = new HashMap<>();
+    private final Set<TopicPartition> changedPartitions = ConcurrentHashMap.newKeySet();
+
     private final long maxToleratedMetricsDelay;
     private final boolean aggregateBrokerLoad;
+    private final LoadEstimator loadEstimator;
 
     public ClusterModel(AutoBalancerControllerConfig config) {
         this(config, null);
@@ -75,6 +87,7 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
         logger = logContext.logger(ClusterModel.class);
         maxToleratedMetricsDelay = config.getLong(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_ACCEPTED_METRICS_DELAY_MS);
         aggregateBrokerLoad = config.getBoolean(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_LOAD_AGGREGATION);
+        loadEstimator = LoadEstimator.of(config);
     }
 
     public ClusterModelSnapshot snapshot() {
@@ -86,6 +99,7 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
         clusterLock.lock();
         try {
             long now = System.currentTimeMillis();
+            publishChangedPartitions();
             for (BrokerUpdater brokerUpdater : brokerMap.values()) {
                 BrokerUpdater.Broker broker = brokerUpdater.get(now - maxToleratedMetricsDelay);
                 if (broker == null) {
@@ -96,23 +110,28 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
                 }
                 snapshot.addBroker(brokerIdToRackMap.get(broker.getBrokerId()), broker);
             }
-            for (Map.Entry<Integer, Map<TopicPartition, TopicPartitionReplicaUpdater>> entry : brokerReplicaMap.entrySet()) {
+            for (Map.Entry<Integer, PublishedReplicas> entry : publishedReplicaMap.entrySet()) {
                 int brokerId = entry.getKey();
                 if (snapshot.broker(brokerId) == null) {
                     continue;
                 }
-                for (TopicPartitionReplicaUpdater replicaUpdater : entry.getValue().values()) {
-                    TopicPartitionReplicaUpdater.TopicPartitionReplica replica = replicaUpdater.get(now - maxToleratedMetricsDelay);
-                    if (replica == null) {
-                        logger.warn("Broker {} has out of sync topic-partition {}, will be ignored in this round", brokerId, replicaUpdater.topicPartition());
-                        snapshot.removeBroker(brokerIdToRackMap.get(brokerId), brokerId);
-                        break;
-                    }
-                    if (excludedTopics.contains(replica.getTopicPartition().topic())) {
-                        continue;
+                PublishedReplicas published = entry.getValue();
+                TopicPartition outOfSyncPartition = published.outOfSyncPartition(now - maxToleratedMetricsDelay);
+                if (outOfSyncPartition != null) {
+                    logger.warn("Broker {} has out of sync topic-partition {}, will be ignored in this round", brokerId, outOfSyncPartition);
+                    snapshot.removeBroker(brokerIdToRackMap.get(brokerId), brokerId);
+                    continue;
+                }
+                ImmutableMap<TopicPartition, TopicPartitionReplicaUpdater.TopicPartitionReplica> replicas = published.replicas;
+                for (String topic : excludedTopics) {
+                    Map<Integer, Integer> partitionToBroker = topicPartitionReplicaMap.getOrDefault(topic, Collections.emptyMap());
+                    for (Map.Entry<Integer, Integer> partition : partitionToBroker.entrySet()) {
+                        if (partition.getValue() == brokerId) {
+                            replicas = replicas.removed(new TopicPartition(topic, partition.getKey()));
+                        }
                     }
-                    snapshot.addTopicPartition(brokerId, replica);
                 }
+                snapshot.addTopicPartitions(brokerId, replicas);
             }
         } finally {
             clusterLock.unlock();
@@ -125,14 +144,29 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
         return snapshot;
     }
 
-    public boolean updateBroker(BrokerMetrics brokerMetrics) {
-        BrokerUpdater brokerUpdater = null;
-        clusterLock.lock();
-        try {
-            brokerUpdater = brokerMap.get(brokerMetrics.brokerId());
-        } finally {
-            clusterLock.unlock();
+    /**
+     * Publish the latest loads of the partitions updated since the last snapshot. Must be called with the cluster lock held.
+     */
+    private void publishChangedPartitions() {
+        Iterator<TopicPartition> iterator = changedPartitions.iterator();
+        while (iterator.hasNext()) {
+            TopicPartition tp = iterator.next();
+            // remove it before reading the replica, so an update after the read will be published in the next snapshot
+            iterator.remove();
+            Integer brokerId = topicPartitionReplicaMap.getOrDefault(tp.topic(), Collections.emptyMap()).get(tp.partition());
+            if (brokerId == null) {
+                continue;
+            }
+            TopicPartitionReplicaUpdater replicaUpdater = brokerReplicaMap.getOrDefault(brokerId, Collections.emptyMap()).get(tp);
+            PublishedReplicas published = publishedReplicaMap.get(brokerId);
+            if (replicaUpdater != null && published != null) {
+                published.put(replicaUpdater.get());
+            }
         }
+    }
+
+    public boolean updateBroker(BrokerMetrics brokerMetrics) {
+        BrokerUpdater brokerUpdater = brokerMap.get(brokerMetrics.brokerId());
         if (brokerUpdater != null) {
             return brokerUpdater.update(brokerMetrics);
         }
@@ -141,17 +175,13 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
 
     public boolean updateTopicPartition(TopicPartitionMetrics topicPartitionMetrics) {
         TopicPartitionReplicaUpdater replicaUpdater = null;
-        clusterLock.lock();
-        try {
-            Map<TopicPartition, TopicPartitionReplicaUpdater> replicaMap = brokerReplicaMap.get(topicPartitionMetrics.brokerId());
-            if (replicaMap != null) {
-                replicaUpdater = replicaMap.get(new TopicPartition(topicPartitionMetrics.topic(), topicPartitionMetrics.partition()));
-            }
-        } finally {
-            clusterLock.unlock();
+        Map<TopicPartition, TopicPartitionReplicaUpdater> replicaMap = brokerReplicaMap.get(topicPartitionMetrics.brokerId());
+        if (replicaMap != null) {
+            replicaUpdater = replicaMap.get(new TopicPartition(topicPartitionMetrics.topic(), topicPartitionMetrics.partition()));
         }
-        if (replicaUpdater != null) {
-            return replicaUpdater.update(topicPartitionMetrics);
+        if (replicaUpdater != null && replicaUpdater.update(topicPartitionMetrics)) {
+            changedPartitions.add(replicaUpdater.topicPartition());
+            return true;
         }
         return false;
     }
@@ -164,11 +194,12 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
                 return;
             }
             String rackId = StringUtils.isEmpty(record.rack()) ? DEFAULT_RACK_ID : record.rack();
-            BrokerUpdater brokerUpdater = new BrokerUpdater(record.brokerId());
+            BrokerUpdater brokerUpdater = new BrokerUpdater(record.brokerId(), loadEstimator);
             brokerUpdater.setActive(true);
             brokerIdToRackMap.putIfAbsent(record.brokerId(), rackId);
             brokerMap.putIfAbsent(record.brokerId(), brokerUpdater);
-            brokerReplicaMap.put(record.brokerId(), new HashMap<>());
+            brokerReplicaMap.put(record.brokerId(), new ConcurrentHashMap<>());
+            publishedReplicaMap.put(record.brokerId(), new PublishedReplicas());
         } finally {
             clusterLock.unlock();
         }
@@ -181,6 +212,7 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
             brokerIdToRackMap.remove(record.brokerId());
             brokerMap.remove(record.brokerId());
             brokerReplicaMap.remove(record.brokerId());
+            publishedReplicaMap.remove(record.brokerId());
         } finally {
             clusterLock.unlock();
         }
@@ -227,9 +259,14 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
             for (Map.Entry<Integer, Integer> entry : topicPartitionReplicaMap.get(topicName).entrySet()) {
                 int partitionId = entry.getKey();
                 int brokerId = entry.getValue();
+                TopicPartition tp = new TopicPartition(topicName, partitionId);
                 Map<TopicPartition, TopicPartitionReplicaUpdater> replicaMap = brokerReplicaMap.get(brokerId);
                 if (replicaMap != null) {
-                    replicaMap.remove(new TopicPartition(topicName, partitionId));
+                    replicaMap.remove(tp);
+                }
+                PublishedReplicas published = publishedReplicaMap.get(brokerId);
+                if (published != null) {
+                    published.remove(tp);
                 }
             }
             topicPartitionReplicaMap.remove(topicName);
@@ -261,7 +298,9 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
             }
             topicPartitionReplicaMap.get(topicName).put(record.partitionId(), brokerIdToCreateOn);
             TopicPartition tp = new TopicPartition(topicName, record.partitionId());
-            brokerReplicaMap.get(brokerIdToCreateOn).put(tp, new TopicPartitionReplicaUpdater(tp));
+            TopicPartitionReplicaUpdater replicaUpdater = new TopicPartitionReplicaUpdater(tp, loadEstimator);
+            brokerReplicaMap.get(brokerIdToCreateOn).put(tp, replicaUpdater);
+            publishedReplicaMap.get(brokerIdToCreateOn).put(replicaUpdater.get());
         } finally {
             clusterLock.unlock();
         }
@@ -298,6 +337,8 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
                 TopicPartitionReplicaUpdater replicaUpdater = brokerReplicaMap.get(oldBrokerId).get(tp);
                 brokerReplicaMap.get(brokerIdToReassign).put(tp, replicaUpdater);
                 brokerReplicaMap.get(oldBrokerId).remove(tp);
+                publishedReplicaMap.get(oldBrokerId).remove(tp);
+                publishedReplicaMap.get(brokerIdToReassign).put(replicaUpdater.get());
             }
             topicPartitionReplicaMap.get(topicName).put(record.partitionId(), brokerIdToReassign);
         } finally {
@@ -335,4 +376,41 @@ public class ClusterModel implements BrokerStatusListener, TopicPartitionStatusL
         }
     }
     /* Code visible for test end*/
+
+    /**
+     * The replicas of a broker published to the snapshots, guarded by the cluster lock.
+     */
+    private static class PublishedReplicas {
+        private ImmutableMap<TopicPartition, TopicPartitionReplicaUpdater.TopicPartitionReplica> replicas = ImmutableMap.empty();
+        // a lower bound of the replicas' timestamps, so the sync check doesn't have to scan the replicas each time
+        private long minTimestamp = Long.MAX_VALUE;
+
+        void put(TopicPartitionReplicaUpdater.TopicPartitionReplica replica) {
+            replicas = replicas.updated(replica.getTopicPartition(), replica);
+            minTimestamp = Math.min(minTimestamp, replica.getTimestamp());
+        }
+
+        void remove(TopicPartition tp) {
+            replicas = replicas.removed(tp);
+        }
+
+        /**
+         * Get a replica not updated since the time, or null if all the replicas are in sync.
+         */
+        TopicPartition outOfSyncPartition(long timeSince) {
+            if (minTimestamp >= timeSince) {
+                return null;
+            }
+            TopicPartition outOfSyncPartition = null;
+            long newMinTimestamp = Long.MAX_VALUE;
+            for (TopicPartitionReplicaUpdater.TopicPartitionReplica replica : replicas.values()) {
+                if (replica.getTimestamp() < timeSince && outOfSyncPartition == null) {
+                    outOfSyncPartition = replica.getTopicPartition();
+                }
+                newMinTimestamp = Math.min(newMinTimestamp, replica.getTimestamp());
+            }
+            minTimestamp = newMinTimestamp;
+            return outOfSyncPartition;
+        }
+    }
 }
@@ -23,16 +23,23 @@ import kafka.autobalancer.common.Resource;
 import kafka.autobalancer.model.BrokerUpdater.Broker;
 import kafka.autobalancer.model.TopicPartitionReplicaUpdater.TopicPartitionReplica;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.server.immutable.ImmutableMap;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * A copy of the cluster for the goals to optimize on. The replicas of each broker are kept in an immutable map, so
+ * the unchanged replicas are shared with the cluster model and the other snapshots, and the actions applied on a
+ * snapshot only replace the maps of the brokers they touch. The replicas themselves are never modified.
+ */
 public class ClusterModelSnapshot {
 
     private final Map<String, Integer> rackToBrokerMap;
     private final Map<Integer, Broker> brokerMap;
-    private final Map<Integer, Map<TopicPartition, TopicPartitionReplica>> brokerToReplicaMap;
+    private final Map<Integer, ImmutableMap<TopicPartition, TopicPartitionReplica>> brokerToReplicaMap;
 
     public ClusterModelSnapshot() {
         rackToBrokerMap = new HashMap<>();
@@ -42,11 +49,21 @@ public class ClusterModelSnapshot {
 
     public void aggregate() {
         // Override broker load with sum of replicas
-        for (Map.Entry<Integer, Map<TopicPartition, TopicPartitionReplica>> entry : brokerToReplicaMap.entrySet()) {
+        double[] sums = new double[Resource.cachedValues().size()];
+        for (Map.Entry<Integer, ImmutableMap<TopicPartition, TopicPartitionReplica>> entry : brokerToReplicaMap.entrySet()) {
             int brokerId = entry.getKey();
+            Broker broker = brokerMap.get(brokerId);
+            if (broker == null) {
+                continue;
+            }
+            Arrays.fill(sums, 0);
+            for (TopicPartitionReplica replica : entry.getValue().values()) {
+                for (Resource resource : Resource.cachedValues()) {
+                    sums[resource.id()] += replica.load(resource);
+                }
+            }
             for (Resource resource : Resource.cachedValues()) {
-                double sum = entry.getValue().values().stream().mapToDouble(e -> e.load(resource)).sum();
-                brokerMap.get(brokerId).setLoad(resource, sum);
+                broker.setLoad(resource, sums[resource.id()]);
             }
         }
     }
@@ -54,7 +71,7 @@ public class ClusterModelSnapshot {
     public void addBroker(String rack, Broker broker) {
         rackToBrokerMap.putIfAbsent(rack, broker.getBrokerId());
         brokerMap.putIfAbsent(broker.getBrokerId(), broker);
-        brokerToReplicaMap.putIfAbsent(broker.getBrokerId(), new HashMap<>());
+        brokerToReplicaMap.putIfAbsent(broker.getBrokerId(), ImmutableMap.empty());
     }
 
     public void removeBroker(String rack, int brokerId) {
@@ -64,8 +81,14 @@ public class ClusterModelSnapshot {
     }
 
     public void addTopicPartition(int brokerId, TopicPartitionReplica replica) {
-        brokerToReplicaMap.putIfAbsent(brokerId, new HashMap<>());
-        brokerToReplicaMap.get(brokerId).put(replica.getTopicPartition(), replica);
+        brokerToReplicaMap.put(brokerId, replicaMap(brokerId).updated(replica.getTopicPartition(), replica));
+    }
+
+    /**
+     * Add the replicas of the broker, the map is shared rather than copied.
+     */
+    void addTopicPartitions(int brokerId, ImmutableMap<TopicPartition, TopicPartitionReplica> replicas) {
+        brokerToReplicaMap.put(brokerId, replicas);
     }
 
     public Broker broker(int brokerId) {
@@ -98,14 +121,22 @@ public class ClusterModelSnapshot {
         }
         TopicPartitionReplica srcReplica = brokerToReplicaMap.get(action.getSrcBrokerId()).get(action.getSrcTopicPartition());
         ModelUtils.moveReplicaLoad(srcBroker, destBroker, srcReplica);
-        brokerToReplicaMap.get(action.getSrcBrokerId()).remove(action.getSrcTopicPartition());
-        brokerToReplicaMap.get(action.getDestBrokerId()).put(action.getSrcTopicPartition(), srcReplica);
+        moveReplica(action.getSrcBrokerId(), action.getDestBrokerId(), srcReplica);
         if (action.getType() == ActionType.SWAP) {
             TopicPartitionReplica destReplica = brokerToReplicaMap.get(action.getDestBrokerId()).get(action.getDestTopicPartition());
             ModelUtils.moveReplicaLoad(destBroker, srcBroker, destReplica);
-            brokerToReplicaMap.get(action.getDestBrokerId()).remove(action.getDestTopicPartition());
-            brokerToReplicaMap.get(action.getSrcBrokerId()).put(action.getDestTopicPartition(), destReplica);
+            moveReplica(action.getDestBrokerId(), action.getSrcBrokerId(), destReplica);
         }
     }
 
+    private void moveReplica(int srcBrokerId, int destBrokerId, TopicPartitionReplica replica) {
+        TopicPartition tp = replica.getTopicPartition();
+        brokerToReplicaMap.put(srcBrokerId, replicaMap(srcBrokerId).removed(tp));
+        brokerToReplicaMap.put(destBrokerId, replicaMap(destBrokerId).updated(tp, replica));
+    }
+
+    private ImmutableMap<TopicPartition, TopicPartitionReplica> replicaMap(int brokerId) {
+        return brokerToReplicaMap.getOrDefault(brokerId, ImmutableMap.empty());
+    }
+
 }
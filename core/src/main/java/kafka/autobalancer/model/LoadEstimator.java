@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.autobalancer.model;
+
+import kafka.autobalancer.common.Resource;
+import kafka.autobalancer.config.AutoBalancerControllerConfig;
+
+import java.util.Locale;
+
+/**
+ * Estimate the load of a resource from its recent samples, so the goals can be optimized against a smoothed or
+ * forecasted load instead of the latest sample only.
+ */
+public class LoadEstimator {
+    public static final LoadEstimator LATEST = new LoadEstimator(Type.LATEST, 1, 1.0, 1.0, 0);
+
+    public enum Type {
+        // the latest sample
+        LATEST,
+        // the exponentially weighted moving average of the samples
+        EWMA,
+        // the percentile of the samples in the window
+        PERCENTILE,
+        // the load after the forecast horizon on the trend of the samples in the window
+        FORECAST
+    }
+
+    private final Type type;
+    private final int windowSize;
+    private final double ewmaAlpha;
+    private final double percentile;
+    private final long forecastHorizonMs;
+
+    public LoadEstimator(Type type, int windowSize, double ewmaAlpha, double percentile, long forecastHorizonMs) {
+        this.type = type;
+        this.windowSize = windowSize;
+        this.ewmaAlpha = ewmaAlpha;
+        this.percentile = percentile;
+        this.forecastHorizonMs = forecastHorizonMs;
+    }
+
+    public static LoadEstimator of(AutoBalancerControllerConfig config) {
+        Type type = Type.valueOf(config.getString(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_LOAD_ESTIMATOR)
+                .toUpperCase(Locale.ROOT));
+        if (type == Type.LATEST) {
+            return LATEST;
+        }
+        return new LoadEstimator(type,
+                config.getInt(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_LOAD_WINDOW_SIZE),
+                config.getDouble(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_LOAD_EWMA_ALPHA),
+                config.getDouble(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_LOAD_PERCENTILE),
+                config.getLong(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_LOAD_FORECAST_HORIZON_MS));
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * Whether the samples need to be kept, the latest sample is used as is otherwise.
+     */
+    public boolean windowed() {
+        return type != Type.LATEST;
+    }
+
+    public LoadWindow newWindow() {
+        return new LoadWindow(windowSize, ewmaAlpha);
+    }
+
+    /**
+     * Add the sample to the window of the resource, and estimate the load of it.
+     *
+     * @param windows the windows indexed by resource id, the missing window is created on demand
+     */
+    public double update(LoadWindow[] windows, Resource resource, long timestamp, double value) {
+        if (!windowed()) {
+            return value;
+        }
+        LoadWindow window = windows[resource.id()];
+        if (window == null) {
+            window = newWindow();
+            windows[resource.id()] = window;
+        }
+        window.add(timestamp, value);
+        return estimate(window);
+    }
+
+    public double estimate(LoadWindow window) {
+        switch (type) {
+            case EWMA:
+                return window.ewma();
+            case PERCENTILE:
+                return window.percentile(percentile);
+            case FORECAST:
+                return window.forecast(window.latestTimestamp() + forecastHorizonMs);
+            default:
+                return window.latest();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LoadEstimator{" +
+                "type=" + type +
+                ", windowSize=" + windowSize +
+                ", ewmaAlpha=" + ewmaAlpha +
+                ", percentile=" + percentile +
+                ", forecastHorizonMs=" + forecastHorizonMs +
+                '}';
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.autobalancer.model;
+
+import java.util.Arrays;
+
+/**
+ * The latest load samples of a resource, kept in a fixed-size ring buffer of primitives.
+ * <p>
+ * It's not thread safe, the updater owning it is responsible for the synchronization.
+ */
+public class LoadWindow {
+    // the scratch to sort the samples for the percentile, shared by the windows updated by a thread, so there isn't a
+    // copy of the samples kept per window
+    private static final ThreadLocal<double[]> SORT_SCRATCH = ThreadLocal.withInitial(() -> new double[0]);
+    private final long[] timestamps;
+    private final double[] values;
+    private final double ewmaAlpha;
+    // the index of the next sample to overwrite
+    private int next;
+    private int size;
+    private double ewma;
+
+    public LoadWindow(int capacity, double ewmaAlpha) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid load window capacity " + capacity);
+        }
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+        this.ewmaAlpha = ewmaAlpha;
+    }
+
+    public void add(long timestamp, double value) {
+        boolean first = size == 0;
+        timestamps[next] = timestamp;
+        values[next] = value;
+        next = (next + 1) % values.length;
+        if (size < values.length) {
+            size++;
+        }
+        // the ewma is over all the samples seen, not only the ones in the window
+        ewma = first ? value : ewmaAlpha * value + (1 - ewmaAlpha) * ewma;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double latest() {
+        if (size == 0) {
+            return 0;
+        }
+        return values[index(size - 1)];
+    }
+
+    public long latestTimestamp() {
+        if (size == 0) {
+            return 0;
+        }
+        return timestamps[index(size - 1)];
+    }
+
+    public double ewma() {
+        return ewma;
+    }
+
+    /**
+     * Get the nearest-rank percentile of the samples in the window.
+     *
+     * @param percentile the percentile in [0, 1]
+     */
+    public double percentile(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        double[] sorted = SORT_SCRATCH.get();
+        if (sorted.length < size) {
+            sorted = new double[values.length];
+            SORT_SCRATCH.set(sorted);
+        }
+        for (int i = 0; i < size; i++) {
+            sorted[i] = values[index(i)];
+        }
+        Arrays.sort(sorted, 0, size);
+        int rank = (int) Math.ceil(percentile * size);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Get the slope of the least-squares line of the samples, in load per millisecond.
+     */
+    public double trend() {
+        if (size < 2) {
+            return 0;
+        }
+        long base = timestamps[index(size - 1)];
+        double meanX = meanTime(base);
+        double meanY = meanValue();
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < size; i++) {
+            double dx = timestamps[index(i)] - base - meanX;
+            covariance += dx * (values[index(i)] - meanY);
+            variance += dx * dx;
+        }
+        if (variance == 0) {
+            return 0;
+        }
+        return covariance / variance;
+    }
+
+    /**
+     * Get the load at the time on the least-squares line of the samples. The load is never negative.
+     */
+    public double forecast(long timestamp) {
+        if (size == 0) {
+            return 0;
+        }
+        if (size == 1) {
+            return values[index(0)];
+        }
+        long base = timestamps[index(size - 1)];
+        double meanX = meanTime(base);
+        double meanY = meanValue();
+        return Math.max(0, meanY + trend() * (timestamp - base - meanX));
+    }
+
+    // the time is relative to the latest sample, so the squares in the regression don't lose precision
+    private double meanTime(long base) {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += timestamps[index(i)] - base;
+        }
+        return sum / size;
+    }
+
+    private double meanValue() {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[index(i)];
+        }
+        return sum / size;
+    }
+
+    // the index of the i-th oldest sample
+    private int index(int i) {
+        return (next - size + i + values.length) % values.length;
+    }
+}
@@ -30,16 +30,26 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class TopicPartitionReplicaUpdater {
     private static final Logger LOGGER = LoggerFactory.getLogger(TopicPartitionReplicaUpdater.class);
+    // the published replica is never modified, an update publishes a modified copy of it
+    private final AtomicReference<TopicPartitionReplica> replica;
+    // serializes the updates of a windowed estimator, as the load windows are updated in place
     private final Lock lock = new ReentrantLock();
-    private final TopicPartitionReplica replica;
+    private final LoadEstimator loadEstimator;
+    private final LoadWindow[] loadWindows = new LoadWindow[Resource.cachedValues().size()];
 
     public TopicPartitionReplicaUpdater(TopicPartition tp) {
-        this.replica = new TopicPartitionReplica(tp);
+        this(tp, LoadEstimator.LATEST);
+    }
+
+    public TopicPartitionReplicaUpdater(TopicPartition tp, LoadEstimator loadEstimator) {
+        this.replica = new AtomicReference<>(new TopicPartitionReplica(tp));
+        this.loadEstimator = loadEstimator;
     }
 
     public static class TopicPartitionReplica {
@@ -120,63 +130,94 @@ public class TopicPartitionReplicaUpdater {
             return false;
         }
 
-        lock.lock();
-        try {
-            if (metrics.time() < this.replica.getTimestamp()) {
-                LOGGER.warn("Outdated metrics at time {}, last updated time {}", metrics.time(), this.replica.getTimestamp());
-                return false;
-            }
-            for (Map.Entry<RawMetricType, Double> entry : metrics.getMetricTypeValueMap().entrySet()) {
-                switch (entry.getKey()) {
-                    case TOPIC_PARTITION_BYTES_IN:
-                        this.replica.setLoad(Resource.NW_IN, entry.getValue());
-                        break;
-                    case TOPIC_PARTITION_BYTES_OUT:
-                        this.replica.setLoad(Resource.NW_OUT, entry.getValue());
-                        break;
-                    case PARTITION_SIZE:
-                        // simply update the timestamp
-                        break;
-                    default:
-                        LOGGER.error("Unsupported broker metrics type {}", entry.getKey());
+        TopicPartitionReplica updated;
+        if (!loadEstimator.windowed()) {
+            // the loads are the latest samples, so the update is a CAS of a modified copy
+            TopicPartitionReplica current;
+            do {
+                current = this.replica.get();
+                if (isOutdated(metrics, current)) {
+                    return false;
+                }
+                updated = updatedReplica(current, metrics);
+            } while (!this.replica.compareAndSet(current, updated));
+        } else {
+            // the windows are updated in place, so the updates are serialized
+            lock.lock();
+            try {
+                TopicPartitionReplica current = this.replica.get();
+                if (isOutdated(metrics, current)) {
+                    return false;
                 }
+                updated = updatedReplica(current, metrics);
+                this.replica.set(updated);
+            } finally {
+                lock.unlock();
             }
-            this.replica.setTimestamp(metrics.time());
-        } finally {
-            lock.unlock();
         }
-        LOGGER.debug("Successfully updated on {} at time {}", this.replica.getTopicPartition(), this.replica.getTimestamp());
+        LOGGER.debug("Successfully updated on {} at time {}", updated.getTopicPartition(), updated.getTimestamp());
         return true;
     }
 
-    public TopicPartitionReplica get() {
-        TopicPartitionReplica replica;
-        lock.lock();
-        try {
-            replica = new TopicPartitionReplica(this.replica);
-        } finally {
-            lock.unlock();
+    private static boolean isOutdated(AutoBalancerMetrics metrics, TopicPartitionReplica current) {
+        if (metrics.time() < current.getTimestamp()) {
+            LOGGER.warn("Outdated metrics at time {}, last updated time {}", metrics.time(), current.getTimestamp());
+            return true;
         }
-        return replica;
+        return false;
     }
 
-    public TopicPartitionReplica get(long timeSince) {
-        TopicPartitionReplica replica;
-        lock.lock();
-        try {
-            if (this.replica.timestamp < timeSince) {
-                LOGGER.debug("Topic partition {} metrics is out of sync, expected earliest time: {}, actual: {}",
-                        this.replica.getTopicPartition(), timeSince, this.replica.timestamp);
-                return null;
+    private TopicPartitionReplica updatedReplica(TopicPartitionReplica current, AutoBalancerMetrics metrics) {
+        TopicPartitionReplica updated = new TopicPartitionReplica(current);
+        for (Map.Entry<RawMetricType, Double> entry : metrics.getMetricTypeValueMap().entrySet()) {
+            switch (entry.getKey()) {
+                case TOPIC_PARTITION_BYTES_IN:
+                    updated.setLoad(Resource.NW_IN, loadEstimator.update(loadWindows, Resource.NW_IN, metrics.time(), entry.getValue()));
+                    break;
+                case TOPIC_PARTITION_BYTES_OUT:
+                    updated.setLoad(Resource.NW_OUT, loadEstimator.update(loadWindows, Resource.NW_OUT, metrics.time(), entry.getValue()));
+                    break;
+                case TOPIC_PARTITION_CPU_UTIL:
+                    updated.setLoad(Resource.CPU, loadEstimator.update(loadWindows, Resource.CPU, metrics.time(), entry.getValue()));
+                    break;
+                case TOPIC_PARTITION_STREAM_READ_BYTES:
+                    updated.setLoad(Resource.STREAM_READ, loadEstimator.update(loadWindows, Resource.STREAM_READ, metrics.time(), entry.getValue()));
+                    break;
+                case TOPIC_PARTITION_STREAM_READ_REQUESTS:
+                    updated.setLoad(Resource.STREAM_READ_REQUEST, loadEstimator.update(loadWindows, Resource.STREAM_READ_REQUEST, metrics.time(), entry.getValue()));
+                    break;
+                case PARTITION_SIZE:
+                    // simply update the timestamp
+                    break;
+                default:
+                    LOGGER.error("Unsupported broker metrics type {}", entry.getKey());
             }
-            replica = new TopicPartitionReplica(this.replica);
-        } finally {
-            lock.unlock();
+        }
+        updated.setTimestamp(metrics.time());
+        return updated;
+    }
+
+    /**
+     * Get the latest replica. It's shared by the callers, so it must not be modified.
+     */
+    public TopicPartitionReplica get() {
+        return this.replica.get();
+    }
+
+    /**
+     * Get the latest replica if it's updated since the time, or null. It's shared by the callers, so it must not be modified.
+     */
+    public TopicPartitionReplica get(long timeSince) {
+        TopicPartitionReplica replica = this.replica.get();
+        if (replica.timestamp < timeSince) {
+            LOGGER.debug("Topic partition {} metrics is out of sync, expected earliest time: {}, actual: {}",
+                    replica.getTopicPartition(), timeSince, replica.timestamp);
+            return null;
         }
         return replica;
     }
 
     public TopicPartition topicPartition() {
-        return this.replica.getTopicPartition();
+        return this.replica.get().getTopicPartition();
     }
 }
@@ -1610,26 +1610,8 @@ class Partition(val topicPartition: TopicPartition,
     // decide whether to only fetch from leader
     val localLog = localLogWithEpochOrThrow(currentLeaderEpoch, fetchOnlyFromLeader)
 
-    val lastFetchableOffset = isolationLevel match {
-      case Some(IsolationLevel.READ_COMMITTED) => localLog.lastStableOffset
-      case Some(IsolationLevel.READ_UNCOMMITTED) => localLog.highWatermark
-      case None => localLog.logEndOffset
-    }
-
-    val epochLogString = if (currentLeaderEpoch.isPresent) {
-      s"epoch ${currentLeaderEpoch.get}"
-    } else {
-      "unknown epoch"
-    }
-
-    // Only consider throwing an error if we get a client request (isolationLevel is defined) and the start offset
-    // is lagging behind the high watermark
-    val maybeOffsetsError: Option[ApiException] = leaderEpochStartOffsetOpt
-      .filter(epochStart => isolationLevel.isDefined && epochStart > localLog.highWatermark)
-      .map(epochStart => Errors.OFFSET_NOT_AVAILABLE.exception(s"Failed to fetch offsets for " +
-        s"partition $topicPartition with leader $epochLogString as this partition's " +
-        s"high watermark (${localLog.highWatermark}) is lagging behind the " +
-        s"start offset from the beginning of this epoch ($epochStart)."))
+    val lastFetchableOffset = lastFetchableOffsetFor(localLog, isolationLevel)
+    val maybeOffsetsError = maybeOffsetsErrorFor(localLog, isolationLevel, currentLeaderEpoch)
 
     def getOffsetByTimestamp: Option[TimestampAndOffset] = {
       logManager.getLog(topicPartition).flatMap(log => log.fetchOffsetByTimestamp(timestamp))
@@ -1649,6 +1631,63 @@ class Partition(val topicPartition: TopicPartition,
     }
   }
 
+  // AutoMQ for Kafka inject start
+  /**
+   * Async version of [[fetchOffsetForTimestamp]]. The leader epoch is validated under the leaderIsrUpdateLock and the
+   * validation errors are thrown directly, while the search of the timestamp is done out of the lock and its errors
+   * complete the returned future exceptionally.
+   */
+  def fetchOffsetForTimestampAsync(timestamp: Long,
+                                   isolationLevel: Option[IsolationLevel],
+                                   currentLeaderEpoch: Optional[Integer],
+                                   fetchOnlyFromLeader: Boolean): CompletableFuture[Option[TimestampAndOffset]] = {
+    val (localLog, lastFetchableOffset, maybeOffsetsError, currentEpoch) = inReadLock(leaderIsrUpdateLock) {
+      // decide whether to only fetch from leader
+      val localLog = localLogWithEpochOrThrow(currentLeaderEpoch, fetchOnlyFromLeader)
+      (localLog, lastFetchableOffsetFor(localLog, isolationLevel), maybeOffsetsErrorFor(localLog, isolationLevel, currentLeaderEpoch), leaderEpoch)
+    }
+
+    timestamp match {
+      case ListOffsetsRequest.LATEST_TIMESTAMP =>
+        maybeOffsetsError.foreach(e => throw e)
+        CompletableFuture.completedFuture[Option[TimestampAndOffset]](Some(new TimestampAndOffset(RecordBatch.NO_TIMESTAMP, lastFetchableOffset, Optional.of(currentEpoch))))
+      case ListOffsetsRequest.EARLIEST_TIMESTAMP =>
+        localLog.fetchOffsetByTimestampAsync(timestamp)
+      case _ =>
+        localLog.fetchOffsetByTimestampAsync(timestamp).thenApply[Option[TimestampAndOffset]](found =>
+          found.filter(timestampAndOffset => timestampAndOffset.offset < lastFetchableOffset)
+            .orElse(maybeOffsetsError.map(e => throw e)))
+    }
+  }
+  // AutoMQ for Kafka inject end
+
+  private def lastFetchableOffsetFor(localLog: UnifiedLog, isolationLevel: Option[IsolationLevel]): Long = {
+    isolationLevel match {
+      case Some(IsolationLevel.READ_COMMITTED) => localLog.lastStableOffset
+      case Some(IsolationLevel.READ_UNCOMMITTED) => localLog.highWatermark
+      case None => localLog.logEndOffset
+    }
+  }
+
+  // Only consider throwing an error if we get a client request (isolationLevel is defined) and the start offset
+  // is lagging behind the high watermark
+  private def maybeOffsetsErrorFor(localLog: UnifiedLog,
+                                   isolationLevel: Option[IsolationLevel],
+                                   currentLeaderEpoch: Optional[Integer]): Option[ApiException] = {
+    val epochLogString = if (currentLeaderEpoch.isPresent) {
+      s"epoch ${currentLeaderEpoch.get}"
+    } else {
+      "unknown epoch"
+    }
+
+    leaderEpochStartOffsetOpt
+      .filter(epochStart => isolationLevel.isDefined && epochStart > localLog.highWatermark)
+      .map(epochStart => Errors.OFFSET_NOT_AVAILABLE.exception(s"Failed to fetch offsets for " +
+        s"partition $topicPartition with leader $epochLogString as this partition's " +
+        s"high watermark (${localLog.highWatermark}) is lagging behind the " +
+        s"start offset from the beginning of this epoch ($epochStart)."))
+  }
+
   def activeProducerState: DescribeProducersResponseData.PartitionResponse = {
     val producerState = new DescribeProducersResponseData.PartitionResponse()
       .setPartitionIndex(topicPartition.partition())
@@ -692,6 +692,13 @@ class GroupMetadataManager(brokerId: Int,
             }
             currOffset = batch.nextOffset
           }
+          // AutoMQ for Kafka inject start
+          // the pooled records, e.g. the loaded BatchIteratorRecordsAdaptor, are released once they're loaded
+          fetchDataInfo.records match {
+            case records: PooledResource => records.release()
+            case _ =>
+          }
+          // AutoMQ for Kafka inject end
         }
 
         val (groupOffsets, emptyGroupOffsets) = loadedOffsets
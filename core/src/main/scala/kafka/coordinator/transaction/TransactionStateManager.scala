@@ -33,7 +33,7 @@ import org.apache.kafka.common.message.ListTransactionsResponseData
 import org.apache.kafka.common.metrics.Metrics
 import org.apache.kafka.common.metrics.stats.{Avg, Max}
 import org.apache.kafka.common.protocol.Errors
-import org.apache.kafka.common.record.{FileRecords, MemoryRecords, MemoryRecordsBuilder, Record, SimpleRecord, TimestampType}
+import org.apache.kafka.common.record.{FileRecords, MemoryRecords, MemoryRecordsBuilder, PooledResource, Record, SimpleRecord, TimestampType}
 import org.apache.kafka.common.requests.ProduceResponse.PartitionResponse
 import org.apache.kafka.common.requests.TransactionResult
 import org.apache.kafka.common.utils.{Time, Utils}
@@ -483,6 +483,13 @@ class TransactionStateManager(brokerId: Int,
                 currOffset = batch.nextOffset
               }
             }
+            // AutoMQ for Kafka inject start
+            // the pooled records, e.g. the loaded BatchIteratorRecordsAdaptor, are released once they're loaded
+            fetchDataInfo.records match {
+              case records: PooledResource => records.release()
+              case _ =>
+            }
+            // AutoMQ for Kafka inject end
           }
         } catch {
           case t: Throwable => error(s"Error loading transactions from transaction log $topicPartition", t)
@@ -33,7 +33,7 @@ import org.apache.kafka.common.utils.{Time, Utils}
 import kafka.log.streamaspect.ElasticLogManager
 import kafka.log.streamaspect.ElasticLogFileRecords.BatchIteratorRecordsAdaptor
 
-import java.util.concurrent.{CompletableFuture, ExecutionException}
+import java.util.concurrent.{CompletableFuture, CompletionException, ExecutionException}
 import scala.jdk.CollectionConverters._
 import scala.collection.{Seq, immutable}
 import scala.collection.mutable.{ArrayBuffer, ListBuffer}
@@ -835,13 +835,23 @@ object LocalLog extends Logging {
       return CompletableFuture.failedFuture(new KafkaStorageException(s"The log dir $logDir is already offline due to a previous IO exception."))
     }
     val resultCf = new CompletableFuture[T]()
-    fun.whenComplete((result, exception) => {
+    val future = try {
+      fun
+    } catch {
+      case e: Throwable => CompletableFuture.failedFuture[T](e)
+    }
+    future.whenComplete((result, exception) => {
       if (exception != null) {
-        exception match {
+        // the failure of a dependent stage is wrapped
+        val cause = exception match {
+          case e: CompletionException if e.getCause != null => e.getCause
+          case e => e
+        }
+        cause match {
           case exception1: IOException =>
             logDirFailureChannel.maybeAddOfflineLogDir(logDir, errorMsg, exception1)
             resultCf.completeExceptionally(new KafkaStorageException(errorMsg, exception1))
-          case _ => resultCf.completeExceptionally(exception)
+          case _ => resultCf.completeExceptionally(cause)
         }
       } else {
         resultCf.complete(result)
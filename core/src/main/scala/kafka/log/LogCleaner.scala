@@ -1114,28 +1114,33 @@ private[log] class Cleaner(val id: Int,
       }
     }
 
-    val fetchDataInfo = src.read(src.baseOffset, Integer.MAX_VALUE)
-    for (batch <- fetchDataInfo.records.batches().asScala) {
-      checkDone(topicPartition)
-      val records = MemoryRecords.readableRecords(batch.asInstanceOf[DefaultRecordBatch].buffer())
-      throttler.maybeThrottle(records.sizeInBytes)
-      val result = records.filterTo(topicPartition, logCleanerFilter, writeBuffer, maxLogMessageSize, decompressionBufferSupplier)
-
-      stats.readMessages(result.messagesRead, result.bytesRead)
-      stats.recopyMessages(result.messagesRetained, result.bytesRetained)
-      // if any messages are to be retained, write them out
-      val outputBuffer = result.outputBuffer
-      if (outputBuffer.position() > 0) {
-        outputBuffer.flip()
-        val retained = MemoryRecords.readableRecords(outputBuffer)
-        // it's OK not to hold the Log's lock in this case, because this segment is only accessed by other threads
-        // after `Log.replaceSegments` (which acquires the lock) is called
-        dest.append(largestOffset = result.maxOffset,
-          largestTimestamp = result.maxTimestamp,
-          shallowOffsetOfMaxTimestamp = result.shallowOffsetOfMaxTimestamp,
-          records = retained)
-        throttler.maybeThrottle(outputBuffer.limit())
+    // the batches are scanned over the pooled buffers, the retained records are copied to the write buffer.
+    val iterator = src.pooledBatchIterator(src.baseOffset)
+    try {
+      for (batch <- iterator.asScala) {
+        checkDone(topicPartition)
+        val records = MemoryRecords.readableRecords(batch.asInstanceOf[DefaultRecordBatch].buffer())
+        throttler.maybeThrottle(records.sizeInBytes)
+        val result = records.filterTo(topicPartition, logCleanerFilter, writeBuffer, maxLogMessageSize, decompressionBufferSupplier)
+
+        stats.readMessages(result.messagesRead, result.bytesRead)
+        stats.recopyMessages(result.messagesRetained, result.bytesRetained)
+        // if any messages are to be retained, write them out
+        val outputBuffer = result.outputBuffer
+        if (outputBuffer.position() > 0) {
+          outputBuffer.flip()
+          val retained = MemoryRecords.readableRecords(outputBuffer)
+          // it's OK not to hold the Log's lock in this case, because this segment is only accessed by other threads
+          // after `Log.replaceSegments` (which acquires the lock) is called
+          dest.append(largestOffset = result.maxOffset,
+            largestTimestamp = result.maxTimestamp,
+            shallowOffsetOfMaxTimestamp = result.shallowOffsetOfMaxTimestamp,
+            records = retained)
+          throttler.maybeThrottle(outputBuffer.limit())
+        }
       }
+    } finally {
+      iterator.close()
     }
   }
 
@@ -1147,42 +1152,46 @@ private[log] class Cleaner(val id: Int,
                                        transactionMetadata: CleanedTransactionMetadata,
                                        stats: CleanerStats): Boolean = {
     val maxDesiredMapSize = (map.slots * this.dupBufferLoadFactor).toInt
-    val fetchDataInfo = segment.read(startOffset, Integer.MAX_VALUE, Long.MaxValue)
-    for (batch <- fetchDataInfo.records.batches().asScala) {
-      checkDone(topicPartition)
-      throttler.maybeThrottle(batch.sizeInBytes())
-
-      if (batch.isControlBatch) {
-        transactionMetadata.onControlBatchRead(batch)
-        stats.indexMessagesRead(1)
-      } else {
-        val isAborted = transactionMetadata.onBatchRead(batch)
-        if (isAborted) {
-          // If the batch is aborted, do not bother populating the offset map.
-          // Note that abort markers are supported in v2 and above, which means count is defined.
-          stats.indexMessagesRead(batch.countOrNull)
+    val iterator = segment.asInstanceOf[ElasticLogSegment].pooledBatchIterator(startOffset)
+    try {
+      for (batch <- iterator.asScala) {
+        checkDone(topicPartition)
+        throttler.maybeThrottle(batch.sizeInBytes())
+
+        if (batch.isControlBatch) {
+          transactionMetadata.onControlBatchRead(batch)
+          stats.indexMessagesRead(1)
         } else {
-          val recordsIterator = batch.streamingIterator(decompressionBufferSupplier)
-          try {
-            for (record <- recordsIterator.asScala) {
-              if (record.hasKey && record.offset >= startOffset) {
-                if (map.size < maxDesiredMapSize)
-                  map.put(record.key, record.offset)
-                else
-                  return true
+          val isAborted = transactionMetadata.onBatchRead(batch)
+          if (isAborted) {
+            // If the batch is aborted, do not bother populating the offset map.
+            // Note that abort markers are supported in v2 and above, which means count is defined.
+            stats.indexMessagesRead(batch.countOrNull)
+          } else {
+            val recordsIterator = batch.streamingIterator(decompressionBufferSupplier)
+            try {
+              for (record <- recordsIterator.asScala) {
+                if (record.hasKey && record.offset >= startOffset) {
+                  if (map.size < maxDesiredMapSize)
+                    map.put(record.key, record.offset)
+                  else
+                    return true
+                }
+                stats.indexMessagesRead(1)
               }
-              stats.indexMessagesRead(1)
-            }
-          } finally recordsIterator.close()
+            } finally recordsIterator.close()
+          }
         }
-      }
 
-      if (batch.lastOffset >= startOffset)
-        map.updateLatestOffset(batch.lastOffset)
+        if (batch.lastOffset >= startOffset)
+          map.updateLatestOffset(batch.lastOffset)
 
-      val bytesRead = batch.sizeInBytes()
-      stats.indexBytesRead(bytesRead)
+        val bytesRead = batch.sizeInBytes()
+        stats.indexBytesRead(bytesRead)
 
+      }
+    } finally {
+      iterator.close()
     }
 
     // In the case of offsets gap, fast forward to latest expected offset in this segment.
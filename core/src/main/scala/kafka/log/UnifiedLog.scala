@@ -553,10 +553,12 @@ class UnifiedLog(@volatile var logStartOffset: Long,
     )
   }
 
-  private val tags = {
+  // AutoMQ for Kafka inject start
+  private[log] val tags = {
     val maybeFutureTag = if (isFuture) Map("is-future" -> "true") else Map.empty[String, String]
     Map("topic" -> topicPartition.topic, "partition" -> topicPartition.partition.toString) ++ maybeFutureTag
   }
+  // AutoMQ for Kafka inject end
 
   newGauge(LogMetricNames.NumLogSegments, () => numberOfSegments, tags)
   newGauge(LogMetricNames.LogStartOffset, () => logStartOffset, tags)
@@ -1282,45 +1284,12 @@ class UnifiedLog(@volatile var logStartOffset: Long,
    * @return The offset of the first message whose timestamp is greater than or equals to the given timestamp.
    *         None if no such message is found.
    */
-  @nowarn("cat=deprecation")
   def fetchOffsetByTimestamp(targetTimestamp: Long): Option[TimestampAndOffset] = {
     maybeHandleIOException(s"Error while fetching offset by timestamp for $topicPartition in dir ${dir.getParent}") {
       debug(s"Searching offset for timestamp $targetTimestamp")
 
-      if (config.messageFormatVersion.isLessThan(IBP_0_10_0_IV0) &&
-        targetTimestamp != ListOffsetsRequest.EARLIEST_TIMESTAMP &&
-        targetTimestamp != ListOffsetsRequest.LATEST_TIMESTAMP)
-        throw new UnsupportedForMessageFormatException(s"Cannot search offsets based on timestamp because message format version " +
-          s"for partition $topicPartition is ${config.messageFormatVersion} which is earlier than the minimum " +
-          s"required version $IBP_0_10_0_IV0")
-
-      // For the earliest and latest, we do not need to return the timestamp.
-      if (targetTimestamp == ListOffsetsRequest.EARLIEST_TIMESTAMP) {
-        // The first cached epoch usually corresponds to the log start offset, but we have to verify this since
-        // it may not be true following a message format version bump as the epoch will not be available for
-        // log entries written in the older format.
-        val earliestEpochEntry = leaderEpochCache.flatMap(_.earliestEntry)
-        val epochOpt = earliestEpochEntry match {
-          case Some(entry) if entry.startOffset <= logStartOffset => Optional.of[Integer](entry.epoch)
-          case _ => Optional.empty[Integer]()
-        }
-        Some(new TimestampAndOffset(RecordBatch.NO_TIMESTAMP, logStartOffset, epochOpt))
-      } else if (targetTimestamp == ListOffsetsRequest.LATEST_TIMESTAMP) {
-        val latestEpochOpt = leaderEpochCache.flatMap(_.latestEpoch).map(_.asInstanceOf[Integer])
-        val epochOptional = Optional.ofNullable(latestEpochOpt.orNull)
-        Some(new TimestampAndOffset(RecordBatch.NO_TIMESTAMP, logEndOffset, epochOptional))
-      } else if (targetTimestamp == ListOffsetsRequest.MAX_TIMESTAMP) {
-        // Cache to avoid race conditions. `toBuffer` is faster than most alternatives and provides
-        // constant time access while being safe to use with concurrent collections unlike `toArray`.
-        val segmentsCopy = logSegments.toBuffer
-        val latestTimestampSegment = segmentsCopy.maxBy(_.maxTimestampSoFar)
-        val latestEpochOpt = leaderEpochCache.flatMap(_.latestEpoch).map(_.asInstanceOf[Integer])
-        val epochOptional = Optional.ofNullable(latestEpochOpt.orNull)
-        val latestTimestampAndOffset = latestTimestampSegment.maxTimestampAndOffsetSoFar
-        Some(new TimestampAndOffset(latestTimestampAndOffset.timestamp,
-          latestTimestampAndOffset.offset,
-          epochOptional))
-      } else {
+      // AutoMQ for Kafka inject start
+      fetchOffsetBySpecialTimestamp(targetTimestamp).getOrElse {
         // Cache to avoid race conditions. `toBuffer` is faster than most alternatives and provides
         // constant time access while being safe to use with concurrent collections unlike `toArray`.
         val segmentsCopy = logSegments.toBuffer
@@ -1328,8 +1297,83 @@ class UnifiedLog(@volatile var logStartOffset: Long,
         val targetSeg = segmentsCopy.find(_.largestTimestamp >= targetTimestamp)
         targetSeg.flatMap(_.findOffsetByTimestamp(targetTimestamp, logStartOffset))
       }
+      // AutoMQ for Kafka inject end
+    }
+  }
+
+  // AutoMQ for Kafka inject start
+  /**
+   * Async version of [[fetchOffsetByTimestamp]]. The segment is searched by [[findOffsetByTimestampAsync]], which
+   * the elastic log overrides to search without blocking the caller.
+   */
+  def fetchOffsetByTimestampAsync(targetTimestamp: Long): CompletableFuture[Option[TimestampAndOffset]] = {
+    maybeHandleIOExceptionAsync(s"Error while fetching offset by timestamp for $topicPartition in dir ${dir.getParent}") {
+      debug(s"Searching offset for timestamp $targetTimestamp")
+
+      fetchOffsetBySpecialTimestamp(targetTimestamp) match {
+        case Some(timestampAndOffset) =>
+          CompletableFuture.completedFuture(timestampAndOffset)
+        case None =>
+          // Cache to avoid race conditions.
+          val segmentsCopy = logSegments.toBuffer
+          // We need to search the first segment whose largest timestamp is >= the target timestamp if there is one.
+          segmentsCopy.find(_.largestTimestamp >= targetTimestamp) match {
+            case Some(segment) => findOffsetByTimestampAsync(segment, targetTimestamp)
+            case None => CompletableFuture.completedFuture[Option[TimestampAndOffset]](None)
+          }
+      }
+    }
+  }
+
+  protected def findOffsetByTimestampAsync(segment: LogSegment, targetTimestamp: Long): CompletableFuture[Option[TimestampAndOffset]] = {
+    CompletableFuture.completedFuture(segment.findOffsetByTimestamp(targetTimestamp, logStartOffset))
+  }
+
+  /**
+   * Answer the earliest, latest and max timestamp lookups, which don't search the segments.
+   *
+   * @return the result of the lookup, or None if the target timestamp has to be searched in the segments.
+   */
+  @nowarn("cat=deprecation")
+  private def fetchOffsetBySpecialTimestamp(targetTimestamp: Long): Option[Option[TimestampAndOffset]] = {
+    if (config.messageFormatVersion.isLessThan(IBP_0_10_0_IV0) &&
+      targetTimestamp != ListOffsetsRequest.EARLIEST_TIMESTAMP &&
+      targetTimestamp != ListOffsetsRequest.LATEST_TIMESTAMP)
+      throw new UnsupportedForMessageFormatException(s"Cannot search offsets based on timestamp because message format version " +
+        s"for partition $topicPartition is ${config.messageFormatVersion} which is earlier than the minimum " +
+        s"required version $IBP_0_10_0_IV0")
+
+    // For the earliest and latest, we do not need to return the timestamp.
+    if (targetTimestamp == ListOffsetsRequest.EARLIEST_TIMESTAMP) {
+      // The first cached epoch usually corresponds to the log start offset, but we have to verify this since
+      // it may not be true following a message format version bump as the epoch will not be available for
+      // log entries written in the older format.
+      val earliestEpochEntry = leaderEpochCache.flatMap(_.earliestEntry)
+      val epochOpt = earliestEpochEntry match {
+        case Some(entry) if entry.startOffset <= logStartOffset => Optional.of[Integer](entry.epoch)
+        case _ => Optional.empty[Integer]()
+      }
+      Some(Some(new TimestampAndOffset(RecordBatch.NO_TIMESTAMP, logStartOffset, epochOpt)))
+    } else if (targetTimestamp == ListOffsetsRequest.LATEST_TIMESTAMP) {
+      val latestEpochOpt = leaderEpochCache.flatMap(_.latestEpoch).map(_.asInstanceOf[Integer])
+      val epochOptional = Optional.ofNullable(latestEpochOpt.orNull)
+      Some(Some(new TimestampAndOffset(RecordBatch.NO_TIMESTAMP, logEndOffset, epochOptional)))
+    } else if (targetTimestamp == ListOffsetsRequest.MAX_TIMESTAMP) {
+      // Cache to avoid race conditions. `toBuffer` is faster than most alternatives and provides
+      // constant time access while being safe to use with concurrent collections unlike `toArray`.
+      val segmentsCopy = logSegments.toBuffer
+      val latestTimestampSegment = segmentsCopy.maxBy(_.maxTimestampSoFar)
+      val latestEpochOpt = leaderEpochCache.flatMap(_.latestEpoch).map(_.asInstanceOf[Integer])
+      val epochOptional = Optional.ofNullable(latestEpochOpt.orNull)
+      val latestTimestampAndOffset = latestTimestampSegment.maxTimestampAndOffsetSoFar
+      Some(Some(new TimestampAndOffset(latestTimestampAndOffset.timestamp,
+        latestTimestampAndOffset.offset,
+        epochOptional)))
+    } else {
+      None
     }
   }
+  // AutoMQ for Kafka inject end
 
   def legacyFetchOffsetsBefore(timestamp: Long, maxNumOffsets: Int): Seq[Long] = {
     // Cache to avoid race conditions. `toBuffer` is faster than most alternatives and provides
@@ -1797,6 +1841,14 @@ class UnifiedLog(@volatile var logStartOffset: Long,
     }
   }
 
+  // AutoMQ for Kafka inject start
+  protected def maybeHandleIOExceptionAsync[T](msg: => String)(fun: => CompletableFuture[T]): CompletableFuture[T] = {
+    LocalLog.maybeHandleIOExceptionAsync(logDirFailureChannel, parentDir, msg) {
+      fun
+    }
+  }
+  // AutoMQ for Kafka inject end
+
   private[log] def splitOverflowedSegment(segment: LogSegment): List[LogSegment] = lock synchronized {
     val result = UnifiedLog.splitOverflowedSegment(segment, localLog.segments, dir, topicPartition, config, scheduler, logDirFailureChannel, logIdent)
     deleteProducerSnapshots(result.deletedSegments, asyncDelete = true)
@@ -21,6 +21,7 @@ import com.automq.stream.api.KVClient;
 import com.automq.stream.api.KeyValue;
 import com.automq.stream.api.KeyValue.Key;
 import com.automq.stream.api.KeyValue.Value;
+import kafka.log.stream.s3.metadata.StreamMetadataManager;
 import kafka.log.stream.s3.network.ControllerRequestSender;
 import kafka.log.stream.s3.network.ControllerRequestSender.RequestTask;
 import kafka.log.stream.s3.network.ControllerRequestSender.ResponseHandleResult;
@@ -41,19 +42,50 @@ import org.apache.kafka.common.requests.AbstractRequest.Builder;
 import org.apache.kafka.common.requests.s3.DeleteKVsRequest;
 import org.apache.kafka.common.requests.s3.GetKVsRequest;
 import org.apache.kafka.common.requests.s3.PutKVsRequest;
+import org.apache.kafka.image.MetadataDelta;
+import org.apache.kafka.image.MetadataImage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The KV client which writes to the controller and reads from the KV image of the broker.
+ * <p>
+ * The writes accepted by the controller are recorded as local writes until the image contains them, and a key with
+ * a local write not in the image yet is read from the controller, so the reads always see the writes of this broker.
+ * The keys missing in the image are read from the controller too, because they may be put by another broker just now,
+ * e.g. the partition is reassigned.
+ */
 public class ControllerKVClient implements KVClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ControllerKVClient.class);
     private final ControllerRequestSender requestSender;
+    private final StreamMetadataManager metadataManager;
+    private final Map<String/*key*/, LocalWrite> localWrites = new ConcurrentHashMap<>();
 
-    public ControllerKVClient(ControllerRequestSender requestSender) {
+    public ControllerKVClient(ControllerRequestSender requestSender, StreamMetadataManager metadataManager) {
         this.requestSender = requestSender;
+        this.metadataManager = metadataManager;
+        this.metadataManager.registerListener(this::onImageChanged);
+    }
+
+    // remove the local writes contained by the image, a newer write of the same key put concurrently is kept
+    private void onImageChanged(MetadataDelta delta, MetadataImage newImage) {
+        Map<String, ByteBuffer> kv = newImage.kv().kv();
+        localWrites.forEach((key, write) -> {
+            if (write.matches(kv.get(key))) {
+                localWrites.remove(key, write);
+            }
+        });
+    }
+
+    private void onWritten(String key, ByteBuffer value) {
+        localWrites.put(key, new LocalWrite(value));
     }
 
     @Override
@@ -69,6 +101,11 @@ public class ControllerKVClient implements KVClient {
                 return realBuilder.addSubRequest(request);
             }
 
+            @Override
+            public int estimatedSize() {
+                return request.key().length() + request.value().length;
+            }
+
             @Override
             public ApiKeys apiKey() {
                 return ApiKeys.PUT_KVS;
@@ -97,7 +134,10 @@ public class ControllerKVClient implements KVClient {
             }
         });
         this.requestSender.send(task);
-        return future;
+        return future.thenApply(value -> {
+            onWritten(request.key(), value.get());
+            return value;
+        });
     }
 
     @Override
@@ -114,6 +154,11 @@ public class ControllerKVClient implements KVClient {
                 return realBuilder.addSubRequest(request);
             }
 
+            @Override
+            public int estimatedSize() {
+                return request.key().length() + request.value().length;
+            }
+
             @Override
             public ApiKeys apiKey() {
                 return ApiKeys.PUT_KVS;
@@ -139,11 +184,34 @@ public class ControllerKVClient implements KVClient {
             }
         });
         this.requestSender.send(task);
-        return null;
+        return future.thenApply(value -> {
+            onWritten(request.key(), value.get());
+            return value;
+        });
     }
 
     @Override
     public CompletableFuture<Value> getKV(Key key) {
+        LocalWrite write = localWrites.get(key.get());
+        ByteBuffer value = metadataManager.kvImage().kv().get(key.get());
+        if (write == null ? value != null : write.matches(value)) {
+            LOGGER.trace("[ControllerKVClient]: Get KV: {} from image, result: {}", key, value);
+            // duplicate the buffer shared by the image, so the readers won't change its position
+            return CompletableFuture.completedFuture(Value.of(value == null ? null : value.duplicate()));
+        }
+        // either the local write is not in the image yet, or the key may be just put by another broker, so read it
+        // from the controller, which has the newer value
+        CompletableFuture<Value> cf = getKVFromController(key);
+        if (write == null) {
+            return cf;
+        }
+        return cf.thenApply(val -> {
+            localWrites.remove(key.get(), write);
+            return val;
+        });
+    }
+
+    private CompletableFuture<Value> getKVFromController(Key key) {
         LOGGER.trace("[ControllerKVClient]: Get KV: {}", key);
         GetKVRequest request = new GetKVRequest()
                 .setKey(key.get());
@@ -224,6 +292,22 @@ public class ControllerKVClient implements KVClient {
             }
         });
         this.requestSender.send(task);
-        return future;
+        return future.thenApply(value -> {
+            onWritten(request.key(), null);
+            return value;
+        });
+    }
+
+    private static class LocalWrite {
+        // null if the key is deleted
+        private final ByteBuffer value;
+
+        LocalWrite(ByteBuffer value) {
+            this.value = value;
+        }
+
+        boolean matches(ByteBuffer imageValue) {
+            return Objects.equals(value, imageValue);
+        }
     }
 }
@@ -89,7 +89,10 @@ public class DefaultS3Client implements Client {
                 .inboundLimiter(networkInboundLimiter).outboundLimiter(networkOutboundLimiter).build();
         ControllerRequestSender.RetryPolicyContext retryPolicyContext = new ControllerRequestSender.RetryPolicyContext(kafkaConfig.s3ControllerRequestRetryMaxCount(),
                 kafkaConfig.s3ControllerRequestRetryBaseDelayMs());
-        this.requestSender = new ControllerRequestSender(brokerServer, retryPolicyContext);
+        ControllerRequestSender.BatchPolicyContext batchPolicyContext = new ControllerRequestSender.BatchPolicyContext(
+                kafkaConfig.s3ControllerRequestPipelineDepth(), kafkaConfig.s3ControllerRequestPipelineDepthOverrides(),
+                kafkaConfig.s3ControllerRequestMaxBatchSize(), kafkaConfig.s3ControllerRequestMaxBatchBytes());
+        this.requestSender = new ControllerRequestSender(brokerServer, retryPolicyContext, batchPolicyContext);
         this.streamManager = new ControllerStreamManager(this.metadataManager, this.requestSender, kafkaConfig);
         this.objectManager = new ControllerObjectManager(this.requestSender, this.metadataManager, kafkaConfig);
         this.blockCache = new DefaultS3BlockCache(this.config.s3BlockCacheSize(), objectManager, s3Operator);
@@ -98,7 +101,7 @@ public class DefaultS3Client implements Client {
         this.storage = new S3Storage(this.config, writeAheadLog, streamManager, objectManager, blockCache, s3Operator);
         // stream object compactions share the same s3Operator with wal object compactions
         this.streamClient = new S3StreamClient(this.streamManager, this.storage, this.objectManager, compactionS3Operator, this.config, networkInboundLimiter, networkOutboundLimiter);
-        this.kvClient = new ControllerKVClient(this.requestSender);
+        this.kvClient = new ControllerKVClient(this.requestSender, this.metadataManager);
     }
 
     @Override
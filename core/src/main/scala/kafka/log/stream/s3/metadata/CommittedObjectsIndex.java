@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.stream.s3.metadata;
+
+import com.automq.stream.s3.metadata.S3ObjectMetadata;
+import com.automq.stream.s3.metadata.S3ObjectType;
+import com.automq.stream.s3.metadata.S3StreamConstant;
+import com.automq.stream.s3.metadata.StreamOffsetRange;
+import com.automq.stream.s3.objects.CommitWALObjectRequest;
+import com.automq.stream.s3.objects.ObjectStreamRange;
+import com.automq.stream.s3.objects.StreamObject;
+import org.apache.kafka.metadata.stream.InRangeObjects;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/**
+ * The objects committed by this broker which may not be in the metadata image yet.
+ * <p>
+ * The objects are added when the controller accepts the commit, and they are trimmed once the image contains them,
+ * so the reads of the newly committed data don't have to wait for the metadata propagation.
+ */
+public class CommittedObjectsIndex {
+    private final ConcurrentMap<Long/*stream id*/, NavigableMap<Long/*start offset*/, Entry>> streams = new ConcurrentHashMap<>();
+
+    /**
+     * Add the objects of a committed WAL object request. The compaction requests are ignored, because they don't
+     * commit any new data.
+     */
+    public void add(CommitWALObjectRequest request, long committedTimestamp) {
+        if (request.getCompactedObjectIds() != null && !request.getCompactedObjectIds().isEmpty()) {
+            return;
+        }
+        if (request.getStreamRanges() != null && !request.getStreamRanges().isEmpty()) {
+            List<StreamOffsetRange> offsetRanges = request.getStreamRanges().stream()
+                .map(range -> new StreamOffsetRange(range.getStreamId(), range.getStartOffset(), range.getEndOffset()))
+                .collect(Collectors.toList());
+            S3ObjectMetadata object = new S3ObjectMetadata(request.getObjectId(), S3ObjectType.WAL, offsetRanges,
+                committedTimestamp, committedTimestamp, request.getObjectSize(), request.getOrderId());
+            for (ObjectStreamRange range : request.getStreamRanges()) {
+                put(range.getStreamId(), new Entry(range.getStartOffset(), range.getEndOffset(), object));
+            }
+        }
+        if (request.getStreamObjects() != null) {
+            for (StreamObject streamObject : request.getStreamObjects()) {
+                StreamOffsetRange offsetRange = new StreamOffsetRange(streamObject.getStreamId(),
+                    streamObject.getStartOffset(), streamObject.getEndOffset());
+                S3ObjectMetadata object = new S3ObjectMetadata(streamObject.getObjectId(), S3ObjectType.STREAM, List.of(offsetRange),
+                    committedTimestamp, committedTimestamp, streamObject.getObjectSize(), S3StreamConstant.INVALID_ORDER_ID);
+                put(streamObject.getStreamId(), new Entry(streamObject.getStartOffset(), streamObject.getEndOffset(), object));
+            }
+        }
+    }
+
+    /**
+     * Get the end offset of the objects continuous from the offset, or the offset if there isn't any.
+     */
+    public long endOffset(long streamId, long fromOffset) {
+        NavigableMap<Long, Entry> entries = streams.get(streamId);
+        if (entries == null) {
+            return fromOffset;
+        }
+        long endOffset = fromOffset;
+        Map.Entry<Long, Entry> floor = entries.floorEntry(endOffset);
+        if (floor != null && floor.getValue().endOffset > endOffset) {
+            endOffset = floor.getValue().endOffset;
+        }
+        for (Entry entry : entries.tailMap(endOffset, true).values()) {
+            if (entry.startOffset > endOffset) {
+                break;
+            }
+            endOffset = Math.max(endOffset, entry.endOffset);
+        }
+        return endOffset;
+    }
+
+    /**
+     * Get the continuous objects from the start offset, until the end offset is reached or there are limit objects.
+     *
+     * @return the objects, or {@link InRangeObjects#INVALID} if there isn't any object containing the start offset.
+     */
+    public InRangeObjects get(long streamId, long startOffset, long endOffset, int limit) {
+        NavigableMap<Long, Entry> entries = streams.get(streamId);
+        if (entries == null) {
+            return InRangeObjects.INVALID;
+        }
+        List<S3ObjectMetadata> objects = new ArrayList<>();
+        long nextStartOffset = startOffset;
+        Map.Entry<Long, Entry> floor = entries.floorEntry(startOffset);
+        long fromKey = floor != null && floor.getValue().endOffset > startOffset ? floor.getKey() : startOffset;
+        for (Entry entry : entries.tailMap(fromKey, true).values()) {
+            if (nextStartOffset >= endOffset || objects.size() >= limit || entry.startOffset > nextStartOffset) {
+                break;
+            }
+            objects.add(entry.object);
+            nextStartOffset = entry.endOffset;
+        }
+        if (objects.isEmpty()) {
+            return InRangeObjects.INVALID;
+        }
+        return new InRangeObjects(streamId, startOffset, nextStartOffset, objects);
+    }
+
+    /**
+     * Remove the objects of the stream whose end offset is not larger than the end offset, which are in the image.
+     */
+    public void trim(long streamId, long endOffset) {
+        NavigableMap<Long, Entry> entries = streams.get(streamId);
+        if (entries == null) {
+            return;
+        }
+        entries.values().removeIf(entry -> entry.endOffset <= endOffset);
+        streams.computeIfPresent(streamId, (k, v) -> v.isEmpty() ? null : v);
+    }
+
+    public void remove(long streamId) {
+        streams.remove(streamId);
+    }
+
+    public Set<Long> streams() {
+        return streams.keySet();
+    }
+
+    private void put(long streamId, Entry entry) {
+        // put the entry in compute, so it won't race with the removal of the empty map
+        streams.compute(streamId, (k, entries) -> {
+            if (entries == null) {
+                entries = new ConcurrentSkipListMap<>();
+            }
+            entries.put(entry.startOffset, entry);
+            return entries;
+        });
+    }
+
+    private static class Entry {
+        private final long startOffset;
+        private final long endOffset;
+        private final S3ObjectMetadata object;
+
+        Entry(long startOffset, long endOffset, S3ObjectMetadata object) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.object = object;
+        }
+    }
+}
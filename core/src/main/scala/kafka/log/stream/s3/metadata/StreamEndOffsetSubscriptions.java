@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.stream.s3.metadata;
+
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The subscriptions to the end offsets of the streams.
+ * <p>
+ * A subscriber waits for the end offset of a stream to reach an offset. The subscriptions of a stream are sorted by
+ * the offset, so {@link #advance(long, long)} takes O(log n) to find the satisfied ones and completes exactly them.
+ * The futures are completed in the advancing thread, so the subscribers should move the heavy work to their own executors.
+ */
+public class StreamEndOffsetSubscriptions {
+    private static final Comparator<Subscription> COMPARATOR = Comparator.<Subscription>comparingLong(s -> s.endOffset)
+        .thenComparingLong(s -> s.sequence);
+
+    private final ConcurrentMap<Long/*stream id*/, NavigableSet<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Subscribe to the end offset of the stream.
+     *
+     * @return a future completed when the end offset of the stream is not less than the end offset.
+     */
+    public CompletableFuture<Void> subscribe(long streamId, long endOffset) {
+        Subscription subscription = new Subscription(endOffset, sequence.incrementAndGet());
+        // add the subscription in compute, so it won't race with the removal of the empty set
+        subscriptions.compute(streamId, (k, set) -> {
+            if (set == null) {
+                set = new ConcurrentSkipListSet<>(COMPARATOR);
+            }
+            set.add(subscription);
+            return set;
+        });
+        size.incrementAndGet();
+        return subscription.cf;
+    }
+
+    /**
+     * Complete the subscriptions satisfied by the new end offset of the stream.
+     *
+     * @return the count of the completed subscriptions.
+     */
+    public int advance(long streamId, long endOffset) {
+        NavigableSet<Subscription> set = subscriptions.get(streamId);
+        if (set == null) {
+            return 0;
+        }
+        int completed = 0;
+        Subscription upperBound = new Subscription(endOffset, Long.MAX_VALUE);
+        for (Subscription subscription : set.headSet(upperBound, true)) {
+            // the subscription is only completed by the one who removes it
+            if (set.remove(subscription)) {
+                size.decrementAndGet();
+                subscription.cf.complete(null);
+                completed++;
+            }
+        }
+        subscriptions.computeIfPresent(streamId, (k, v) -> v.isEmpty() ? null : v);
+        return completed;
+    }
+
+    /**
+     * The streams with subscriptions.
+     */
+    public Set<Long> streams() {
+        return subscriptions.keySet();
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    private static class Subscription {
+        private final CompletableFuture<Void> cf = new CompletableFuture<>();
+        private final long endOffset;
+        // makes the subscriptions with the same end offset distinct
+        private final long sequence;
+
+        Subscription(long endOffset, long sequence) {
+            this.endOffset = endOffset;
+            this.sequence = sequence;
+        }
+    }
+}
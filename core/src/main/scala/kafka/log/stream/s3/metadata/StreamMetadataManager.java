@@ -18,14 +18,21 @@
 package kafka.log.stream.s3.metadata;
 
 import com.automq.stream.s3.metadata.StreamMetadata;
+import com.automq.stream.s3.objects.CommitWALObjectRequest;
+import com.automq.stream.s3.objects.ObjectStreamRange;
+import com.automq.stream.s3.objects.StreamObject;
 import com.automq.stream.utils.FutureUtil;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import kafka.server.BrokerServer;
 import kafka.server.KafkaConfig;
+import org.apache.kafka.image.KVImage;
 import org.apache.kafka.image.MetadataDelta;
 import org.apache.kafka.image.MetadataImage;
 import org.apache.kafka.image.S3ObjectsImage;
 import org.apache.kafka.image.S3StreamMetadataImage;
+import org.apache.kafka.image.S3StreamsMetadataDelta;
 import org.apache.kafka.image.S3StreamsMetadataImage;
 import org.apache.kafka.metadata.stream.InRangeObjects;
 import org.apache.kafka.metadata.stream.S3Object;
@@ -34,132 +41,181 @@ import com.automq.stream.s3.metadata.S3StreamConstant;
 import org.apache.kafka.metadata.stream.S3StreamObject;
 import com.automq.stream.s3.metadata.StreamOffsetRange;
 import org.apache.kafka.raft.OffsetAndEpoch;
+import org.apache.kafka.server.metrics.KafkaYammerMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static com.automq.stream.s3.metadata.ObjectUtils.NOOP_OFFSET;
 
+/**
+ * The broker side view of the streams and objects metadata.
+ * <p>
+ * The readers don't take any lock, they read a volatile {@link Snapshot} of the immutable images, which is replaced
+ * as a whole on each image change. The fetches lagging behind the image subscribe to the end offset of the stream,
+ * and an image change only notifies the changed streams.
+ * <p>
+ * If {@code s3.commit.prepopulate.enable} is enabled, the objects committed by this broker are added to
+ * a {@link CommittedObjectsIndex} once the controller accepts them, and the fetches are served by it before the
+ * image catches up.
+ */
 public class StreamMetadataManager implements InRangeObjectsFetcher {
 
-    // TODO: optimize by more suitable concurrent protection
     private final static Logger LOGGER = LoggerFactory.getLogger(StreamMetadataManager.class);
+    private static final long UNKNOWN_END_OFFSET = -1L;
+    private static final String METRICS_GROUP = "kafka.log.stream.s3";
+    private static final String METRICS_TYPE = "StreamMetadataManager";
+    private static final Histogram LOOKUP_TIME_HIST = KafkaYammerMetrics.defaultRegistry().newHistogram(
+            KafkaYammerMetrics.getMetricName(METRICS_GROUP, METRICS_TYPE, "LookupTimeNanos"), true);
+
     private final KafkaConfig config;
     private final BrokerServer broker;
-    private final Map<Long/*stream id*/, Map<Long/*end offset*/, List<GetObjectsTask>>> pendingGetObjectsTasks;
+    private final StreamEndOffsetSubscriptions endOffsetSubscriptions;
+    // null if the pre-populating of the committed objects is disabled
+    private final CommittedObjectsIndex committedObjects;
     private final ExecutorService pendingExecutorService;
-    // TODO: we just need the version of streams metadata, not the whole image
-    private volatile OffsetAndEpoch version;
-    private S3StreamsMetadataImage streamsImage;
-    private S3ObjectsImage objectsImage;
+    private final List<StreamMetadataListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot;
 
     public StreamMetadataManager(BrokerServer broker, KafkaConfig config) {
         this.config = config;
         this.broker = broker;
-        MetadataImage currentImage = this.broker.metadataCache().currentImage();
-        this.streamsImage = currentImage.streamsMetadata();
-        this.objectsImage = currentImage.objectsMetadata();
-        this.version = currentImage.highestOffsetAndEpoch();
-        this.broker.metadataListener().registerStreamMetadataListener(this::onImageChanged);
-        // TODO: optimize by more suitable data structure for pending tasks
-        this.pendingGetObjectsTasks = new HashMap<>();
+        this.snapshot = new Snapshot(this.broker.metadataCache().currentImage());
+        this.endOffsetSubscriptions = new StreamEndOffsetSubscriptions();
+        this.committedObjects = config.s3CommitPrepopulateEnable() ? new CommittedObjectsIndex() : null;
         this.pendingExecutorService = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("pending-get-objects-task-executor"));
+        KafkaYammerMetrics.defaultRegistry().newGauge(
+                KafkaYammerMetrics.getMetricName(METRICS_GROUP, METRICS_TYPE, "PendingGetObjectsTaskCount"), new Gauge<Integer>() {
+                    @Override
+                    public Integer value() {
+                        return endOffsetSubscriptions.size();
+                    }
+                });
+        this.broker.metadataListener().registerStreamMetadataListener(this::onImageChanged);
     }
 
+    // the images are only changed by the metadata listener thread
     private void onImageChanged(MetadataDelta delta, MetadataImage newImage) {
-        if (newImage.highestOffsetAndEpoch().equals(this.version)) {
+        if (newImage.highestOffsetAndEpoch().equals(this.snapshot.version)) {
             return;
         }
-        synchronized (this) {
-            // update version
-            this.version = newImage.highestOffsetAndEpoch();
-            // update image
-            this.streamsImage = newImage.streamsMetadata();
-            this.objectsImage = newImage.objectsMetadata();
-            // remove all catch up pending tasks
-            List<GetObjectsTask> retryTasks = removePendingTasks();
-            // retry all pending tasks
-            if (retryTasks.isEmpty()) {
-                return;
+        // publish the new image before notifying the subscriptions, so a fetch subscribing concurrently is either
+        // notified here or it sees the new image by itself, see #pendingFetch.
+        Snapshot newSnapshot = new Snapshot(newImage);
+        this.snapshot = newSnapshot;
+        if (committedObjects != null) {
+            for (Long streamId : committedObjects.streams()) {
+                StreamOffsetRange offsetRange = newSnapshot.streamsImage.offsetRange(streamId);
+                if (offsetRange == StreamOffsetRange.INVALID) {
+                    committedObjects.remove(streamId);
+                } else {
+                    committedObjects.trim(streamId, offsetRange.getEndOffset());
+                }
+            }
+        }
+        for (Long streamId : changedStreams(delta)) {
+            StreamOffsetRange offsetRange = newSnapshot.streamsImage.offsetRange(streamId);
+            if (offsetRange != StreamOffsetRange.INVALID) {
+                endOffsetSubscriptions.advance(streamId, offsetRange.getEndOffset());
+            }
+        }
+        for (StreamMetadataListener listener : listeners) {
+            try {
+                listener.onChange(delta, newImage);
+            } catch (Throwable e) {
+                LOGGER.error("[StreamMetadataManager]: failed to notify the listener of the image change", e);
             }
-            this.pendingExecutorService.submit(() -> {
-                retryPendingTasks(retryTasks);
-            });
         }
     }
 
-    public CompletableFuture<List<S3ObjectMetadata>> getWALObjects() {
-        synchronized (this) {
-            List<S3ObjectMetadata> s3ObjectMetadataList = this.streamsImage.getWALObjects(config.brokerId()).stream()
-                    .map(object -> {
-                        S3Object s3Object = this.objectsImage.getObjectMetadata(object.objectId());
-                        return new S3ObjectMetadata(object.objectId(), object.objectType(),
-                                new ArrayList<>(object.offsetRanges().values()), object.dataTimeInMs(),
-                                s3Object.getCommittedTimeInMs(), s3Object.getObjectSize(),
-                                object.orderId());
-                    })
-                    .collect(Collectors.toList());
-            return CompletableFuture.completedFuture(s3ObjectMetadataList);
-        }
+    /**
+     * Register a listener called after the new image is published, in the metadata listener thread.
+     */
+    public void registerListener(StreamMetadataListener listener) {
+        listeners.add(listener);
     }
 
-    // must access thread safe
-    private List<GetObjectsTask> removePendingTasks() {
-        if (this.pendingGetObjectsTasks == null || this.pendingGetObjectsTasks.isEmpty()) {
-            return Collections.emptyList();
+    /**
+     * Get the streams which may be advanced by the delta, it's the smaller one of the changed streams and the
+     * subscribed streams.
+     */
+    private Collection<Long> changedStreams(MetadataDelta delta) {
+        Set<Long> subscribedStreams = endOffsetSubscriptions.streams();
+        if (delta == null) {
+            return subscribedStreams;
         }
-        Set<Long> pendingStreams = pendingGetObjectsTasks.keySet();
-        List<StreamOffsetRange> pendingStreamsOffsetRange = pendingStreams
-                .stream()
-                .map(streamsImage::offsetRange)
-                .filter(offset -> offset != StreamOffsetRange.INVALID)
-                .collect(Collectors.toList());
-        if (pendingStreamsOffsetRange.isEmpty()) {
-            return Collections.emptyList();
+        S3StreamsMetadataDelta streamsDelta = delta.streamMetadataDelta();
+        if (streamsDelta == null) {
+            return List.of();
+        }
+        Set<Long> changedStreams = streamsDelta.changedStreams();
+        return changedStreams.size() < subscribedStreams.size() ? changedStreams : subscribedStreams;
+    }
+
+    /**
+     * Called when the controller accepts a WAL object committed by this broker.
+     */
+    public void onWALObjectCommitted(CommitWALObjectRequest request) {
+        if (committedObjects == null) {
+            return;
         }
-        List<GetObjectsTask> retryTasks = new ArrayList<>();
-        pendingStreamsOffsetRange.forEach(offsetRange -> {
-            long streamId = offsetRange.getStreamId();
-            long endOffset = offsetRange.getEndOffset();
-            Map<Long, List<GetObjectsTask>> tasks = StreamMetadataManager.this.pendingGetObjectsTasks.get(streamId);
-            if (tasks == null || tasks.isEmpty()) {
-                return;
+        committedObjects.add(request, System.currentTimeMillis());
+        Set<Long> streamIds = new HashSet<>();
+        if (request.getStreamRanges() != null) {
+            for (ObjectStreamRange range : request.getStreamRanges()) {
+                streamIds.add(range.getStreamId());
             }
-            Iterator<Entry<Long, List<GetObjectsTask>>> iterator =
-                    tasks.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Entry<Long, List<GetObjectsTask>> entry = iterator.next();
-                long pendingEndOffset = entry.getKey();
-                if (pendingEndOffset > endOffset) {
-                    break;
-                }
-                iterator.remove();
-                List<GetObjectsTask> getObjectsTasks = entry.getValue();
-                retryTasks.addAll(getObjectsTasks);
+        }
+        if (request.getStreamObjects() != null) {
+            for (StreamObject streamObject : request.getStreamObjects()) {
+                streamIds.add(streamObject.getStreamId());
             }
-            if (tasks.isEmpty()) {
-                StreamMetadataManager.this.pendingGetObjectsTasks.remove(streamId);
+        }
+        Snapshot snapshot = this.snapshot;
+        for (Long streamId : streamIds) {
+            long endOffset = availableEndOffset(snapshot, streamId);
+            if (endOffset != UNKNOWN_END_OFFSET) {
+                endOffsetSubscriptions.advance(streamId, endOffset);
             }
-        });
-        return retryTasks;
+        }
+    }
+
+    public CompletableFuture<List<S3ObjectMetadata>> getWALObjects() {
+        Snapshot snapshot = this.snapshot;
+        List<S3ObjectMetadata> s3ObjectMetadataList = snapshot.streamsImage.getWALObjects(config.brokerId()).stream()
+                .map(object -> {
+                    S3Object s3Object = snapshot.objectsImage.getObjectMetadata(object.objectId());
+                    return new S3ObjectMetadata(object.objectId(), object.objectType(),
+                            object.offsetRangeList(), object.dataTimeInMs(),
+                            s3Object.getCommittedTimeInMs(), s3Object.getObjectSize(),
+                            object.orderId());
+                })
+                .collect(Collectors.toList());
+        return CompletableFuture.completedFuture(s3ObjectMetadataList);
     }
 
     @Override
-    public synchronized CompletableFuture<InRangeObjects> fetch(long streamId, long startOffset, long endOffset, int limit) {
-        S3StreamMetadataImage streamImage = streamsImage.streamsMetadata().get(streamId);
+    public CompletableFuture<InRangeObjects> fetch(long streamId, long startOffset, long endOffset, int limit) {
+        long startNanos = System.nanoTime();
+        try {
+            return fetch(this.snapshot, streamId, startOffset, endOffset, limit);
+        } finally {
+            LOOKUP_TIME_HIST.update(System.nanoTime() - startNanos);
+        }
+    }
+
+    private CompletableFuture<InRangeObjects> fetch(Snapshot snapshot, long streamId, long startOffset, long endOffset, int limit) {
+        S3StreamMetadataImage streamImage = snapshot.streamsImage.streamsMetadata().get(streamId);
         if (streamImage == null) {
             LOGGER.warn(
                     "[FetchObjects]: stream: {}, startOffset: {}, endOffset: {}, limit: {}, and streamImage is null",
@@ -180,66 +236,119 @@ public class StreamMetadataManager implements InRangeObjectsFetcher {
         }
         endOffset = endOffset == NOOP_OFFSET ? streamEndOffset : endOffset;
         if (endOffset > streamEndOffset) {
+            if (committedObjects != null && committedObjects.endOffset(streamId, streamEndOffset) >= endOffset) {
+                return fetchWithCommitted(snapshot, streamId, startOffset, streamEndOffset, endOffset, limit);
+            }
             // lag behind, need to wait for cache catch up
             LOGGER.warn("[FetchObjects]: pending request, stream: {}, startOffset: {}, endOffset: {}, streamEndOffset: {}, limit: {}",
                     streamId, startOffset, endOffset, streamEndOffset, limit);
             return pendingFetch(streamId, startOffset, endOffset, limit);
         }
         long finalEndOffset = endOffset;
-        return FutureUtil.exec(() -> fetch0(streamId, startOffset, finalEndOffset, limit), LOGGER, "fetch");
+        return FutureUtil.exec(() -> fetch0(snapshot, streamId, startOffset, finalEndOffset, limit), LOGGER, "fetch");
     }
 
     public CompletableFuture<List<S3ObjectMetadata>> getStreamObjects(long streamId, long startOffset, long endOffset, int limit) {
-        synchronized (StreamMetadataManager.this) {
-            try {
-                List<S3StreamObject> streamObjects = streamsImage.getStreamObjects(streamId, startOffset, endOffset, limit);
-                List<S3ObjectMetadata> s3StreamObjectMetadataList = streamObjects.stream().map(object -> {
-                    S3Object objectMetadata = objectsImage.getObjectMetadata(object.objectId());
-                    long committedTimeInMs = objectMetadata.getCommittedTimeInMs();
-                    long objectSize = objectMetadata.getObjectSize();
-                    return new S3ObjectMetadata(object.objectId(), object.objectType(), List.of(object.streamOffsetRange()), object.dataTimeInMs(),
-                            committedTimeInMs, objectSize, S3StreamConstant.INVALID_ORDER_ID);
-                }).collect(Collectors.toList());
-                return CompletableFuture.completedFuture(s3StreamObjectMetadataList);
-            } catch (Exception e) {
-                LOGGER.warn(
-                        "[GetStreamObjects]: stream: {}, startOffset: {}, endOffset: {}, limit: {}, and search in metadataCache failed with exception: {}",
-                        streamId, startOffset, endOffset, limit, e.getMessage());
-                return CompletableFuture.failedFuture(e);
-            }
+        Snapshot snapshot = this.snapshot;
+        try {
+            List<S3StreamObject> streamObjects = snapshot.streamsImage.getStreamObjects(streamId, startOffset, endOffset, limit);
+            List<S3ObjectMetadata> s3StreamObjectMetadataList = streamObjects.stream().map(object -> {
+                S3Object objectMetadata = snapshot.objectsImage.getObjectMetadata(object.objectId());
+                long committedTimeInMs = objectMetadata.getCommittedTimeInMs();
+                long objectSize = objectMetadata.getObjectSize();
+                return new S3ObjectMetadata(object.objectId(), object.objectType(), List.of(object.streamOffsetRange()), object.dataTimeInMs(),
+                        committedTimeInMs, objectSize, S3StreamConstant.INVALID_ORDER_ID);
+            }).collect(Collectors.toList());
+            return CompletableFuture.completedFuture(s3StreamObjectMetadataList);
+        } catch (Exception e) {
+            LOGGER.warn(
+                    "[GetStreamObjects]: stream: {}, startOffset: {}, endOffset: {}, limit: {}, and search in metadataCache failed with exception: {}",
+                    streamId, startOffset, endOffset, limit, e.getMessage());
+            return CompletableFuture.failedFuture(e);
         }
     }
 
     public List<StreamMetadata> getStreamMetadataList(List<Long> streamIds) {
-        synchronized (StreamMetadataManager.this) {
-            List<StreamMetadata> streamMetadataList = new ArrayList<>();
-            for (Long streamId : streamIds) {
-                S3StreamMetadataImage streamImage = streamsImage.streamsMetadata().get(streamId);
-                if (streamImage == null) {
-                    LOGGER.warn("[GetStreamMetadataList]: stream: {} not exists", streamId);
-                    continue;
-                }
-                StreamMetadata streamMetadata = new StreamMetadata(streamId, streamImage.getEpoch(),
-                        streamImage.getStartOffset(), streamImage.getEndOffset(), streamImage.state());
-                streamMetadataList.add(streamMetadata);
+        S3StreamsMetadataImage streamsImage = this.snapshot.streamsImage;
+        List<StreamMetadata> streamMetadataList = new ArrayList<>();
+        for (Long streamId : streamIds) {
+            S3StreamMetadataImage streamImage = streamsImage.streamsMetadata().get(streamId);
+            if (streamImage == null) {
+                LOGGER.warn("[GetStreamMetadataList]: stream: {} not exists", streamId);
+                continue;
             }
-            return streamMetadataList;
+            StreamMetadata streamMetadata = new StreamMetadata(streamId, streamImage.getEpoch(),
+                    streamImage.getStartOffset(), streamImage.getEndOffset(), streamImage.state());
+            streamMetadataList.add(streamMetadata);
         }
+        return streamMetadataList;
+    }
+
+    public KVImage kvImage() {
+        return snapshot.kvImage;
+    }
+
+    public int pendingGetObjectsTaskCount() {
+        return endOffsetSubscriptions.size();
     }
 
-    // must access thread safe
     private CompletableFuture<InRangeObjects> pendingFetch(long streamId, long startOffset, long endOffset, int limit) {
-        GetObjectsTask task = GetObjectsTask.of(streamId, startOffset, endOffset, limit);
-        Map<Long, List<GetObjectsTask>> tasks = StreamMetadataManager.this.pendingGetObjectsTasks.computeIfAbsent(task.streamId,
-                k -> new TreeMap<>());
-        List<GetObjectsTask> getObjectsTasks = tasks.computeIfAbsent(task.endOffset, k -> new ArrayList<>());
-        getObjectsTasks.add(task);
-        return task.cf;
+        CompletableFuture<Void> subscription = endOffsetSubscriptions.subscribe(streamId, endOffset);
+        // the stream may be advanced before subscribing, check it again to avoid missing the notification
+        long availableEndOffset = availableEndOffset(this.snapshot, streamId);
+        if (availableEndOffset != UNKNOWN_END_OFFSET) {
+            endOffsetSubscriptions.advance(streamId, availableEndOffset);
+        }
+        return subscription.thenComposeAsync(nil -> fetch(streamId, startOffset, endOffset, limit), pendingExecutorService);
+    }
+
+    /**
+     * Get the end offset of the stream in the image, or in the committed objects if they are continuous with the image.
+     *
+     * @return the end offset, or {@link #UNKNOWN_END_OFFSET} if the stream doesn't exist.
+     */
+    private long availableEndOffset(Snapshot snapshot, long streamId) {
+        StreamOffsetRange offsetRange = snapshot.streamsImage.offsetRange(streamId);
+        if (offsetRange == StreamOffsetRange.INVALID) {
+            return UNKNOWN_END_OFFSET;
+        }
+        if (committedObjects == null) {
+            return offsetRange.getEndOffset();
+        }
+        return committedObjects.endOffset(streamId, offsetRange.getEndOffset());
     }
 
-    // must access thread safe
-    private synchronized CompletableFuture<InRangeObjects> fetch0(long streamId, long startOffset, long endOffset, int limit) {
-        InRangeObjects cachedInRangeObjects = streamsImage.getObjects(streamId, startOffset, endOffset, limit);
+    /**
+     * Fetch the objects in the image before the end offset of the stream in the image, and the objects committed by
+     * this broker after it.
+     */
+    private CompletableFuture<InRangeObjects> fetchWithCommitted(Snapshot snapshot, long streamId, long startOffset,
+        long streamEndOffset, long endOffset, int limit) {
+        List<S3ObjectMetadata> objects = new ArrayList<>();
+        long nextStartOffset = startOffset;
+        if (startOffset < streamEndOffset) {
+            InRangeObjects inImage = fetch0(snapshot, streamId, startOffset, streamEndOffset, limit).join();
+            if (inImage == InRangeObjects.INVALID || inImage.endOffset() < streamEndOffset || inImage.objects().size() >= limit) {
+                return CompletableFuture.completedFuture(inImage);
+            }
+            objects.addAll(inImage.objects());
+            nextStartOffset = inImage.endOffset();
+        }
+        InRangeObjects committed = committedObjects.get(streamId, nextStartOffset, endOffset, limit - objects.size());
+        if (committed == InRangeObjects.INVALID) {
+            if (objects.isEmpty()) {
+                return CompletableFuture.completedFuture(InRangeObjects.INVALID);
+            }
+            return CompletableFuture.completedFuture(new InRangeObjects(streamId, startOffset, nextStartOffset, objects));
+        }
+        objects.addAll(committed.objects());
+        LOGGER.trace("[FetchObjects]: stream: {}, startOffset: {}, endOffset: {}, limit: {}, and served with the committed objects: {}",
+                streamId, startOffset, endOffset, limit, committed);
+        return CompletableFuture.completedFuture(new InRangeObjects(streamId, startOffset, committed.endOffset(), objects));
+    }
+
+    private CompletableFuture<InRangeObjects> fetch0(Snapshot snapshot, long streamId, long startOffset, long endOffset, int limit) {
+        InRangeObjects cachedInRangeObjects = snapshot.streamsImage.getObjects(streamId, startOffset, endOffset, limit);
         if (cachedInRangeObjects == null || cachedInRangeObjects == InRangeObjects.INVALID) {
             LOGGER.warn(
                     "[FetchObjects]: stream: {}, startOffset: {}, endOffset: {}, limit: {}, and search in metadataCache failed with empty result",
@@ -248,7 +357,7 @@ public class StreamMetadataManager implements InRangeObjectsFetcher {
         }
         // fill the objects' size and committed-timestamp
         for (S3ObjectMetadata object : cachedInRangeObjects.objects()) {
-            S3Object objectMetadata = objectsImage.getObjectMetadata(object.objectId());
+            S3Object objectMetadata = snapshot.objectsImage.getObjectMetadata(object.objectId());
             if (objectMetadata == null) {
                 // should not happen
                 LOGGER.error(
@@ -265,40 +374,20 @@ public class StreamMetadataManager implements InRangeObjectsFetcher {
         return CompletableFuture.completedFuture(cachedInRangeObjects);
     }
 
-    void retryPendingTasks(List<GetObjectsTask> tasks) {
-        if (tasks == null || tasks.isEmpty()) {
-            return;
-        }
-        LOGGER.info("[RetryPendingTasks]: retry tasks count: {}", tasks.size());
-        tasks.forEach(task -> {
-            long streamId = task.streamId;
-            long startOffset = task.startOffset;
-            long endOffset = task.endOffset;
-            int limit = task.limit;
-            CompletableFuture<InRangeObjects> newCf = this.fetch(streamId, startOffset, endOffset, limit);
-            FutureUtil.propagate(newCf, task.cf);
-        });
-    }
-
-    static class GetObjectsTask {
-
-        private final CompletableFuture<InRangeObjects> cf;
-        private final long streamId;
-        private final long startOffset;
-        private final long endOffset;
-        private final int limit;
-
-        public static GetObjectsTask of(long streamId, long startOffset, long endOffset, int limit) {
-            CompletableFuture<InRangeObjects> cf = new CompletableFuture<>();
-            return new GetObjectsTask(cf, streamId, startOffset, endOffset, limit);
-        }
+    /**
+     * The images and their version, which are always read together.
+     */
+    private static class Snapshot {
+        private final OffsetAndEpoch version;
+        private final S3StreamsMetadataImage streamsImage;
+        private final S3ObjectsImage objectsImage;
+        private final KVImage kvImage;
 
-        private GetObjectsTask(CompletableFuture<InRangeObjects> cf, long streamId, long startOffset, long endOffset, int limit) {
-            this.cf = cf;
-            this.streamId = streamId;
-            this.startOffset = startOffset;
-            this.endOffset = endOffset;
-            this.limit = limit;
+        Snapshot(MetadataImage image) {
+            this.version = image.highestOffsetAndEpoch();
+            this.streamsImage = image.streamsMetadata();
+            this.objectsImage = image.objectsMetadata();
+            this.kvImage = image.kv();
         }
     }
 
@@ -17,6 +17,7 @@
 
 package kafka.log.stream.s3.network;
 
+import com.yammer.metrics.core.Histogram;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import kafka.log.stream.s3.network.request.BatchRequest;
 import kafka.log.stream.s3.network.request.WrapRequest;
@@ -24,16 +25,23 @@ import kafka.server.BrokerServer;
 import kafka.server.BrokerToControllerChannelManager;
 import kafka.server.ControllerRequestCompletionHandler;
 import org.apache.kafka.clients.ClientResponse;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.TimeoutException;
 import org.apache.kafka.common.protocol.ApiKeys;
 import org.apache.kafka.common.requests.AbstractRequest.Builder;
 import org.apache.kafka.common.requests.AbstractResponse;
 import org.apache.kafka.common.requests.s3.AbstractBatchResponse;
+import org.apache.kafka.server.metrics.KafkaYammerMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -41,13 +49,16 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 public class ControllerRequestSender {
     private static final Logger LOGGER = LoggerFactory.getLogger(ControllerRequestSender.class);
     private static final long MAX_RETRY_DELAY_MS = 60 * 1000; // 1min
+    private static final String METRICS_GROUP = "kafka.log.stream.s3";
+    private static final String METRICS_TYPE = "ControllerRequestSender";
     private final RetryPolicyContext retryPolicyContext;
+    private final BatchPolicyContext batchPolicyContext;
     private final BrokerToControllerChannelManager channelManager;
 
     private final ScheduledExecutorService retryService;
@@ -55,7 +66,13 @@ public class ControllerRequestSender {
     private final ConcurrentHashMap<ApiKeys, RequestAccumulator> requestAccumulatorMap;
 
     public ControllerRequestSender(BrokerServer brokerServer, RetryPolicyContext retryPolicyContext) {
+        this(brokerServer, retryPolicyContext, BatchPolicyContext.DEFAULT);
+    }
+
+    public ControllerRequestSender(BrokerServer brokerServer, RetryPolicyContext retryPolicyContext,
+        BatchPolicyContext batchPolicyContext) {
         this.retryPolicyContext = retryPolicyContext;
+        this.batchPolicyContext = batchPolicyContext;
         this.channelManager = brokerServer.clientToControllerChannelManager();
         this.retryService = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("controller-request-retry-sender"));
         this.requestAccumulatorMap = new ConcurrentHashMap<>();
@@ -77,9 +94,12 @@ public class ControllerRequestSender {
 
     private void singleSend(RequestTask task) {
         Builder builder = task.request.toRequestBuilder();
+        Histogram roundTripTimeHist = roundTripTimeHist(task.request.apiKey());
+        long sendNanos = System.nanoTime();
         RequestCtx requestCtx = new RequestCtx() {
             @Override
             void onSuccess(AbstractResponse response) {
+                roundTripTimeHist.update(System.nanoTime() - sendNanos);
                 try {
 
                     ResponseHandleResult result = (ResponseHandleResult) task.responseHandler.apply(response);
@@ -150,33 +170,86 @@ public class ControllerRequestSender {
         abstract void onError(Throwable ex);
     }
 
+    /**
+     * Accumulates the batch requests of an API. Up to {@link BatchPolicyContext#pipelineDepth(ApiKeys)} batches are
+     * in-flight, and the requests queued meanwhile are sent in the next batches, each of them is limited by
+     * {@link BatchPolicyContext#maxBatchSize()} and {@link BatchPolicyContext#maxBatchBytes()}.
+     */
     public class RequestAccumulator {
-        AtomicBoolean inflight = new AtomicBoolean(false);
-        BlockingQueue<RequestTask> requestQueue = new LinkedBlockingQueue<>();
-
-        public RequestAccumulator() {
+        private final int pipelineDepth;
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final BlockingQueue<RequestTask> requestQueue = new LinkedBlockingQueue<>();
+        // only the drainer polls the queue, so the peeked task is the polled one
+        private final Object drainLock = new Object();
+        private final Histogram batchSizeHist;
+        private final Histogram queueTimeHist;
+        private final Histogram roundTripTimeHist;
+
+        public RequestAccumulator(ApiKeys apiKey) {
+            this.pipelineDepth = batchPolicyContext.pipelineDepth(apiKey);
+            this.batchSizeHist = newHistogram("BatchSize", apiKey);
+            this.queueTimeHist = newHistogram("QueueTimeNanos", apiKey);
+            this.roundTripTimeHist = roundTripTimeHist(apiKey);
         }
 
         void send(RequestTask task) {
             if (task != null) {
+                task.enqueueNanos = System.nanoTime();
                 requestQueue.add(task);
             }
-            if (!requestQueue.isEmpty() && inflight.compareAndSet(false, true)) {
-                send0();
+            // the task is queued before checking the in-flight count, and the in-flight count is decreased before
+            // checking the queue, so the queued task is always sent by one of them.
+            while (!requestQueue.isEmpty()) {
+                int current = inflight.get();
+                if (current >= pipelineDepth) {
+                    return;
+                }
+                if (!inflight.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+                List<RequestTask> batch = drain();
+                if (batch.isEmpty()) {
+                    inflight.decrementAndGet();
+                    continue;
+                }
+                send0(batch);
             }
         }
 
-        void send0() {
-            if (requestQueue.isEmpty()) {
-                return;
+        private List<RequestTask> drain() {
+            List<RequestTask> batch = new ArrayList<>();
+            long now = System.nanoTime();
+            synchronized (drainLock) {
+                int bytes = 0;
+                RequestTask task;
+                while (batch.size() < batchPolicyContext.maxBatchSize() && (task = requestQueue.peek()) != null) {
+                    int size = ((BatchRequest) task.request).estimatedSize();
+                    if (!batch.isEmpty() && bytes + size > batchPolicyContext.maxBatchBytes()) {
+                        break;
+                    }
+                    requestQueue.poll();
+                    batch.add(task);
+                    bytes += size;
+                    queueTimeHist.update(now - task.enqueueNanos);
+                }
             }
-            List<RequestTask> inflight = new ArrayList<>();
-            requestQueue.drainTo(inflight);
-            Builder builder = inflight.get(0).request.toRequestBuilder();
-            inflight.stream().map(task -> (BatchRequest) task.request).skip(1).forEach(req -> req.addSubRequest(builder));
+            return batch;
+        }
+
+        private void onBatchDone() {
+            inflight.decrementAndGet();
+            send(null);
+        }
+
+        void send0(List<RequestTask> batch) {
+            Builder builder = batch.get(0).request.toRequestBuilder();
+            batch.stream().map(task -> (BatchRequest) task.request).skip(1).forEach(req -> req.addSubRequest(builder));
+            batchSizeHist.update(batch.size());
+            long sendNanos = System.nanoTime();
             RequestCtx requestCtx = new RequestCtx() {
                 @Override
                 void onSuccess(AbstractResponse response) {
+                    roundTripTimeHist.update(System.nanoTime() - sendNanos);
                     if (!(response instanceof AbstractBatchResponse)) {
                         LOGGER.error("Unexpected response type: {} while sending request: {}",
                                 response.getClass().getSimpleName(), builder);
@@ -185,13 +258,13 @@ public class ControllerRequestSender {
                     }
                     AbstractBatchResponse resp = (AbstractBatchResponse) response;
                     List subResponses = resp.subResponses();
-                    if (subResponses.size() != inflight.size()) {
-                        LOGGER.error("Response size: {} not match request size: {}", subResponses.size(), inflight.size());
+                    if (subResponses.size() != batch.size()) {
+                        LOGGER.error("Response size: {} not match request size: {}", subResponses.size(), batch.size());
                         onError(new RuntimeException("Response size not match request size"));
                         return;
                     }
                     for (int index = 0; index < subResponses.size(); index++) {
-                        RequestTask task = inflight.get(index);
+                        RequestTask task = batch.get(index);
                         try {
                             ResponseHandleResult result = (ResponseHandleResult) task.responseHandler.apply(subResponses.get(index));
                             if (result.retry()) {
@@ -203,22 +276,17 @@ public class ControllerRequestSender {
                             task.completeExceptionally(e);
                         }
                     }
-                    if (RequestAccumulator.this.inflight.compareAndSet(true, false)) {
-                        send(null);
-                    }
+                    onBatchDone();
                 }
 
                 @Override
                 void onError(Throwable e) {
                     if (e instanceof TimeoutException) {
-                        RequestAccumulator.this.inflight.compareAndSet(true, false);
-                        inflight.forEach(ControllerRequestSender.this::retryTask);
+                        batch.forEach(ControllerRequestSender.this::retryTask);
                     } else {
-                        inflight.forEach(t -> t.future.completeExceptionally(e));
-                        if (RequestAccumulator.this.inflight.compareAndSet(true, false)) {
-                            send(null);
-                        }
+                        batch.forEach(t -> t.future.completeExceptionally(e));
                     }
+                    onBatchDone();
                 }
 
             };
@@ -228,7 +296,18 @@ public class ControllerRequestSender {
     }
 
     private RequestAccumulator createRequestAccumulator(ApiKeys type) {
-        return new RequestAccumulator();
+        return new RequestAccumulator(type);
+    }
+
+    private Histogram roundTripTimeHist(ApiKeys apiKey) {
+        return newHistogram("RoundTripTimeNanos", apiKey);
+    }
+
+    private static Histogram newHistogram(String name, ApiKeys apiKey) {
+        LinkedHashMap<String, String> tags = new LinkedHashMap<>();
+        tags.put("api", apiKey.name);
+        return KafkaYammerMetrics.defaultRegistry().newHistogram(
+                KafkaYammerMetrics.getMetricName(METRICS_GROUP, METRICS_TYPE, name, tags), true);
     }
 
     public static class RequestTask<T, R> {
@@ -237,6 +316,7 @@ public class ControllerRequestSender {
         private final CompletableFuture<R> future;
         private final Function<T, ResponseHandleResult<R>> responseHandler;
         private int sendCount;
+        private long enqueueNanos;
 
         public RequestTask(WrapRequest request, CompletableFuture<R> future,
                            Function<T, ResponseHandleResult<R>> responseHandler) {
@@ -294,6 +374,84 @@ public class ControllerRequestSender {
         }
     }
 
+    public static class BatchPolicyContext {
+        public static final BatchPolicyContext DEFAULT = new BatchPolicyContext(1, Collections.emptyMap(), 1000, 1024 * 1024);
+
+        private final int defaultPipelineDepth;
+        private final Map<String, Integer> pipelineDepths;
+        private final int maxBatchSize;
+        private final int maxBatchBytes;
+
+        /**
+         * @param defaultPipelineDepth the maximum in-flight batches of an API.
+         * @param pipelineDepths       the maximum in-flight batches of the specific APIs, keyed by the name of {@link ApiKeys}
+         *                             which the metrics of the API are tagged with, ex. OpenStreams.
+         * @param maxBatchSize         the maximum sub-requests in a batch.
+         * @param maxBatchBytes        the maximum estimated bytes of the sub-requests in a batch.
+         */
+        public BatchPolicyContext(int defaultPipelineDepth, Map<String, Integer> pipelineDepths, int maxBatchSize, int maxBatchBytes) {
+            this.defaultPipelineDepth = Math.max(1, defaultPipelineDepth);
+            this.pipelineDepths = pipelineDepths;
+            this.maxBatchSize = Math.max(1, maxBatchSize);
+            this.maxBatchBytes = maxBatchBytes;
+        }
+
+        public int pipelineDepth(ApiKeys apiKey) {
+            return Math.max(1, pipelineDepths.getOrDefault(apiKey.name, defaultPipelineDepth));
+        }
+
+        public int maxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public int maxBatchBytes() {
+            return maxBatchBytes;
+        }
+
+        /**
+         * Parse the pipeline depth overrides in the format of api=depth.
+         *
+         * @throws ConfigException if an entry is malformed or its depth isn't a positive integer.
+         */
+        public static Map<String, Integer> parsePipelineDepths(String name, List<String> entries) {
+            Map<String, Integer> depths = new HashMap<>();
+            for (String entry : entries) {
+                int index = entry.lastIndexOf('=');
+                if (index <= 0) {
+                    throw new ConfigException(name, entry, "The format should be api=depth");
+                }
+                int depth;
+                try {
+                    depth = Integer.parseInt(entry.substring(index + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new ConfigException(name, entry, "The depth should be an integer");
+                }
+                if (depth < 1) {
+                    throw new ConfigException(name, entry, "The depth should be at least 1");
+                }
+                depths.put(entry.substring(0, index).trim(), depth);
+            }
+            return depths;
+        }
+    }
+
+    public static class PipelineDepthsValidator implements ConfigDef.Validator {
+        @Override
+        public void ensureValid(String name, Object value) {
+            if (value == null) {
+                throw new ConfigException(name, null);
+            }
+            @SuppressWarnings("unchecked")
+            List<String> entries = (List<String>) value;
+            BatchPolicyContext.parsePipelineDepths(name, entries);
+        }
+
+        @Override
+        public String toString() {
+            return "list of api=depth with positive integer depths";
+        }
+    }
+
     public static class RetryPolicyContext {
 
         private int maxRetryCount;
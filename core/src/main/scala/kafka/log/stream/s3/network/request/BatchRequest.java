@@ -20,5 +20,14 @@ package kafka.log.stream.s3.network.request;
 import org.apache.kafka.common.requests.AbstractRequest.Builder;
 
 public abstract class BatchRequest implements WrapRequest {
+    private static final int DEFAULT_ESTIMATED_SIZE = 64;
+
     public abstract Builder addSubRequest(Builder builder);
+
+    /**
+     * The estimated bytes of the sub-request, which limits the bytes of a batch.
+     */
+    public int estimatedSize() {
+        return DEFAULT_ESTIMATED_SIZE;
+    }
 }
@@ -132,6 +132,7 @@ public class ControllerObjectManager implements ObjectManager {
             Errors code = Errors.forCode(resp.errorCode());
             switch (code) {
                 case NONE:
+                    metadataManager.onWALObjectCommitted(commitWALObjectRequest);
                     return ResponseHandleResult.withSuccess(new CommitWALObjectResponse());
                 case NODE_EPOCH_EXPIRED:
                 case NODE_EPOCH_NOT_EXIST:
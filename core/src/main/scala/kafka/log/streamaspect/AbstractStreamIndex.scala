@@ -27,6 +27,7 @@ import org.apache.kafka.common.utils.{OperatingSystem, Utils}
 
 import java.io.File
 import java.nio.file.NoSuchFileException
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.locks.{Lock, ReentrantLock}
 
 /**
@@ -137,6 +138,17 @@ abstract class AbstractStreamIndex(@volatile private var _file: File, val stream
 
   def parseEntry(n: Int): IndexEntry
 
+  /**
+   * Parse the n-th entry without blocking the caller. The default implementation parses the entry synchronously.
+   */
+  def parseEntryAsync(n: Int): CompletableFuture[IndexEntry] = {
+    try {
+      CompletableFuture.completedFuture(parseEntry(n))
+    } catch {
+      case e: Throwable => CompletableFuture.failedFuture(e)
+    }
+  }
+
   protected def largestLowerBoundSlotFor(target: Long, searchEntity: IndexSearchType): Int =
     indexSlotRangeFor(target, searchEntity)._1
 
@@ -179,6 +191,62 @@ abstract class AbstractStreamIndex(@volatile private var _file: File, val stream
     binarySearch(0, firstHotEntry)
   }
 
+  protected def largestLowerBoundSlotForAsync(target: Long, searchEntity: IndexSearchType): CompletableFuture[Int] =
+    indexSlotRangeForAsync(target, searchEntity).thenApply[Int](range => range._1)
+
+  protected def smallestUpperBoundSlotForAsync(target: Long, searchEntity: IndexSearchType): CompletableFuture[Int] =
+    indexSlotRangeForAsync(target, searchEntity).thenApply[Int](range => range._2)
+
+  /**
+   * Async version of [[indexSlotRangeFor]]. Each step of the binary search prefetches the entries of both candidate
+   * midpoints of the next step in parallel, so the next step doesn't wait for another round trip to the stream.
+   */
+  private def indexSlotRangeForAsync(target: Long, searchEntity: IndexSearchType): CompletableFuture[(Int, Int)] = {
+    // snapshot the entries, since the index may be appended during the search
+    val entries = _entries
+    // check if the index is empty
+    if (entries == 0)
+      return CompletableFuture.completedFuture((-1, -1))
+
+    def binarySearch(lo: Int, hi: Int, midEntry: CompletableFuture[IndexEntry]): CompletableFuture[(Int, Int)] = {
+      if (lo >= hi)
+        return CompletableFuture.completedFuture((lo, if (lo == entries - 1) -1 else lo + 1))
+      val mid = (lo + hi + 1) >>> 1
+      val found = if (midEntry != null) midEntry else parseEntryAsync(mid)
+      // the midpoints of [lo, mid - 1] and [mid, hi]
+      val lowerMidEntry = if (lo < mid - 1) parseEntryAsync((lo + mid) >>> 1) else null
+      val upperMidEntry = if (mid < hi) parseEntryAsync((mid + hi + 1) >>> 1) else null
+      found.thenCompose[(Int, Int)](entry => {
+        val compareResult = compareIndexEntry(entry, target, searchEntity)
+        if (compareResult > 0)
+          binarySearch(lo, mid - 1, lowerMidEntry)
+        else if (compareResult < 0)
+          binarySearch(mid, hi, upperMidEntry)
+        else
+          CompletableFuture.completedFuture((mid, mid))
+      })
+    }
+
+    val firstHotEntry = Math.max(0, entries - 1 - _warmEntries)
+    // probe the first hot entry and the first entry together, one of them is required to locate the section
+    val firstHotEntryFuture = parseEntryAsync(firstHotEntry)
+    val firstEntryFuture = if (firstHotEntry == 0) firstHotEntryFuture else parseEntryAsync(0)
+    firstHotEntryFuture.thenCompose[(Int, Int)](hotEntry => {
+      // check if the target offset is in the warm section of the index
+      if (compareIndexEntry(hotEntry, target, searchEntity) < 0) {
+        binarySearch(firstHotEntry, entries - 1, null)
+      } else {
+        firstEntryFuture.thenCompose[(Int, Int)](firstEntry => {
+          // check if the target offset is smaller than the least offset
+          if (compareIndexEntry(firstEntry, target, searchEntity) > 0)
+            CompletableFuture.completedFuture((-1, 0))
+          else
+            binarySearch(0, firstHotEntry, null)
+        })
+      }
+    })
+  }
+
   private def compareIndexEntry(indexEntry: IndexEntry, target: Long, searchEntity: IndexSearchType): Int = {
     searchEntity match {
       case IndexSearchType.KEY => java.lang.Long.compare(indexEntry.indexKey, target)
@@ -234,7 +234,11 @@ public class AlwaysSuccessClient implements Client {
     private class StreamImpl implements Stream {
 
         private final Stream stream;
-        private final Map<String, CompletableFuture<FetchResult>> holdUpFetchingFutureMap = new ConcurrentHashMap<>();
+        /**
+         * The held-up fetches keyed by the start offset. The key doesn't include the max bytes hint, which depends on
+         * the response bytes left when the fetch is re-read.
+         */
+        private final Map<Long, HoldUpFetch> holdUpFetchingFutureMap = new ConcurrentHashMap<>();
 
         public StreamImpl(Stream stream) {
             this.stream = stream;
@@ -307,14 +311,15 @@ public class AlwaysSuccessClient implements Client {
         /**
          * Get a new CompletableFuture with a {@link SlowFetchHintException} if not otherwise completed before the given timeout.
          *
-         * @param id        the id of rawFuture in holdUpFetchingFutureMap
+         * @param startOffset the start offset of the fetch, which is the key of rawFuture in holdUpFetchingFutureMap
+         * @param endOffset   the end offset of the fetch
          * @param rawFuture the raw future
          * @param timeout   how long to wait before completing exceptionally with a SlowFetchHintException, in units of {@code unit}
          * @param unit      a {@code TimeUnit} determining how to interpret the {@code timeout} parameter
          * @return a new CompletableFuture with completed results of the rawFuture if the raw future is done before timeout, otherwise a new
          * CompletableFuture with a {@link SlowFetchHintException}
          */
-        private CompletableFuture<FetchResult> timeoutAndStoreFuture(String id,
+        private CompletableFuture<FetchResult> timeoutAndStoreFuture(long startOffset, long endOffset,
                                                                      CompletableFuture<FetchResult> rawFuture, long timeout,
                                                                      TimeUnit unit) {
             if (unit == null) {
@@ -341,7 +346,10 @@ public class AlwaysSuccessClient implements Client {
                         }
                     });
                 } else { // else, complete the cf with a SlowFetchHintException and store the rawFuture for slow fetching.
-                    holdUpFetchingFutureMap.putIfAbsent(id, rawFuture);
+                    HoldUpFetch old = holdUpFetchingFutureMap.put(startOffset, new HoldUpFetch(endOffset, rawFuture));
+                    if (old != null && old.cf != rawFuture) {
+                        old.discard();
+                    }
                     cf.completeExceptionally(new SlowFetchHintException());
                 }
             }, timeout, unit), cf));
@@ -350,21 +358,32 @@ public class AlwaysSuccessClient implements Client {
 
         @Override
         public CompletableFuture<FetchResult> fetch(long startOffset, long endOffset, int maxBytesHint) {
-            String holdUpKey = startOffset + "-" + endOffset + "-" + maxBytesHint;
             CompletableFuture<FetchResult> cf = new CompletableFuture<>();
+            // Reuse the held-up fetch from the same offset, no matter whether it's the slow re-read or a later fetch.
+            CompletableFuture<FetchResult> holdUpCf = takeHoldUpFetch(startOffset, endOffset);
             // If this thread is not marked, then just fetch data.
             if (!SeparateSlowAndQuickFetchHint.isMarked()) {
-                CompletableFuture<FetchResult> holdUpCf = holdUpFetchingFutureMap.remove(holdUpKey);
                 if (holdUpCf != null) {
-                    holdUpCf.thenAccept(cf::complete);
+                    holdUpCf.whenComplete((rst, ex) -> {
+                        if (ex != null) {
+                            cf.completeExceptionally(ex);
+                        } else {
+                            cf.complete(rst);
+                        }
+                    });
                 } else {
                     fetch0(startOffset, endOffset, maxBytesHint, cf);
                 }
             } else {
-                CompletableFuture<FetchResult> firstFetchFuture = new CompletableFuture<>();
-                fetch0(startOffset, endOffset, maxBytesHint, firstFetchFuture);
+                CompletableFuture<FetchResult> firstFetchFuture;
+                if (holdUpCf != null) {
+                    firstFetchFuture = holdUpCf;
+                } else {
+                    firstFetchFuture = new CompletableFuture<>();
+                    fetch0(startOffset, endOffset, maxBytesHint, firstFetchFuture);
+                }
                 // Try to have a quick fetch. If the first fetching is timeout, then complete with SlowFetchHintException.
-                timeoutAndStoreFuture(holdUpKey, firstFetchFuture, slowFetchTimeoutMillis, TimeUnit.MILLISECONDS)
+                timeoutAndStoreFuture(startOffset, endOffset, firstFetchFuture, slowFetchTimeoutMillis, TimeUnit.MILLISECONDS)
                         .whenComplete((rst, ex) -> FutureUtil.suppress(() -> {
                             if (ex != null) {
                                 if (ex instanceof SlowFetchHintException) {
@@ -381,6 +400,22 @@ public class AlwaysSuccessClient implements Client {
             return cf;
         }
 
+        /**
+         * Take the held-up fetch from the start offset. It's discarded if it may return the records beyond the end
+         * offset, e.g. the fetch is re-read with a lower end offset.
+         */
+        private CompletableFuture<FetchResult> takeHoldUpFetch(long startOffset, long endOffset) {
+            HoldUpFetch holdUpFetch = holdUpFetchingFutureMap.remove(startOffset);
+            if (holdUpFetch == null) {
+                return null;
+            }
+            if (holdUpFetch.endOffset > endOffset) {
+                holdUpFetch.discard();
+                return null;
+            }
+            return holdUpFetch.cf;
+        }
+
         private void fetch0(long startOffset, long endOffset, int maxBytesHint, CompletableFuture<FetchResult> cf) {
             stream.fetch(startOffset, endOffset, maxBytesHint).whenCompleteAsync((rst, ex) -> {
                 FutureUtil.suppress(() -> {
@@ -476,6 +511,20 @@ public class AlwaysSuccessClient implements Client {
     /**
      * A BiConsumer that completes the FetchResult future and cancels the timeout check task.
      */
+    static final class HoldUpFetch {
+        final long endOffset;
+        final CompletableFuture<FetchResult> cf;
+
+        HoldUpFetch(long endOffset, CompletableFuture<FetchResult> cf) {
+            this.endOffset = endOffset;
+            this.cf = cf;
+        }
+
+        void discard() {
+            cf.thenAccept(FetchResult::free);
+        }
+    }
+
     static final class CompleteFetchingFutureAndCancelTimeoutCheck implements BiConsumer<FetchResult, Throwable> {
         /**
          * A ScheduledFuture that represents the timeout check task.
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.streamaspect;
+
+import org.apache.kafka.common.utils.ThreadUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * A single-thread shard of the append callbacks. The acks of the logs whose confirm offsets advance are queued (the
+ * caller queues at most one ack per log) and run in one drain, so the advances of many partitions between two drains
+ * are handled in one pass. The shards are independent, a slow ack only holds up the acks queued in its own shard.
+ */
+public class AppendAckShard {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AppendAckShard.class);
+    private static final long CLOSE_TIMEOUT_MS = 10000;
+
+    private final ExecutorService executor;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final LongConsumer queueTimeMicrosRecorder;
+    private volatile boolean closed;
+
+    /**
+     * @param index                   the index of the shard, used to name its thread
+     * @param queueTimeMicrosRecorder the recorder of the time between the scheduling and the start of a drain
+     */
+    public AppendAckShard(int index, LongConsumer queueTimeMicrosRecorder) {
+        this.executor = Executors.newSingleThreadExecutor(ThreadUtils.createThreadFactory("log-append-callback-executor-" + index, true));
+        this.queueTimeMicrosRecorder = queueTimeMicrosRecorder;
+    }
+
+    /**
+     * Queue the ack. The acks submitted after {@link #close()} are ignored.
+     */
+    public void submit(Runnable ack) {
+        if (closed) {
+            return;
+        }
+        pending.offer(ack);
+        if (scheduled.compareAndSet(false, true)) {
+            long submitNanos = System.nanoTime();
+            try {
+                executor.submit(() -> drain(submitNanos));
+            } catch (RejectedExecutionException e) {
+                // the shard is closing, the queued acks are run by close.
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Stop accepting acks and run the pending ones before returning.
+     */
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("append ack shard isn't drained in {}ms, {} acks are dropped", CLOSE_TIMEOUT_MS, pending.size());
+                pending.clear();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.clear();
+            return;
+        }
+        // the acks queued after the last drain scheduled are rejected by the executor, run them in place.
+        runPending();
+    }
+
+    private void drain(long submitNanos) {
+        queueTimeMicrosRecorder.accept((System.nanoTime() - submitNanos) / 1000);
+        // reset before polling, so the acks queued after the last poll schedule another drain.
+        scheduled.set(false);
+        runPending();
+    }
+
+    private void runPending() {
+        Runnable ack;
+        while ((ack = pending.poll()) != null) {
+            try {
+                ack.run();
+            } catch (Throwable e) {
+                LOGGER.error("append callback error", e);
+            }
+        }
+    }
+}
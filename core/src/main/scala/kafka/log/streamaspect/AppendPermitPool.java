@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.streamaspect;
+
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.utils.Time;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Permits of the in-flight (appended but not yet persisted) WAL bytes, accounted per tenant.
+ * <p>
+ * Each active tenant (a tenant with in-flight bytes) has a fair share of the {@link #capacity}, which is proportional
+ * to its weight. A tenant exceeding its fair share is not blocked, instead it's asked to back off by
+ * {@link #throttleTimeMs(String)}, which is the estimated time to drain its excess bytes. Appends are only blocked when
+ * the in-flight bytes reach the hard limit, which protects the broker memory from the clients ignoring the throttling.
+ */
+public class AppendPermitPool {
+    static final long MAX_THROTTLE_TIME_MS = 1000;
+    private static final long RATE_WINDOW_MS = 1000;
+
+    private final long capacity;
+    private final long hardLimit;
+    private final Map<String, Integer> weights;
+    private final Time time;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    private long inflightBytes;
+    private long activeWeight;
+
+    // the drain rate of the in-flight bytes, which is estimated from the released bytes of the last window.
+    private long windowStartMs;
+    private long windowReleasedBytes;
+    private double drainBytesPerMs = 1;
+
+    /**
+     * @param capacity  the in-flight bytes shared by the tenants.
+     * @param hardLimit the in-flight bytes which blocks the appends.
+     * @param weights   the weights of the tenants, the weight of a tenant not in it is 1.
+     */
+    public AppendPermitPool(long capacity, long hardLimit, Map<String, Integer> weights, Time time) {
+        this.capacity = capacity;
+        this.hardLimit = Math.max(capacity, hardLimit);
+        this.weights = weights;
+        this.time = time;
+        this.windowStartMs = time.milliseconds();
+    }
+
+    public AppendPermitPool(long capacity, long hardLimit, Time time) {
+        this(capacity, hardLimit, Collections.emptyMap(), time);
+    }
+
+    /**
+     * Parse the tenant weights in the format of <code>principal=weight</code>.
+     *
+     * @param name the config name, which is reported in the exception.
+     * @throws ConfigException if an entry is malformed, or its weight is not a positive integer.
+     */
+    public static Map<String, Integer> parseTenantWeights(String name, List<String> entries) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String entry : entries) {
+            int index = entry.lastIndexOf('=');
+            if (index <= 0) {
+                throw new ConfigException(name, entry, "The format should be principal=weight");
+            }
+            int weight;
+            try {
+                weight = Integer.parseInt(entry.substring(index + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new ConfigException(name, entry, "The weight should be an integer");
+            }
+            if (weight <= 0) {
+                throw new ConfigException(name, entry, "The weight should be positive");
+            }
+            weights.put(entry.substring(0, index).trim(), weight);
+        }
+        return weights;
+    }
+
+    /**
+     * Acquire the permits of the in-flight bytes, it blocks only if the hard limit is reached.
+     *
+     * @param onWait called every second while waiting.
+     * @return the permit, which should be released after the bytes are persisted.
+     */
+    public Permit acquire(String tenant, int bytes, Runnable onWait) throws InterruptedException {
+        lock.lock();
+        try {
+            // the hard limit doesn't block an append when nothing is in-flight, or a large batch would never pass.
+            while (inflightBytes > 0 && inflightBytes + bytes > hardLimit) {
+                if (!released.await(1, TimeUnit.SECONDS)) {
+                    onWait.run();
+                }
+            }
+            Tenant t = tenants.computeIfAbsent(tenant, k -> new Tenant(weights.getOrDefault(k, 1)));
+            if (t.permits++ == 0) {
+                activeWeight += t.weight;
+            }
+            t.inflightBytes += bytes;
+            inflightBytes += bytes;
+            return new Permit(tenant, bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(Permit permit) {
+        lock.lock();
+        try {
+            Tenant t = tenants.get(permit.tenant);
+            t.inflightBytes -= permit.bytes;
+            if (--t.permits == 0) {
+                activeWeight -= t.weight;
+                tenants.remove(permit.tenant);
+            }
+            inflightBytes -= permit.bytes;
+            updateDrainRate(permit.bytes);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The time the tenant should back off, 0 if it doesn't exceed its fair share or the pool isn't full.
+     */
+    public long throttleTimeMs(String tenant) {
+        lock.lock();
+        try {
+            Tenant t = tenants.get(tenant);
+            if (t == null || inflightBytes <= capacity) {
+                return 0;
+            }
+            long fairShare = capacity * t.weight / Math.max(activeWeight, 1);
+            long excessBytes = t.inflightBytes - fairShare;
+            if (excessBytes <= 0) {
+                return 0;
+            }
+            return Math.min(MAX_THROTTLE_TIME_MS, (long) Math.ceil(excessBytes / drainBytesPerMs));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long inflightBytes() {
+        lock.lock();
+        try {
+            return inflightBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int activeTenants() {
+        lock.lock();
+        try {
+            return tenants.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    private void updateDrainRate(long releasedBytes) {
+        windowReleasedBytes += releasedBytes;
+        long now = time.milliseconds();
+        long elapsed = now - windowStartMs;
+        if (elapsed >= RATE_WINDOW_MS) {
+            drainBytesPerMs = Math.max(1, (double) windowReleasedBytes / elapsed);
+            windowStartMs = now;
+            windowReleasedBytes = 0;
+        }
+    }
+
+    public static class Permit {
+        private final String tenant;
+        private final int bytes;
+
+        Permit(String tenant, int bytes) {
+            this.tenant = tenant;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Tenant {
+        final int weight;
+        int permits;
+        long inflightBytes;
+
+        Tenant(int weight) {
+            this.weight = Math.max(1, weight);
+        }
+    }
+
+    public static class TenantWeightsValidator implements ConfigDef.Validator {
+        @Override
+        public void ensureValid(String name, Object value) {
+            if (value == null) {
+                throw new ConfigException(name, null);
+            }
+            @SuppressWarnings("unchecked")
+            List<String> entries = (List<String>) value;
+            parseTenantWeights(name, entries);
+        }
+
+        @Override
+        public String toString() {
+            return "list of principal=weight with positive integer weights";
+        }
+    }
+}
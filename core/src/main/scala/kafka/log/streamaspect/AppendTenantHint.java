@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.streamaspect;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * The tenant which the appends of the current thread are accounted to in {@link AppendPermitPool}.
+ */
+public class AppendTenantHint {
+
+    public static final FastThreadLocal<String> TENANT = new FastThreadLocal<>();
+
+    /**
+     * Get the marked tenant, or null if the thread isn't marked.
+     */
+    public static String get() {
+        return TENANT.get();
+    }
+
+    public static void mark(String tenant) {
+        TENANT.set(tenant);
+    }
+
+    public static void reset() {
+        TENANT.remove();
+    }
+
+}
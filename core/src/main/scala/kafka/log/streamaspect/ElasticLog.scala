@@ -35,7 +35,7 @@ import org.apache.kafka.common.errors.OffsetOutOfRangeException
 import java.io.File
 import java.nio.ByteBuffer
 import java.util.concurrent._
-import java.util.concurrent.atomic.{AtomicLong, AtomicReference}
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicLong, AtomicReference}
 import scala.collection.mutable
 import scala.jdk.CollectionConverters._
 import scala.util.control.Breaks.{break, breakable}
@@ -96,8 +96,11 @@ class ElasticLog(val metaStream: MetaStream,
   private val _confirmOffset: AtomicReference[LogOffsetMetadata] = new AtomicReference(_nextOffsetMetadata)
   var confirmOffsetChangeListener: Option[() => Unit] = None
 
-  private val appendAckQueue = new LinkedBlockingQueue[Long]()
-  private val appendAckThread = APPEND_CALLBACK_EXECUTOR(math.abs(logIdent.hashCode % APPEND_CALLBACK_EXECUTOR.length))
+  // whether the log is queued in the append ack shard to notify the confirm offset change.
+  private val appendAckPending = new AtomicBoolean(false)
+  @volatile private var appendAckStartNanos = 0L
+  private val appendAckShard = appendAckShardOf(topicPartition)
+  private val appendAck: Runnable = () => appendCallback()
 
   // persist log meta when lazy stream real create
   streamManager.setListener((_, event) => {
@@ -177,12 +180,13 @@ class ElasticLog(val metaStream: MetaStream,
     val activeSegment = segments.activeSegment
     val startTimestamp = time.nanoseconds()
 
-    val permit = records.sizeInBytes()
-    if (!APPEND_PERMIT_SEMAPHORE.tryAcquire(permit)) {
-      while (!APPEND_PERMIT_SEMAPHORE.tryAcquire(permit, 1, TimeUnit.SECONDS)) {
-        tryAppendStatistics()
-      }
-      APPEND_PERMIT_ACQUIRE_FAIL_TIME_HIST.update((System.nanoTime() - startTimestamp) / 1000)
+    // The appends over the fair share of the tenant are throttled by the produce response, it only blocks when the
+    // hard limit is reached.
+    val permitPool = APPEND_PERMIT_POOL
+    val permit = permitPool.acquire(ElasticLog.appendTenant(topicPartition), records.sizeInBytes(), () => tryAppendStatistics())
+    val acquireTime = time.nanoseconds() - startTimestamp
+    if (acquireTime > TimeUnit.MILLISECONDS.toNanos(1)) {
+      APPEND_PERMIT_ACQUIRE_FAIL_TIME_HIST.update(acquireTime / 1000)
     }
 
     activeSegment.append(largestOffset = lastOffset, largestTimestamp = largestTimestamp,
@@ -192,7 +196,7 @@ class ElasticLog(val metaStream: MetaStream,
     updateLogEndOffset(endOffset)
     val cf = activeSegment.asInstanceOf[ElasticLogSegment].asyncLogFlush()
     cf.whenComplete((_, _) => {
-      APPEND_PERMIT_SEMAPHORE.release(permit)
+      permitPool.release(permit)
     })
     cf.thenAccept(_ => {
       APPEND_CALLBACK_TIME_HIST.update((System.nanoTime() - startTimestamp) / 1000)
@@ -211,28 +215,19 @@ class ElasticLog(val metaStream: MetaStream,
           }
         }
       }
-      if (notify) {
-        appendAckQueue.offer(endOffset)
-        appendAckThread.submit(new Runnable {
-          override def run(): Unit = {
-            try {
-              appendCallback(startNanos)
-            } catch {
-              case e: Throwable =>
-                error(s"append callback error", e)
-            }
-          }
-        })
+      // the confirm offset changes are coalesced, the log is notified once no matter how many appends are acked
+      // before the shard drains it.
+      if (notify && appendAckPending.compareAndSet(false, true)) {
+        appendAckStartNanos = startNanos
+        appendAckShard.submit(appendAck)
       }
     })
   }
 
-  private def appendCallback(startNanos: Long): Unit = {
-    // group notify
-    if (appendAckQueue.isEmpty) {
-      return
-    }
-    appendAckQueue.clear()
+  private[streamaspect] def appendCallback(): Unit = {
+    // reset before notifying, so the advances during the notification are notified again.
+    appendAckPending.set(false)
+    val startNanos = appendAckStartNanos
     confirmOffsetChangeListener.foreach(_.apply())
     APPEND_ACK_TIME_HIST.update((System.nanoTime() - startNanos) / 1000)
 
@@ -243,9 +238,9 @@ class ElasticLog(val metaStream: MetaStream,
     val lastRecordTimestamp = LAST_RECORD_TIMESTAMP.get()
     val now = System.currentTimeMillis()
     if (now - lastRecordTimestamp > 60000 && LAST_RECORD_TIMESTAMP.compareAndSet(lastRecordTimestamp, now)) {
-      val remainingPermits = APPEND_PERMIT_SEMAPHORE.availablePermits()
+      val permitPool = APPEND_PERMIT_POOL
       logger.info(s"log append cost, permitAcquireFail=${KafkaMetricsUtil.histToString(APPEND_PERMIT_ACQUIRE_FAIL_TIME_HIST)}, " +
-        s"remainingPermit=$remainingPermits/$APPEND_PERMIT, " +
+        s"inflightPermit=${permitPool.inflightBytes()}/${permitPool.capacity()}, " +
         s"append=${KafkaMetricsUtil.histToString(APPEND_TIME_HIST)}, " +
         s"callback=${KafkaMetricsUtil.histToString(APPEND_CALLBACK_TIME_HIST)}, " +
         s"ack=${KafkaMetricsUtil.histToString(APPEND_ACK_TIME_HIST)}")
@@ -418,21 +413,60 @@ class ElasticLog(val metaStream: MetaStream,
 }
 
 object ElasticLog extends Logging {
-  private val APPEND_PERMIT = 100 * 1024 * 1024
-  private val APPEND_PERMIT_SEMAPHORE = new Semaphore(APPEND_PERMIT)
+  private val DEFAULT_APPEND_PERMIT = 100 * 1024 * 1024
+  @volatile private var APPEND_PERMIT_POOL = new AppendPermitPool(DEFAULT_APPEND_PERMIT, 2L * DEFAULT_APPEND_PERMIT, Time.SYSTEM)
+  KafkaMetricsGroup.newGauge("AppendPermitInflightBytes", () => APPEND_PERMIT_POOL.inflightBytes())
+  KafkaMetricsGroup.newGauge("AppendPermitCapacity", () => APPEND_PERMIT_POOL.capacity())
+  KafkaMetricsGroup.newGauge("AppendPermitActiveTenants", () => APPEND_PERMIT_POOL.activeTenants())
 
   private val LAST_RECORD_TIMESTAMP = new AtomicLong()
   private val APPEND_PERMIT_ACQUIRE_FAIL_TIME_HIST = KafkaMetricsGroup.newHistogram("AppendPermitAcquireFailTimeNanos")
   private val APPEND_TIME_HIST = KafkaMetricsGroup.newHistogram("AppendTimeNanos")
   private val APPEND_CALLBACK_TIME_HIST = KafkaMetricsGroup.newHistogram("AppendCallbackTimeNanos")
   private val APPEND_ACK_TIME_HIST = KafkaMetricsGroup.newHistogram("AppendAckTimeNanos")
-  private val APPEND_CALLBACK_EXECUTOR: Array[ExecutorService] = new Array[ExecutorService](8)
+  @volatile private var APPEND_ACK_SHARDS = newAppendAckShards()
 
-  for (i <- APPEND_CALLBACK_EXECUTOR.indices) {
-    APPEND_CALLBACK_EXECUTOR(i) = Executors.newSingleThreadExecutor(ThreadUtils.createThreadFactory("log-append-callback-executor-" + i, true))
+  private val META_SCHEDULE_EXECUTOR = Executors.newScheduledThreadPool(1, ThreadUtils.createThreadFactory("log-meta-schedule-executor", true))
+
+  private def newAppendAckShards(): Array[AppendAckShard] = {
+    Array.tabulate(math.max(8, Runtime.getRuntime.availableProcessors()))(i => {
+      val queueTimeHist = KafkaMetricsGroup.newHistogram("AppendCallbackQueueTimeMicros", tags = Map("executor" -> i.toString))
+      new AppendAckShard(i, micros => queueTimeHist.update(micros))
+    })
   }
 
-  private val META_SCHEDULE_EXECUTOR = Executors.newScheduledThreadPool(1, ThreadUtils.createThreadFactory("log-meta-schedule-executor", true))
+  private def appendAckShardOf(topicPartition: TopicPartition): AppendAckShard = {
+    val shards = APPEND_ACK_SHARDS
+    shards(math.abs(topicPartition.hashCode % shards.length))
+  }
+
+  /**
+   * Run the pending append acks and stop the shards. The logs created afterwards are acked by new shards.
+   */
+  def shutdownAppendAckShards(): Unit = {
+    val shards = APPEND_ACK_SHARDS
+    APPEND_ACK_SHARDS = newAppendAckShards()
+    shards.foreach(_.close())
+  }
+
+  def setupAppendPermits(capacity: Long, hardLimit: Long, tenantWeights: java.util.Map[String, Integer]): Unit = {
+    APPEND_PERMIT_POOL = new AppendPermitPool(capacity, hardLimit, tenantWeights, Time.SYSTEM)
+  }
+
+  /**
+   * The tenant which the appends are accounted to, it's the principal marked by [[AppendTenantHint]] or the topic.
+   */
+  private def appendTenant(topicPartition: TopicPartition): String = {
+    val tenant = AppendTenantHint.get()
+    if (tenant != null) tenant else "topic:" + topicPartition.topic
+  }
+
+  /**
+   * The time the tenant should back off to keep its in-flight append bytes within its fair share.
+   */
+  def appendThrottleTimeMs(tenant: String): Long = {
+    APPEND_PERMIT_POOL.throttleTimeMs(tenant)
+  }
 
   private def formatStreamKey(namespace: String, topicPartition: TopicPartition, topicId: Uuid): String = namespace + "/" + topicId.toString + "/" + topicPartition.partition()
 
@@ -447,7 +481,8 @@ object ElasticLog extends Logging {
             producerStateManagerConfig: ProducerStateManagerConfig,
             topicId: Uuid,
             leaderEpoch: Long,
-            executorService: ExecutorService): ElasticLog = {
+            executorService: ExecutorService,
+            readAheadConfig: ReadAheadPipeline.Config = ReadAheadPipeline.Config.DEFAULT): ElasticLog = {
     val logIdent = s"[ElasticLog partition=$topicPartition epoch=$leaderEpoch] "
 
     val key = formatStreamKey(namespace, topicPartition, topicId)
@@ -524,7 +559,7 @@ object ElasticLog extends Logging {
 
       val logMeta: ElasticLogMeta = metaMap.get(MetaStream.LOG_META_KEY).map(m => m.asInstanceOf[ElasticLogMeta]).getOrElse(new ElasticLogMeta())
       logStreamManager = new ElasticLogStreamManager(logMeta.getStreamMap, client.streamClient(), config.replicationFactor, leaderEpoch)
-      val streamSliceManager = new ElasticStreamSliceManager(logStreamManager, executorService)
+      val streamSliceManager = new ElasticStreamSliceManager(logStreamManager, executorService, readAheadConfig)
 
       val logSegmentManager = new ElasticLogSegmentManager(metaStream, logStreamManager, logIdent = logIdent)
 
@@ -694,4 +729,4 @@ object ElasticLog extends Logging {
     info(s"${logIdent}Created a new log segment with baseOffset = $baseOffset, suffix = $suffix")
     (segment, metaSaveCf)
   }
-}
\ No newline at end of file
+}
@@ -18,17 +18,15 @@
 package kafka.log.streamaspect;
 
 import com.automq.stream.utils.FutureUtil;
-import io.netty.buffer.CompositeByteBuf;
-import io.netty.buffer.Unpooled;
 import com.automq.stream.api.FetchResult;
 import com.automq.stream.api.RecordBatchWithContext;
 import org.apache.kafka.common.network.TransferableChannel;
 import org.apache.kafka.common.record.AbstractRecords;
 import org.apache.kafka.common.record.ConvertedRecords;
-import org.apache.kafka.common.record.DefaultRecordBatch;
 import org.apache.kafka.common.record.FileRecords;
 import org.apache.kafka.common.record.LogInputStream;
 import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MutableRecordBatch;
 import org.apache.kafka.common.record.PooledResource;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.RecordBatch;
@@ -36,6 +34,7 @@ import org.apache.kafka.common.record.RecordBatchIterator;
 import org.apache.kafka.common.record.Records;
 import org.apache.kafka.common.record.RecordsUtil;
 import org.apache.kafka.common.utils.AbstractIterator;
+import org.apache.kafka.common.utils.CloseableIterator;
 import org.apache.kafka.common.utils.Time;
 import org.apache.kafka.common.utils.Utils;
 import org.slf4j.Logger;
@@ -43,18 +42,27 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 public class ElasticLogFileRecords {
     private static final Logger LOGGER = LoggerFactory.getLogger(ElasticLogFileRecords.class);
+    private static final int MAX_FETCH_CHUNK_SIZE = 1024 * 1024;
+    // the max count of the idle read-ahead pipelines kept for the readers of a segment.
+    private static final int MAX_IDLE_PIPELINES = 4;
+    private static final long PIPELINE_IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
     protected final AtomicInteger size;
     protected final Iterable<RecordBatch> batches;
     private final ElasticStreamSlice streamSlice;
@@ -65,11 +73,23 @@ public class ElasticLogFileRecords {
     // Inflight append result.
     private volatile CompletableFuture<?> lastAppend;
     private volatile ElasticResourceStatus status;
+    private final ReadAheadPipeline.Config readAheadConfig;
+    private final ReadAheadPipeline.Stats readAheadStats;
+    // The read-ahead pipelines of the readers between two reads, keyed by the offset the next read is expected to
+    // start from, so the chunks read ahead for a read are consumed by the next read of the reader.
+    private final LinkedHashMap<Long, IdlePipeline> idlePipelines = new LinkedHashMap<>();
 
 
     public ElasticLogFileRecords(ElasticStreamSlice streamSlice, long baseOffset, int size) {
+        this(streamSlice, baseOffset, size, ReadAheadPipeline.Config.DEFAULT, new ReadAheadPipeline.Stats());
+    }
+
+    public ElasticLogFileRecords(ElasticStreamSlice streamSlice, long baseOffset, int size,
+                                 ReadAheadPipeline.Config readAheadConfig, ReadAheadPipeline.Stats readAheadStats) {
         this.baseOffset = baseOffset;
         this.streamSlice = streamSlice;
+        this.readAheadConfig = readAheadConfig;
+        this.readAheadStats = readAheadStats;
         long nextOffset = streamSlice.nextOffset();
         // Note that size is generally used to
         // 1) show the physical size of a segment. In these cases, size is refered to decide whether to roll a new
@@ -121,31 +141,119 @@ public class ElasticLogFileRecords {
         if (startOffset >= endOffset || maxSize <= 0) {
             return CompletableFuture.completedFuture(new LinkedList<>());
         }
+        ReadAheadPipeline pipeline = borrowPipeline(startOffset, endOffset, Math.min(maxSize, MAX_FETCH_CHUNK_SIZE));
+        LinkedList<FetchResult> results = new LinkedList<>();
+        return fetch0(pipeline, maxSize, results)
+                .whenComplete((rst, ex) -> {
+                    if (ex != null) {
+                        pipeline.close();
+                        results.forEach(FetchResult::free);
+                    } else {
+                        returnPipeline(pipeline);
+                    }
+                });
+    }
 
-        int adjustedMaxSize = Math.min(maxSize, 1024 * 1024);
-        return streamSlice.fetch(startOffset, endOffset, adjustedMaxSize)
+    /**
+     * Take the idle pipeline which expects the read from the start offset, or create a new one if there is none.
+     */
+    private ReadAheadPipeline borrowPipeline(long startOffset, long endOffset, int chunkBytes) {
+        ReadAheadPipeline pipeline = null;
+        synchronized (idlePipelines) {
+            expireIdlePipelines();
+            IdlePipeline idle = idlePipelines.remove(startOffset);
+            if (idle != null) {
+                // The chunks are sized for the reader's max size, and the end offset may be lower for another
+                // isolation level.
+                if (idle.pipeline.chunkBytes() == chunkBytes && idle.pipeline.endOffset() <= endOffset) {
+                    pipeline = idle.pipeline;
+                } else {
+                    idle.pipeline.close();
+                }
+            }
+        }
+        if (pipeline != null) {
+            pipeline.extend(endOffset);
+            return pipeline;
+        }
+        // The pipeline reads ahead across the reads of the reader, and the read-ahead bytes are bounded by the window
+        // and the budget rather than the max size of a read.
+        return new ReadAheadPipeline(streamSlice, readAheadConfig, startOffset, endOffset, chunkBytes,
+                avgRecordBytes(), Long.MAX_VALUE, Function.identity(), readAheadStats);
+    }
+
+    private void returnPipeline(ReadAheadPipeline pipeline) {
+        synchronized (idlePipelines) {
+            if (status == ElasticResourceStatus.CLOSED) {
+                pipeline.close();
+                return;
+            }
+            // remove before put, so the pipelines are kept in the order of idle time.
+            IdlePipeline old = idlePipelines.remove(pipeline.nextOffset());
+            if (old != null) {
+                old.pipeline.close();
+            }
+            idlePipelines.put(pipeline.nextOffset(), new IdlePipeline(pipeline, System.nanoTime()));
+            if (idlePipelines.size() > MAX_IDLE_PIPELINES) {
+                Iterator<IdlePipeline> it = idlePipelines.values().iterator();
+                it.next().pipeline.close();
+                it.remove();
+            }
+        }
+    }
+
+    // The pipelines of the readers that are gone still hold the read-ahead budget, release them after a while.
+    private void expireIdlePipelines() {
+        long now = System.nanoTime();
+        Iterator<IdlePipeline> it = idlePipelines.values().iterator();
+        while (it.hasNext()) {
+            IdlePipeline idle = it.next();
+            if (now - idle.idleSinceNanos < PIPELINE_IDLE_TIMEOUT_NANOS) {
+                // the pipelines are in the order of idle time.
+                break;
+            }
+            idle.pipeline.close();
+            it.remove();
+        }
+    }
+
+    private void closeIdlePipelines() {
+        synchronized (idlePipelines) {
+            idlePipelines.values().forEach(idle -> idle.pipeline.close());
+            idlePipelines.clear();
+        }
+    }
+
+    private CompletableFuture<LinkedList<FetchResult>> fetch0(ReadAheadPipeline pipeline, int maxSize, LinkedList<FetchResult> results) {
+        if (maxSize <= 0) {
+            return CompletableFuture.completedFuture(results);
+        }
+        return pipeline.next()
                 .thenCompose(rst -> {
-                    long nextFetchOffset = startOffset;
+                    if (rst == null) {
+                        return CompletableFuture.completedFuture(results);
+                    }
+                    results.add(rst);
                     int readSize = 0;
                     for (RecordBatchWithContext recordBatchWithContext : rst.recordBatchList()) {
-                        if (recordBatchWithContext.lastOffset() > nextFetchOffset) {
-                            nextFetchOffset = recordBatchWithContext.lastOffset();
-                        } else {
-                            LOGGER.error("Invalid record batch, last offset {} is less than next offset {}",
-                                    recordBatchWithContext.lastOffset(), nextFetchOffset);
-                            throw new IllegalStateException();
-                        }
                         readSize += recordBatchWithContext.rawPayload().remaining();
                     }
-                    return fetch0(nextFetchOffset, endOffset, maxSize - readSize)
-                            .thenApply(rstList -> {
-                                // add to first since we need to reverse the order.
-                                rstList.addFirst(rst);
-                                return rstList;
-                            });
+                    return fetch0(pipeline, maxSize - readSize, results);
                 });
     }
 
+    /**
+     * The estimated average record size of the segment, or 0 if the segment is empty.
+     */
+    private long avgRecordBytes() {
+        long records = nextOffset.get() - baseOffset;
+        return records > 0 ? size.get() / records : 0;
+    }
+
+    public ReadAheadPipeline.Stats readAheadStats() {
+        return readAheadStats;
+    }
+
     /**
      * Append records to segment.
      * Note that lastOffset is the expected value of nextOffset after append. lastOffset = (the real last offset of the
@@ -211,22 +319,86 @@ public class ElasticLogFileRecords {
 
     public void close() {
         status = ElasticResourceStatus.CLOSED;
+        closeIdlePipelines();
     }
 
     public void closeHandlers() {
         status = ElasticResourceStatus.CLOSED;
+        closeIdlePipelines();
     }
 
     public FileRecords.TimestampAndOffset searchForTimestamp(long targetTimestamp, long startingOffset) {
-        for (RecordBatch batch : batchesFrom(startingOffset)) {
-            if (batch.maxTimestamp() >= targetTimestamp) {
-                // We found a message
-                for (Record record : batch) {
-                    long timestamp = record.timestamp();
-                    if (timestamp >= targetTimestamp && record.offset() >= startingOffset)
-                        return new FileRecords.TimestampAndOffset(timestamp, record.offset(),
-                                maybeLeaderEpoch(batch.partitionLeaderEpoch()));
-                }
+        try (CloseableIterator<RecordBatch> iterator = pooledBatchIterator(startingOffset, Long.MAX_VALUE, Integer.MAX_VALUE)) {
+            return searchForTimestamp(targetTimestamp, () -> iterator, startingOffset);
+        }
+    }
+
+    /**
+     * Search for the first message whose timestamp is larger than or equal to the target timestamp from the
+     * startingOffset without blocking the caller.
+     */
+    public CompletableFuture<FileRecords.TimestampAndOffset> searchForTimestampAsync(long targetTimestamp, long startingOffset) {
+        return searchForTimestampAsync(targetTimestamp, startingOffset, Long.MAX_VALUE, StreamSegmentInputStream.FETCH_BATCH_SIZE);
+    }
+
+    /**
+     * Search for the first message whose timestamp is larger than or equal to the target timestamp in
+     * [startingOffset, endOffset) without blocking the caller. The range is fetched with the size hint per request.
+     */
+    public CompletableFuture<FileRecords.TimestampAndOffset> searchForTimestampAsync(long targetTimestamp, long startingOffset, long endOffset, int sizeHint) {
+        long nextFetchOffset = startingOffset - baseOffset;
+        long fetchEndOffset = Utils.min(committedOffset.get(), endOffset) - baseOffset;
+        return searchForTimestamp0(targetTimestamp, startingOffset, nextFetchOffset, fetchEndOffset, Math.max(sizeHint, 1));
+    }
+
+    private CompletableFuture<FileRecords.TimestampAndOffset> searchForTimestamp0(long targetTimestamp, long startingOffset,
+                                                                                   long startOffset, long endOffset, int fetchSize) {
+        if (startOffset >= endOffset) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return streamSlice.fetch(startOffset, endOffset, fetchSize)
+                .thenCompose(rst -> {
+                    long nextFetchOffset = startOffset;
+                    try {
+                        for (RecordBatchWithContext recordBatchWithContext : rst.recordBatchList()) {
+                            // the batches are searched before the fetch result is freed, so it's safe to read the pooled buffers.
+                            for (RecordBatch batch : MemoryRecords.readableRecords(recordBatchWithContext.rawPayload()).batches()) {
+                                FileRecords.TimestampAndOffset timestampAndOffset = searchForTimestamp(targetTimestamp, batch, startingOffset);
+                                if (timestampAndOffset != null) {
+                                    return CompletableFuture.completedFuture(timestampAndOffset);
+                                }
+                            }
+                            nextFetchOffset = recordBatchWithContext.lastOffset();
+                        }
+                    } finally {
+                        rst.free();
+                    }
+                    if (nextFetchOffset == startOffset) {
+                        // nothing more to read
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return searchForTimestamp0(targetTimestamp, startingOffset, nextFetchOffset, endOffset, fetchSize);
+                });
+    }
+
+    private FileRecords.TimestampAndOffset searchForTimestamp(long targetTimestamp, Iterable<RecordBatch> batches, long startingOffset) {
+        for (RecordBatch batch : batches) {
+            FileRecords.TimestampAndOffset timestampAndOffset = searchForTimestamp(targetTimestamp, batch, startingOffset);
+            if (timestampAndOffset != null) {
+                return timestampAndOffset;
+            }
+        }
+        return null;
+    }
+
+    private FileRecords.TimestampAndOffset searchForTimestamp(long targetTimestamp, RecordBatch batch, long startingOffset) {
+        if (batch.maxTimestamp() >= targetTimestamp) {
+            // We found a message
+            for (Record record : batch) {
+                long timestamp = record.timestamp();
+                if (timestamp >= targetTimestamp && record.offset() >= startingOffset)
+                    return new FileRecords.TimestampAndOffset(timestamp, record.offset(),
+                            maybeLeaderEpoch(batch.partitionLeaderEpoch()));
             }
         }
         return null;
@@ -248,12 +420,15 @@ public class ElasticLogFileRecords {
         long offsetOfMaxTimestamp = -1L;
         int leaderEpochOfMaxTimestamp = RecordBatch.NO_PARTITION_LEADER_EPOCH;
 
-        for (RecordBatch batch : batchesFrom(startOffset)) {
-            long timestamp = batch.maxTimestamp();
-            if (timestamp > maxTimestamp) {
-                maxTimestamp = timestamp;
-                offsetOfMaxTimestamp = batch.lastOffset();
-                leaderEpochOfMaxTimestamp = batch.partitionLeaderEpoch();
+        try (CloseableIterator<RecordBatch> iterator = pooledBatchIterator(startOffset, Long.MAX_VALUE, Integer.MAX_VALUE)) {
+            while (iterator.hasNext()) {
+                RecordBatch batch = iterator.next();
+                long timestamp = batch.maxTimestamp();
+                if (timestamp > maxTimestamp) {
+                    maxTimestamp = timestamp;
+                    offsetOfMaxTimestamp = batch.lastOffset();
+                    leaderEpochOfMaxTimestamp = batch.partitionLeaderEpoch();
+                }
             }
         }
         return new FileRecords.TimestampAndOffset(maxTimestamp, offsetOfMaxTimestamp,
@@ -269,23 +444,49 @@ public class ElasticLogFileRecords {
     }
 
     protected RecordBatchIterator<RecordBatch> batchIterator(long startOffset, long maxOffset, int fetchSize) {
-        LogInputStream<RecordBatch> inputStream = new StreamSegmentInputStream(this, startOffset, maxOffset, fetchSize);
+        LogInputStream<RecordBatch> inputStream = new StreamSegmentInputStream(this, startOffset, maxOffset, fetchSize, false);
         return new RecordBatchIterator<>(inputStream);
     }
 
+    /**
+     * Iterate the batches over the fetched pooled buffers without copying them to heap, which is used by the scans
+     * such as recovery and log cleaning.
+     * <p>
+     * A batch is only valid until the iterator advances, the caller must not hold the batch or its records after that.
+     * The buffers are released when the iterator is exhausted or closed, so the iterator must be closed if it's not
+     * exhausted.
+     */
+    public CloseableIterator<RecordBatch> pooledBatchIterator(long startOffset, long maxOffset, int fetchSize) {
+        return new PooledBatchIterator(new StreamSegmentInputStream(this, startOffset, maxOffset, fetchSize, true));
+    }
+
+    /**
+     * Records backed by the payloads of the fetch results. The payloads are neither copied nor flattened: the batches
+     * are iterated payload by payload, and {@link #writeTo} gathers the payloads to the channel directly.
+     * <p>
+     * The payloads are freed by {@link #release}, the records cannot be read after that.
+     */
     public static class PooledMemoryRecords extends AbstractRecords implements PooledResource {
         private final List<FetchResult> fetchResults;
-        private final MemoryRecords memoryRecords;
+        private final ByteBuffer[] buffers;
+        private final int sizeInBytes;
+        private volatile boolean released;
 
         private PooledMemoryRecords(List<FetchResult> fetchResults) {
             this.fetchResults = fetchResults;
-            CompositeByteBuf compositeByteBuf = Unpooled.compositeBuffer();
+            List<ByteBuffer> buffers = new ArrayList<>();
+            int sizeInBytes = 0;
             for (FetchResult fetchResult : fetchResults) {
                 for (RecordBatchWithContext recordBatchWithContext : fetchResult.recordBatchList()) {
-                    compositeByteBuf.addComponent(true, Unpooled.wrappedBuffer(recordBatchWithContext.rawPayload()));
+                    ByteBuffer buffer = recordBatchWithContext.rawPayload().duplicate();
+                    if (buffer.hasRemaining()) {
+                        buffers.add(buffer);
+                        sizeInBytes += buffer.remaining();
+                    }
                 }
             }
-            this.memoryRecords = MemoryRecords.readableRecords(compositeByteBuf.nioBuffer());
+            this.buffers = buffers.toArray(new ByteBuffer[0]);
+            this.sizeInBytes = sizeInBytes;
         }
 
         public static PooledMemoryRecords of(List<FetchResult> fetchResults) {
@@ -294,49 +495,120 @@ public class ElasticLogFileRecords {
 
         @Override
         public int sizeInBytes() {
-            return memoryRecords.sizeInBytes();
+            return sizeInBytes;
         }
 
         @Override
-        public Iterable<? extends RecordBatch> batches() {
-            return memoryRecords.batches();
+        public Iterable<MutableRecordBatch> batches() {
+            return this::batchIterator;
         }
 
         @Override
-        public AbstractIterator<? extends RecordBatch> batchIterator() {
-            return memoryRecords.batchIterator();
+        public AbstractIterator<MutableRecordBatch> batchIterator() {
+            ensureNotReleased();
+            // A payload is the records of one append, so a batch never spans payloads.
+            return new AbstractIterator<MutableRecordBatch>() {
+                private int nextBuffer = 0;
+                private Iterator<MutableRecordBatch> current = Collections.emptyIterator();
+
+                @Override
+                protected MutableRecordBatch makeNext() {
+                    while (!current.hasNext()) {
+                        if (nextBuffer >= buffers.length) {
+                            return allDone();
+                        }
+                        current = MemoryRecords.readableRecords(buffers[nextBuffer++]).batchIterator();
+                    }
+                    return current.next();
+                }
+            };
         }
 
         @Override
         public ConvertedRecords<? extends Records> downConvert(byte toMagic, long firstOffset, Time time) {
-            return memoryRecords.downConvert(toMagic, firstOffset, time);
+            return RecordsUtil.downConvert(batches(), toMagic, firstOffset, time);
         }
 
         @Override
         public long writeTo(TransferableChannel channel, long position, int length) throws IOException {
-            return memoryRecords.writeTo(channel, position, length);
+            if (position > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("position should not be greater than Integer.MAX_VALUE: " + position);
+            if (position + length > sizeInBytes)
+                throw new IllegalArgumentException("position+length should not be greater than sizeInBytes, position: "
+                        + position + ", length: " + length + ", sizeInBytes: " + sizeInBytes);
+            ensureNotReleased();
+            return channel.write(slices((int) position, length));
+        }
+
+        private void ensureNotReleased() {
+            if (released) {
+                throw new IllegalStateException("The pooled records are already released");
+            }
+        }
+
+        /**
+         * Get the views of the payloads in [position, position + length).
+         */
+        private ByteBuffer[] slices(int position, int length) {
+            List<ByteBuffer> slices = new ArrayList<>(buffers.length);
+            int bufferStart = 0;
+            int end = position + length;
+            for (ByteBuffer buffer : buffers) {
+                int bufferEnd = bufferStart + buffer.remaining();
+                if (bufferEnd > position && bufferStart < end) {
+                    ByteBuffer slice = buffer.duplicate();
+                    slice.position(buffer.position() + Math.max(position - bufferStart, 0));
+                    slice.limit(buffer.position() + Math.min(end, bufferEnd) - bufferStart);
+                    slices.add(slice);
+                }
+                if (bufferEnd >= end) {
+                    break;
+                }
+                bufferStart = bufferEnd;
+            }
+            return slices.toArray(new ByteBuffer[0]);
         }
 
         @Override
-        public void release() {
+        public synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
             fetchResults.forEach(FetchResult::free);
             fetchResults.clear();
         }
     }
 
+    private static class IdlePipeline {
+        final ReadAheadPipeline pipeline;
+        final long idleSinceNanos;
+
+        IdlePipeline(ReadAheadPipeline pipeline, long idleSinceNanos) {
+            this.pipeline = pipeline;
+            this.idleSinceNanos = idleSinceNanos;
+        }
+    }
+
     static class StreamSegmentInputStream implements LogInputStream<RecordBatch> {
         private static final int FETCH_BATCH_SIZE = 64 * 1024;
         private final ElasticLogFileRecords elasticLogFileRecords;
         private final Queue<RecordBatch> remaining = new LinkedList<>();
         private final int maxSize;
         private final long endOffset;
+        // whether the batches are returned over the pooled buffers.
+        private final boolean pooled;
         private long nextFetchOffset;
         private int readSize;
+        private ReadAheadPipeline pipeline;
+        // the fetch result which backs the remaining batches in pooled mode.
+        private FetchResult current;
 
 
-        public StreamSegmentInputStream(ElasticLogFileRecords elasticLogFileRecords, long startOffset, long maxOffset, int maxSize) {
+        public StreamSegmentInputStream(ElasticLogFileRecords elasticLogFileRecords, long startOffset, long maxOffset, int maxSize, boolean pooled) {
             this.elasticLogFileRecords = elasticLogFileRecords;
             this.maxSize = maxSize;
+            this.pooled = pooled;
             this.nextFetchOffset = startOffset - elasticLogFileRecords.baseOffset;
             this.endOffset = Utils.min(elasticLogFileRecords.committedOffset.get(), maxOffset) - elasticLogFileRecords.baseOffset;
         }
@@ -349,52 +621,185 @@ public class ElasticLogFileRecords {
                 if (recordBatch != null) {
                     return recordBatch;
                 }
+                // all the batches of the current fetch result are consumed.
+                freeCurrent();
                 if (readSize > maxSize || nextFetchOffset >= endOffset) {
+                    close();
                     return null;
                 }
                 try {
-                    FetchResult rst = elasticLogFileRecords.streamSlice.fetch(nextFetchOffset, endOffset, Math.min(maxSize - readSize, FETCH_BATCH_SIZE)).get();
-                    rst.recordBatchList().forEach(streamRecord -> {
-                        try {
-                            ByteBuffer buf = streamRecord.rawPayload();
-                            if (buf.isDirect()) {
-                                ByteBuffer heapBuf = ByteBuffer.allocate(buf.remaining());
-                                heapBuf.put(buf);
-                                heapBuf.flip();
-                                buf = heapBuf;
-                            }
-                            readSize += buf.remaining();
-                            for (RecordBatch r : MemoryRecords.readableRecords(buf).batches()) {
-                                remaining.offer(r);
-                                nextFetchOffset = r.lastOffset() - elasticLogFileRecords.baseOffset + 1;
-                            }
-                        } catch (Throwable e) {
-                            ElasticStreamSlice slice = elasticLogFileRecords.streamSlice;
-                            byte[] bytes = new byte[streamRecord.rawPayload().remaining()];
-                            streamRecord.rawPayload().get(bytes);
-                            LOGGER.error("next batch parse error, stream={} baseOffset={} payload={}", slice.stream().streamId(), slice.sliceRange().start() + streamRecord.baseOffset(), bytes);
-                            throw new RuntimeException(e);
-                        }
-                    });
-                    rst.free();
+                    FetchResult rst = pipeline().next().get();
+                    if (rst == null) {
+                        close();
+                        return null;
+                    }
+                    current = rst;
+                    rst.recordBatchList().forEach(this::parse);
+                    if (!pooled) {
+                        freeCurrent();
+                    }
                     if (remaining.isEmpty()) {
+                        close();
                         return null;
                     }
                 } catch (Throwable e) {
+                    close();
                     throw new IOException(e);
                 }
             }
         }
+
+        private ReadAheadPipeline pipeline() {
+            if (pipeline == null) {
+                // In copy mode, the chunks are copied to heap once fetched, so the read-ahead chunks won't hold
+                // the pooled buffers if the iteration is abandoned.
+                pipeline = new ReadAheadPipeline(elasticLogFileRecords.streamSlice, elasticLogFileRecords.readAheadConfig,
+                        nextFetchOffset, endOffset, FETCH_BATCH_SIZE,
+                        elasticLogFileRecords.avgRecordBytes(), maxSize,
+                        pooled ? Function.identity() : StreamSegmentInputStream::copyToHeap,
+                        elasticLogFileRecords.readAheadStats);
+            }
+            return pipeline;
+        }
+
+        private void parse(RecordBatchWithContext streamRecord) {
+            try {
+                ByteBuffer buf = streamRecord.rawPayload();
+                readSize += buf.remaining();
+                for (RecordBatch r : MemoryRecords.readableRecords(buf).batches()) {
+                    remaining.offer(r);
+                    nextFetchOffset = r.lastOffset() - elasticLogFileRecords.baseOffset + 1;
+                }
+            } catch (Throwable e) {
+                ElasticStreamSlice slice = elasticLogFileRecords.streamSlice;
+                byte[] bytes = new byte[streamRecord.rawPayload().remaining()];
+                streamRecord.rawPayload().get(bytes);
+                LOGGER.error("next batch parse error, stream={} baseOffset={} payload={}", slice.stream().streamId(), slice.sliceRange().start() + streamRecord.baseOffset(), bytes);
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Release the fetched buffers and the in-flight read-ahead chunks.
+         */
+        public void close() {
+            remaining.clear();
+            freeCurrent();
+            if (pipeline != null) {
+                pipeline.close();
+                pipeline = null;
+            }
+        }
+
+        private void freeCurrent() {
+            if (current != null) {
+                current.free();
+                current = null;
+            }
+        }
+
+        /**
+         * Copy the direct payloads to heap and free the fetch result.
+         */
+        private static FetchResult copyToHeap(FetchResult rst) {
+            List<RecordBatchWithContext> records = new ArrayList<>(rst.recordBatchList().size());
+            try {
+                for (RecordBatchWithContext record : rst.recordBatchList()) {
+                    records.add(record.rawPayload().isDirect() ? new HeapRecordBatchWithContext(record) : record);
+                }
+            } finally {
+                rst.free();
+            }
+            return new FetchResult() {
+                @Override
+                public List<RecordBatchWithContext> recordBatchList() {
+                    return records;
+                }
+
+                @Override
+                public void free() {
+                }
+            };
+        }
+    }
+
+    static class PooledBatchIterator extends RecordBatchIterator<RecordBatch> implements CloseableIterator<RecordBatch> {
+        private final StreamSegmentInputStream inputStream;
+
+        PooledBatchIterator(StreamSegmentInputStream inputStream) {
+            super(inputStream);
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public void close() {
+            inputStream.close();
+        }
+    }
+
+    static class HeapRecordBatchWithContext implements RecordBatchWithContext {
+        private final long baseOffset;
+        private final long lastOffset;
+        private final int count;
+        private final long baseTimestamp;
+        private final Map<String, String> properties;
+        private final ByteBuffer rawPayload;
+
+        HeapRecordBatchWithContext(RecordBatchWithContext record) {
+            this.baseOffset = record.baseOffset();
+            this.lastOffset = record.lastOffset();
+            this.count = record.count();
+            this.baseTimestamp = record.baseTimestamp();
+            this.properties = record.properties();
+            ByteBuffer payload = record.rawPayload().duplicate();
+            this.rawPayload = ByteBuffer.allocate(payload.remaining());
+            this.rawPayload.put(payload);
+            this.rawPayload.flip();
+        }
+
+        @Override
+        public long baseOffset() {
+            return baseOffset;
+        }
+
+        @Override
+        public long lastOffset() {
+            return lastOffset;
+        }
+
+        @Override
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public long baseTimestamp() {
+            return baseTimestamp;
+        }
+
+        @Override
+        public Map<String, String> properties() {
+            return properties;
+        }
+
+        @Override
+        public ByteBuffer rawPayload() {
+            return rawPayload.duplicate();
+        }
     }
 
-    public static class BatchIteratorRecordsAdaptor extends AbstractRecords {
+    /**
+     * The records read without {@link ReadManualReleaseHint}. They're iterated batch by batch until they're loaded as a
+     * whole, e.g. to get the size, and the loaded payloads are kept as they are until the records are released.
+     */
+    public static class BatchIteratorRecordsAdaptor extends AbstractRecords implements PooledResource {
         private final ElasticLogFileRecords elasticLogFileRecords;
         // This is the offset in Kafka layer.
         private final long startOffset;
         private final long maxOffset;
         private final int fetchSize;
         private int sizeInBytes = -1;
-        private MemoryRecords memoryRecords;
+        private Records records;
         // iterator last record batch exclusive last offset.
         private long lastOffset = -1;
 
@@ -418,11 +823,11 @@ public class ElasticLogFileRecords {
 
         @Override
         public Iterable<? extends RecordBatch> batches() {
-            if (memoryRecords == null) {
+            if (records == null) {
                 Iterator<RecordBatch> iterator = elasticLogFileRecords.batchIterator(startOffset, maxOffset, fetchSize);
                 return (Iterable<RecordBatch>) () -> iterator;
             } else {
-                return memoryRecords.batches();
+                return records.batches();
             }
         }
 
@@ -440,7 +845,14 @@ public class ElasticLogFileRecords {
         public long writeTo(TransferableChannel channel, long position, int length) throws IOException {
             // only use in RecordsSend which send Records to network. usually the size won't be large.
             ensureAllLoaded();
-            return memoryRecords.writeTo(channel, position, length);
+            return records.writeTo(channel, position, length);
+        }
+
+        @Override
+        public void release() {
+            if (records instanceof PooledResource) {
+                ((PooledResource) records).release();
+            }
         }
 
         public long lastOffset() throws IOException {
@@ -458,13 +870,10 @@ public class ElasticLogFileRecords {
             } catch (Throwable t) {
                 throw new IOException(FutureUtil.cause(t));
             }
-            sizeInBytes = 0;
-            CompositeByteBuf allRecordsBuf = Unpooled.compositeBuffer();
+            this.records = records != null ? records : MemoryRecords.EMPTY;
+            sizeInBytes = this.records.sizeInBytes();
             RecordBatch lastBatch = null;
-            for (RecordBatch batch : records.batches()) {
-                sizeInBytes += batch.sizeInBytes();
-                ByteBuffer buffer = ((DefaultRecordBatch) batch).buffer().duplicate();
-                allRecordsBuf.addComponent(true, Unpooled.wrappedBuffer(buffer));
+            for (RecordBatch batch : this.records.batches()) {
                 lastBatch = batch;
             }
             if (lastBatch != null) {
@@ -472,7 +881,6 @@ public class ElasticLogFileRecords {
             } else {
                 lastOffset = startOffset;
             }
-            memoryRecords = MemoryRecords.readableRecords(allRecordsBuf.nioBuffer());
         }
     }
 
@@ -33,7 +33,8 @@ import java.io.File
 import java.util.concurrent.{ConcurrentHashMap, ConcurrentMap, ThreadPoolExecutor}
 import scala.jdk.CollectionConverters.ConcurrentMapHasAsScala
 
-class ElasticLogManager(val client: Client) extends Logging {
+class ElasticLogManager(val client: Client,
+                        readAheadConfig: ReadAheadPipeline.Config = ReadAheadPipeline.Config.DEFAULT) extends Logging {
   this.logIdent = s"[ElasticLogManager] "
   private val elasticLogs = new ConcurrentHashMap[TopicPartition, ElasticLog]()
   private val executorService = new ThreadPoolExecutor(1, 8, 0L, java.util.concurrent.TimeUnit.MILLISECONDS,
@@ -61,7 +62,8 @@ class ElasticLogManager(val client: Client) extends Logging {
       override def run(): Unit = {
         // ElasticLog new is a time cost operation.
         elasticLog = ElasticLog(client, NAMESPACE, dir, config, scheduler, time, topicPartition, logDirFailureChannel,
-          numRemainingSegments, maxTransactionTimeoutMs, producerStateManagerConfig, topicId, leaderEpoch, executorService)
+          numRemainingSegments, maxTransactionTimeoutMs, producerStateManagerConfig, topicId, leaderEpoch, executorService,
+          readAheadConfig)
       }
     }, s"Failed to create elastic log for $topicPartition", this)
     elasticLogs.putIfAbsent(topicPartition, elasticLog)
@@ -146,9 +148,11 @@ object ElasticLogManager {
     val context = new Context()
     context.config = config
     context.brokerServer = broker
-    INSTANCE = Some(new ElasticLogManager(ClientFactoryProxy.get(context)))
+    INSTANCE = Some(new ElasticLogManager(ClientFactoryProxy.get(context),
+      new ReadAheadPipeline.Config(config.s3ReadAheadWindow, config.s3ReadAheadMaxBytes)))
     INSTANCE.foreach(_.startup())
     ElasticTimeIndex.setupCache(config.logDirs.head + "/" + "timeindex-cache", 100 * 1024 * 1024)
+    ElasticLog.setupAppendPermits(config.s3AppendPermitBytes, config.s3AppendPermitHardLimitBytes, config.s3AppendPermitTenantWeights)
     true
   }
 
@@ -188,5 +192,7 @@ object ElasticLogManager {
 
   def shutdownNow(): Unit = {
     INSTANCE.foreach(_.shutdownNow())
+    ElasticLog.shutdownAppendAckShards()
+    ElasticTimeIndex.closeCache()
   }
 }
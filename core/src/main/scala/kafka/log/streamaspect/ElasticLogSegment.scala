@@ -25,7 +25,7 @@ import org.apache.kafka.common.InvalidRecordException
 import org.apache.kafka.common.errors.CorruptRecordException
 import org.apache.kafka.common.record.FileRecords.{LogOffsetPosition, TimestampAndOffset}
 import org.apache.kafka.common.record.{FileRecords, MemoryRecords, RecordBatch}
-import org.apache.kafka.common.utils.Time
+import org.apache.kafka.common.utils.{CloseableIterator, Time}
 
 import java.io.File
 import java.nio.file.Path
@@ -73,6 +73,8 @@ class ElasticLogSegment(val _meta: ElasticStreamSegmentMeta,
 
   @volatile private var _maxTimestampAndOffsetSoFar: TimestampOffset = TimestampOffset.Unknown
 
+  private val timestampSummary = ElasticTimestampSummary.of(_meta.timestampSummary(), _log.sizeInBytes() == 0)
+
   def maxTimestampAndOffsetSoFar_=(timestampOffset: TimestampOffset): Unit = _maxTimestampAndOffsetSoFar = timestampOffset
 
   def maxTimestampAndOffsetSoFar: TimestampOffset = {
@@ -103,6 +105,7 @@ class ElasticLogSegment(val _meta: ElasticStreamSegmentMeta,
       if (largestTimestamp > maxTimestampSoFar) {
         maxTimestampAndOffsetSoFar = TimestampOffset(largestTimestamp, shallowOffsetOfMaxTimestamp)
       }
+      timestampSummary.onAppend(maxTimestampSoFar, largestOffset + 1, physicalPosition + appendedBytes, appendedBytes)
       // append an entry to the index (if needed)
       if (bytesSinceLastIndexEntry > indexIntervalBytes) {
         timeIndex.maybeAppend(maxTimestampSoFar, offsetOfMaxTimestampSoFar)
@@ -201,8 +204,11 @@ class ElasticLogSegment(val _meta: ElasticStreamSegmentMeta,
     var validBytes = 0
     var lastIndexEntry = 0
     maxTimestampAndOffsetSoFar = TimestampOffset.Unknown
+    timestampSummary.reset()
+    // the batches are scanned over the pooled buffers without copying them to heap.
+    val iterator = pooledBatchIterator(baseOffset)
     try {
-      for (batch <- _log.batches.asScala) {
+      for (batch <- iterator.asScala) {
         batch.ensureValid()
         // The max timestamp is exposed at the batch level, so no need to iterate the records
         if (batch.maxTimestamp > maxTimestampSoFar) {
@@ -215,6 +221,7 @@ class ElasticLogSegment(val _meta: ElasticStreamSegmentMeta,
           lastIndexEntry = validBytes
         }
         validBytes += batch.sizeInBytes()
+        timestampSummary.onAppend(maxTimestampSoFar, batch.lastOffset + 1, validBytes, batch.sizeInBytes())
 
         if (batch.magic >= RecordBatch.MAGIC_VALUE_V2) {
           leaderEpochCache.foreach { cache =>
@@ -228,6 +235,8 @@ class ElasticLogSegment(val _meta: ElasticStreamSegmentMeta,
       case e@(_: CorruptRecordException | _: InvalidRecordException) =>
         warn("Found invalid messages in log segment at byte offset %d: %s. %s"
           .format(validBytes, e.getMessage, e.getCause))
+    } finally {
+      iterator.close()
     }
     // won't have record corrupted cause truncate
     // A normally closed segment always appends the biggest timestamp ever seen into log segment, we do this as well.
@@ -304,18 +313,31 @@ class ElasticLogSegment(val _meta: ElasticStreamSegmentMeta,
     timeIdx.seal()
     _meta.time(timeIdx.stream.sliceRange)
     _meta.timeIndexLastEntry(timeIndex.lastEntry)
+    _meta.timestampSummary(timestampSummary.toData)
     txnIndex.seal()
     _meta.txn(txnIndex.stream.sliceRange)
   }
 
   protected def loadFirstBatchTimestamp(): Unit = {
     if (rollingBasedTimestamp.isEmpty) {
-      val iter = _log.batches.iterator()
-      if (iter.hasNext)
-        rollingBasedTimestamp = Some(iter.next().maxTimestamp)
+      val iter = pooledBatchIterator(baseOffset)
+      try {
+        if (iter.hasNext)
+          rollingBasedTimestamp = Some(iter.next().maxTimestamp)
+      } finally {
+        iter.close()
+      }
     }
   }
 
+  /**
+   * Iterate the batches from the start offset over the pooled buffers, see [[ElasticLogFileRecords.pooledBatchIterator]].
+   * The iterator must be closed after use.
+   */
+  def pooledBatchIterator(startOffset: Long): CloseableIterator[RecordBatch] = {
+    _log.pooledBatchIterator(startOffset, Long.MaxValue, Int.MaxValue)
+  }
+
   def timeWaitedForRoll(now: Long, messageTimestamp: Long): Long = {
     // Load the timestamp of the first message into memory
     loadFirstBatchTimestamp()
@@ -334,12 +356,38 @@ class ElasticLogSegment(val _meta: ElasticStreamSegmentMeta,
   }
 
   override def findOffsetByTimestamp(timestamp: Long, startingOffset: Long = baseOffset): Option[TimestampAndOffset] = {
-    // Get the index entry with a timestamp less than or equal to the target timestamp
-    val timestampOffset = timeIndex.lookup(timestamp)
-    // Search the timestamp
-    Option(_log.searchForTimestamp(timestamp, timestampOffset.offset))
+    findOffsetByTimestampAsync(timestamp, startingOffset).get()
   }
 
+  /**
+   * Async version of [[findOffsetByTimestamp]], the caller won't be blocked by the reads of the time index and records.
+   */
+  def findOffsetByTimestampAsync(timestamp: Long, startingOffset: Long = baseOffset): CompletableFuture[Option[TimestampAndOffset]] = {
+    // Get the range which contains the target timestamp from the in-heap summary, so we could avoid probing the remote
+    // time index.
+    val range = timestampSummary.lookup(timestamp, baseOffset, _log.nextOffset(), size)
+    val searchResult = if (range == null) {
+      // Get the index entry with a timestamp less than or equal to the target timestamp
+      timeIdx.lookupAsync(timestamp).thenCompose[TimestampAndOffset](timestampOffset => {
+        // Search the timestamp
+        _log.searchForTimestampAsync(timestamp, math.max(timestampOffset.offset, startingOffset))
+      })
+    } else {
+      val searchStartOffset = math.max(range.startOffset, startingOffset)
+      val rangeSearchResult = if (searchStartOffset < range.endOffset)
+        _log.searchForTimestampAsync(timestamp, searchStartOffset, range.endOffset, range.size)
+      else
+        CompletableFuture.completedFuture[TimestampAndOffset](null)
+      rangeSearchResult.thenCompose[TimestampAndOffset](timestampAndOffset => {
+        if (timestampAndOffset != null)
+          CompletableFuture.completedFuture(timestampAndOffset)
+        else
+          // The messages before startingOffset are excluded, so the target message may be after the range.
+          _log.searchForTimestampAsync(timestamp, math.max(range.endOffset, startingOffset))
+      })
+    }
+    searchResult.thenApply[Option[TimestampAndOffset]](timestampAndOffset => Option(timestampAndOffset))
+  }
 
   /**
    * Close this log segment
@@ -385,6 +433,7 @@ class ElasticLogSegment(val _meta: ElasticStreamSegmentMeta,
     _meta.time(timeIdx.stream.sliceRange)
     _meta.txn(txnIndex.stream.sliceRange)
     _meta.timeIndexLastEntry(timeIndex.lastEntry)
+    _meta.timestampSummary(timestampSummary.toData)
     _meta.streamSuffix(_meta.streamSuffix())
     _meta
   }
@@ -407,7 +456,8 @@ object ElasticLogSegment {
             time: Time, segmentEventListener: ElasticLogSegmentEventListener): ElasticLogSegment = {
     val baseOffset = meta.baseOffset
     val suffix = meta.streamSuffix
-    val log = new ElasticLogFileRecords(sm.loadOrCreateSlice("log" + suffix, meta.log), baseOffset, meta.logSize())
+    val log = new ElasticLogFileRecords(sm.loadOrCreateSlice("log" + suffix, meta.log), baseOffset, meta.logSize(),
+      sm.readAheadConfig(), sm.readAheadStats())
     val lastTimeIndexEntry = meta.timeIndexLastEntry().toTimestampOffset
     val timeIndex = new ElasticTimeIndex(UnifiedLog.timeIndexFile(dir, baseOffset, suffix), new StreamSliceSupplier(sm, "tim" + suffix, meta.time), baseOffset, logConfig.maxIndexSize, lastTimeIndexEntry)
     val txnIndex = new ElasticTransactionIndex(UnifiedLog.transactionIndexFile(dir, baseOffset, suffix), new StreamSliceSupplier(sm, "txn" + suffix, meta.txn), baseOffset)
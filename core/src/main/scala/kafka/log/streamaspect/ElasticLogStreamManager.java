@@ -43,6 +43,14 @@ public class ElasticLogStreamManager {
      * outer register listener
      */
     private ElasticStreamEventListener outerListener;
+    /**
+     * inner read listener for created LazyStream
+     */
+    private final LazyStreamReadListener innerReadListener = new LazyStreamReadListener();
+    /**
+     * outer register read listener
+     */
+    private volatile ElasticStreamReadListener outerReadListener;
 
     public ElasticLogStreamManager(Map<String, Long> streams, StreamClient streamClient, int replicaCount, long epoch) throws IOException {
         this.streamClient = streamClient;
@@ -53,6 +61,7 @@ public class ElasticLogStreamManager {
             long streamId = entry.getValue();
             LazyStream stream = new LazyStream(name, streamId, streamClient, replicaCount, epoch);
             stream.setListener(innerListener);
+            stream.setReadListener(innerReadListener);
             streamMap.put(name, stream);
         }
     }
@@ -63,6 +72,7 @@ public class ElasticLogStreamManager {
         }
         LazyStream lazyStream = new LazyStream(name, LazyStream.NOOP_STREAM_ID, streamClient, replicaCount, epoch);
         lazyStream.setListener(innerListener);
+        lazyStream.setReadListener(innerReadListener);
         // pre-create log and tim stream cause of their high frequency of use.
         boolean warmUp = "log".equals(name) || "tim".equals(name);
         if (warmUp) {
@@ -80,6 +90,10 @@ public class ElasticLogStreamManager {
         this.outerListener = listener;
     }
 
+    public void setReadListener(ElasticStreamReadListener listener) {
+        this.outerReadListener = listener;
+    }
+
     /**
      * Directly close all streams.
      */
@@ -93,4 +107,14 @@ public class ElasticLogStreamManager {
             Optional.ofNullable(outerListener).ifPresent(listener -> listener.onEvent(streamId, event));
         }
     }
+
+    class LazyStreamReadListener implements ElasticStreamReadListener {
+        @Override
+        public void onRead(long streamId, long bytes) {
+            ElasticStreamReadListener listener = outerReadListener;
+            if (listener != null) {
+                listener.onRead(streamId, bytes);
+            }
+        }
+    }
 }
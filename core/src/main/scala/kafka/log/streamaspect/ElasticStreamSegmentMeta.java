@@ -57,6 +57,12 @@ public class ElasticStreamSegmentMeta {
     @JsonProperty("tle")
     private TimestampOffsetData timeIndexLastEntry = new TimestampOffsetData();
 
+    /**
+     * sparse timestamp summary of the segment, null if the segment is created before the summary is introduced.
+     */
+    @JsonProperty("tss")
+    private TimestampSummaryData timestampSummary;
+
     public ElasticStreamSegmentMeta() {
     }
 
@@ -138,6 +144,14 @@ public class ElasticStreamSegmentMeta {
         this.timeIndexLastEntry = TimestampOffsetData.of(timeIndexLastEntry);
     }
 
+    public TimestampSummaryData timestampSummary() {
+        return timestampSummary;
+    }
+
+    public void timestampSummary(TimestampSummaryData timestampSummary) {
+        this.timestampSummary = timestampSummary;
+    }
+
     @Override
     public String toString() {
         return "ElasticStreamSegmentMeta{" +
@@ -150,6 +164,7 @@ public class ElasticStreamSegmentMeta {
                 ", time=" + time +
                 ", txn=" + txn +
                 ", timeIndexLastEntry=" + timeIndexLastEntry +
+                ", timestampSummary=" + timestampSummary +
                 '}';
     }
 
@@ -202,4 +217,58 @@ public class ElasticStreamSegmentMeta {
         }
     }
 
+    public static class TimestampSummaryData {
+        @JsonProperty("i")
+        private int intervalBytes;
+        @JsonProperty("b")
+        private int bytesSinceLastSample;
+        @JsonProperty("t")
+        private long[] timestamps = new long[0];
+        @JsonProperty("o")
+        private long[] offsets = new long[0];
+        @JsonProperty("p")
+        private int[] positions = new int[0];
+
+        public TimestampSummaryData() {
+        }
+
+        public static TimestampSummaryData of(int intervalBytes, int bytesSinceLastSample, long[] timestamps, long[] offsets, int[] positions) {
+            TimestampSummaryData data = new TimestampSummaryData();
+            data.intervalBytes = intervalBytes;
+            data.bytesSinceLastSample = bytesSinceLastSample;
+            data.timestamps = timestamps;
+            data.offsets = offsets;
+            data.positions = positions;
+            return data;
+        }
+
+        public int intervalBytes() {
+            return intervalBytes;
+        }
+
+        public int bytesSinceLastSample() {
+            return bytesSinceLastSample;
+        }
+
+        public long[] timestamps() {
+            return timestamps;
+        }
+
+        public long[] offsets() {
+            return offsets;
+        }
+
+        public int[] positions() {
+            return positions;
+        }
+
+        @Override
+        public String toString() {
+            return "TimestampSummaryData{" +
+                    "intervalBytes=" + intervalBytes +
+                    ", samples=" + timestamps.length +
+                    '}';
+        }
+    }
+
 }
@@ -32,16 +32,33 @@ public class ElasticStreamSliceManager {
     private final Map<String, ElasticStreamSlice> lastSlices = new ConcurrentHashMap<>();
     private final ElasticLogStreamManager streamManager;
     private final ExecutorService executorService;
+    private final ReadAheadPipeline.Config readAheadConfig;
+    // the read-ahead stats of all the segments of the log.
+    private final ReadAheadPipeline.Stats readAheadStats = new ReadAheadPipeline.Stats();
 
     public ElasticStreamSliceManager(ElasticLogStreamManager streamManager, ExecutorService executorService) {
+        this(streamManager, executorService, ReadAheadPipeline.Config.DEFAULT);
+    }
+
+    public ElasticStreamSliceManager(ElasticLogStreamManager streamManager, ExecutorService executorService,
+                                     ReadAheadPipeline.Config readAheadConfig) {
         this.streamManager = streamManager;
         this.executorService = executorService;
+        this.readAheadConfig = readAheadConfig;
     }
 
     public ElasticLogStreamManager getStreamManager() {
         return streamManager;
     }
 
+    public ReadAheadPipeline.Config readAheadConfig() {
+        return readAheadConfig;
+    }
+
+    public ReadAheadPipeline.Stats readAheadStats() {
+        return readAheadStats;
+    }
+
     public ElasticStreamSlice newSlice(String streamName) throws IOException {
         // seal last slice with the same stream name when create new segment
         ElasticStreamSlice lastSlice = lastSlices.get(streamName);
@@ -17,10 +17,12 @@
 
 package kafka.log.streamaspect
 
+import com.automq.stream.api.FetchResult
 import io.netty.buffer.Unpooled
 import kafka.Kafka.trace
 import kafka.log.streamaspect.cache.FileCache
-import kafka.log.{IndexSearchType, TimeIndex, TimestampOffset}
+import kafka.log.{IndexEntry, IndexSearchType, TimeIndex, TimestampOffset}
+import kafka.metrics.KafkaMetricsGroup
 import kafka.utils.CoreUtils.inLock
 import org.apache.kafka.common.errors.InvalidOffsetException
 import org.apache.kafka.common.record.RecordBatch
@@ -69,22 +71,49 @@ class ElasticTimeIndex(__file: File, streamSegmentSupplier: StreamSliceSupplier,
   }
 
   private def tryGetEntryFromCache(n: Int): TimestampOffset = {
-    val rst = ElasticTimeIndex.cache.get(file.getPath, n * entrySize.toLong, entrySize)
+    val rst = ElasticTimeIndex.cache.get(stream.stream().streamId(), stream.startOffsetInStream() + n * entrySize.toLong, entrySize)
     if (rst.isPresent) {
       val buffer = rst.get()
-      TimestampOffset(buffer.readLong(), buffer.readInt())
+      try {
+        TimestampOffset(buffer.readLong(), baseOffset + buffer.readInt())
+      } finally {
+        buffer.release()
+      }
     } else {
       TimestampOffset.Unknown
     }
   }
 
   def parseEntry(n: Int): TimestampOffset = {
-    val startOffset = n * entrySize
     // try get from cache
-    var timestampOffset = tryGetEntryFromCache(n)
-    if (timestampOffset == TimestampOffset.Unknown) {
-      // cache missing, try read from remote and put it to cache.
-      val rst = stream.fetch(startOffset, Math.min(_entries * entrySize, startOffset + 16 * 1024)).get()
+    val timestampOffset = tryGetEntryFromCache(n)
+    if (timestampOffset != TimestampOffset.Unknown) {
+      return timestampOffset
+    }
+    // cache missing, try read from remote and put it to cache.
+    val startOffset = n * entrySize
+    val rst = stream.fetch(startOffset, fetchEndOffset(startOffset)).get()
+    cacheAndParseFirstEntry(startOffset, rst)
+  }
+
+  override def parseEntryAsync(n: Int): CompletableFuture[IndexEntry] = {
+    parseTimestampOffsetAsync(n).thenApply[IndexEntry](entry => entry)
+  }
+
+  private def parseTimestampOffsetAsync(n: Int): CompletableFuture[TimestampOffset] = {
+    val timestampOffset = tryGetEntryFromCache(n)
+    if (timestampOffset != TimestampOffset.Unknown) {
+      return CompletableFuture.completedFuture(timestampOffset)
+    }
+    val startOffset = n * entrySize
+    stream.fetch(startOffset, fetchEndOffset(startOffset))
+      .thenApply[TimestampOffset](rst => cacheAndParseFirstEntry(startOffset, rst))
+  }
+
+  private def fetchEndOffset(startOffset: Int): Int = Math.min(_entries * entrySize, startOffset + 16 * 1024)
+
+  private def cacheAndParseFirstEntry(startOffset: Int, rst: FetchResult): TimestampOffset = {
+    try {
       val records = rst.recordBatchList()
       if (records.size() == 0) {
         throw new IllegalStateException(s"fetch empty from stream $stream at offset $startOffset")
@@ -93,12 +122,12 @@ class ElasticTimeIndex(__file: File, streamSegmentSupplier: StreamSliceSupplier,
       records.forEach(record => {
         buf.writeBytes(record.rawPayload())
       })
-      ElasticTimeIndex.cache.put(file.getPath, startOffset, buf)
-      val indexEntry = Unpooled.wrappedBuffer(records.get(0).rawPayload());
-      timestampOffset = TimestampOffset(indexEntry.readLong(), indexEntry.readInt())
+      ElasticTimeIndex.cache.put(stream.stream().streamId(), stream.startOffsetInStream() + startOffset, buf)
+      val indexEntry = Unpooled.wrappedBuffer(records.get(0).rawPayload())
+      TimestampOffset(indexEntry.readLong(), baseOffset + indexEntry.readInt())
+    } finally {
       rst.free()
     }
-    timestampOffset
   }
 
   def maybeAppend(timestamp: Long, offset: Long, skipFullCheck: Boolean = false): Unit = {
@@ -147,6 +176,18 @@ class ElasticTimeIndex(__file: File, streamSegmentSupplier: StreamSliceSupplier,
     }
   }
 
+  /**
+   * Async version of [[lookup]], the request handler thread won't be blocked by the index reads on cache missing.
+   */
+  def lookupAsync(targetTimestamp: Long): CompletableFuture[TimestampOffset] = {
+    largestLowerBoundSlotForAsync(targetTimestamp, IndexSearchType.KEY).thenCompose[TimestampOffset](slot => {
+      if (slot == -1)
+        CompletableFuture.completedFuture(TimestampOffset(RecordBatch.NO_TIMESTAMP, baseOffset))
+      else
+        parseTimestampOffsetAsync(slot)
+    })
+  }
+
   override def reset(): Unit = {
     stream = streamSliceSupplier.reset()
     _entries = 0
@@ -180,10 +221,28 @@ class ElasticTimeIndex(__file: File, streamSegmentSupplier: StreamSliceSupplier,
   }
 }
 
-object ElasticTimeIndex {
+object ElasticTimeIndex extends KafkaMetricsGroup {
   var cache: FileCache = _
 
   def setupCache(path: String, size: Int): Unit = {
     cache = new FileCache(path, size)
+    val fileCache = cache
+    (0 until fileCache.shardCount()).foreach(shard => {
+      val tags = Map("shard" -> shard.toString)
+      removeMetric("TimeIndexCacheHitCount", tags)
+      removeMetric("TimeIndexCacheMissCount", tags)
+      removeMetric("TimeIndexCacheEvictionCount", tags)
+      removeMetric("TimeIndexCacheFreeBlockCount", tags)
+      newGauge("TimeIndexCacheHitCount", () => fileCache.hitCount(shard), tags)
+      newGauge("TimeIndexCacheMissCount", () => fileCache.missCount(shard), tags)
+      newGauge("TimeIndexCacheEvictionCount", () => fileCache.evictionCount(shard), tags)
+      newGauge("TimeIndexCacheFreeBlockCount", () => fileCache.freeBlockCount(shard), tags)
+    })
+  }
+
+  def closeCache(): Unit = {
+    if (cache != null) {
+      cache.close()
+    }
   }
 }
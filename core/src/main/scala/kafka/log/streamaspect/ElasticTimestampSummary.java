@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.streamaspect;
+
+import java.util.Arrays;
+
+/**
+ * Sparse in-heap timestamp summary of a segment, which is used to locate a timestamp without probing the remote
+ * time index.
+ * <p>
+ * A sample (maxTimestampSoFar, nextOffset, position) is taken every {@link #intervalBytes} appended bytes, it means
+ * all the records before the sampled offset have timestamps no larger than the sampled timestamp. The summary keeps at
+ * most {@link #MAX_SAMPLES} samples, when it's full, every other sample is dropped and the interval is doubled.
+ */
+public class ElasticTimestampSummary {
+    static final int DEFAULT_INTERVAL_BYTES = 1024 * 1024;
+    static final int MAX_SAMPLES = 64;
+
+    private int intervalBytes;
+    private final long[] timestamps = new long[MAX_SAMPLES];
+    private final long[] offsets = new long[MAX_SAMPLES];
+    private final int[] positions = new int[MAX_SAMPLES];
+    private int count;
+    private int bytesSinceLastSample;
+    /**
+     * Whether the summary covers the whole segment. The summary of a segment created before the summary was
+     * introduced is incomplete, and it cannot be used to bound the search.
+     */
+    private boolean complete;
+
+    public ElasticTimestampSummary() {
+        this(DEFAULT_INTERVAL_BYTES, true);
+    }
+
+    private ElasticTimestampSummary(int intervalBytes, boolean complete) {
+        this.intervalBytes = intervalBytes;
+        this.complete = complete;
+    }
+
+    /**
+     * Load the summary from the segment meta.
+     *
+     * @param data  the persisted summary.
+     * @param empty whether the segment is empty, the summary of an empty segment is always complete.
+     */
+    public static ElasticTimestampSummary of(ElasticStreamSegmentMeta.TimestampSummaryData data, boolean empty) {
+        if (data == null) {
+            return new ElasticTimestampSummary(DEFAULT_INTERVAL_BYTES, empty);
+        }
+        ElasticTimestampSummary summary = new ElasticTimestampSummary(Math.max(data.intervalBytes(), DEFAULT_INTERVAL_BYTES), true);
+        int count = Math.min(MAX_SAMPLES, Math.min(data.timestamps().length, Math.min(data.offsets().length, data.positions().length)));
+        System.arraycopy(data.timestamps(), 0, summary.timestamps, 0, count);
+        System.arraycopy(data.offsets(), 0, summary.offsets, 0, count);
+        System.arraycopy(data.positions(), 0, summary.positions, 0, count);
+        summary.count = count;
+        summary.bytesSinceLastSample = data.bytesSinceLastSample();
+        return summary;
+    }
+
+    /**
+     * Record an append.
+     *
+     * @param maxTimestampSoFar the max timestamp of the segment after the append.
+     * @param nextOffset        the next offset of the segment after the append.
+     * @param position          the size of the segment after the append.
+     * @param appendedBytes     the size of the appended records.
+     */
+    public synchronized void onAppend(long maxTimestampSoFar, long nextOffset, int position, int appendedBytes) {
+        bytesSinceLastSample += appendedBytes;
+        if (bytesSinceLastSample < intervalBytes || maxTimestampSoFar < 0) {
+            return;
+        }
+        if (count == MAX_SAMPLES) {
+            compact();
+        }
+        timestamps[count] = maxTimestampSoFar;
+        offsets[count] = nextOffset;
+        positions[count] = position;
+        count++;
+        bytesSinceLastSample = 0;
+    }
+
+    /**
+     * Get the segment range which contains the first record whose timestamp is larger than or equal to the target
+     * timestamp.
+     *
+     * @return the range, or null if the summary is incomplete.
+     */
+    public synchronized Range lookup(long targetTimestamp, long baseOffset, long nextOffset, int size) {
+        if (!complete) {
+            return null;
+        }
+        long startOffset = baseOffset;
+        int startPosition = 0;
+        long endOffset = nextOffset;
+        int endPosition = size;
+        for (int i = 0; i < count; i++) {
+            if (timestamps[i] < targetTimestamp) {
+                startOffset = offsets[i];
+                startPosition = positions[i];
+            } else {
+                endOffset = offsets[i];
+                endPosition = positions[i];
+                break;
+            }
+        }
+        return new Range(startOffset, endOffset, Math.max(0, endPosition - startPosition));
+    }
+
+    /**
+     * Reset the summary before rebuilding it from the start of the segment.
+     */
+    public synchronized void reset() {
+        complete = true;
+        count = 0;
+        bytesSinceLastSample = 0;
+        intervalBytes = DEFAULT_INTERVAL_BYTES;
+    }
+
+    public synchronized ElasticStreamSegmentMeta.TimestampSummaryData toData() {
+        if (!complete) {
+            return null;
+        }
+        return ElasticStreamSegmentMeta.TimestampSummaryData.of(intervalBytes, bytesSinceLastSample,
+                Arrays.copyOf(timestamps, count), Arrays.copyOf(offsets, count), Arrays.copyOf(positions, count));
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    private void compact() {
+        int newCount = 0;
+        for (int i = 1; i < count; i += 2) {
+            timestamps[newCount] = timestamps[i];
+            offsets[newCount] = offsets[i];
+            positions[newCount] = positions[i];
+            newCount++;
+        }
+        count = newCount;
+        intervalBytes *= 2;
+    }
+
+    public static class Range {
+        private final long startOffset;
+        private final long endOffset;
+        private final int size;
+
+        public Range(long startOffset, long endOffset, int size) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.size = size;
+        }
+
+        public long startOffset() {
+            return startOffset;
+        }
+
+        public long endOffset() {
+            return endOffset;
+        }
+
+        /**
+         * The estimated size of the records in the range.
+         */
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "Range{" +
+                    "startOffset=" + startOffset +
+                    ", endOffset=" + endOffset +
+                    ", size=" + size +
+                    '}';
+        }
+    }
+}
@@ -22,11 +22,12 @@ import kafka.server.epoch.LeaderEpochFileCache
 import kafka.server.{BrokerTopicStats, FetchDataInfo, FetchHighWatermark, FetchIsolation, FetchLogEnd, FetchTxnCommitted, LogOffsetMetadata}
 import kafka.utils.Logging
 import org.apache.kafka.common.errors.OffsetOutOfRangeException
+import org.apache.kafka.common.record.FileRecords.TimestampAndOffset
 import org.apache.kafka.common.record.{RecordBatch, RecordVersion, Records}
 import org.apache.kafka.common.utils.{Time, Utils}
 import org.apache.kafka.common.{TopicPartition, Uuid}
 
-import java.util.concurrent.CompletableFuture
+import java.util.concurrent.{CompletableFuture, TimeUnit}
 import scala.collection.mutable
 import scala.collection.mutable.ListBuffer
 
@@ -48,6 +49,24 @@ class ElasticUnifiedLog(_logStartOffset: Long,
     elasticLog.confirmOffset
   }
 
+  newGauge(ElasticUnifiedLog.ReadAheadHitRate, () => elasticLog.streamSliceManager.readAheadStats().hitRate(), tags)
+
+  // the reads from the streams of this log, they're served by the object storage unless the stream layer caches them
+  private val streamReadBytesRate = newMeter(ElasticUnifiedLog.StreamReadBytesPerSec, "bytes", TimeUnit.SECONDS, tags)
+  private val streamReadRequestsRate = newMeter(ElasticUnifiedLog.StreamReadRequestsPerSec, "requests", TimeUnit.SECONDS, tags)
+
+  elasticLog.streamManager.setReadListener((_, bytes) => {
+    streamReadBytesRate.mark(bytes)
+    streamReadRequestsRate.mark()
+  })
+
+  override private[log] def removeLogMetrics(): Unit = {
+    super.removeLogMetrics()
+    removeMetric(ElasticUnifiedLog.ReadAheadHitRate, tags)
+    removeMetric(ElasticUnifiedLog.StreamReadBytesPerSec, tags)
+    removeMetric(ElasticUnifiedLog.StreamReadRequestsPerSec, tags)
+  }
+
   override private[log] def replaceSegments(newSegments: collection.Seq[LogSegment], oldSegments: collection.Seq[LogSegment]): Unit = {
     val deletedSegments = elasticLog.replaceSegments(newSegments, oldSegments)
     deleteProducerSnapshots(deletedSegments, asyncDelete = true)
@@ -60,6 +79,12 @@ class ElasticUnifiedLog(_logStartOffset: Long,
     }
   }
 
+  override protected def maybeHandleIOExceptionAsync[T](msg: => String)(fun: => CompletableFuture[T]): CompletableFuture[T] = {
+    LocalLog.maybeHandleIOExceptionAsync(logDirFailureChannel, dir.getPath, msg) {
+      fun
+    }
+  }
+
   override private[log] def splitOverflowedSegment(segment: LogSegment) = {
     // normally, there should be no overflowed segment
     throw new UnsupportedOperationException()
@@ -112,6 +137,13 @@ class ElasticUnifiedLog(_logStartOffset: Long,
     elasticLog.readAsync(startOffset, maxLength, minOneMessage, maxOffsetMetadata, isolation == FetchTxnCommitted)
   }
 
+  override protected def findOffsetByTimestampAsync(segment: LogSegment, targetTimestamp: Long): CompletableFuture[Option[TimestampAndOffset]] = {
+    segment match {
+      case elasticSegment: ElasticLogSegment => elasticSegment.findOffsetByTimestampAsync(targetTimestamp, logStartOffset)
+      case _ => super.findOffsetByTimestampAsync(segment, targetTimestamp)
+    }
+  }
+
   override def close(): CompletableFuture[Void] = {
     val closeFuture = lock synchronized {
       maybeFlushMetadataFile()
@@ -146,6 +178,10 @@ class ElasticUnifiedLog(_logStartOffset: Long,
 }
 
 object ElasticUnifiedLog extends Logging {
+  val ReadAheadHitRate: String = "ReadAheadHitRate"
+  val StreamReadBytesPerSec: String = "StreamReadBytesPerSec"
+  val StreamReadRequestsPerSec: String = "StreamReadRequestsPerSec"
+
   def rebuildProducerState(producerStateManager: ProducerStateManager,
                            segments: LogSegments,
                            logStartOffset: Long,
@@ -22,6 +22,7 @@ import com.automq.stream.api.CreateStreamOptions;
 import com.automq.stream.api.FetchResult;
 import com.automq.stream.api.OpenStreamOptions;
 import com.automq.stream.api.RecordBatch;
+import com.automq.stream.api.RecordBatchWithContext;
 import com.automq.stream.api.Stream;
 import com.automq.stream.api.StreamClient;
 import com.automq.stream.utils.FutureUtil;
@@ -47,6 +48,7 @@ public class LazyStream implements Stream {
     private final long epoch;
     private volatile Stream inner = NOOP_STREAM;
     private ElasticStreamEventListener eventListener;
+    private volatile ElasticStreamReadListener readListener;
 
     public LazyStream(String name, long streamId, StreamClient client, int replicaCount, long epoch) throws IOException {
         this.name = name;
@@ -126,7 +128,15 @@ public class LazyStream implements Stream {
 
     @Override
     public CompletableFuture<FetchResult> fetch(long startOffset, long endOffset, int maxBytesHint) {
-        return inner.fetch(startOffset, endOffset, maxBytesHint);
+        ElasticStreamReadListener listener = readListener;
+        CompletableFuture<FetchResult> cf = inner.fetch(startOffset, endOffset, maxBytesHint);
+        if (listener == null) {
+            return cf;
+        }
+        return cf.thenApply(rst -> {
+            notifyReadListener(listener, rst);
+            return rst;
+        });
     }
 
     @Override
@@ -148,6 +158,22 @@ public class LazyStream implements Stream {
         this.eventListener = listener;
     }
 
+    public void setReadListener(ElasticStreamReadListener listener) {
+        this.readListener = listener;
+    }
+
+    private void notifyReadListener(ElasticStreamReadListener listener, FetchResult fetchResult) {
+        try {
+            long bytes = 0;
+            for (RecordBatchWithContext batch : fetchResult.recordBatchList()) {
+                bytes += batch.rawPayload().remaining();
+            }
+            listener.onRead(inner.streamId(), bytes);
+        } catch (Throwable e) {
+            LOGGER.error("got notify read listener error", e);
+        }
+    }
+
     public void notifyListener(ElasticStreamMetaEvent event) {
         try {
             Optional.ofNullable(eventListener).ifPresent(listener -> listener.onEvent(inner.streamId(), event));
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.streamaspect;
+
+import com.automq.stream.api.FetchResult;
+import com.automq.stream.api.RecordBatchWithContext;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Read-ahead pipeline over a range of a stream slice, which keeps up to {@link Config#window} fetches in flight for a
+ * reader.
+ * <p>
+ * The end offset of a fetch is unknown until it returns, so the range is split into chunks by the estimated average
+ * record size. A record batch may straddle two chunks, the duplicated one is dropped when the later chunk is consumed,
+ * and the gap left by a chunk truncated by the size hint is fetched on demand.
+ * <p>
+ * The read-ahead bytes of all the pipelines sharing a {@link Config}, in flight or fetched but not consumed yet, are
+ * bounded by its budget, a pipeline fetches on demand when the budget is exhausted.
+ * <p>
+ * The range can be {@link #extend extended}, so a pipeline can be kept across the reads of a reader, and the chunks
+ * read ahead for one read are consumed by the next.
+ * <p>
+ * The pipeline is not thread safe, {@link #next()} should be called after the previous result is completed.
+ */
+public class ReadAheadPipeline {
+    public static final int DEFAULT_WINDOW = 4;
+    public static final int DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+    private final ElasticStreamSlice slice;
+    private final Config config;
+    private long endOffset;
+    private final int chunkBytes;
+    private final long chunkRecords;
+    private final long maxBytes;
+    private final Function<FetchResult, FetchResult> onFetched;
+    private final Stats stats;
+    private final Deque<Chunk> chunks = new ArrayDeque<>();
+    // the start offset of the next chunk to fetch.
+    private long nextChunkOffset;
+    // the first offset which is not returned yet.
+    private long nextOffset;
+    private long fetchedBytes;
+
+    /**
+     * @param startOffset    the start offset in the slice.
+     * @param endOffset      the end offset in the slice, exclusive.
+     * @param chunkBytes     the size hint of each fetch.
+     * @param avgRecordBytes the estimated average record size, non-positive means unknown and no read-ahead.
+     * @param maxBytes       the reader won't read more than maxBytes, the pipeline doesn't read ahead beyond it.
+     * @param onFetched      applied to the result once it is fetched.
+     */
+    public ReadAheadPipeline(ElasticStreamSlice slice, long startOffset, long endOffset, int chunkBytes,
+                             long avgRecordBytes, long maxBytes, Function<FetchResult, FetchResult> onFetched, Stats stats) {
+        this(slice, Config.DEFAULT, startOffset, endOffset, chunkBytes, avgRecordBytes, maxBytes, onFetched, stats);
+    }
+
+    public ReadAheadPipeline(ElasticStreamSlice slice, Config config, long startOffset, long endOffset, int chunkBytes,
+                             long avgRecordBytes, long maxBytes, Function<FetchResult, FetchResult> onFetched, Stats stats) {
+        this.slice = slice;
+        this.config = config;
+        this.endOffset = endOffset;
+        this.chunkBytes = chunkBytes;
+        this.chunkRecords = avgRecordBytes > 0 ? Math.max(1, chunkBytes / avgRecordBytes) : Long.MAX_VALUE;
+        this.maxBytes = maxBytes;
+        this.onFetched = onFetched;
+        this.stats = stats;
+        this.nextChunkOffset = startOffset;
+        this.nextOffset = startOffset;
+    }
+
+    /**
+     * The first offset which is not returned yet, the next {@link #next()} starts from it.
+     */
+    public long nextOffset() {
+        return nextOffset;
+    }
+
+    public long endOffset() {
+        return endOffset;
+    }
+
+    public int chunkBytes() {
+        return chunkBytes;
+    }
+
+    /**
+     * Extend the range to the new end offset, e.g. the records appended after the pipeline is created.
+     */
+    public void extend(long endOffset) {
+        this.endOffset = Math.max(this.endOffset, endOffset);
+    }
+
+    /**
+     * Get the record batches from the next offset.
+     *
+     * @return the fetch result, or null if the end offset is reached.
+     */
+    public CompletableFuture<FetchResult> next() {
+        if (nextOffset >= endOffset) {
+            return CompletableFuture.completedFuture(null);
+        }
+        fill();
+        Chunk chunk = chunks.peekFirst();
+        while (chunk != null && chunk.endOffset <= nextOffset) {
+            // the chunk is covered by a previous fetch.
+            chunks.pollFirst().discard();
+            chunk = chunks.peekFirst();
+        }
+        if (chunk == null || chunk.startOffset > nextOffset) {
+            // the budget is exhausted or the previous chunk is truncated.
+            stats.misses.increment();
+            long fetchEndOffset = chunk == null ? endOffset : chunk.startOffset;
+            return slice.fetch(nextOffset, fetchEndOffset, chunkBytes).thenApply(onFetched).thenCompose(this::consume);
+        }
+        // the chunk is handed over to the reader, it's not read-ahead any more.
+        chunks.pollFirst();
+        chunk.releasePermits();
+        if (chunk.cf.isDone()) {
+            stats.hits.increment();
+        } else {
+            stats.misses.increment();
+        }
+        return chunk.cf.thenCompose(this::consume);
+    }
+
+    /**
+     * Discard the in-flight chunks. The fetch results will be freed once they are completed.
+     */
+    public void close() {
+        Chunk chunk;
+        while ((chunk = chunks.pollFirst()) != null) {
+            chunk.discard();
+        }
+    }
+
+    private void fill() {
+        Semaphore budget = config.budget;
+        while (chunks.size() < config.window && nextChunkOffset < endOffset && fetchedBytes < maxBytes) {
+            // the chunk demanded by the reader is not limited by the budget.
+            boolean demanded = chunks.isEmpty() && nextChunkOffset <= nextOffset;
+            if (!demanded && !budget.tryAcquire(chunkBytes)) {
+                return;
+            }
+            int permits = demanded ? 0 : chunkBytes;
+            long chunkEndOffset = chunkRecords >= endOffset - nextChunkOffset ? endOffset : nextChunkOffset + chunkRecords;
+            CompletableFuture<FetchResult> cf = slice.fetch(nextChunkOffset, chunkEndOffset, chunkBytes).thenApply(onFetched);
+            chunks.addLast(new Chunk(nextChunkOffset, chunkEndOffset, cf, budget, permits));
+            nextChunkOffset = chunkEndOffset;
+            fetchedBytes += chunkBytes;
+        }
+    }
+
+    private CompletableFuture<FetchResult> consume(FetchResult rst) {
+        List<RecordBatchWithContext> batches = new ArrayList<>(rst.recordBatchList().size());
+        for (RecordBatchWithContext batch : rst.recordBatchList()) {
+            if (batch.lastOffset() <= nextOffset) {
+                // the batch is returned by the previous chunk.
+                continue;
+            }
+            batches.add(batch);
+            nextOffset = batch.lastOffset();
+        }
+        if (batches.isEmpty()) {
+            rst.free();
+            if (rst.recordBatchList().isEmpty()) {
+                // no more records.
+                close();
+                nextOffset = endOffset;
+                return CompletableFuture.completedFuture(null);
+            }
+            return next();
+        }
+        if (batches.size() == rst.recordBatchList().size()) {
+            return CompletableFuture.completedFuture(rst);
+        }
+        return CompletableFuture.completedFuture(new FetchResult() {
+            @Override
+            public List<RecordBatchWithContext> recordBatchList() {
+                return batches;
+            }
+
+            @Override
+            public void free() {
+                rst.free();
+            }
+        });
+    }
+
+    /**
+     * The read-ahead settings shared by the pipelines.
+     */
+    public static class Config {
+        public static final Config DEFAULT = new Config(DEFAULT_WINDOW, DEFAULT_MAX_BYTES);
+
+        private final int window;
+        private final Semaphore budget;
+
+        /**
+         * @param window   the max count of the in-flight fetches of a pipeline.
+         * @param maxBytes the max read-ahead bytes of all the pipelines.
+         */
+        public Config(int window, int maxBytes) {
+            this.window = Math.max(1, window);
+            this.budget = new Semaphore(maxBytes);
+        }
+
+        public int window() {
+            return window;
+        }
+
+        public int availableBytes() {
+            return budget.availablePermits();
+        }
+    }
+
+    /**
+     * Read-ahead hit and miss counts. A hit means the chunk has been fetched when the reader asks for it.
+     */
+    public static class Stats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        public long hitCount() {
+            return hits.sum();
+        }
+
+        public long missCount() {
+            return misses.sum();
+        }
+
+        /**
+         * The hit rate of the read-ahead chunks, 1.0 if there is no read yet.
+         */
+        public double hitRate() {
+            long hits = hitCount();
+            long total = hits + missCount();
+            return total == 0 ? 1.0 : (double) hits / total;
+        }
+    }
+
+    private static class Chunk {
+        final long startOffset;
+        final long endOffset;
+        final CompletableFuture<FetchResult> cf;
+        private final Semaphore budget;
+        private int permits;
+
+        Chunk(long startOffset, long endOffset, CompletableFuture<FetchResult> cf, Semaphore budget, int permits) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.cf = cf;
+            this.budget = budget;
+            this.permits = permits;
+        }
+
+        void releasePermits() {
+            if (permits > 0) {
+                budget.release(permits);
+                permits = 0;
+            }
+        }
+
+        void discard() {
+            // the permits are held until the fetch is completed, so the in-flight bytes are still bounded.
+            cf.whenComplete((rst, ex) -> {
+                if (rst != null) {
+                    rst.free();
+                }
+                releasePermits();
+            });
+        }
+    }
+}
@@ -17,9 +17,18 @@
 
 package kafka.log.streamaspect.cache;
 
-import com.automq.stream.s3.cache.LRUCache;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledDirectByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+import org.apache.kafka.common.utils.ByteBufferUnmapper;
+import org.apache.kafka.common.utils.Checksums;
+import org.apache.kafka.common.utils.Crc32C;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
@@ -27,173 +36,567 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.file.Files;
 import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.TreeMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Checksum;
 
 /**
  * File cache which used for cache time index data.
+ * <p>
+ * The cache file is split into shards, each shard owns a contiguous range of blocks and has its own lock, LRU and
+ * free-block bitmap. A stream is always routed to the same shard, so lookups of different partitions rarely contend.
+ * <p>
+ * {@link #get} returns retained slices of the mapped file instead of copies. The blocks of a cached entry won't be
+ * reused until all the returned buffers are released, so the caller MUST release the buffer after use.
+ * <p>
+ * The cache file survives restarts, its layout is:
+ * <pre>
+ * | header | block ownership table | data blocks |
+ * </pre>
+ * Each data block has a record in the ownership table which tells the stream range the block belongs to. Stream data
+ * is immutable once appended, so the entries whose records and data checksums are valid are reused on startup.
  */
 public class FileCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileCache.class);
     private static final int BLOCK_SIZE = 4 * 1024;
+    private static final int DEFAULT_SHARD_COUNT = 16;
+    /**
+     * The minimum block count of a shard, avoid splitting small caches into useless tiny shards.
+     */
+    private static final int MIN_SHARD_BLOCK_COUNT = 64;
+
+    private static final int MAGIC = 0x54494346;
+    private static final int VERSION = 1;
+    /**
+     * magic(4) + version(4) + blockSize(4) + blockCount(4) + shardCount(4) + crc(4)
+     */
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_CRC_OFFSET = 20;
+    /**
+     * streamId(8) + position(8) + dataLength(4) + blockSequence(4) + dataCrc(4) + crc(4)
+     */
+    private static final int RECORD_SIZE = 32;
+    private static final int RECORD_CRC_OFFSET = 28;
+    private static final long FREE_STREAM_ID = -1L;
+
+    private final String path;
     private final int blockSize;
-    private final BitSet freeBlocks;
-    private final LRUCache<Key, Value> lru = new LRUCache<>();
-    final Map<String, NavigableMap<Long, Value>> path2cache = new HashMap<>();
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    private final ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
-    private final ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
-    int freeBlockCount;
-    private int freeCheckPoint = 0;
+    private final int blockCount;
+    private final Shard[] shards;
+    private final int dataPosition;
     private final MappedByteBuffer cacheByteBuffer;
+    /**
+     * The slices returned by {@link #get} which aren't released yet, the file is unmapped after all of them are
+     * released, as accessing an unmapped buffer crashes the JVM.
+     */
+    private final AtomicInteger liveSliceCount = new AtomicInteger();
+    private final AtomicBoolean unmapped = new AtomicBoolean();
+    private volatile boolean closed;
 
-    public FileCache(String path, int size, int blockSize) throws IOException {
+    public FileCache(String path, int size, int blockSize, int shardCount) throws IOException {
+        this.path = path;
         this.blockSize = blockSize;
         size = align(size);
-        int blockCount = size / blockSize;
-        this.freeBlocks = new BitSet(blockCount);
-        this.freeBlocks.set(0, blockCount, true);
-        this.freeBlockCount = blockCount;
+        this.blockCount = size / blockSize;
+        shardCount = Math.max(1, Math.min(shardCount, blockCount));
+        this.dataPosition = align(HEADER_SIZE + blockCount * RECORD_SIZE);
+        long fileSize = (long) dataPosition + size;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("file cache size " + fileSize + " exceeds " + Integer.MAX_VALUE);
+        }
         File file = new File(path);
-        do {
-            Files.deleteIfExists(file.toPath());
-        } while (!file.createNewFile());
+        boolean reusable = file.exists() && file.length() == fileSize;
         try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
-            raf.setLength(size);
-            this.cacheByteBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            raf.setLength(fileSize);
+            this.cacheByteBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        this.shards = new Shard[shardCount];
+        int startBlock = 0;
+        for (int i = 0; i < shardCount; i++) {
+            // spread the remainder blocks to the first shards
+            int shardBlockCount = blockCount / shardCount + (i < blockCount % shardCount ? 1 : 0);
+            shards[i] = new Shard(startBlock, shardBlockCount);
+            startBlock += shardBlockCount;
+        }
+        if (reusable && checkHeader()) {
+            recover();
+        } else {
+            format();
         }
     }
 
+    public FileCache(String path, int size, int blockSize) throws IOException {
+        this(path, size, blockSize, Math.max(1, Math.min(DEFAULT_SHARD_COUNT, size / blockSize / MIN_SHARD_BLOCK_COUNT)));
+    }
+
     public FileCache(String path, int size) throws IOException {
         this(path, size, BLOCK_SIZE);
     }
 
-    public void put(String path, long position, ByteBuf data) {
-        writeLock.lock();
+    /**
+     * Put the data of [position, position + data.readableBytes()) of the stream to cache.
+     */
+    public void put(long streamId, long position, ByteBuf data) {
+        shard(streamId).put(streamId, position, data);
+    }
+
+    /**
+     * Get the cached data of [position, position + length) of the stream.
+     *
+     * @return a retained slice of the cache file, the caller should release it after use.
+     */
+    public Optional<ByteBuf> get(long streamId, long position, int length) {
+        return shard(streamId).get(streamId, position, length);
+    }
+
+    /**
+     * Flush the cache file to disk and unmap it. The cache misses all the gets and ignores all the puts after close,
+     * the file is unmapped once the slices returned before are released.
+     */
+    public void close() {
+        for (Shard shard : shards) {
+            shard.lock.lock();
+        }
         try {
-            int dataLength = data.readableBytes();
-            int[] blocks = ensureCapacity(dataLength);
-            if (blocks == null) {
+            if (closed) {
                 return;
             }
-            Key key = new Key(path, position);
-            Value value = new Value(blocks, dataLength);
-            lru.put(key, value);
-            NavigableMap<Long, Value> cache = path2cache.computeIfAbsent(path, k -> new TreeMap<>());
-            cache.put(position, value);
-
-            ByteBuffer cacheByteBuffer = this.cacheByteBuffer.duplicate();
-            int written = 0;
-            ByteBuffer[] nioBuffers = data.nioBuffers();
-            for (ByteBuffer nioBuffer : nioBuffers) {
-                ByteBuf buf = Unpooled.wrappedBuffer(nioBuffer);
-                while (buf.readableBytes() > 0) {
-                    int block = blocks[written / blockSize];
-                    cacheByteBuffer.position(block * blockSize + written % blockSize);
-                    int length = Math.min(buf.readableBytes(), blockSize - written % blockSize);
-                    cacheByteBuffer.put(buf.slice(buf.readerIndex(), length).nioBuffer());
-                    buf.skipBytes(length);
+            closed = true;
+            cacheByteBuffer.force();
+        } finally {
+            for (Shard shard : shards) {
+                shard.lock.unlock();
+            }
+        }
+        maybeUnmap();
+    }
+
+    boolean isUnmapped() {
+        return unmapped.get();
+    }
+
+    private void maybeUnmap() {
+        if (closed && liveSliceCount.get() == 0 && unmapped.compareAndSet(false, true)) {
+            try {
+                ByteBufferUnmapper.unmap(path, cacheByteBuffer);
+            } catch (Throwable e) {
+                LOGGER.error("Error unmapping file cache {}", path, e);
+            }
+        }
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public long hitCount(int shard) {
+        return shards[shard].hitCount.sum();
+    }
+
+    public long missCount(int shard) {
+        return shards[shard].missCount.sum();
+    }
+
+    public long evictionCount(int shard) {
+        return shards[shard].evictionCount.sum();
+    }
+
+    public int freeBlockCount(int shard) {
+        return shards[shard].freeBlockCount;
+    }
+
+    public int freeBlockCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.freeBlockCount;
+        }
+        return count;
+    }
+
+    Shard shard(long streamId) {
+        int hash = Long.hashCode(streamId);
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
+    private int align(int size) {
+        return size % blockSize == 0 ? size : size + blockSize - size % blockSize;
+    }
+
+    private boolean checkHeader() {
+        ByteBuffer header = cacheByteBuffer.slice(0, HEADER_SIZE);
+        return header.getInt(0) == MAGIC
+            && header.getInt(4) == VERSION
+            && header.getInt(8) == blockSize
+            && header.getInt(12) == blockCount
+            && header.getInt(16) == shards.length
+            && header.getInt(HEADER_CRC_OFFSET) == (int) Crc32C.compute(header, 0, HEADER_CRC_OFFSET);
+    }
+
+    private void format() {
+        for (int block = 0; block < blockCount; block++) {
+            writeFreeRecord(block);
+        }
+        // write header at last, so a partial formatted file will be formatted again.
+        ByteBuffer header = cacheByteBuffer.slice(0, HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, blockSize);
+        header.putInt(12, blockCount);
+        header.putInt(16, shards.length);
+        header.putInt(HEADER_CRC_OFFSET, (int) Crc32C.compute(header, 0, HEADER_CRC_OFFSET));
+    }
+
+    /**
+     * Rebuild the cache index from the block ownership table, the entries which are incomplete, owned by another
+     * shard or mismatch the data checksum are dropped.
+     */
+    private void recover() {
+        Map<Key, int[]> entries = new HashMap<>();
+        Map<Key, Record> firstRecords = new HashMap<>();
+        for (int block = 0; block < blockCount; block++) {
+            Record record = readRecord(block);
+            if (record == null || record.streamId == FREE_STREAM_ID) {
+                continue;
+            }
+            Key key = new Key(record.streamId, record.position);
+            int requiredBlockCount = align(record.dataLength) / blockSize;
+            Record first = firstRecords.putIfAbsent(key, record);
+            int[] blocks = entries.computeIfAbsent(key, k -> newBlocks(requiredBlockCount));
+            boolean consistent = first == null
+                || first.dataLength == record.dataLength && first.dataCrc == record.dataCrc;
+            if (!consistent || record.blockSequence >= blocks.length || blocks[record.blockSequence] != -1) {
+                // conflict with the other records of the same entry, keep the block free.
+                continue;
+            }
+            blocks[record.blockSequence] = block;
+        }
+        int recovered = 0;
+        for (Map.Entry<Key, int[]> entry : entries.entrySet()) {
+            Key key = entry.getKey();
+            Record record = firstRecords.get(key);
+            int[] blocks = entry.getValue();
+            if (shard(key.streamId).recover(key, blocks, record.dataLength, record.dataCrc)) {
+                recovered++;
+            }
+        }
+        for (Shard shard : shards) {
+            // release the blocks which aren't owned by any valid entry.
+            shard.freeUnowned();
+        }
+        LOGGER.info("recover file cache with {} entries, {} blocks are free", recovered, freeBlockCount());
+    }
+
+    private static int[] newBlocks(int count) {
+        int[] blocks = new int[count];
+        for (int i = 0; i < count; i++) {
+            blocks[i] = -1;
+        }
+        return blocks;
+    }
+
+    private ByteBuffer blockSlice(int block, int offset, int length) {
+        return cacheByteBuffer.slice(dataPosition + block * blockSize + offset, length);
+    }
+
+    private int dataCrc(int[] blocks, int dataLength) {
+        Checksum checksum = Crc32C.create();
+        int remaining = dataLength;
+        for (int block : blocks) {
+            int length = Math.min(remaining, blockSize);
+            Checksums.update(checksum, blockSlice(block, 0, length), length);
+            remaining -= length;
+        }
+        return (int) checksum.getValue();
+    }
+
+    private Record readRecord(int block) {
+        ByteBuffer buf = cacheByteBuffer.slice(HEADER_SIZE + block * RECORD_SIZE, RECORD_SIZE);
+        if (buf.getInt(RECORD_CRC_OFFSET) != (int) Crc32C.compute(buf, 0, RECORD_CRC_OFFSET)) {
+            return null;
+        }
+        return new Record(buf.getLong(0), buf.getLong(8), buf.getInt(16), buf.getInt(20), buf.getInt(24));
+    }
+
+    private void writeRecord(int block, long streamId, long position, int dataLength, int blockSequence, int dataCrc) {
+        ByteBuffer buf = cacheByteBuffer.slice(HEADER_SIZE + block * RECORD_SIZE, RECORD_SIZE);
+        buf.putLong(0, streamId);
+        buf.putLong(8, position);
+        buf.putInt(16, dataLength);
+        buf.putInt(20, blockSequence);
+        buf.putInt(24, dataCrc);
+        buf.putInt(RECORD_CRC_OFFSET, (int) Crc32C.compute(buf, 0, RECORD_CRC_OFFSET));
+    }
+
+    private void writeFreeRecord(int block) {
+        writeRecord(block, FREE_STREAM_ID, 0, 0, 0, 0);
+    }
+
+    class Shard {
+        private final int startBlock;
+        private final int blockCount;
+        private final BitSet freeBlocks;
+        /**
+         * Access ordered map, the eldest entry is the least recently used one.
+         */
+        private final LinkedHashMap<Key, Value> lru = new LinkedHashMap<>(16, 0.75f, true);
+        final Map<Long, NavigableMap<Long, Value>> stream2cache = new HashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        int freeBlockCount;
+        private int freeCheckPoint;
+        private final LongAdder hitCount = new LongAdder();
+        private final LongAdder missCount = new LongAdder();
+        private final LongAdder evictionCount = new LongAdder();
+
+        Shard(int startBlock, int blockCount) {
+            this.startBlock = startBlock;
+            this.blockCount = blockCount;
+            this.freeBlocks = new BitSet(startBlock + blockCount);
+            this.freeBlocks.set(startBlock, startBlock + blockCount, true);
+            this.freeBlockCount = blockCount;
+            this.freeCheckPoint = startBlock;
+        }
+
+        void put(long streamId, long position, ByteBuf data) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                int dataLength = data.readableBytes();
+                Key key = new Key(streamId, position);
+                Value old = lru.get(key);
+                if (old != null && old.dataLength >= dataLength) {
+                    return;
+                }
+                int[] blocks = ensureCapacity(dataLength);
+                if (blocks == null) {
+                    return;
+                }
+                if (old != null && lru.get(key) == old) {
+                    // the old entry isn't reused by ensureCapacity, replace it
+                    evict(key, old);
+                }
+                Value value = new Value(this, blocks, dataLength);
+                lru.put(key, value);
+                NavigableMap<Long, Value> cache = stream2cache.computeIfAbsent(streamId, k -> new TreeMap<>());
+                cache.put(position, value);
+
+                int written = 0;
+                int readerIndex = data.readerIndex();
+                for (int block : blocks) {
+                    int length = Math.min(dataLength - written, blockSize);
+                    data.getBytes(readerIndex + written, blockSlice(block, 0, length));
                     written += length;
                 }
+                // write the ownership records after data, a crash in the middle leaves records with mismatched crc.
+                int dataCrc = dataCrc(blocks, dataLength);
+                for (int i = 0; i < blocks.length; i++) {
+                    writeRecord(blocks[i], streamId, position, dataLength, i, dataCrc);
+                }
+            } finally {
+                lock.unlock();
             }
-        } finally {
-            writeLock.unlock();
         }
-    }
 
-    public Optional<ByteBuf> get(String filePath, long position, int length) {
-        ByteBuf buf = Unpooled.buffer(length);
-        readLock.lock();
-        try {
-            NavigableMap<Long, Value> cache = path2cache.get(filePath);
-            if (cache == null) {
-                return Optional.empty();
-            }
-            Map.Entry<Long, Value> entry = cache.floorEntry(position);
-            long filePosition = entry.getKey();
-            Value value = entry.getValue();
-            if (entry.getKey() + entry.getValue().dataLength < position + length) {
-                return Optional.empty();
-            }
-            lru.touch(new Key(filePath, filePosition));
-            MappedByteBuffer cacheByteBuffer = this.cacheByteBuffer.duplicate();
-            int remaining = length;
-            long blockFilePosition = filePosition - blockSize;
-            for (int blockIndex : value.blocks) {
-                blockFilePosition += blockSize;
-                int blockCachePosition = blockIndex * blockSize;
-                if (blockCachePosition + blockSize < position) {
-                    continue;
+        Optional<ByteBuf> get(long streamId, long position, int length) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return Optional.empty();
+                }
+                NavigableMap<Long, Value> cache = stream2cache.get(streamId);
+                Map.Entry<Long, Value> entry = cache == null ? null : cache.floorEntry(position);
+                if (entry == null || entry.getKey() + entry.getValue().dataLength < position + length) {
+                    missCount.increment();
+                    return Optional.empty();
+                }
+                hitCount.increment();
+                long entryPosition = entry.getKey();
+                Value value = entry.getValue();
+                // touch lru
+                lru.get(new Key(streamId, entryPosition));
+
+                int offset = (int) (position - entryPosition);
+                int blockIndex = offset / blockSize;
+                int blockOffset = offset % blockSize;
+                if (blockOffset + length <= blockSize) {
+                    return Optional.of(slice(value, value.blocks[blockIndex], blockOffset, length));
                 }
-                int cachePosition = blockCachePosition + (int) (position - blockFilePosition);
-                buf.writeBytes(cacheByteBuffer.slice(cachePosition, Math.min(remaining, blockSize)));
-                remaining -= blockSize;
-                position = blockFilePosition + blockSize;
-                if (remaining <= 0) {
-                    break;
+                CompositeByteBuf buf = Unpooled.compositeBuffer(value.blocks.length - blockIndex);
+                int remaining = length;
+                while (remaining > 0) {
+                    int sliceLength = Math.min(remaining, blockSize - blockOffset);
+                    buf.addComponent(true, slice(value, value.blocks[blockIndex], blockOffset, sliceLength));
+                    remaining -= sliceLength;
+                    blockIndex++;
+                    blockOffset = 0;
                 }
+                return Optional.of(buf);
+            } finally {
+                lock.unlock();
             }
-            return Optional.of(buf);
-        } finally {
-            readLock.unlock();
         }
-    }
 
-    private int[] ensureCapacity(int size) {
-        int requiredBlockCount = align(size) / blockSize;
-        int[] blocks = new int[requiredBlockCount];
-        int acquiringBlockIndex = 0;
-        while (freeBlockCount + acquiringBlockIndex < requiredBlockCount) {
-            Map.Entry<Key, Value> entry = lru.pop();
-            if (entry == null) {
-                break;
+        /**
+         * Load a persisted entry into the shard.
+         *
+         * @return true if the entry is valid and loaded.
+         */
+        boolean recover(Key key, int[] blocks, int dataLength, int dataCrc) {
+            for (int block : blocks) {
+                if (block < startBlock || block >= startBlock + blockCount || !freeBlocks.get(block)) {
+                    return false;
+                }
             }
-            Key key = entry.getKey();
-            Value value = entry.getValue();
-            path2cache.get(key.path).remove(key.position);
-            for (int blockIndex : value.blocks) {
-                if (acquiringBlockIndex < blocks.length) {
-                    blocks[acquiringBlockIndex++] = blockIndex;
-                    freeBlocks.set(blockIndex, false);
+            if (dataCrc(blocks, dataLength) != dataCrc) {
+                return false;
+            }
+            for (int block : blocks) {
+                freeBlocks.set(block, false);
+            }
+            freeBlockCount -= blocks.length;
+            Value value = new Value(this, blocks, dataLength);
+            lru.put(key, value);
+            stream2cache.computeIfAbsent(key.streamId, k -> new TreeMap<>()).put(key.position, value);
+            return true;
+        }
+
+        void freeUnowned() {
+            for (int block = freeBlocks.nextSetBit(startBlock); block >= 0; block = freeBlocks.nextSetBit(block + 1)) {
+                writeFreeRecord(block);
+            }
+        }
+
+        private ByteBuf slice(Value value, int block, int blockOffset, int length) {
+            liveSliceCount.incrementAndGet();
+            return new CacheSliceByteBuf(blockSlice(block, blockOffset, length), value);
+        }
+
+        void sliceReleased() {
+            if (liveSliceCount.decrementAndGet() == 0) {
+                maybeUnmap();
+            }
+        }
+
+        private int[] ensureCapacity(int size) {
+            int requiredBlockCount = align(size) / blockSize;
+            if (requiredBlockCount > blockCount) {
+                return null;
+            }
+            if (reclaimableBlockCount(requiredBlockCount) < requiredBlockCount) {
+                // don't evict anything if the allocation cannot succeed, the evicted data would be lost for nothing
+                return null;
+            }
+            int[] blocks = new int[requiredBlockCount];
+            int acquiringBlockIndex = 0;
+            Iterator<Map.Entry<Key, Value>> it = lru.entrySet().iterator();
+            while (freeBlockCount + acquiringBlockIndex < requiredBlockCount && it.hasNext()) {
+                Map.Entry<Key, Value> entry = it.next();
+                it.remove();
+                Key key = entry.getKey();
+                Value value = entry.getValue();
+                removeFromStreamIndex(key);
+                evictionCount.increment();
+                if (value.refCnt() > 1) {
+                    // the blocks are still referenced by readers, they will be freed when the readers release them.
+                    value.release();
+                    continue;
+                }
+                // no reader holds the value and it's invisible from now on, so the blocks can be reused directly.
+                for (int blockIndex : value.blocks) {
+                    if (acquiringBlockIndex < blocks.length) {
+                        blocks[acquiringBlockIndex++] = blockIndex;
+                        freeBlocks.set(blockIndex, false);
+                    } else {
+                        freeBlockCount++;
+                        freeBlocks.set(blockIndex, true);
+                        writeFreeRecord(blockIndex);
+                    }
+                }
+            }
+            while (acquiringBlockIndex < blocks.length) {
+                int next = freeBlocks.nextSetBit(freeCheckPoint);
+                if (next >= 0) {
+                    blocks[acquiringBlockIndex++] = next;
+                    freeBlockCount--;
+                    freeBlocks.set(next, false);
+                    freeCheckPoint = next;
+                } else if (freeCheckPoint != startBlock) {
+                    freeCheckPoint = startBlock;
                 } else {
-                    freeBlockCount++;
-                    freeBlocks.set(blockIndex, true);
+                    // the evicted blocks are still referenced by readers, give back the acquired blocks.
+                    for (int i = 0; i < acquiringBlockIndex; i++) {
+                        freeBlocks.set(blocks[i], true);
+                        writeFreeRecord(blocks[i]);
+                    }
+                    freeBlockCount += acquiringBlockIndex;
+                    return null;
                 }
             }
+            return blocks;
         }
-        while (acquiringBlockIndex < blocks.length) {
-            int next = freeBlocks.nextSetBit(freeCheckPoint);
-            if (next >= 0) {
-                blocks[acquiringBlockIndex++] = next;
-                freeBlockCount--;
-                freeBlocks.set(next, false);
-                freeCheckPoint = next;
-            } else if (freeCheckPoint != 0) {
-                freeCheckPoint = 0;
-            } else {
-                // BUG
-                return null;
+
+        /**
+         * Count the free blocks and the blocks of the entries without readers, stop counting once it reaches the
+         * required block count.
+         */
+        private int reclaimableBlockCount(int requiredBlockCount) {
+            int count = freeBlockCount;
+            for (Iterator<Value> it = lru.values().iterator(); count < requiredBlockCount && it.hasNext(); ) {
+                Value value = it.next();
+                if (value.refCnt() == 1) {
+                    count += value.blocks.length;
+                }
             }
+            return count;
         }
-        return blocks;
-    }
 
-    private int align(int size) {
-        return size % blockSize == 0 ? size : size + blockSize - size % blockSize;
+        private void evict(Key key, Value value) {
+            lru.remove(key);
+            removeFromStreamIndex(key);
+            evictionCount.increment();
+            value.release();
+        }
+
+        private void removeFromStreamIndex(Key key) {
+            NavigableMap<Long, Value> cache = stream2cache.get(key.streamId);
+            cache.remove(key.position);
+            if (cache.isEmpty()) {
+                stream2cache.remove(key.streamId);
+            }
+        }
+
+        void free(int[] blocks) {
+            lock.lock();
+            try {
+                for (int blockIndex : blocks) {
+                    freeBlocks.set(blockIndex, true);
+                    writeFreeRecord(blockIndex);
+                }
+                freeBlockCount += blocks.length;
+            } finally {
+                lock.unlock();
+            }
+        }
     }
 
     static class Key implements Comparable<Key> {
-        String path;
+        long streamId;
         long position;
 
-        public Key(String path, long position) {
-            this.path = path;
+        public Key(long streamId, long position) {
+            this.streamId = streamId;
             this.position = position;
         }
 
@@ -202,32 +605,86 @@ public class FileCache {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             Key key = (Key) o;
-            return position == key.position && Objects.equals(path, key.path);
+            return position == key.position && streamId == key.streamId;
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(path, position);
+            return Objects.hash(streamId, position);
         }
 
 
         @Override
         public int compareTo(Key o) {
-            if (this.path.compareTo(o.path) != 0) {
-                return this.path.compareTo(o.path);
+            if (this.streamId != o.streamId) {
+                return Long.compare(this.streamId, o.streamId);
             }
             return Long.compare(this.position, o.position);
         }
     }
 
-    static class Value {
+    static class Record {
+        final long streamId;
+        final long position;
+        final int dataLength;
+        final int blockSequence;
+        final int dataCrc;
+
+        Record(long streamId, long position, int dataLength, int blockSequence, int dataCrc) {
+            this.streamId = streamId;
+            this.position = position;
+            this.dataLength = dataLength;
+            this.blockSequence = blockSequence;
+            this.dataCrc = dataCrc;
+        }
+    }
+
+    /**
+     * The cached entry. The cache holds one reference and each slice returned by {@link #get} holds another one,
+     * the blocks are given back to the shard when the last reference is released.
+     */
+    static class Value extends AbstractReferenceCounted {
+        private final Shard shard;
         int[] blocks;
         int dataLength;
 
-        public Value(int[] blocks, int dataLength) {
+        public Value(Shard shard, int[] blocks, int dataLength) {
+            this.shard = shard;
             this.blocks = blocks;
             this.dataLength = dataLength;
         }
+
+        @Override
+        protected void deallocate() {
+            shard.free(blocks);
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+
+    /**
+     * A slice of the mapped cache file which pins the owner {@link Value} until it's released.
+     */
+    static class CacheSliceByteBuf extends UnpooledDirectByteBuf {
+        private final Value value;
+
+        CacheSliceByteBuf(ByteBuffer slice, Value value) {
+            super(ByteBufAllocator.DEFAULT, slice, slice.remaining());
+            this.value = value;
+            value.retain();
+        }
+
+        @Override
+        protected void deallocate() {
+            // the mapped buffer is not freed, see UnpooledDirectByteBuf#doNotFree
+            super.deallocate();
+            // the freed blocks are written to the ownership table, so the file must still be mapped here
+            value.release();
+            value.shard.sliceReleased();
+        }
     }
 
 }
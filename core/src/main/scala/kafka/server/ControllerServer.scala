@@ -213,7 +213,7 @@ class ControllerServer(
         val maxIdleIntervalNs = config.metadataMaxIdleIntervalNs.fold(OptionalLong.empty)(OptionalLong.of)
 
         // AutoMQ for Kafka inject start
-        val s3Config = new S3Config(config.s3Endpoint, config.s3Region, config.s3Bucket, config.s3ObjectRetentionTimeInSecond, config.s3MockEnable)
+        val s3Config = new S3Config(config.s3Endpoint, config.s3Region, config.s3Bucket, config.s3ObjectRetentionTimeInSecond, config.s3ObjectDeleteConcurrency, config.s3MockEnable)
         var namespace = config.elasticStreamNamespace
         namespace =  if (namespace == null || namespace.isEmpty) {
           "_kafka_" + clusterId
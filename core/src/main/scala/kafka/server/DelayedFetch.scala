@@ -17,7 +17,7 @@
 
 package kafka.server
 
-import kafka.log.streamaspect.ReadManualReleaseHint
+import kafka.log.streamaspect.{ReadManualReleaseHint, SeparateSlowAndQuickFetchHint}
 import java.util.concurrent.TimeUnit
 import kafka.metrics.KafkaMetricsGroup
 import org.apache.kafka.common.TopicIdPartition
@@ -164,12 +164,21 @@ class DelayedFetch(
 
     // AutoMQ for Kafka inject start
     ReadManualReleaseHint.mark()
-    val logReadResults = replicaManager.readFromLocalLog(
-      params,
-      fetchInfos,
-      quota,
-      readFromPurgatory = true
-    )
+    // The delayed fetch may be completed in a fetching thread marked to separate the slow fetches, but it has no slow
+    // path to re-read them, so it always reads without the hint.
+    val separateSlowAndQuickFetch = SeparateSlowAndQuickFetchHint.isMarked
+    SeparateSlowAndQuickFetchHint.reset()
+    val logReadResults = try {
+      replicaManager.readFromLocalLog(
+        params,
+        fetchInfos,
+        quota,
+        readFromPurgatory = true
+      )
+    } finally {
+      if (separateSlowAndQuickFetch)
+        SeparateSlowAndQuickFetchHint.mark()
+    }
     ReadManualReleaseHint.reset()
     // AutoMQ for Kafka inject end
 
@@ -25,7 +25,7 @@ import kafka.controller.ReplicaAssignment
 import kafka.coordinator.group._
 import kafka.coordinator.transaction.{InitProducerIdResult, TransactionCoordinator}
 import kafka.log.AppendOrigin
-import kafka.log.streamaspect.{ElasticLogManager, ReadManualReleaseHint}
+import kafka.log.streamaspect.{AppendTenantHint, ElasticLog, ElasticLogManager, ReadManualReleaseHint, SeparateSlowAndQuickFetchHint}
 import kafka.message.ZStdCompressionCodec
 import kafka.metrics.{KafkaMetricsGroup, KafkaMetricsUtil}
 import kafka.network.RequestChannel
@@ -61,6 +61,7 @@ import org.apache.kafka.common.metrics.Metrics
 import org.apache.kafka.common.network.{ListenerName, Send}
 import org.apache.kafka.common.protocol.{ApiKeys, ApiMessage, Errors}
 import org.apache.kafka.common.record._
+import org.apache.kafka.common.record.FileRecords.TimestampAndOffset
 import org.apache.kafka.common.replica.ClientMetadata
 import org.apache.kafka.common.replica.ClientMetadata.DefaultClientMetadata
 import org.apache.kafka.common.requests.FindCoordinatorRequest.CoordinatorType
@@ -251,7 +252,7 @@ class KafkaApis(val requestChannel: RequestChannel,
       request.header.apiKey match {
         case ApiKeys.PRODUCE => handleProduceRequest(request, requestLocal)
         case ApiKeys.FETCH => handleFetchRequest(request)
-        case ApiKeys.LIST_OFFSETS => handleListOffsetRequest(request)
+        case ApiKeys.LIST_OFFSETS => handleListOffsetRequest(request).exceptionally(handleError)
         case ApiKeys.METADATA => handleTopicMetadataRequest(request)
         case ApiKeys.LEADER_AND_ISR => handleLeaderAndIsrRequest(request)
         case ApiKeys.STOP_REPLICA => handleStopReplicaRequest(request)
@@ -697,15 +698,25 @@ class KafkaApis(val requestChannel: RequestChannel,
       val requestThrottleTimeMs =
         if (produceRequest.acks == 0) 0
         else quotas.request.maybeRecordAndGetThrottleTimeMs(request, timeMs)
-      val maxThrottleTimeMs = Math.max(bandwidthThrottleTimeMs, requestThrottleTimeMs)
+      // AutoMQ for Kafka inject start
+      // The tenant over its fair share of the append permits is asked to back off by the throttle time in the
+      // response rather than being blocked in the appending threads.
+      val appendThrottleTimeMs =
+        if (produceRequest.acks == 0 || !ElasticLogManager.enabled()) 0
+        else ElasticLog.appendThrottleTimeMs(request.context.principal.toString)
+      val maxThrottleTimeMs = Math.max(Math.max(bandwidthThrottleTimeMs, requestThrottleTimeMs), appendThrottleTimeMs.toInt)
       if (maxThrottleTimeMs > 0) {
         request.apiThrottleTimeMs = maxThrottleTimeMs
+      }
+      // only the quota violations mute the channel.
+      if (bandwidthThrottleTimeMs > 0 || requestThrottleTimeMs > 0) {
         if (bandwidthThrottleTimeMs > requestThrottleTimeMs) {
           requestHelper.throttle(quotas.produce, request, bandwidthThrottleTimeMs)
         } else {
           requestHelper.throttle(quotas.request, request, requestThrottleTimeMs)
         }
       }
+      // AutoMQ for Kafka inject end
 
       // Send the response immediately. In case of throttling, the channel has already been muted.
       if (produceRequest.acks == 0) {
@@ -760,7 +771,8 @@ class KafkaApis(val requestChannel: RequestChannel,
       // AutoMQ for Kafka inject start
       def doAppendRecords(): Unit = {
         // call the replica manager to append messages to the replicas
-        replicaManager.appendRecords(
+        AppendTenantHint.mark(request.context.principal.toString)
+        try replicaManager.appendRecords(
           timeout = produceRequest.timeout.toLong,
           requiredAcks = produceRequest.acks,
           internalTopicsAllowed = internalTopicsAllowed,
@@ -769,6 +781,7 @@ class KafkaApis(val requestChannel: RequestChannel,
           requestLocal = requestLocal,
           responseCallback = sendResponseCallback,
           recordConversionStatsCallback = processingStatsCallback)
+        finally AppendTenantHint.reset()
 
         // if the request is put into the purgatory, it will have a held reference and hence cannot be garbage collected;
         // hence we clear its data here in order to let GC reclaim its memory since it is already appended to log
@@ -1102,11 +1115,14 @@ class KafkaApis(val requestChannel: RequestChannel,
         fetchingExecutors.submit(new Runnable {
           override def run(): Unit = {
             ReadManualReleaseHint.mark()
-            // FIXME: Buggy, replace quick slow fetch to async fetch
-//            SeparateSlowAndQuickFetchHint.mark()
-            doFetchingRecords()
-//            SeparateSlowAndQuickFetchHint.reset()
-            ReadManualReleaseHint.reset()
+            // The partitions not read within the slow fetch timeout are re-read by the slow fetch scheduler.
+            SeparateSlowAndQuickFetchHint.mark()
+            try {
+              doFetchingRecords()
+            } finally {
+              SeparateSlowAndQuickFetchHint.reset()
+              ReadManualReleaseHint.reset()
+            }
           }
         })
       } else {
@@ -1120,17 +1136,22 @@ class KafkaApis(val requestChannel: RequestChannel,
   def replicationQuota(fetchRequest: FetchRequest): ReplicaQuota =
     if (fetchRequest.isFromFollower) quotas.leader else UnboundedQuota
 
-  def handleListOffsetRequest(request: RequestChannel.Request): Unit = {
+  def handleListOffsetRequest(request: RequestChannel.Request): CompletableFuture[Unit] = {
     val version = request.header.apiVersion
 
-    val topics = if (version == 0)
-      handleListOffsetRequestV0(request)
+    // AutoMQ for Kafka inject start
+    // The offsets of V1 and above are searched asynchronously, the response is sent once all the partitions complete.
+    val topicsFuture = if (version == 0)
+      CompletableFuture.completedFuture(handleListOffsetRequestV0(request))
     else
       handleListOffsetRequestV1AndAbove(request)
 
-    requestHelper.sendResponseMaybeThrottle(request, requestThrottleMs => new ListOffsetsResponse(new ListOffsetsResponseData()
-      .setThrottleTimeMs(requestThrottleMs)
-      .setTopics(topics.asJava)))
+    topicsFuture.thenApply[Unit] { topics =>
+      requestHelper.sendResponseMaybeThrottle(request, requestThrottleMs => new ListOffsetsResponse(new ListOffsetsResponseData()
+        .setThrottleTimeMs(requestThrottleMs)
+        .setTopics(topics.asJava)))
+    }
+    // AutoMQ for Kafka inject end
   }
 
   private def handleListOffsetRequestV0(request : RequestChannel.Request) : List[ListOffsetsTopicResponse] = {
@@ -1188,7 +1209,7 @@ class KafkaApis(val requestChannel: RequestChannel,
     (responseTopics ++ unauthorizedResponseStatus).toList
   }
 
-  private def handleListOffsetRequestV1AndAbove(request : RequestChannel.Request): List[ListOffsetsTopicResponse] = {
+  private def handleListOffsetRequestV1AndAbove(request : RequestChannel.Request): CompletableFuture[List[ListOffsetsTopicResponse]] = {
     val correlationId = request.header.correlationId
     val clientId = request.header.clientId
     val offsetRequest = request.body[ListOffsetsRequest]
@@ -1202,6 +1223,34 @@ class KafkaApis(val requestChannel: RequestChannel,
         .setOffset(ListOffsetsResponse.UNKNOWN_OFFSET)
     }
 
+    def buildErrorResponseFromException(e: Throwable, topicPartition: TopicPartition, partition: ListOffsetsPartition): ListOffsetsPartitionResponse = {
+      e match {
+        // NOTE: These exceptions are special cases since these error messages are typically transient or the client
+        // would have received a clear exception and there is no value in logging the entire stack trace for the same
+        case e @ (_ : UnknownTopicOrPartitionException |
+                  _ : NotLeaderOrFollowerException |
+                  _ : UnknownLeaderEpochException |
+                  _ : FencedLeaderEpochException |
+                  _ : KafkaStorageException |
+                  _ : UnsupportedForMessageFormatException) =>
+          debug(s"Offset request with correlation id $correlationId from client $clientId on " +
+              s"partition $topicPartition failed due to ${e.getMessage}")
+          buildErrorResponse(Errors.forException(e), partition)
+
+        // Only V5 and newer ListOffset calls should get OFFSET_NOT_AVAILABLE
+        case e: OffsetNotAvailableException =>
+          if (request.header.apiVersion >= 5) {
+            buildErrorResponse(Errors.forException(e), partition)
+          } else {
+            buildErrorResponse(Errors.LEADER_NOT_AVAILABLE, partition)
+          }
+
+        case e: Throwable =>
+          error("Error while responding to offset request", e)
+          buildErrorResponse(Errors.forException(e), partition)
+      }
+    }
+
     val (authorizedRequestInfo, unauthorizedRequestInfo) = authHelper.partitionSeqByAuthorized(request.context,
         DESCRIBE, TOPIC, offsetRequest.topics.asScala.toSeq)(_.name)
 
@@ -1218,9 +1267,9 @@ class KafkaApis(val requestChannel: RequestChannel,
         if (offsetRequest.duplicatePartitions.contains(topicPartition)) {
           debug(s"OffsetRequest with correlation id $correlationId from client $clientId on partition $topicPartition " +
               s"failed because the partition is duplicated in the request.")
-          buildErrorResponse(Errors.INVALID_REQUEST, partition)
+          CompletableFuture.completedFuture(buildErrorResponse(Errors.INVALID_REQUEST, partition))
         } else {
-          try {
+          val foundOptFuture = try {
             val fetchOnlyFromLeader = offsetRequest.replicaId != ListOffsetsRequest.DEBUGGING_REPLICA_ID
             val isClientRequest = offsetRequest.replicaId == ListOffsetsRequest.CONSUMER_REPLICA_ID
             val isolationLevelOpt = if (isClientRequest)
@@ -1228,56 +1277,46 @@ class KafkaApis(val requestChannel: RequestChannel,
             else
               None
 
-            val foundOpt = replicaManager.fetchOffsetForTimestamp(topicPartition,
+            replicaManager.fetchOffsetForTimestampAsync(topicPartition,
               partition.timestamp,
               isolationLevelOpt,
               if (partition.currentLeaderEpoch == ListOffsetsResponse.UNKNOWN_EPOCH) Optional.empty() else Optional.of(partition.currentLeaderEpoch),
               fetchOnlyFromLeader)
-
-            val response = foundOpt match {
-              case Some(found) =>
-                val partitionResponse = new ListOffsetsPartitionResponse()
-                  .setPartitionIndex(partition.partitionIndex)
-                  .setErrorCode(Errors.NONE.code)
-                  .setTimestamp(found.timestamp)
-                  .setOffset(found.offset)
-                if (found.leaderEpoch.isPresent && version >= 4)
-                  partitionResponse.setLeaderEpoch(found.leaderEpoch.get)
-                partitionResponse
-              case None =>
-                buildErrorResponse(Errors.NONE, partition)
-            }
-            response
           } catch {
-            // NOTE: These exceptions are special cases since these error messages are typically transient or the client
-            // would have received a clear exception and there is no value in logging the entire stack trace for the same
-            case e @ (_ : UnknownTopicOrPartitionException |
-                      _ : NotLeaderOrFollowerException |
-                      _ : UnknownLeaderEpochException |
-                      _ : FencedLeaderEpochException |
-                      _ : KafkaStorageException |
-                      _ : UnsupportedForMessageFormatException) =>
-              debug(s"Offset request with correlation id $correlationId from client $clientId on " +
-                  s"partition $topicPartition failed due to ${e.getMessage}")
-              buildErrorResponse(Errors.forException(e), partition)
-
-            // Only V5 and newer ListOffset calls should get OFFSET_NOT_AVAILABLE
-            case e: OffsetNotAvailableException =>
-              if (request.header.apiVersion >= 5) {
-                buildErrorResponse(Errors.forException(e), partition)
-              } else {
-                buildErrorResponse(Errors.LEADER_NOT_AVAILABLE, partition)
-              }
+            case e: Throwable => CompletableFuture.failedFuture[Option[TimestampAndOffset]](e)
+          }
 
-            case e: Throwable =>
-              error("Error while responding to offset request", e)
-              buildErrorResponse(Errors.forException(e), partition)
+          foundOptFuture.handle[ListOffsetsPartitionResponse] { (foundOpt, e) =>
+            if (e != null) {
+              buildErrorResponseFromException(Errors.maybeUnwrapException(e), topicPartition, partition)
+            } else {
+              foundOpt match {
+                case Some(found) =>
+                  val partitionResponse = new ListOffsetsPartitionResponse()
+                    .setPartitionIndex(partition.partitionIndex)
+                    .setErrorCode(Errors.NONE.code)
+                    .setTimestamp(found.timestamp)
+                    .setOffset(found.offset)
+                  if (found.leaderEpoch.isPresent && version >= 4)
+                    partitionResponse.setLeaderEpoch(found.leaderEpoch.get)
+                  partitionResponse
+                case None =>
+                  buildErrorResponse(Errors.NONE, partition)
+              }
+            }
           }
         }
       }
-      new ListOffsetsTopicResponse().setName(topic.name).setPartitions(responsePartitions.asJava)
+      (topic.name, responsePartitions)
+    }
+
+    val partitionFutures = responseTopics.flatMap { case (_, responsePartitions) => responsePartitions }
+    CompletableFuture.allOf(partitionFutures.toSeq: _*).thenApply[List[ListOffsetsTopicResponse]] { _ =>
+      val topics = responseTopics.map { case (name, responsePartitions) =>
+        new ListOffsetsTopicResponse().setName(name).setPartitions(responsePartitions.map(_.join()).asJava)
+      }
+      (topics ++ unauthorizedResponseStatus).toList
     }
-    (responseTopics ++ unauthorizedResponseStatus).toList
   }
 
   private def metadataResponseTopic(error: Errors,
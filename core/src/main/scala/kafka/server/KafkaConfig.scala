@@ -27,6 +27,8 @@ import kafka.coordinator.group.OffsetConfig
 import kafka.coordinator.transaction.{TransactionLog, TransactionStateManager}
 import kafka.log.LogConfig
 import kafka.log.LogConfig.MessageFormatVersion
+import kafka.log.stream.s3.network.ControllerRequestSender
+import kafka.log.streamaspect.AppendPermitPool
 import kafka.message.{BrokerCompressionCodec, CompressionCodec, ProducerCompressionCodec, ZStdCompressionCodec}
 import kafka.security.authorizer.AuthorizerUtils
 import kafka.server.KafkaConfig.{ControllerListenerNamesProp, ListenerSecurityProtocolMapProp}
@@ -320,8 +322,14 @@ object Defaults {
   val S3MaxStreamNumPerWALObject: Int = 10000
   val S3MaxStreamObjectNumPerCommit: Int = 10000
   val S3ObjectRetentionTimeInSecond: Long = 10 * 60 // 10min
+  val S3ObjectDeleteConcurrency: Int = 4
   val S3NetworkBaselineBandwidth: Long = 100 * 1024 * 1024 // 100MB/s
   val S3RefillPeriodMs: Int = 1000 // 1s
+  val S3ReadAheadWindow: Int = 4
+  val S3ReadAheadMaxBytes: Int = 64 * 1024 * 1024 // 64MB
+  val S3SlowFetchMaxInflightBytes: Long = 64 * 1024 * 1024 // 64MB
+  val S3AppendPermitBytes: Long = 100 * 1024 * 1024 // 100MB
+  val S3AppendPermitHardLimitBytes: Long = 200 * 1024 * 1024 // 200MB
 }
 
 object KafkaConfig {
@@ -708,6 +716,10 @@ object KafkaConfig {
   val S3StreamObjectCompactionLivingTimeMinutesProp = "s3.stream.object.compaction.living.time.minutes"
   val S3ControllerRequestRetryMaxCountProp = "s3.controller.request.retry.max.count"
   val S3ControllerRequestRetryBaseDelayMsProp = "s3.controller.request.retry.base.delay.ms"
+  val S3ControllerRequestPipelineDepthProp = "s3.controller.request.pipeline.depth"
+  val S3ControllerRequestPipelineDepthOverridesProp = "s3.controller.request.pipeline.depth.overrides"
+  val S3ControllerRequestMaxBatchSizeProp = "s3.controller.request.max.batch.size"
+  val S3ControllerRequestMaxBatchBytesProp = "s3.controller.request.max.batch.bytes"
   val S3WALObjectCompactionIntervalProp = "s3.wal.object.compaction.interval.minutes"
   val S3WALObjectCompactionCacheSizeProp = "s3.wal.object.compaction.cache.size"
   val S3WALObjectCompactionUploadConcurrencyProp = "s3.wal.object.compaction.upload.concurrency"
@@ -718,9 +730,17 @@ object KafkaConfig {
   val S3MaxStreamObjectNumPerCommit = "s3.max.stream.object.num.per.commit"
   val S3MockEnableProp = "s3.mock.enable"
   val S3ObjectRetentionTimeInSecondProp = "s3.object.retention.time.in.second"
+  val S3ObjectDeleteConcurrencyProp = "s3.object.delete.concurrency"
   val S3ObjectLogEnableProp = "s3.object.log.enable"
   val S3NetworkBaselineBandwidthProp = "s3.network.baseline.bandwidth"
   val S3RefillPeriodMsProp = "s3.network.refill.period.ms"
+  val S3ReadAheadWindowProp = "s3.read.ahead.window"
+  val S3ReadAheadMaxBytesProp = "s3.read.ahead.max.bytes"
+  val S3SlowFetchMaxInflightBytesProp = "s3.slow.fetch.max.inflight.bytes"
+  val S3AppendPermitBytesProp = "s3.append.permit.bytes"
+  val S3AppendPermitHardLimitBytesProp = "s3.append.permit.hard.limit.bytes"
+  val S3AppendPermitTenantWeightsProp = "s3.append.permit.tenant.weights"
+  val S3CommitPrepopulateEnableProp = "s3.commit.prepopulate.enable"
 
   val S3EndpointDoc = "The S3 endpoint, ex. <code>https://s3.{region}.amazonaws.com</code>."
   val S3RegionDoc = "The S3 region, ex. <code>us-east-1</code>."
@@ -745,6 +765,13 @@ object KafkaConfig {
   val S3StreamObjectCompactionLivingTimeMinutesDoc = "The S3 stream object compaction living time threshold in minutes."
   val S3ControllerRequestRetryMaxCountDoc = "The S3 controller request retry max count."
   val S3ControllerRequestRetryBaseDelayMsDoc = "The S3 controller request retry base delay in milliseconds."
+  val S3ControllerRequestPipelineDepthDoc = "The maximum in-flight batch requests of each API to the controller."
+  val S3ControllerRequestPipelineDepthOverridesDoc = "The pipeline depths of the specific APIs, in the format of <code>api=depth</code>, " +
+    "ex. <code>OpenStreams=4</code>, the API name is the same as the <code>api</code> tag of the controller request metrics. " +
+    "The other APIs use <code>s3.controller.request.pipeline.depth</code>."
+  val S3ControllerRequestMaxBatchSizeDoc = "The maximum sub-requests in a batch request to the controller."
+  val S3ControllerRequestMaxBatchBytesDoc = "The maximum estimated bytes of the sub-requests in a batch request to the controller, " +
+    "a batch contains at least one sub-request."
   val S3WALObjectCompactionIntervalDoc = "The execution interval of S3 object compaction in minutes."
   val S3WALObjectCompactionCacheSizeDoc = "The S3 object compaction cache size in Bytes."
   val S3WALObjectCompactionUploadConcurrencyDoc = "The S3 object compaction upload concurrency."
@@ -755,9 +782,20 @@ object KafkaConfig {
   val S3MaxStreamObjectNumPerCommitDoc = "The maximum number of stream objects in single commit request"
   val S3MockEnableDoc = "The S3 mock enable flag, replace all S3 related module with memory-mocked implement."
   val S3ObjectRetentionTimeInSecondDoc = "The S3 object retention time in second, default is 10 minutes (600s)."
+  val S3ObjectDeleteConcurrencyDoc = "The maximum in-flight batch delete requests of the S3 objects from the controller."
   val S3ObjectLogEnableDoc = "Whether to enable S3 object trace log."
   val S3NetworkBaselineBandwidthDoc = "The network baseline bandwidth in Bytes/s."
   val S3RefillPeriodMsDoc = "The network bandwidth token refill period in milliseconds."
+  val S3ReadAheadWindowDoc = "The maximum number of in-flight fetches of a log reader, including the one the reader is waiting for."
+  val S3ReadAheadMaxBytesDoc = "The maximum bytes of the read-ahead fetches of all the log readers, in flight or fetched but not consumed yet."
+  val S3SlowFetchMaxInflightBytesDoc = "The maximum estimated bytes of the running slow fetch re-reads, the exceeding re-reads are queued per client."
+  val S3AppendPermitBytesDoc = "The in-flight append bytes shared by the tenants (principals) in proportion to their weights. " +
+    "When it's exceeded, the produce requests of the tenants over their fair shares are throttled."
+  val S3AppendPermitHardLimitBytesDoc = "The in-flight append bytes at which the appends are blocked until the in-flight appends are persisted."
+  val S3AppendPermitTenantWeightsDoc = "The weights of the tenants in the append permits, in the format of <code>principal=weight</code>, " +
+    "ex. <code>User:alice=2</code>. The weight of an unlisted tenant is 1."
+  val S3CommitPrepopulateEnableDoc = "Whether to add the objects committed by the broker to its local object index before the metadata image " +
+    "contains them, so the reads of the committed data don't wait for the metadata propagation."
 
   // AutoMQ for Kafka inject end
 
@@ -1579,6 +1617,10 @@ object KafkaConfig {
       .define(S3StreamObjectCompactionLivingTimeMinutesProp, INT, 60, MEDIUM, S3StreamObjectCompactionLivingTimeMinutesDoc)
       .define(S3ControllerRequestRetryMaxCountProp, INT, Integer.MAX_VALUE, MEDIUM, S3ControllerRequestRetryMaxCountDoc)
       .define(S3ControllerRequestRetryBaseDelayMsProp, LONG, 500, MEDIUM, S3ControllerRequestRetryBaseDelayMsDoc)
+      .define(S3ControllerRequestPipelineDepthProp, INT, 1, atLeast(1), MEDIUM, S3ControllerRequestPipelineDepthDoc)
+      .define(S3ControllerRequestPipelineDepthOverridesProp, LIST, "", new ControllerRequestSender.PipelineDepthsValidator(), LOW, S3ControllerRequestPipelineDepthOverridesDoc)
+      .define(S3ControllerRequestMaxBatchSizeProp, INT, 1000, atLeast(1), MEDIUM, S3ControllerRequestMaxBatchSizeDoc)
+      .define(S3ControllerRequestMaxBatchBytesProp, INT, 1024 * 1024, atLeast(1), MEDIUM, S3ControllerRequestMaxBatchBytesDoc)
       .define(S3WALObjectCompactionIntervalProp, INT, Defaults.S3WALObjectCompactionInterval, MEDIUM, S3WALObjectCompactionIntervalDoc)
       .define(S3WALObjectCompactionCacheSizeProp, LONG, Defaults.S3WALObjectCompactionCacheSize, MEDIUM, S3WALObjectCompactionCacheSizeDoc)
       .define(S3WALObjectCompactionUploadConcurrencyProp, INT, Defaults.S3WALObjectCompactionUploadConcurrency, MEDIUM, S3WALObjectCompactionUploadConcurrencyDoc)
@@ -1589,9 +1631,17 @@ object KafkaConfig {
       .define(S3MaxStreamObjectNumPerCommit, INT, Defaults.S3MaxStreamObjectNumPerCommit, MEDIUM, S3MaxStreamObjectNumPerCommitDoc)
       .define(S3MockEnableProp, BOOLEAN, false, LOW, S3MockEnableDoc)
       .define(S3ObjectRetentionTimeInSecondProp, LONG, Defaults.S3ObjectRetentionTimeInSecond, MEDIUM, S3ObjectRetentionTimeInSecondDoc)
+      .define(S3ObjectDeleteConcurrencyProp, INT, Defaults.S3ObjectDeleteConcurrency, atLeast(1), LOW, S3ObjectDeleteConcurrencyDoc)
       .define(S3ObjectLogEnableProp, BOOLEAN, false, LOW, S3ObjectLogEnableDoc)
       .define(S3NetworkBaselineBandwidthProp, LONG, Defaults.S3NetworkBaselineBandwidth, MEDIUM, S3NetworkBaselineBandwidthDoc)
       .define(S3RefillPeriodMsProp, INT, Defaults.S3RefillPeriodMs, MEDIUM, S3RefillPeriodMsDoc)
+      .define(S3ReadAheadWindowProp, INT, Defaults.S3ReadAheadWindow, atLeast(1), MEDIUM, S3ReadAheadWindowDoc)
+      .define(S3ReadAheadMaxBytesProp, INT, Defaults.S3ReadAheadMaxBytes, atLeast(0), MEDIUM, S3ReadAheadMaxBytesDoc)
+      .define(S3SlowFetchMaxInflightBytesProp, LONG, Defaults.S3SlowFetchMaxInflightBytes, atLeast(0), MEDIUM, S3SlowFetchMaxInflightBytesDoc)
+      .define(S3AppendPermitBytesProp, LONG, Defaults.S3AppendPermitBytes, atLeast(1), MEDIUM, S3AppendPermitBytesDoc)
+      .define(S3AppendPermitHardLimitBytesProp, LONG, Defaults.S3AppendPermitHardLimitBytes, atLeast(1), MEDIUM, S3AppendPermitHardLimitBytesDoc)
+      .define(S3AppendPermitTenantWeightsProp, LIST, "", new AppendPermitPool.TenantWeightsValidator(), LOW, S3AppendPermitTenantWeightsDoc)
+      .define(S3CommitPrepopulateEnableProp, BOOLEAN, false, LOW, S3CommitPrepopulateEnableDoc)
     // AutoMQ for Kafka inject end
   }
 
@@ -2148,6 +2198,12 @@ class KafkaConfig private(doLog: Boolean, val props: java.util.Map[_, _], dynami
   val s3StreamObjectCompactionLivingTimeMinutes = getInt(KafkaConfig.S3StreamObjectCompactionLivingTimeMinutesProp)
   val s3ControllerRequestRetryMaxCount = getInt(KafkaConfig.S3ControllerRequestRetryMaxCountProp)
   val s3ControllerRequestRetryBaseDelayMs = getLong(KafkaConfig.S3ControllerRequestRetryBaseDelayMsProp)
+  val s3ControllerRequestPipelineDepth = getInt(KafkaConfig.S3ControllerRequestPipelineDepthProp)
+  val s3ControllerRequestPipelineDepthOverrides: java.util.Map[String, Integer] =
+    ControllerRequestSender.BatchPolicyContext.parsePipelineDepths(KafkaConfig.S3ControllerRequestPipelineDepthOverridesProp,
+      getList(KafkaConfig.S3ControllerRequestPipelineDepthOverridesProp))
+  val s3ControllerRequestMaxBatchSize = getInt(KafkaConfig.S3ControllerRequestMaxBatchSizeProp)
+  val s3ControllerRequestMaxBatchBytes = getInt(KafkaConfig.S3ControllerRequestMaxBatchBytesProp)
   // TODO: ensure incremental epoch => Store epoch in disk, if timestamp flip back, we could use disk epoch to keep the incremental epoch.
   val brokerEpoch = System.currentTimeMillis()
   val s3WALObjectCompactionInterval = getInt(KafkaConfig.S3WALObjectCompactionIntervalProp)
@@ -2160,9 +2216,18 @@ class KafkaConfig private(doLog: Boolean, val props: java.util.Map[_, _], dynami
   val s3MaxStreamObjectNumPerCommit = getInt(KafkaConfig.S3MaxStreamObjectNumPerCommit)
   val s3MockEnable = getBoolean(KafkaConfig.S3MockEnableProp)
   val s3ObjectRetentionTimeInSecond = getLong(KafkaConfig.S3ObjectRetentionTimeInSecondProp)
+  val s3ObjectDeleteConcurrency = getInt(KafkaConfig.S3ObjectDeleteConcurrencyProp)
   val s3ObjectLogEnable = getBoolean(KafkaConfig.S3ObjectLogEnableProp)
   val s3NetworkBaselineBandwidthProp = getLong(KafkaConfig.S3NetworkBaselineBandwidthProp)
   val s3RefillPeriodMsProp = getInt(KafkaConfig.S3RefillPeriodMsProp)
+  val s3ReadAheadWindow = getInt(KafkaConfig.S3ReadAheadWindowProp)
+  val s3ReadAheadMaxBytes = getInt(KafkaConfig.S3ReadAheadMaxBytesProp)
+  val s3SlowFetchMaxInflightBytes = getLong(KafkaConfig.S3SlowFetchMaxInflightBytesProp)
+  val s3AppendPermitBytes = getLong(KafkaConfig.S3AppendPermitBytesProp)
+  val s3AppendPermitHardLimitBytes = getLong(KafkaConfig.S3AppendPermitHardLimitBytesProp)
+  val s3AppendPermitTenantWeights: java.util.Map[String, Integer] =
+    AppendPermitPool.parseTenantWeights(KafkaConfig.S3AppendPermitTenantWeightsProp, getList(KafkaConfig.S3AppendPermitTenantWeightsProp))
+  val s3CommitPrepopulateEnable = getBoolean(KafkaConfig.S3CommitPrepopulateEnableProp)
   // AutoMQ for Kafka inject end
 
   def addReconfigurable(reconfigurable: Reconfigurable): Unit = {
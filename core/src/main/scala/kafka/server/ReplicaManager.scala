@@ -65,7 +65,7 @@ import java.util
 import java.util.Optional
 import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger}
 import java.util.concurrent.locks.Lock
-import java.util.concurrent.{CompletableFuture, ConcurrentHashMap, Executors, TimeUnit}
+import java.util.concurrent.{CompletableFuture, ConcurrentHashMap, TimeUnit}
 import scala.collection.mutable.ArrayBuffer
 import scala.collection.{Map, Seq, Set, mutable}
 import scala.compat.java8.OptionConverters._
@@ -222,8 +222,8 @@ class ReplicaManager(val config: KafkaConfig,
   val delayedElectLeaderPurgatory = delayedElectLeaderPurgatoryParam.getOrElse(
     DelayedOperationPurgatory[DelayedElectLeader](
       purgatoryName = "ElectLeader", brokerId = config.brokerId))
-  // This threadPool is used to separate slow fetches from quick fetches.
-  val slowFetchExecutors = Executors.newFixedThreadPool(4, ThreadUtils.createThreadFactory("slow-fetch-executor-%d", true))
+  // This scheduler is used to separate slow fetches from quick fetches.
+  val slowFetchScheduler = new SlowFetchScheduler(SlowFetchScheduler.DefaultMaxConcurrency, config.s3SlowFetchMaxInflightBytes, time)
 
   /* epoch of the controller that last changed the leader */
   @volatile private[server] var controllerEpoch: Int = KafkaController.InitialControllerEpoch
@@ -1045,6 +1045,17 @@ class ReplicaManager(val config: KafkaConfig,
     partition.fetchOffsetForTimestamp(timestamp, isolationLevel, currentLeaderEpoch, fetchOnlyFromLeader)
   }
 
+  // AutoMQ for Kafka inject start
+  def fetchOffsetForTimestampAsync(topicPartition: TopicPartition,
+                                   timestamp: Long,
+                                   isolationLevel: Option[IsolationLevel],
+                                   currentLeaderEpoch: Optional[Integer],
+                                   fetchOnlyFromLeader: Boolean): CompletableFuture[Option[TimestampAndOffset]] = {
+    val partition = getPartitionOrException(topicPartition)
+    partition.fetchOffsetForTimestampAsync(timestamp, isolationLevel, currentLeaderEpoch, fetchOnlyFromLeader)
+  }
+  // AutoMQ for Kafka inject end
+
   def legacyFetchOffsetsForTimestamp(topicPartition: TopicPartition,
                                      timestamp: Long,
                                      maxNumOffsets: Int,
@@ -1094,20 +1105,10 @@ class ReplicaManager(val config: KafkaConfig,
     }
 
     // AutoMQ for Kafka inject start
-    // If there is any slow fetch hint, we will read from local log in a separate thread.
+    // If there is any slow fetch hint, the slow partitions will be re-read in the slow fetch scheduler, and the
+    // results of the other partitions are kept as they are.
     if (containsSlowFetchHint) {
-      slowFetchExecutors.submit(new Runnable {
-        override def run(): Unit = {
-          ReadManualReleaseHint.mark()
-          val logReadResults = readFromLocalLog(params, fetchInfos, quota, readFromPurgatory = false)
-          ReadManualReleaseHint.reset()
-          val fetchPartitionData = logReadResults.map { case (tp, result) =>
-            val isReassignmentFetch = params.isFromFollower && isAddingReplica(tp.topicPartition, params.replicaId)
-            tp -> result.toFetchPartitionData(isReassignmentFetch)
-          }
-          responseCallback(fetchPartitionData)
-        }
-      })
+      scheduleSlowFetch(params, fetchInfos, logReadResults, quota, responseCallback)
       return
     }
     // AutoMQ for Kafka inject end
@@ -1152,6 +1153,39 @@ class ReplicaManager(val config: KafkaConfig,
     }
   }
 
+  // AutoMQ for Kafka inject start
+  private def scheduleSlowFetch(params: FetchParams,
+                                fetchInfos: Seq[(TopicIdPartition, PartitionData)],
+                                logReadResults: Seq[(TopicIdPartition, LogReadResult)],
+                                quota: ReplicaQuota,
+                                responseCallback: Seq[(TopicIdPartition, FetchPartitionData)] => Unit): Unit = {
+    def isSlow(result: LogReadResult): Boolean = result.exception.exists(_.isInstanceOf[SlowFetchHintException])
+
+    val slowPartitions = logReadResults.filter { case (_, result) => isSlow(result) }.map(_._1).toSet
+    val slowFetchInfos = fetchInfos.filter { case (tp, _) => slowPartitions.contains(tp) }
+    // The slow partitions share the response bytes left by the other partitions, so the merged response stays within
+    // the fetch max bytes. The held-up stream fetches are keyed by the start offset, so they are still reused by the
+    // re-read with a smaller size hint.
+    val readBytes = logReadResults.filterNot { case (_, result) => isSlow(result) }.map(_._2.info.records.sizeInBytes.toLong).sum
+    val slowParams = params.copy(maxBytes = math.max(0L, params.maxBytes - readBytes).toInt)
+    val estimatedBytes = math.min(slowParams.maxBytes.toLong, slowFetchInfos.map(_._2.maxBytes.toLong).sum)
+
+    slowFetchScheduler.schedule(SlowFetchScheduler.clientKey(params), estimatedBytes, () => {
+      ReadManualReleaseHint.mark()
+      val slowReadResults = try {
+        readAsyncFromLocalLog(slowParams, slowFetchInfos, quota, readFromPurgatory = false).toMap
+      } finally {
+        ReadManualReleaseHint.reset()
+      }
+      val fetchPartitionData = logReadResults.map { case (tp, result) =>
+        val isReassignmentFetch = params.isFromFollower && isAddingReplica(tp.topicPartition, params.replicaId)
+        tp -> slowReadResults.getOrElse(tp, result).toFetchPartitionData(isReassignmentFetch)
+      }
+      responseCallback(fetchPartitionData)
+    })
+  }
+  // AutoMQ for Kafka inject end
+
   /**
    * Read asynchronously from multiple topic partitions at the given offset up to maxSize bytes
    */
@@ -2221,7 +2255,7 @@ class ReplicaManager(val config: KafkaConfig,
     replicaSelectorOpt.foreach(_.close)
     removeAllTopicMetrics()
 
-    slowFetchExecutors.shutdown()
+    slowFetchScheduler.shutdown()
 
     awaitAllPartitionShutdown()
 
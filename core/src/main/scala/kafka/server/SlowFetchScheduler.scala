@@ -0,0 +1,137 @@
+/**
+  * Licensed to the Apache Software Foundation (ASF) under one or more
+  * contributor license agreements.  See the NOTICE file distributed with
+  * this work for additional information regarding copyright ownership.
+  * The ASF licenses this file to You under the Apache License, Version 2.0
+  * (the "License"); you may not use this file except in compliance with
+  * the License.  You may obtain a copy of the License at
+  *
+  *    http://www.apache.org/licenses/LICENSE-2.0
+  *
+  * Unless required by applicable law or agreed to in writing, software
+  * distributed under the License is distributed on an "AS IS" BASIS,
+  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  * See the License for the specific language governing permissions and
+  * limitations under the License.
+  */
+
+package kafka.server
+
+import java.util
+import java.util.concurrent.{ExecutorService, Executors}
+import java.util.concurrent.locks.ReentrantLock
+
+import kafka.metrics.KafkaMetricsGroup
+import kafka.utils.CoreUtils.inLock
+import kafka.utils.Logging
+import org.apache.kafka.common.utils.{ThreadUtils, Time}
+
+/**
+ * Schedules the re-reads of the partitions whose first read is hinted as slow.
+ *
+ * The pending re-reads are queued per client and dispatched round-robin across the clients, so a client which keeps
+ * reading cold data can't starve the others. At most `maxConcurrency` re-reads run at the same time, and the
+ * estimated bytes of the running re-reads are bounded by `maxInflightBytes` (a single re-read is always allowed
+ * to run even if it exceeds the budget). A re-read which doesn't fit in the budget doesn't hold up the smaller
+ * re-reads of the other clients.
+ */
+class SlowFetchScheduler(maxConcurrency: Int,
+                         maxInflightBytes: Long,
+                         time: Time) extends Logging with KafkaMetricsGroup {
+  this.logIdent = "[SlowFetchScheduler] "
+
+  private val executor: ExecutorService = Executors.newFixedThreadPool(maxConcurrency,
+    ThreadUtils.createThreadFactory("slow-fetch-executor-%d", true))
+  private val lock = new ReentrantLock()
+  // the pending tasks of each client, in the round-robin order of the clients.
+  private val queues = new util.LinkedHashMap[String, util.ArrayDeque[SlowFetchTask]]()
+  private var queueSize = 0
+  private var running = 0
+  private var inflightBytes = 0L
+
+  private val queueTimeHist = newHistogram("SlowFetchQueueTimeMs")
+  private val latencyHist = newHistogram("SlowFetchLatencyMs")
+  newGauge("SlowFetchQueueSize", () => inLock(lock) { queueSize })
+  newGauge("SlowFetchInflightBytes", () => inLock(lock) { inflightBytes })
+
+  /**
+   * Schedule a re-read.
+   *
+   * @param clientKey the key of the client which the re-read is accounted to.
+   * @param bytes     the estimated bytes of the re-read.
+   * @param fun       the re-read, which is run in the scheduler's threads.
+   */
+  def schedule(clientKey: String, bytes: Long, fun: () => Unit): Unit = {
+    inLock(lock) {
+      queues.computeIfAbsent(clientKey, _ => new util.ArrayDeque[SlowFetchTask]())
+        .add(SlowFetchTask(clientKey, bytes, fun, time.milliseconds))
+      queueSize += 1
+      maybeDispatch()
+    }
+  }
+
+  def shutdown(): Unit = {
+    executor.shutdown()
+    removeMetric("SlowFetchQueueTimeMs")
+    removeMetric("SlowFetchLatencyMs")
+    removeMetric("SlowFetchQueueSize")
+    removeMetric("SlowFetchInflightBytes")
+  }
+
+  private def maybeDispatch(): Unit = {
+    var dispatched = true
+    while (dispatched && running < maxConcurrency && !queues.isEmpty) {
+      dispatched = false
+      // take the next task of the first client in the round-robin order whose task fits in the byte budget. The
+      // clients with a larger task are skipped but keep their turn, so they go first once the budget is released.
+      val iterator = queues.entrySet().iterator()
+      while (!dispatched && iterator.hasNext) {
+        val queue = iterator.next().getValue
+        val task = queue.peek()
+        if (running == 0 || inflightBytes + task.bytes <= maxInflightBytes) {
+          queue.poll()
+          queueSize -= 1
+          // move the client to the tail, so the next task is taken from the next client.
+          iterator.remove()
+          if (!queue.isEmpty) {
+            queues.put(task.clientKey, queue)
+          }
+          running += 1
+          inflightBytes += task.bytes
+          executor.execute(() => run(task))
+          dispatched = true
+        }
+      }
+    }
+  }
+
+  private def run(task: SlowFetchTask): Unit = {
+    val startMs = time.milliseconds
+    queueTimeHist.update(startMs - task.createTimeMs)
+    try {
+      task.fun()
+    } catch {
+      case e: Throwable => error(s"Failed to run the slow fetch of client ${task.clientKey}", e)
+    } finally {
+      latencyHist.update(time.milliseconds - task.createTimeMs)
+      inLock(lock) {
+        running -= 1
+        inflightBytes -= task.bytes
+        maybeDispatch()
+      }
+    }
+  }
+}
+
+object SlowFetchScheduler {
+  val DefaultMaxConcurrency = 4
+
+  /**
+   * The key of the client which a fetch is accounted to.
+   */
+  def clientKey(params: FetchParams): String = {
+    params.clientMetadata.map(metadata => "client-" + metadata.clientId).getOrElse("replica-" + params.replicaId)
+  }
+}
+
+private case class SlowFetchTask(clientKey: String, bytes: Long, fun: () => Unit, createTimeMs: Long)
@@ -86,10 +86,17 @@ class BrokerMetadataListener(
    */
   private var _image = MetadataImage.EMPTY
 
+  // AutoMQ for Kafka inject start
+  /**
+   * The executor which applies the large S3 deltas in parallel, e.g. the delta loading a snapshot.
+   */
+  private val deltaApplyExecutor = MetadataDelta.newApplyExecutor(threadNamePrefix.getOrElse(""))
+  // AutoMQ for Kafka inject end
+
   /**
    * The current metadata delta. Accessed only from the event queue thread.
    */
-  private var _delta = new MetadataDelta(_image)
+  private var _delta = new MetadataDelta(_image, deltaApplyExecutor)
 
   /**
    * The object to use to publish new metadata changes, or None if this listener has not
@@ -202,7 +209,7 @@ class BrokerMetadataListener(
       val snapshotName = s"${reader.snapshotId().offset}-${reader.snapshotId().epoch}"
       try {
         info(s"Loading snapshot ${snapshotName}")
-        _delta = new MetadataDelta(_image) // Discard any previous deltas.
+        _delta = new MetadataDelta(_image, deltaApplyExecutor) // Discard any previous deltas.
         val loadResults = loadBatches(_delta,
           reader,
           Some(reader.lastContainedLogTimestamp),
@@ -352,7 +359,7 @@ class BrokerMetadataListener(
         throw metadataLoadingFaultHandler.handleFault(s"Error applying metadata delta $delta", t)
     }
 
-    _delta = new MetadataDelta(_image)
+    _delta = new MetadataDelta(_image, deltaApplyExecutor)
     if (isTraceEnabled) {
       trace(s"Publishing new metadata delta $delta at offset ${_image.highestOffsetAndEpoch().offset}.")
     }
@@ -381,6 +388,9 @@ class BrokerMetadataListener(
   def close(): Unit = {
     beginShutdown()
     eventQueue.close()
+    // AutoMQ for Kafka inject start
+    deltaApplyExecutor.shutdownNow()
+    // AutoMQ for Kafka inject end
   }
 
   // VisibleForTesting
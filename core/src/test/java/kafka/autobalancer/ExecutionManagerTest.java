@@ -22,11 +22,15 @@ import kafka.autobalancer.common.ActionType;
 import kafka.autobalancer.config.AutoBalancerControllerConfig;
 import kafka.test.MockController;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.Uuid;
 import org.apache.kafka.common.message.AlterPartitionReassignmentsRequestData;
 import org.apache.kafka.common.message.AlterPartitionReassignmentsResponseData;
+import org.apache.kafka.common.metadata.PartitionChangeRecord;
+import org.apache.kafka.common.metadata.TopicRecord;
 import org.apache.kafka.controller.Controller;
 import org.apache.kafka.controller.ControllerRequestContext;
 import org.apache.kafka.test.TestUtils;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -35,41 +39,59 @@ import org.mockito.Mockito;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 @Tag("esUnit")
 public class ExecutionManagerTest {
 
-    private boolean checkTopicPartition(AlterPartitionReassignmentsRequestData.ReassignableTopic topic,
-                                        String name, int partitionId, int nodeId) {
-        if (!topic.name().equals(name)) {
-            return false;
-        }
-        if (topic.partitions().size() != 1) {
-            return false;
-        }
-        AlterPartitionReassignmentsRequestData.ReassignablePartition partition = topic.partitions().get(0);
-        if (partition.partitionIndex() != partitionId) {
-            return false;
+    private Map<TopicPartition, Integer> reassignments(AlterPartitionReassignmentsRequestData request) {
+        Map<TopicPartition, Integer> reassignments = new HashMap<>();
+        for (AlterPartitionReassignmentsRequestData.ReassignableTopic topic : request.topics()) {
+            for (AlterPartitionReassignmentsRequestData.ReassignablePartition partition : topic.partitions()) {
+                Assertions.assertEquals(1, partition.replicas().size());
+                reassignments.put(new TopicPartition(topic.name(), partition.partitionIndex()), partition.replicas().get(0));
+            }
         }
-        return partition.replicas().size() == 1 && partition.replicas().get(0) == nodeId;
+        return reassignments;
     }
 
-    @Test
-    public void testExecuteActions() throws Exception {
-        Map<String, Long> props = new HashMap<>();
-        props.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_EXECUTION_INTERVAL_MS, 100L);
-        AutoBalancerControllerConfig config = new AutoBalancerControllerConfig(props, false);
+    private Map<TopicPartition, Integer> reassignments(List<AlterPartitionReassignmentsRequestData> requests) {
+        Map<TopicPartition, Integer> reassignments = new HashMap<>();
+        for (AlterPartitionReassignmentsRequestData request : requests) {
+            reassignments.putAll(reassignments(request));
+        }
+        return reassignments;
+    }
 
+    private Controller mockController(ArgumentCaptor<AlterPartitionReassignmentsRequestData> reqCaptor) {
         Controller controller = Mockito.mock(MockController.class);
-
         final ArgumentCaptor<ControllerRequestContext> ctxCaptor = ArgumentCaptor.forClass(ControllerRequestContext.class);
-        final ArgumentCaptor<AlterPartitionReassignmentsRequestData> reqCaptor = ArgumentCaptor.forClass(AlterPartitionReassignmentsRequestData.class);
-
         Mockito.doAnswer(answer -> CompletableFuture.completedFuture(new AlterPartitionReassignmentsResponseData()))
                 .when(controller).alterPartitionReassignments(ctxCaptor.capture(), reqCaptor.capture());
+        return controller;
+    }
+
+    private AutoBalancerControllerConfig config(int concurrency) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_EXECUTION_INTERVAL_MS, 100L);
+        props.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_EXECUTION_CONCURRENCY, concurrency);
+        return new AutoBalancerControllerConfig(props, false);
+    }
+
+    private void completeReassignment(ExecutionManager executionManager, Uuid topicId, int partitionId, int nodeId) {
+        executionManager.onPartitionChange(new PartitionChangeRecord()
+                .setTopicId(topicId)
+                .setPartitionId(partitionId)
+                .setReplicas(List.of(nodeId)));
+    }
+
+    @Test
+    public void testExecuteActions() throws Exception {
+        final ArgumentCaptor<AlterPartitionReassignmentsRequestData> reqCaptor = ArgumentCaptor.forClass(AlterPartitionReassignmentsRequestData.class);
+        Controller controller = mockController(reqCaptor);
 
-        ExecutionManager executionManager = new ExecutionManager(config, controller);
+        ExecutionManager executionManager = new ExecutionManager(config(50), controller);
         executionManager.start();
 
         List<Action> actionList = List.of(
@@ -77,25 +99,138 @@ public class ExecutionManagerTest {
                 new Action(ActionType.SWAP, new TopicPartition("topic2", 0), 0, 1, new TopicPartition("topic1", 1)));
         executionManager.appendActions(actionList);
 
-        TestUtils.waitForCondition(() -> {
-            List<AlterPartitionReassignmentsRequestData> reqs = reqCaptor.getAllValues();
-            if (reqs.size() != 2) {
-                return false;
-            }
-            AlterPartitionReassignmentsRequestData reqMove = reqs.get(0);
-            if (reqMove.topics().size() != 1) {
-                return false;
-            }
-            if (!checkTopicPartition(reqMove.topics().get(0), "topic1", 0, 1)) {
-                return false;
-            }
-            AlterPartitionReassignmentsRequestData reqSwap = reqs.get(1);
-            if (reqSwap.topics().size() != 2) {
-                return false;
-            }
-            return checkTopicPartition(reqSwap.topics().get(0), "topic2", 0, 1)
-                    && checkTopicPartition(reqSwap.topics().get(1), "topic1", 1, 0);
-        }, 5000L, 1000L, () -> "failed to meet reassign");
+        Map<TopicPartition, Integer> expected = Map.of(
+                new TopicPartition("topic1", 0), 1,
+                new TopicPartition("topic2", 0), 1,
+                new TopicPartition("topic1", 1), 0);
+        TestUtils.waitForCondition(() -> expected.equals(reassignments(reqCaptor.getAllValues())),
+                5000L, 1000L, () -> "failed to meet reassign");
+
+        executionManager.shutdown();
+    }
+
+    @Test
+    public void testBatchWithBrokerConcurrency() throws Exception {
+        final ArgumentCaptor<AlterPartitionReassignmentsRequestData> reqCaptor = ArgumentCaptor.forClass(AlterPartitionReassignmentsRequestData.class);
+        Controller controller = mockController(reqCaptor);
+
+        ExecutionManager executionManager = new ExecutionManager(config(1), controller);
+        Uuid topicId = Uuid.randomUuid();
+        executionManager.onTopicCreate(new TopicRecord().setName("topic1").setTopicId(topicId));
+        // append the actions before starting, so they're taken in the same batch
+        executionManager.appendActions(List.of(
+                new Action(ActionType.MOVE, new TopicPartition("topic1", 0), 0, 1),
+                new Action(ActionType.MOVE, new TopicPartition("topic1", 1), 0, 2),
+                new Action(ActionType.MOVE, new TopicPartition("topic1", 2), 3, 4)));
+        Assertions.assertFalse(executionManager.isIdle());
+        executionManager.start();
+
+        // broker 0 can't take the second action until the first one completes
+        TestUtils.waitForCondition(() -> reqCaptor.getAllValues().size() == 1, 5000L, () -> "failed to send the first batch");
+        Assertions.assertEquals(Map.of(new TopicPartition("topic1", 0), 1, new TopicPartition("topic1", 2), 4),
+                reassignments(reqCaptor.getAllValues().get(0)));
+        Thread.sleep(300);
+        Assertions.assertEquals(1, reqCaptor.getAllValues().size());
+
+        completeReassignment(executionManager, topicId, 0, 1);
+        TestUtils.waitForCondition(() -> reqCaptor.getAllValues().size() == 2, 5000L, () -> "failed to send the second batch");
+        Assertions.assertEquals(Map.of(new TopicPartition("topic1", 1), 2), reassignments(reqCaptor.getAllValues().get(1)));
+
+        completeReassignment(executionManager, topicId, 1, 2);
+        completeReassignment(executionManager, topicId, 2, 4);
+        TestUtils.waitForCondition(executionManager::isIdle, 5000L, () -> "failed to complete the reassignments");
+
+        executionManager.shutdown();
+    }
+
+    @Test
+    public void testSwapWithConcurrencyOne() throws Exception {
+        final ArgumentCaptor<AlterPartitionReassignmentsRequestData> reqCaptor = ArgumentCaptor.forClass(AlterPartitionReassignmentsRequestData.class);
+        Controller controller = mockController(reqCaptor);
+
+        ExecutionManager executionManager = new ExecutionManager(config(1), controller);
+        Uuid topicId = Uuid.randomUuid();
+        executionManager.onTopicCreate(new TopicRecord().setName("topic1").setTopicId(topicId));
+        executionManager.appendActions(List.of(
+                new Action(ActionType.SWAP, new TopicPartition("topic1", 0), 0, 1, new TopicPartition("topic1", 1)),
+                new Action(ActionType.MOVE, new TopicPartition("topic1", 2), 0, 2)));
+        executionManager.start();
+
+        // the swap needs two reassignments on each broker, it's executed as its brokers have nothing in flight
+        TestUtils.waitForCondition(() -> reqCaptor.getAllValues().size() == 1, 5000L, () -> "failed to send the swap");
+        Assertions.assertEquals(Map.of(new TopicPartition("topic1", 0), 1, new TopicPartition("topic1", 1), 0),
+                reassignments(reqCaptor.getAllValues().get(0)));
+
+        completeReassignment(executionManager, topicId, 0, 1);
+        completeReassignment(executionManager, topicId, 1, 0);
+        TestUtils.waitForCondition(() -> reqCaptor.getAllValues().size() == 2, 5000L, () -> "failed to send the move");
+        Assertions.assertEquals(Map.of(new TopicPartition("topic1", 2), 2), reassignments(reqCaptor.getAllValues().get(1)));
+
+        completeReassignment(executionManager, topicId, 2, 2);
+        TestUtils.waitForCondition(executionManager::isIdle, 5000L, () -> "failed to complete the reassignments");
+
+        executionManager.shutdown();
+    }
+
+    @Test
+    public void testSequentialActionsOnSamePartition() throws Exception {
+        final ArgumentCaptor<AlterPartitionReassignmentsRequestData> reqCaptor = ArgumentCaptor.forClass(AlterPartitionReassignmentsRequestData.class);
+        Controller controller = mockController(reqCaptor);
+
+        ExecutionManager executionManager = new ExecutionManager(config(50), controller);
+        Uuid topicId = Uuid.randomUuid();
+        executionManager.onTopicCreate(new TopicRecord().setName("topic1").setTopicId(topicId));
+        executionManager.appendActions(List.of(
+                new Action(ActionType.MOVE, new TopicPartition("topic1", 0), 0, 1),
+                new Action(ActionType.MOVE, new TopicPartition("topic1", 0), 1, 2)));
+        executionManager.start();
+
+        TestUtils.waitForCondition(() -> reqCaptor.getAllValues().size() == 1, 5000L, () -> "failed to send the first batch");
+        Assertions.assertEquals(Map.of(new TopicPartition("topic1", 0), 1), reassignments(reqCaptor.getAllValues().get(0)));
+
+        // the change to another broker doesn't complete the reassignment
+        completeReassignment(executionManager, topicId, 0, 3);
+        Thread.sleep(300);
+        Assertions.assertEquals(1, reqCaptor.getAllValues().size());
+
+        completeReassignment(executionManager, topicId, 0, 1);
+        TestUtils.waitForCondition(() -> reqCaptor.getAllValues().size() == 2, 5000L, () -> "failed to send the second batch");
+        Assertions.assertEquals(Map.of(new TopicPartition("topic1", 0), 2), reassignments(reqCaptor.getAllValues().get(1)));
+        Assertions.assertEquals(Set.of(new TopicPartition("topic1", 0)), reassignments(reqCaptor.getAllValues()).keySet());
+
+        executionManager.shutdown();
+    }
+
+    @Test
+    public void testDeferredActionKeepsOrderOnSamePartition() throws Exception {
+        final ArgumentCaptor<AlterPartitionReassignmentsRequestData> reqCaptor = ArgumentCaptor.forClass(AlterPartitionReassignmentsRequestData.class);
+        Controller controller = mockController(reqCaptor);
+
+        ExecutionManager executionManager = new ExecutionManager(config(1), controller);
+        Uuid topicId = Uuid.randomUuid();
+        executionManager.onTopicCreate(new TopicRecord().setName("topic1").setTopicId(topicId));
+        executionManager.appendActions(List.of(
+                new Action(ActionType.MOVE, new TopicPartition("topic1", 1), 0, 1),
+                new Action(ActionType.MOVE, new TopicPartition("topic1", 0), 2, 1),
+                new Action(ActionType.MOVE, new TopicPartition("topic1", 0), 2, 3)));
+        executionManager.start();
+
+        // the first move of topic1-0 is deferred as broker 1 is saturated, and the second one waits for it
+        TestUtils.waitForCondition(() -> reqCaptor.getAllValues().size() == 1, 5000L, () -> "failed to send the first batch");
+        Assertions.assertEquals(Map.of(new TopicPartition("topic1", 1), 1), reassignments(reqCaptor.getAllValues().get(0)));
+        Thread.sleep(300);
+        Assertions.assertEquals(1, reqCaptor.getAllValues().size());
+
+        completeReassignment(executionManager, topicId, 1, 1);
+        TestUtils.waitForCondition(() -> reqCaptor.getAllValues().size() == 2, 5000L, () -> "failed to send the second batch");
+        Assertions.assertEquals(Map.of(new TopicPartition("topic1", 0), 1), reassignments(reqCaptor.getAllValues().get(1)));
+
+        completeReassignment(executionManager, topicId, 0, 1);
+        TestUtils.waitForCondition(() -> reqCaptor.getAllValues().size() == 3, 5000L, () -> "failed to send the third batch");
+        Assertions.assertEquals(Map.of(new TopicPartition("topic1", 0), 3), reassignments(reqCaptor.getAllValues().get(2)));
+
+        completeReassignment(executionManager, topicId, 0, 3);
+        TestUtils.waitForCondition(executionManager::isIdle, 5000L, () -> "failed to complete the reassignments");
 
         executionManager.shutdown();
     }
@@ -43,9 +43,15 @@ public class AbstractResourceCapacityGoalTest extends GoalTestBase {
         Map<String, Object> config = new HashMap<>();
         config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_GOALS, new StringJoiner(",")
                 .add(NetworkInCapacityGoal.class.getName())
-                .add(NetworkOutCapacityGoal.class.getName()).toString());
+                .add(NetworkOutCapacityGoal.class.getName())
+                .add(CpuCapacityGoal.class.getName())
+                .add(StreamReadCapacityGoal.class.getName())
+                .add(StreamReadRequestCapacityGoal.class.getName()).toString());
         config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_NETWORK_IN_UTILIZATION_THRESHOLD, 0.8);
         config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_NETWORK_OUT_UTILIZATION_THRESHOLD, 0.8);
+        config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_CPU_UTILIZATION_THRESHOLD, 0.8);
+        config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_STREAM_READ_UTILIZATION_THRESHOLD, 0.8);
+        config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_STREAM_READ_REQUEST_UTILIZATION_THRESHOLD, 0.8);
         AutoBalancerControllerConfig controllerConfig = new AutoBalancerControllerConfig(config, false);
         List<AbstractGoal> goalList = controllerConfig.getConfiguredInstances(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_GOALS, AbstractGoal.class);
         for (AbstractGoal goal : goalList) {
@@ -62,6 +68,15 @@ public class AbstractResourceCapacityGoalTest extends GoalTestBase {
             case NW_OUT:
                 goal = goalMap.get(NetworkOutCapacityGoal.class.getSimpleName());
                 break;
+            case CPU:
+                goal = goalMap.get(CpuCapacityGoal.class.getSimpleName());
+                break;
+            case STREAM_READ:
+                goal = goalMap.get(StreamReadCapacityGoal.class.getSimpleName());
+                break;
+            case STREAM_READ_REQUEST:
+                goal = goalMap.get(StreamReadRequestCapacityGoal.class.getSimpleName());
+                break;
             default:
                 break;
         }
@@ -249,18 +264,27 @@ public class AbstractResourceCapacityGoalTest extends GoalTestBase {
     public void testGoalActionAcceptanceScore() {
         testActionAcceptanceScore(Resource.NW_IN);
         testActionAcceptanceScore(Resource.NW_OUT);
+        testActionAcceptanceScore(Resource.CPU);
+        testActionAcceptanceScore(Resource.STREAM_READ);
+        testActionAcceptanceScore(Resource.STREAM_READ_REQUEST);
     }
 
     @Test
     public void testSingleResourceCapacityOptimizeOneMove() {
         testSingleResourceCapacityOptimizeOneMove(Resource.NW_IN);
         testSingleResourceCapacityOptimizeOneMove(Resource.NW_OUT);
+        testSingleResourceCapacityOptimizeOneMove(Resource.CPU);
+        testSingleResourceCapacityOptimizeOneMove(Resource.STREAM_READ);
+        testSingleResourceCapacityOptimizeOneMove(Resource.STREAM_READ_REQUEST);
     }
 
     @Test
     public void testSingleResourceCapacityOptimizeMultiMove() {
         testSingleResourceCapacityOptimizeMultiMove(Resource.NW_IN);
         testSingleResourceCapacityOptimizeMultiMove(Resource.NW_OUT);
+        testSingleResourceCapacityOptimizeMultiMove(Resource.CPU);
+        testSingleResourceCapacityOptimizeMultiMove(Resource.STREAM_READ);
+        testSingleResourceCapacityOptimizeMultiMove(Resource.STREAM_READ_REQUEST);
     }
 
     @Test
@@ -309,6 +333,55 @@ public class AbstractResourceCapacityGoalTest extends GoalTestBase {
     }
 
 
+    @Test
+    public void testMultiGoalOptimizeWithManySwapCandidates() {
+        AbstractGoal goal = getGoalByResource(Resource.NW_IN);
+        Assertions.assertNotNull(goal);
+
+        ClusterModelSnapshot cluster = new ClusterModelSnapshot();
+        BrokerUpdater.Broker broker0 = createBroker(cluster, RACK, 0, true);
+        BrokerUpdater.Broker broker1 = createBroker(cluster, RACK, 1, true);
+
+        broker0.setCapacity(Resource.NW_IN, 100);
+        broker0.setCapacity(Resource.NW_OUT, 100);
+        broker0.setLoad(Resource.NW_IN, 90);
+        broker0.setLoad(Resource.NW_OUT, 50);
+
+        broker1.setCapacity(Resource.NW_IN, 100);
+        broker1.setCapacity(Resource.NW_OUT, 100);
+        broker1.setLoad(Resource.NW_IN, 20);
+        broker1.setLoad(Resource.NW_OUT, 90);
+
+        TopicPartitionReplicaUpdater.TopicPartitionReplica replica0 = createTopicPartition(cluster, 0, TOPIC_0, 0);
+        TopicPartitionReplicaUpdater.TopicPartitionReplica replica1 = createTopicPartition(cluster, 0, TOPIC_1, 0);
+        replica0.setLoad(Resource.NW_IN, 40);
+        replica0.setLoad(Resource.NW_OUT, 30);
+        replica1.setLoad(Resource.NW_IN, 50);
+        replica1.setLoad(Resource.NW_OUT, 20);
+
+        // enough small replicas on broker1 to evaluate the swap candidates in parallel, but only the large one can be
+        // swapped without overloading the network out of broker1
+        int smallReplicaCount = 2000;
+        for (int i = 0; i < smallReplicaCount; i++) {
+            TopicPartitionReplicaUpdater.TopicPartitionReplica replica = createTopicPartition(cluster, 1, TOPIC_2, i);
+            replica.setLoad(Resource.NW_IN, 15.0 / smallReplicaCount);
+            replica.setLoad(Resource.NW_OUT, 40.0 / smallReplicaCount);
+        }
+        TopicPartitionReplicaUpdater.TopicPartitionReplica largeReplica = createTopicPartition(cluster, 1, TOPIC_3, 0);
+        largeReplica.setLoad(Resource.NW_IN, 5);
+        largeReplica.setLoad(Resource.NW_OUT, 50);
+
+        List<Action> actions = goal.optimize(cluster, goalMap.values());
+        Assertions.assertEquals(1, actions.size());
+        Action action = actions.get(0);
+        Assertions.assertEquals(ActionType.SWAP, action.getType());
+        Assertions.assertEquals(replica1.getTopicPartition(), action.getSrcTopicPartition());
+        Assertions.assertEquals(largeReplica.getTopicPartition(), action.getDestTopicPartition());
+        for (BrokerUpdater.Broker broker : cluster.brokers()) {
+            Assertions.assertTrue(goal.isBrokerAcceptable(broker));
+        }
+    }
+
     @Test
     public void testMultiGoalOptimizeWithOneToNReplicaSwap() {
         //TODO: implement one-to-N replica swap
@@ -43,11 +43,14 @@ public class AbstractResourceDistributionGoalTest extends GoalTestBase {
         Map<String, Object> config = new HashMap<>();
         config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_GOALS, new StringJoiner(",")
                 .add(NetworkInDistributionGoal.class.getName())
-                .add(NetworkOutDistributionGoal.class.getName()).toString());
+                .add(NetworkOutDistributionGoal.class.getName())
+                .add(CpuDistributionGoal.class.getName()).toString());
         config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_NETWORK_IN_DISTRIBUTION_DETECT_THRESHOLD, 0.2);
         config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_NETWORK_OUT_DISTRIBUTION_DETECT_THRESHOLD, 0.2);
         config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_NETWORK_IN_DISTRIBUTION_DETECT_AVG_DEVIATION, 0.2);
         config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_NETWORK_OUT_DISTRIBUTION_DETECT_AVG_DEVIATION, 0.2);
+        config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_THRESHOLD, 0.2);
+        config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_CPU_DISTRIBUTION_DETECT_AVG_DEVIATION, 0.2);
         AutoBalancerControllerConfig controllerConfig = new AutoBalancerControllerConfig(config, false);
         List<AbstractGoal> goalList = controllerConfig.getConfiguredInstances(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_GOALS, AbstractGoal.class);
         for (AbstractGoal goal : goalList) {
@@ -64,6 +67,9 @@ public class AbstractResourceDistributionGoalTest extends GoalTestBase {
             case NW_OUT:
                 goal = goalMap.get(NetworkOutDistributionGoal.class.getSimpleName());
                 break;
+            case CPU:
+                goal = goalMap.get(CpuDistributionGoal.class.getSimpleName());
+                break;
             default:
                 break;
         }
@@ -239,20 +245,24 @@ public class AbstractResourceDistributionGoalTest extends GoalTestBase {
     public void testGoalActionAcceptanceScore() {
         testActionAcceptanceScore(Resource.NW_IN);
         testActionAcceptanceScore(Resource.NW_OUT);
+        testActionAcceptanceScore(Resource.CPU);
     }
 
     @Test
     public void testSingleResourceDistributionOptimizeOneMove() {
         testSingleResourceDistributionOptimizeOneMove(Resource.NW_IN);
         testSingleResourceDistributionOptimizeOneMove(Resource.NW_OUT);
+        testSingleResourceDistributionOptimizeOneMove(Resource.CPU);
     }
 
     @Test
     public void testSingleResourceDistributionOptimizeMultiMoveOut() {
         testSingleResourceDistributionOptimizeMultiMoveOut(Resource.NW_IN);
         testSingleResourceDistributionOptimizeMultiMoveOut(Resource.NW_OUT);
+        testSingleResourceDistributionOptimizeMultiMoveOut(Resource.CPU);
         testSingleResourceDistributionOptimizeMultiMoveIn(Resource.NW_IN);
         testSingleResourceDistributionOptimizeMultiMoveIn(Resource.NW_OUT);
+        testSingleResourceDistributionOptimizeMultiMoveIn(Resource.CPU);
     }
 
     private void testMultiGoalOptimizeWithOneToOneReplicaSwap(Resource resource) {
@@ -21,6 +21,8 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 @Tag("esUnit")
 public class MetricsUtilsTest {
 
@@ -49,4 +51,32 @@ public class MetricsUtilsTest {
         metrics.put(RawMetricType.PARTITION_SIZE, 10);
         Assertions.assertTrue(MetricsUtils.sanityCheckTopicPartitionMetricsCompleteness(metrics));
     }
+
+    @Test
+    public void testOptionalMetricTypes() {
+        Assertions.assertFalse(RawMetricType.requiredBrokerMetricTypes().contains(RawMetricType.ALL_TOPIC_STREAM_READ_BYTES));
+        Assertions.assertFalse(RawMetricType.requiredPartitionMetricTypes().contains(RawMetricType.TOPIC_PARTITION_CPU_UTIL));
+        Assertions.assertTrue(RawMetricType.partitionMetricTypes().contains(RawMetricType.TOPIC_PARTITION_CPU_UTIL));
+    }
+
+    @Test
+    public void testEstimatePartitionCost() {
+        BrokerMetrics brokerMetrics = new BrokerMetrics(System.currentTimeMillis(), 1, "");
+        brokerMetrics.put(RawMetricType.BROKER_CPU_UTIL, 0.5);
+        TopicPartitionMetrics metrics0 = new TopicPartitionMetrics(System.currentTimeMillis(), 1, "", "testTopic", 0);
+        metrics0.put(RawMetricType.TOPIC_PARTITION_BYTES_IN, 10);
+        metrics0.put(RawMetricType.TOPIC_PARTITION_BYTES_OUT, 20);
+        metrics0.put(RawMetricType.TOPIC_PARTITION_STREAM_READ_BYTES, 100);
+        metrics0.put(RawMetricType.TOPIC_PARTITION_STREAM_READ_REQUESTS, 2);
+        TopicPartitionMetrics metrics1 = new TopicPartitionMetrics(System.currentTimeMillis(), 1, "", "testTopic", 1);
+        metrics1.put(RawMetricType.TOPIC_PARTITION_BYTES_IN, 10);
+        metrics1.put(RawMetricType.TOPIC_PARTITION_BYTES_OUT, 0);
+        MetricsUtils.estimatePartitionCost(brokerMetrics, List.of(metrics0, metrics1));
+
+        Assertions.assertEquals(0.375, metrics0.getMetricTypeValueMap().get(RawMetricType.TOPIC_PARTITION_CPU_UTIL), 1e-9);
+        Assertions.assertEquals(0.125, metrics1.getMetricTypeValueMap().get(RawMetricType.TOPIC_PARTITION_CPU_UTIL), 1e-9);
+        Assertions.assertEquals(0.0, metrics1.getMetricTypeValueMap().get(RawMetricType.TOPIC_PARTITION_STREAM_READ_BYTES));
+        Assertions.assertEquals(100, brokerMetrics.getMetricTypeValueMap().get(RawMetricType.ALL_TOPIC_STREAM_READ_BYTES));
+        Assertions.assertEquals(2, brokerMetrics.getMetricTypeValueMap().get(RawMetricType.ALL_TOPIC_STREAM_READ_REQUESTS));
+    }
 }
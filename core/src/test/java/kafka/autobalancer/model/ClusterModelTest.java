@@ -17,6 +17,9 @@
 
 package kafka.autobalancer.model;
 
+import kafka.autobalancer.common.Action;
+import kafka.autobalancer.common.ActionType;
+import kafka.autobalancer.common.Resource;
 import kafka.autobalancer.config.AutoBalancerControllerConfig;
 import kafka.autobalancer.metricsreporter.metric.BrokerMetrics;
 import kafka.autobalancer.metricsreporter.metric.RawMetricType;
@@ -35,6 +38,8 @@ import org.junit.jupiter.api.Test;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Tag("esUnit")
 public class ClusterModelTest {
@@ -249,6 +254,110 @@ public class ClusterModelTest {
 
     @Test
     public void testSnapshot() {
+        ClusterModel clusterModel = new ClusterModel(new AutoBalancerControllerConfig(Collections.emptyMap(), false));
+        String topicName = "testTopic";
+        Uuid topicId = Uuid.randomUuid();
+        TopicPartition tp0 = new TopicPartition(topicName, 0);
+        TopicPartition tp1 = new TopicPartition(topicName, 1);
+        clusterModel.onBrokerRegister(new RegisterBrokerRecord().setBrokerId(1));
+        clusterModel.onBrokerRegister(new RegisterBrokerRecord().setBrokerId(2));
+        clusterModel.onTopicCreate(new TopicRecord().setName(topicName).setTopicId(topicId));
+        clusterModel.onPartitionCreate(new PartitionRecord().setReplicas(List.of(1)).setTopicId(topicId).setPartitionId(0));
+        clusterModel.onPartitionCreate(new PartitionRecord().setReplicas(List.of(2)).setTopicId(topicId).setPartitionId(1));
+
+        long now = System.currentTimeMillis();
+        Assertions.assertTrue(clusterModel.updateBroker(brokerMetrics(now, 1)));
+        Assertions.assertTrue(clusterModel.updateBroker(brokerMetrics(now, 2)));
+        Assertions.assertTrue(clusterModel.updateTopicPartition(partitionMetrics(now, 1, tp0, 10)));
+
+        // broker 2 is ignored, because there isn't any metrics of its partition yet
+        ClusterModelSnapshot snapshot0 = clusterModel.snapshot();
+        Assertions.assertNotNull(snapshot0.broker(1));
+        Assertions.assertNull(snapshot0.broker(2));
+        Assertions.assertEquals(10, snapshot0.replica(1, tp0).load(Resource.NW_IN));
+
+        Assertions.assertTrue(clusterModel.updateTopicPartition(partitionMetrics(now, 2, tp1, 20)));
+        ClusterModelSnapshot snapshot1 = clusterModel.snapshot();
+        Assertions.assertEquals(20, snapshot1.replica(2, tp1).load(Resource.NW_IN));
+        // the unchanged replica is shared
+        Assertions.assertSame(snapshot0.replica(1, tp0), snapshot1.replica(1, tp0));
+
+        // the actions applied on a snapshot don't change the cluster model and the other snapshots
+        snapshot1.applyAction(new Action(ActionType.MOVE, tp0, 1, 2));
+        Assertions.assertNull(snapshot1.replica(1, tp0));
+        Assertions.assertEquals(10, snapshot1.replica(2, tp0).load(Resource.NW_IN));
+        Assertions.assertNotNull(snapshot0.replica(1, tp0));
+        ClusterModelSnapshot snapshot2 = clusterModel.snapshot();
+        Assertions.assertNotNull(snapshot2.replica(1, tp0));
+        Assertions.assertNull(snapshot2.replica(2, tp0));
+
+        // only the updated replica is replaced
+        Assertions.assertTrue(clusterModel.updateTopicPartition(partitionMetrics(now + 1, 1, tp0, 30)));
+        ClusterModelSnapshot snapshot3 = clusterModel.snapshot();
+        Assertions.assertEquals(30, snapshot3.replica(1, tp0).load(Resource.NW_IN));
+        Assertions.assertEquals(10, snapshot2.replica(1, tp0).load(Resource.NW_IN));
+        Assertions.assertSame(snapshot2.replica(2, tp1), snapshot3.replica(2, tp1));
+        // the outdated metrics are ignored
+        Assertions.assertFalse(clusterModel.updateTopicPartition(partitionMetrics(now, 1, tp0, 40)));
+        Assertions.assertEquals(30, clusterModel.snapshot().replica(1, tp0).load(Resource.NW_IN));
+
+        // the reassigned replica is moved in the following snapshots
+        clusterModel.onPartitionChange(new PartitionChangeRecord().setReplicas(List.of(2)).setTopicId(topicId).setPartitionId(0));
+        ClusterModelSnapshot snapshot4 = clusterModel.snapshot();
+        Assertions.assertNull(snapshot4.replica(1, tp0));
+        Assertions.assertEquals(30, snapshot4.replica(2, tp0).load(Resource.NW_IN));
+
+        ClusterModelSnapshot snapshot5 = clusterModel.snapshot(Collections.emptySet(), Set.of(topicName));
+        Assertions.assertTrue(snapshot5.replicasFor(2).isEmpty());
+        Assertions.assertEquals(2, clusterModel.snapshot().replicasFor(2).size());
+
+        clusterModel.onTopicDelete(new RemoveTopicRecord().setTopicId(topicId));
+        Assertions.assertTrue(clusterModel.snapshot().replicasFor(2).isEmpty());
+    }
+
+    @Test
+    public void testEstimatedLoad() {
+        ClusterModel clusterModel = new ClusterModel(new AutoBalancerControllerConfig(Map.of(
+                AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_LOAD_ESTIMATOR, "ewma",
+                AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_LOAD_EWMA_ALPHA, 0.5), false));
+        String topicName = "testTopic";
+        Uuid topicId = Uuid.randomUuid();
+        TopicPartition tp0 = new TopicPartition(topicName, 0);
+        clusterModel.onBrokerRegister(new RegisterBrokerRecord().setBrokerId(1));
+        clusterModel.onBrokerRegister(new RegisterBrokerRecord().setBrokerId(2));
+        clusterModel.onTopicCreate(new TopicRecord().setName(topicName).setTopicId(topicId));
+        clusterModel.onPartitionCreate(new PartitionRecord().setReplicas(List.of(1)).setTopicId(topicId).setPartitionId(0));
 
+        long now = System.currentTimeMillis();
+        Assertions.assertTrue(clusterModel.updateBroker(brokerMetrics(now, 1)));
+        Assertions.assertTrue(clusterModel.updateTopicPartition(partitionMetrics(now, 1, tp0, 10)));
+        Assertions.assertEquals(10, clusterModel.snapshot().replica(1, tp0).load(Resource.NW_IN));
+        // the spike is smoothed
+        Assertions.assertTrue(clusterModel.updateTopicPartition(partitionMetrics(now + 1, 1, tp0, 30)));
+        Assertions.assertEquals(20, clusterModel.snapshot().replica(1, tp0).load(Resource.NW_IN));
+
+        // the samples are kept when the replica is reassigned
+        clusterModel.onPartitionChange(new PartitionChangeRecord().setReplicas(List.of(2)).setTopicId(topicId).setPartitionId(0));
+        Assertions.assertTrue(clusterModel.updateBroker(brokerMetrics(now + 2, 2)));
+        Assertions.assertTrue(clusterModel.updateTopicPartition(partitionMetrics(now + 2, 2, tp0, 40)));
+        Assertions.assertEquals(30, clusterModel.snapshot().replica(2, tp0).load(Resource.NW_IN));
+    }
+
+    private static BrokerMetrics brokerMetrics(long time, int brokerId) {
+        BrokerMetrics brokerMetrics = new BrokerMetrics(time, brokerId, "");
+        brokerMetrics.put(RawMetricType.BROKER_CAPACITY_NW_IN, 100);
+        brokerMetrics.put(RawMetricType.BROKER_CAPACITY_NW_OUT, 100);
+        brokerMetrics.put(RawMetricType.ALL_TOPIC_BYTES_IN, 10);
+        brokerMetrics.put(RawMetricType.ALL_TOPIC_BYTES_OUT, 10);
+        brokerMetrics.put(RawMetricType.BROKER_CPU_UTIL, 10);
+        return brokerMetrics;
+    }
+
+    private static TopicPartitionMetrics partitionMetrics(long time, int brokerId, TopicPartition tp, double load) {
+        TopicPartitionMetrics topicPartitionMetrics = new TopicPartitionMetrics(time, brokerId, "", tp.topic(), tp.partition());
+        topicPartitionMetrics.put(RawMetricType.TOPIC_PARTITION_BYTES_IN, load);
+        topicPartitionMetrics.put(RawMetricType.TOPIC_PARTITION_BYTES_OUT, load);
+        topicPartitionMetrics.put(RawMetricType.PARTITION_SIZE, 10);
+        return topicPartitionMetrics;
     }
 }
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.autobalancer.model;
+
+import kafka.autobalancer.common.Resource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("esUnit")
+public class LoadWindowTest {
+
+    @Test
+    public void testEmptyWindow() {
+        LoadWindow window = new LoadWindow(3, 0.5);
+        Assertions.assertEquals(0, window.size());
+        Assertions.assertEquals(0, window.latest());
+        Assertions.assertEquals(0, window.ewma());
+        Assertions.assertEquals(0, window.percentile(0.9));
+        Assertions.assertEquals(0, window.trend());
+        Assertions.assertEquals(0, window.forecast(100));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new LoadWindow(0, 0.5));
+    }
+
+    @Test
+    public void testRingBuffer() {
+        LoadWindow window = new LoadWindow(3, 0.5);
+        window.add(0, 10);
+        window.add(1, 50);
+        window.add(2, 30);
+        Assertions.assertEquals(3, window.size());
+        Assertions.assertEquals(30, window.latest());
+        Assertions.assertEquals(30, window.percentile(0.5));
+        Assertions.assertEquals(50, window.percentile(1));
+        Assertions.assertEquals(10, window.percentile(0));
+
+        // the oldest sample is overwritten
+        window.add(3, 40);
+        Assertions.assertEquals(3, window.size());
+        Assertions.assertEquals(40, window.latest());
+        Assertions.assertEquals(3, window.latestTimestamp());
+        Assertions.assertEquals(30, window.percentile(0));
+    }
+
+    @Test
+    public void testPercentileOfWindowsInDifferentCapacities() {
+        LoadWindow small = new LoadWindow(2, 0.5);
+        small.add(0, 20);
+        small.add(1, 10);
+        LoadWindow large = new LoadWindow(5, 0.5);
+        for (int i = 0; i < 5; i++) {
+            large.add(i, 50 - i * 10);
+        }
+        // the windows share the scratch to sort the samples, which mustn't leak into each other
+        Assertions.assertEquals(20, small.percentile(1));
+        Assertions.assertEquals(50, large.percentile(1));
+        Assertions.assertEquals(30, large.percentile(0.5));
+        Assertions.assertEquals(10, small.percentile(0.5));
+        Assertions.assertEquals(20, small.percentile(1));
+    }
+
+    @Test
+    public void testEwma() {
+        LoadWindow window = new LoadWindow(2, 0.5);
+        window.add(0, 10);
+        Assertions.assertEquals(10, window.ewma());
+        window.add(1, 30);
+        Assertions.assertEquals(20, window.ewma());
+        // the samples out of the window still count
+        window.add(2, 20);
+        Assertions.assertEquals(20, window.ewma());
+    }
+
+    @Test
+    public void testTrendAndForecast() {
+        LoadWindow window = new LoadWindow(4, 0.5);
+        window.add(1000, 10);
+        Assertions.assertEquals(0, window.trend());
+        Assertions.assertEquals(10, window.forecast(2000));
+        window.add(2000, 20);
+        window.add(3000, 30);
+        Assertions.assertEquals(0.01, window.trend(), 1e-9);
+        Assertions.assertEquals(40, window.forecast(4000), 1e-9);
+        // the load declines to zero at most
+        window.add(4000, 0);
+        window.add(5000, 0);
+        window.add(6000, 0);
+        Assertions.assertTrue(window.trend() < 0);
+        Assertions.assertEquals(0, window.forecast(60000));
+    }
+
+    @Test
+    public void testEstimator() {
+        LoadWindow[] windows = new LoadWindow[Resource.cachedValues().size()];
+        Assertions.assertEquals(30, LoadEstimator.LATEST.update(windows, Resource.NW_IN, 0, 30));
+        Assertions.assertNull(windows[Resource.NW_IN.id()]);
+
+        LoadEstimator estimator = new LoadEstimator(LoadEstimator.Type.PERCENTILE, 4, 0.5, 0.5, 0);
+        Assertions.assertEquals(10, estimator.update(windows, Resource.NW_IN, 0, 10));
+        Assertions.assertEquals(10, estimator.update(windows, Resource.NW_IN, 1, 100));
+        Assertions.assertEquals(20, estimator.update(windows, Resource.NW_IN, 2, 20));
+        Assertions.assertEquals(3, windows[Resource.NW_IN.id()].size());
+        Assertions.assertNull(windows[Resource.NW_OUT.id()]);
+
+        estimator = new LoadEstimator(LoadEstimator.Type.FORECAST, 4, 0.5, 0.5, 1000);
+        windows = new LoadWindow[Resource.cachedValues().size()];
+        estimator.update(windows, Resource.CPU, 1000, 0.1);
+        Assertions.assertEquals(0.3, estimator.update(windows, Resource.CPU, 2000, 0.2), 1e-9);
+    }
+}
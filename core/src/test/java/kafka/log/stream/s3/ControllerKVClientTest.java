@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.stream.s3;
+
+import com.automq.stream.api.KeyValue;
+import com.automq.stream.api.KeyValue.Key;
+import com.automq.stream.api.KeyValue.Value;
+import kafka.log.stream.s3.metadata.StreamMetadataManager;
+import kafka.log.stream.s3.metadata.StreamMetadataManager.StreamMetadataListener;
+import kafka.log.stream.s3.network.ControllerRequestSender;
+import kafka.log.stream.s3.network.ControllerRequestSender.RequestTask;
+import org.apache.kafka.common.metadata.KVRecord;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.image.KVImage;
+import org.apache.kafka.image.MetadataDelta;
+import org.apache.kafka.image.MetadataImage;
+import org.apache.kafka.image.MetadataProvenance;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@Timeout(40)
+@Tag("S3Unit")
+public class ControllerKVClientTest {
+
+    private static final String KEY0 = "key0";
+    private static final String KEY1 = "key1";
+
+    private ControllerRequestSender requestSender;
+    private StreamMetadataManager metadataManager;
+    private StreamMetadataListener imageListener;
+    private Map<String, ByteBuffer> controllerKV;
+    private Map<ApiKeys, Integer> sendCounts;
+    private ControllerKVClient client;
+    // the fake controller can't see the sub requests, so the tests set the key and value before each call
+    private String lastKey;
+    private ByteBuffer lastValue;
+
+    @BeforeEach
+    public void setUp() {
+        this.requestSender = Mockito.mock(ControllerRequestSender.class);
+        this.metadataManager = Mockito.mock(StreamMetadataManager.class);
+        this.controllerKV = new HashMap<>();
+        this.sendCounts = new HashMap<>();
+        // a fake controller which applies the requests to controllerKV
+        Mockito.doAnswer(invocation -> {
+            RequestTask<?, Value> task = invocation.getArgument(0);
+            ApiKeys apiKey = task.request().apiKey();
+            sendCounts.merge(apiKey, 1, Integer::sum);
+            switch (apiKey) {
+                case GET_KVS:
+                    task.complete(Value.of(controllerKV.get(lastKey)));
+                    break;
+                case PUT_KVS:
+                    controllerKV.put(lastKey, lastValue);
+                    task.complete(Value.of(lastValue));
+                    break;
+                case DELETE_KVS:
+                    task.complete(Value.of(controllerKV.remove(lastKey)));
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+            }
+            return null;
+        }).when(requestSender).send(ArgumentMatchers.any());
+        Mockito.when(metadataManager.kvImage()).thenReturn(KVImage.EMPTY);
+        ArgumentCaptor<StreamMetadataListener> captor = ArgumentCaptor.forClass(StreamMetadataListener.class);
+        this.client = new ControllerKVClient(requestSender, metadataManager);
+        Mockito.verify(metadataManager).registerListener(captor.capture());
+        this.imageListener = captor.getValue();
+    }
+
+    @Test
+    public void testGetKVFromImage() throws Exception {
+        updateImage(Map.of(KEY0, buffer(0)));
+
+        lastKey = KEY0;
+        assertEquals(buffer(0), client.getKV(Key.of(KEY0)).get().get());
+        assertEquals(buffer(0), client.getKV(Key.of(KEY0)).get().get());
+        assertNull(sendCounts.get(ApiKeys.GET_KVS));
+
+        // the key missing in the image is read from the controller
+        controllerKV.put(KEY1, buffer(1));
+        lastKey = KEY1;
+        assertEquals(buffer(1), client.getKV(Key.of(KEY1)).get().get());
+        assertEquals(1, sendCounts.get(ApiKeys.GET_KVS));
+    }
+
+    @Test
+    public void testReadYourWrites() throws Exception {
+        updateImage(Map.of(KEY0, buffer(0)));
+
+        // put a new value, and the image is not updated yet
+        lastKey = KEY0;
+        lastValue = buffer(1);
+        client.putKV(KeyValue.of(KEY0, buffer(1))).get();
+        assertEquals(buffer(1), client.getKV(Key.of(KEY0)).get().get());
+        assertEquals(1, sendCounts.get(ApiKeys.GET_KVS));
+
+        // the image contains the write, so it's read from the image
+        lastValue = buffer(2);
+        client.putKV(KeyValue.of(KEY0, buffer(2))).get();
+        updateImage(Map.of(KEY0, buffer(2)));
+        assertEquals(buffer(2), client.getKV(Key.of(KEY0)).get().get());
+        assertEquals(1, sendCounts.get(ApiKeys.GET_KVS));
+
+        // delete the key, and the image is not updated yet
+        client.delKV(Key.of(KEY0)).get();
+        assertNull(client.getKV(Key.of(KEY0)).get().get());
+        assertEquals(2, sendCounts.get(ApiKeys.GET_KVS));
+
+        // the key missing in the image is confirmed by the controller
+        updateImage(Map.of());
+        assertNull(client.getKV(Key.of(KEY0)).get().get());
+        assertEquals(3, sendCounts.get(ApiKeys.GET_KVS));
+    }
+
+    private void updateImage(Map<String, ByteBuffer> kv) {
+        MetadataDelta delta = new MetadataDelta(MetadataImage.EMPTY);
+        delta.replay(new KVRecord().setKeyValues(kv.entrySet().stream()
+            .map(e -> new KVRecord.KeyValue().setKey(e.getKey()).setValue(e.getValue().array()))
+            .collect(Collectors.toList())));
+        MetadataImage image = delta.apply(MetadataProvenance.EMPTY);
+        Mockito.when(metadataManager.kvImage()).thenReturn(image.kv());
+        imageListener.onChange(delta, image);
+    }
+
+    private static ByteBuffer buffer(long value) {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putLong(value);
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -19,8 +19,10 @@ package kafka.log.stream.s3;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import kafka.log.stream.s3.network.ControllerRequestSender;
+import kafka.log.stream.s3.network.ControllerRequestSender.BatchPolicyContext;
 import kafka.log.stream.s3.network.ControllerRequestSender.RequestTask;
 import kafka.log.stream.s3.network.ControllerRequestSender.RetryPolicyContext;
 import kafka.log.stream.s3.network.request.BatchRequest;
@@ -30,6 +32,7 @@ import kafka.server.BrokerToControllerChannelManager;
 import kafka.server.ControllerRequestCompletionHandler;
 import kafka.server.KafkaConfig;
 import org.apache.kafka.clients.ClientResponse;
+import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.message.CreateStreamsRequestData;
 import org.apache.kafka.common.message.CreateStreamsRequestData.CreateStreamRequest;
 import org.apache.kafka.common.message.CreateStreamsResponseData;
@@ -56,6 +59,7 @@ import static kafka.log.stream.s3.network.ControllerRequestSender.ResponseHandle
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -261,6 +265,98 @@ public class ControllerRequestSenderTest {
             .sendRequest(any(AbstractRequest.Builder.class), any(ControllerRequestCompletionHandler.class));
     }
 
+    @Test
+    public void testPipelineDepthOverride() {
+        // the override is keyed by the same API name as the api tag of the metrics
+        BatchPolicyContext context = new BatchPolicyContext(2, Map.of(ApiKeys.OPEN_STREAMS.name, 4), 2, 1024 * 1024);
+        assertEquals("OpenStreams", ApiKeys.OPEN_STREAMS.name);
+        assertEquals(4, context.pipelineDepth(ApiKeys.OPEN_STREAMS));
+        assertEquals(2, context.pipelineDepth(ApiKeys.CLOSE_STREAMS));
+    }
+
+    @Test
+    public void testParsePipelineDepths() {
+        String name = "s3.controller.request.pipeline.depth.overrides";
+        assertEquals(Map.of("OpenStreams", 4, "CloseStreams", 2),
+            BatchPolicyContext.parsePipelineDepths(name, List.of("OpenStreams=4", " CloseStreams = 2 ")));
+
+        ControllerRequestSender.PipelineDepthsValidator validator = new ControllerRequestSender.PipelineDepthsValidator();
+        validator.ensureValid(name, List.of("OpenStreams=4"));
+        for (String entry : List.of("OpenStreams", "=4", "OpenStreams=four", "OpenStreams=1.5", "OpenStreams=0")) {
+            ConfigException e = assertThrows(ConfigException.class, () -> validator.ensureValid(name, List.of(entry)));
+            assertTrue(e.getMessage().contains(name));
+        }
+    }
+
+    @Test
+    public void testPipelineWithMaxBatchSize() throws Exception {
+        requestSender = new ControllerRequestSender(brokerServer, retryPolicyContext,
+            new BatchPolicyContext(2, Map.of(), 2, 1024 * 1024));
+        List<CreateStreamsRequestData> requests = new ArrayList<>();
+        List<ControllerRequestCompletionHandler> handlers = new ArrayList<>();
+        Mockito.doAnswer(ink -> {
+            CreateStreamsRequest.Builder requestBuilder = ink.getArgument(0);
+            requests.add(requestBuilder.build().data());
+            handlers.add(ink.getArgument(1));
+            return null;
+        }).when(channelManager).sendRequest(any(AbstractRequest.Builder.class), any(ControllerRequestCompletionHandler.class));
+
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            requestSender.send(createStreamTask(future));
+            futures.add(future);
+        }
+        // the first two requests are in-flight, and the others are queued
+        assertEquals(2, requests.size());
+
+        // the queued requests are sent in batches of at most two sub-requests
+        completeCreateStreams(requests.get(0), handlers.get(0));
+        assertEquals(3, requests.size());
+        assertEquals(2, requests.get(2).createStreamRequests().size());
+        completeCreateStreams(requests.get(1), handlers.get(1));
+        assertEquals(4, requests.size());
+        assertEquals(1, requests.get(3).createStreamRequests().size());
+        completeCreateStreams(requests.get(2), handlers.get(2));
+        completeCreateStreams(requests.get(3), handlers.get(3));
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(1, TimeUnit.SECONDS);
+        assertEquals(4, requests.size());
+    }
+
+    private static void completeCreateStreams(CreateStreamsRequestData request, ControllerRequestCompletionHandler handler) {
+        List<CreateStreamResponse> responses = new ArrayList<>();
+        for (int i = 0; i < request.createStreamRequests().size(); i++) {
+            responses.add(new CreateStreamResponse().setErrorCode(Errors.NONE.code()));
+        }
+        CreateStreamsResponse response = new CreateStreamsResponse(new CreateStreamsResponseData()
+            .setCreateStreamResponses(responses));
+        handler.onComplete(new ClientResponse(null, null, null, -1, -1, false, null, null, response));
+    }
+
+    private static RequestTask<CreateStreamResponse, Long> createStreamTask(CompletableFuture<Long> future) {
+        WrapRequest req = new BatchRequest() {
+            @Override
+            public ApiKeys apiKey() {
+                return ApiKeys.CREATE_STREAMS;
+            }
+
+            @Override
+            public Builder toRequestBuilder() {
+                return new CreateStreamsRequest.Builder(
+                    new CreateStreamsRequestData()).addSubRequest(new CreateStreamRequest());
+            }
+
+            @Override
+            public Builder addSubRequest(Builder builder) {
+                CreateStreamsRequest.Builder realBuilder = (CreateStreamsRequest.Builder) builder;
+                realBuilder.addSubRequest(new CreateStreamRequest());
+                return realBuilder;
+            }
+        };
+        return new RequestTask<>(req, future, resp -> ResponseHandleResult.withSuccess(resp.streamId()));
+    }
+
     public static final ExecutorService EXECUTOR_SERVICE = java.util.concurrent.Executors.newFixedThreadPool(4);
 
     private CompletableFuture send() {
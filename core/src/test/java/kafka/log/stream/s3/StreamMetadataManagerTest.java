@@ -17,6 +17,8 @@
 
 package kafka.log.stream.s3;
 
+import com.automq.stream.s3.objects.CommitWALObjectRequest;
+import com.automq.stream.s3.objects.ObjectStreamRange;
 import kafka.log.stream.s3.metadata.StreamMetadataManager;
 import kafka.log.stream.s3.metadata.StreamMetadataManager.StreamMetadataListener;
 import kafka.server.BrokerServer;
@@ -46,6 +48,7 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
@@ -53,6 +56,7 @@ import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @Timeout(40)
@@ -206,4 +210,59 @@ public class StreamMetadataManagerTest {
         });
 
     }
+
+    @Test
+    public void testWakeUpPendingFetchByEndOffset() throws Exception {
+        this.streamMetadataListener.onChange(null, image0);
+
+        CompletableFuture<InRangeObjects> result150 = this.manager.fetch(STREAM0, 10L, 150L, 5);
+        CompletableFuture<InRangeObjects> result200 = this.manager.fetch(STREAM0, 10L, 200L, 5);
+        assertEquals(2, this.manager.pendingGetObjectsTaskCount());
+
+        // only the fetch whose end offset is reached is woken
+        streamMetadataListener.onChange(null, image1);
+        assertEquals(150L, result150.get(1, TimeUnit.SECONDS).endOffset());
+        assertFalse(result200.isDone());
+        assertEquals(1, this.manager.pendingGetObjectsTaskCount());
+
+        streamMetadataListener.onChange(null, image2);
+        assertEquals(200L, result200.get(1, TimeUnit.SECONDS).endOffset());
+        assertEquals(0, this.manager.pendingGetObjectsTaskCount());
+    }
+
+    @Test
+    public void testFetchCommittedObjectsBeforeImage() throws Exception {
+        KafkaConfig config = Mockito.mock(KafkaConfig.class);
+        Mockito.when(config.brokerId()).thenReturn(BROKER0);
+        Mockito.when(config.s3CommitPrepopulateEnable()).thenReturn(true);
+        this.manager = new StreamMetadataManager(this.mockBroker, config);
+        this.streamMetadataListener.onChange(null, image0);
+
+        CompletableFuture<InRangeObjects> result = this.manager.fetch(STREAM0, 10L, 150L, 5);
+        assertFalse(result.isDone());
+
+        // the committed object is visible before the image contains it
+        ObjectStreamRange range = Mockito.mock(ObjectStreamRange.class);
+        Mockito.when(range.getStreamId()).thenReturn(STREAM0);
+        Mockito.when(range.getStartOffset()).thenReturn(100L);
+        Mockito.when(range.getEndOffset()).thenReturn(150L);
+        CommitWALObjectRequest request = Mockito.mock(CommitWALObjectRequest.class);
+        Mockito.when(request.getObjectId()).thenReturn(3L);
+        Mockito.when(request.getObjectSize()).thenReturn(128L);
+        Mockito.when(request.getOrderId()).thenReturn(3L);
+        Mockito.when(request.getStreamRanges()).thenReturn(List.of(range));
+        this.manager.onWALObjectCommitted(request);
+
+        InRangeObjects inRangeObjects = result.get(1, TimeUnit.SECONDS);
+        assertEquals(150L, inRangeObjects.endOffset());
+        assertEquals(2, inRangeObjects.objects().size());
+        assertEquals(0L, inRangeObjects.objects().get(0).objectId());
+        assertEquals(3L, inRangeObjects.objects().get(1).objectId());
+        assertEquals(0, this.manager.pendingGetObjectsTaskCount());
+
+        // the image takes over once it contains the range
+        streamMetadataListener.onChange(null, image1);
+        inRangeObjects = this.manager.fetch(STREAM0, 10L, 150L, 5).get();
+        assertEquals(1L, inRangeObjects.objects().get(1).objectId());
+    }
 }
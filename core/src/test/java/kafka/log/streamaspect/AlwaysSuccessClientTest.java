@@ -51,6 +51,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import static kafka.log.streamaspect.AlwaysSuccessClient.HALT_ERROR_CODES;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Tag("esUnit")
@@ -160,6 +161,63 @@ class AlwaysSuccessClientTest {
         stream.destroy();
     }
 
+    @Test
+    public void testSlowFetchReusedWithSmallerMaxBytes() throws Exception {
+        MemoryClientWithDelay memoryClientWithDelay = new MemoryClientWithDelay();
+        long slowFetchTimeoutMillis = 100;
+        client = new AlwaysSuccessClient(memoryClientWithDelay, false, slowFetchTimeoutMillis);
+        client.start();
+        List<byte[]> payloads = List.of("hello".getBytes(), "world".getBytes());
+
+        memoryClientWithDelay.setDelayMillis(slowFetchTimeoutMillis * 5);
+        Stream stream = client
+                .streamClient()
+                .createAndOpenStream(CreateStreamOptions.newBuilder().epoch(0).replicaCount(1).build())
+                .get();
+        for (byte[] payload : payloads) {
+            stream.append(RawPayloadRecordBatch.of(ByteBuffer.wrap(payload))).get();
+        }
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> stream.fetch(0, 100, 1000).get());
+        assertEquals(SlowFetchHintException.class, e.getCause().getClass());
+        assertEquals(1, memoryClientWithDelay.fetchCount());
+
+        // The slow re-read only has the response bytes left by the other partitions, which is smaller than the max
+        // bytes of the first fetch. It still reuses the held-up fetch.
+        SeparateSlowAndQuickFetchHint.reset();
+        checkAppendAndFetch(payloads, stream.fetch(0, 100, 10).get());
+        assertEquals(1, memoryClientWithDelay.fetchCount());
+        stream.destroy();
+    }
+
+    @Test
+    public void testHeldUpSlowFetchBeyondEndOffset() throws Exception {
+        MemoryClientWithDelay memoryClientWithDelay = new MemoryClientWithDelay();
+        long slowFetchTimeoutMillis = 100;
+        client = new AlwaysSuccessClient(memoryClientWithDelay, false, slowFetchTimeoutMillis);
+        client.start();
+        List<byte[]> payloads = List.of("hello".getBytes(), "world".getBytes());
+
+        memoryClientWithDelay.setDelayMillis(slowFetchTimeoutMillis * 5);
+        Stream stream = client
+                .streamClient()
+                .createAndOpenStream(CreateStreamOptions.newBuilder().epoch(0).replicaCount(1).build())
+                .get();
+        for (byte[] payload : payloads) {
+            stream.append(RawPayloadRecordBatch.of(ByteBuffer.wrap(payload))).get();
+        }
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> stream.fetch(0, 100, 1000).get());
+        assertEquals(SlowFetchHintException.class, e.getCause().getClass());
+
+        // the held-up fetch may return the records beyond the end offset of the re-read, so it's fetched again.
+        SeparateSlowAndQuickFetchHint.reset();
+        FetchResult fetched = stream.fetch(0, 5, 1000).get();
+        assertEquals(1, fetched.recordBatchList().size());
+        assertEquals(2, memoryClientWithDelay.fetchCount());
+        stream.destroy();
+    }
+
     @Test
     public void testOpenStream() {
         MemoryClientWithDelay memoryClientWithDelay = new MemoryClientWithDelay();
@@ -282,6 +340,13 @@ class AlwaysSuccessClientTest {
             streamClient.setDelayMillis(delayMillis);
         }
 
+        /**
+         * The count of the fetches sent to the underlying streams.
+         */
+        public int fetchCount() {
+            return streamClient.fetchCount.get();
+        }
+
         @Override
         public StreamClient streamClient() {
             return streamClient;
@@ -289,6 +354,7 @@ class AlwaysSuccessClientTest {
 
         static class StreamClientImpl implements StreamClient {
             private final AtomicLong streamIdAlloc = new AtomicLong();
+            private final AtomicInteger fetchCount = new AtomicInteger();
             /**
              * The additional fetching delay
              */
@@ -319,7 +385,7 @@ class AlwaysSuccessClientTest {
 
             @Override
             public CompletableFuture<Stream> createAndOpenStream(CreateStreamOptions createStreamOptions) {
-                return CompletableFuture.completedFuture(new TestStreamImpl(streamIdAlloc.incrementAndGet(), delayMillis, exceptionHint));
+                return CompletableFuture.completedFuture(new TestStreamImpl(streamIdAlloc.incrementAndGet(), delayMillis, exceptionHint, fetchCount));
             }
 
             @Override
@@ -327,7 +393,7 @@ class AlwaysSuccessClientTest {
                 if (haltOpeningStream) {
                     return CompletableFuture.failedFuture(new StreamClientException(HALT_ERROR_CODES.iterator().next(), "halt opening stream"));
                 }
-                return CompletableFuture.completedFuture(new TestStreamImpl(streamId, delayMillis, exceptionHint));
+                return CompletableFuture.completedFuture(new TestStreamImpl(streamId, delayMillis, exceptionHint, fetchCount));
             }
 
             @Override
@@ -353,11 +419,13 @@ class AlwaysSuccessClientTest {
              * Hint what exception to throw.
              */
             private volatile ExceptionHint exceptionHint;
+            private final AtomicInteger fetchCount;
 
-            public TestStreamImpl(long streamId, long delayMillis, ExceptionHint exceptionHint) {
+            public TestStreamImpl(long streamId, long delayMillis, ExceptionHint exceptionHint, AtomicInteger fetchCount) {
                 this.streamId = streamId;
                 this.delayMillis = delayMillis;
                 this.exceptionHint = exceptionHint;
+                this.fetchCount = fetchCount;
             }
 
             @Override
@@ -394,6 +462,7 @@ class AlwaysSuccessClientTest {
 
             @Override
             public CompletableFuture<FetchResult> fetch(long startOffset, long endOffset, int maxSizeHint) {
+                fetchCount.incrementAndGet();
                 Exception exception = exceptionHint.generateException();
                 if (exception != null) {
                     exceptionHint = exceptionHint.moveToNext();
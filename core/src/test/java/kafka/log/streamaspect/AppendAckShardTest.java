@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package kafka.log.streamaspect;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("esUnit")
+public class AppendAckShardTest {
+    private AppendAckShard shard0;
+    private AppendAckShard shard1;
+    private List<String> acked;
+
+    @BeforeEach
+    public void setup() {
+        shard0 = new AppendAckShard(0, micros -> { });
+        shard1 = new AppendAckShard(1, micros -> { });
+        acked = new CopyOnWriteArrayList<>();
+    }
+
+    @AfterEach
+    public void teardown() {
+        shard0.close();
+        shard1.close();
+    }
+
+    @Test
+    public void testOutOfOrderAcrossShards() throws Exception {
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        shard0.submit(() -> {
+            blocked.countDown();
+            await(blocking);
+            acked.add("a0");
+        });
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        shard0.submit(ack("a1"));
+
+        // the acks of the other shard complete while the first shard is held up
+        CountDownLatch b1Acked = new CountDownLatch(1);
+        shard1.submit(ack("b0"));
+        shard1.submit(() -> {
+            acked.add("b1");
+            b1Acked.countDown();
+        });
+        assertTrue(b1Acked.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("b0", "b1"), acked);
+
+        // the acks of a shard complete in the submission order
+        CountDownLatch a2Acked = new CountDownLatch(1);
+        shard0.submit(() -> {
+            acked.add("a2");
+            a2Acked.countDown();
+        });
+        blocking.countDown();
+        assertTrue(a2Acked.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("b0", "b1", "a0", "a1", "a2"), acked);
+    }
+
+    @Test
+    public void testSubmitWhileDraining() throws Exception {
+        CountDownLatch acked2 = new CountDownLatch(1);
+        // the ack queued by a running ack isn't lost
+        shard0.submit(() -> {
+            acked.add("a0");
+            shard0.submit(() -> {
+                acked.add("a1");
+                acked2.countDown();
+            });
+        });
+        assertTrue(acked2.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("a0", "a1"), acked);
+    }
+
+    @Test
+    public void testCloseWithPendingAcks() throws Exception {
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        shard0.submit(() -> {
+            blocked.countDown();
+            await(blocking);
+            acked.add("a0");
+        });
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        shard0.submit(ack("a1"));
+        shard0.submit(ack("a2"));
+
+        CompletableFuture<Void> closeCf = CompletableFuture.runAsync(shard0::close);
+        blocking.countDown();
+        // close returns after the pending acks run
+        closeCf.get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("a0", "a1", "a2"), acked);
+
+        // the acks submitted after close are ignored
+        shard0.submit(ack("a3"));
+        shard0.close();
+        assertEquals(List.of("a0", "a1", "a2"), acked);
+    }
+
+    private Runnable ack(String name) {
+        return () -> acked.add(name);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.streamaspect;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.utils.MockTime;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("esUnit")
+public class AppendPermitPoolTest {
+
+    @Test
+    public void testThrottleOverFairShare() throws Exception {
+        MockTime time = new MockTime();
+        AppendPermitPool pool = new AppendPermitPool(100, 1000, Map.of("b", 3), time);
+        pool.acquire("a", 90, () -> { });
+        // the pool isn't full
+        assertEquals(0, pool.throttleTimeMs("a"));
+
+        AppendPermitPool.Permit permit = pool.acquire("b", 30, () -> { });
+        // the fair share of a is 100 * 1 / 4 = 25, and the fair share of b is 75
+        assertTrue(pool.throttleTimeMs("a") > 0);
+        assertEquals(0, pool.throttleTimeMs("b"));
+        assertEquals(2, pool.activeTenants());
+
+        time.sleep(1000);
+        pool.release(permit);
+        assertEquals(1, pool.activeTenants());
+        assertEquals(90, pool.inflightBytes());
+        assertEquals(0, pool.throttleTimeMs("a"));
+        assertEquals(0, pool.throttleTimeMs("b"));
+    }
+
+    @Test
+    public void testThrottleTimeByDrainRate() throws Exception {
+        MockTime time = new MockTime();
+        AppendPermitPool pool = new AppendPermitPool(100, 1000, time);
+        // drain 10 bytes per ms
+        time.sleep(1000);
+        pool.release(pool.acquire("a", 10000, () -> { }));
+
+        pool.acquire("a", 150, () -> { });
+        pool.acquire("b", 10, () -> { });
+        // the excess bytes of a are 150 - 50 = 100
+        assertEquals(10, pool.throttleTimeMs("a"));
+    }
+
+    @Test
+    public void testBlockAtHardLimit() throws Exception {
+        AppendPermitPool pool = new AppendPermitPool(100, 200, new MockTime());
+        // a single append larger than the hard limit isn't blocked when nothing is in-flight
+        AppendPermitPool.Permit permit = pool.acquire("a", 300, () -> { });
+
+        CompletableFuture<AppendPermitPool.Permit> blocked = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire("b", 10, () -> { });
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(blocked.isDone());
+
+        pool.release(permit);
+        blocked.get(10, TimeUnit.SECONDS);
+        assertEquals(10, pool.inflightBytes());
+    }
+
+    @Test
+    public void testParseTenantWeights() {
+        String name = "s3.append.permit.tenant.weights";
+        assertEquals(Map.of("User:alice", 2, "User:a=b", 3),
+                AppendPermitPool.parseTenantWeights(name, List.of("User:alice=2", " User:a=b = 3 ")));
+
+        AppendPermitPool.TenantWeightsValidator validator = new AppendPermitPool.TenantWeightsValidator();
+        validator.ensureValid(name, List.of("User:alice=2"));
+        for (String entry : List.of("User:alice", "=2", "User:alice=two", "User:alice=1.5", "User:alice=0")) {
+            ConfigException e = assertThrows(ConfigException.class, () -> validator.ensureValid(name, List.of(entry)));
+            assertTrue(e.getMessage().contains(name));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.streamaspect;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@Tag("esUnit")
+public class ElasticTimestampSummaryTest {
+    private static final int BATCH_SIZE = 256 * 1024;
+
+    @Test
+    public void testLookup() {
+        ElasticTimestampSummary summary = new ElasticTimestampSummary();
+        // 16 batches of 256KiB, each batch has 10 records and timestamps [i * 100, i * 100 + 99]
+        for (int i = 0; i < 16; i++) {
+            summary.onAppend(i * 100 + 99, 100 + (i + 1) * 10, (i + 1) * BATCH_SIZE, BATCH_SIZE);
+        }
+        assertEquals(4, summary.count());
+
+        // the first sample is (399, 140, 1MiB)
+        ElasticTimestampSummary.Range range = summary.lookup(50, 100, 260, 16 * BATCH_SIZE);
+        assertEquals(100, range.startOffset());
+        assertEquals(140, range.endOffset());
+        assertEquals(4 * BATCH_SIZE, range.size());
+
+        range = summary.lookup(450, 100, 260, 16 * BATCH_SIZE);
+        assertEquals(140, range.startOffset());
+        assertEquals(180, range.endOffset());
+
+        range = summary.lookup(10000, 100, 260, 16 * BATCH_SIZE);
+        assertEquals(260, range.startOffset());
+        assertEquals(260, range.endOffset());
+        assertEquals(0, range.size());
+    }
+
+    @Test
+    public void testCompact() {
+        ElasticTimestampSummary summary = new ElasticTimestampSummary();
+        int samples = ElasticTimestampSummary.MAX_SAMPLES + 1;
+        int interval = ElasticTimestampSummary.DEFAULT_INTERVAL_BYTES;
+        for (int i = 0; i < samples; i++) {
+            summary.onAppend(i, i + 1, (i + 1) * interval, interval);
+        }
+        assertEquals(ElasticTimestampSummary.MAX_SAMPLES / 2 + 1, summary.count());
+
+        // the interval is doubled after compaction
+        summary.onAppend(samples, samples + 1, (samples + 1) * interval, interval);
+        assertEquals(ElasticTimestampSummary.MAX_SAMPLES / 2 + 1, summary.count());
+        summary.onAppend(samples + 1, samples + 2, (samples + 2) * interval, interval);
+        assertEquals(ElasticTimestampSummary.MAX_SAMPLES / 2 + 2, summary.count());
+
+        ElasticTimestampSummary.Range range = summary.lookup(10, 0, samples + 2, (samples + 2) * interval);
+        assertEquals(10, range.startOffset());
+        assertEquals(12, range.endOffset());
+    }
+
+    @Test
+    public void testPersist() {
+        ElasticTimestampSummary summary = new ElasticTimestampSummary();
+        for (int i = 0; i < 16; i++) {
+            summary.onAppend(i * 100 + 99, 100 + (i + 1) * 10, (i + 1) * BATCH_SIZE, BATCH_SIZE);
+        }
+        ElasticTimestampSummary loaded = ElasticTimestampSummary.of(summary.toData(), false);
+        assertEquals(summary.count(), loaded.count());
+        assertEquals(140, loaded.lookup(450, 100, 260, 16 * BATCH_SIZE).startOffset());
+
+        // the summary of the segment created before the summary is introduced is incomplete.
+        ElasticTimestampSummary incomplete = ElasticTimestampSummary.of(null, false);
+        assertNull(incomplete.lookup(450, 100, 260, 16 * BATCH_SIZE));
+        assertNull(incomplete.toData());
+        incomplete.reset();
+        assertEquals(100, incomplete.lookup(450, 100, 260, 16 * BATCH_SIZE).startOffset());
+    }
+}
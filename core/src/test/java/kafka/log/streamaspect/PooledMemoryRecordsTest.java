@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.streamaspect;
+
+import com.automq.stream.RecordBatchWithContextWrapper;
+import com.automq.stream.api.FetchResult;
+import com.automq.stream.api.RecordBatchWithContext;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import kafka.log.streamaspect.ElasticLogFileRecords.PooledMemoryRecords;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MutableRecordBatch;
+import org.apache.kafka.common.record.SimpleRecord;
+import org.apache.kafka.common.requests.ByteBufferChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("esUnit")
+public class PooledMemoryRecordsTest {
+    private List<ByteBuf> bufs;
+    private List<MemoryRecords> payloads;
+    private ByteBuffer expected;
+
+    @BeforeEach
+    public void setup() {
+        bufs = new ArrayList<>();
+        payloads = new ArrayList<>();
+        // 3 payloads, each payload has 2 batches
+        long offset = 0;
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            for (int j = 0; j < 2; j++) {
+                MemoryRecords batch = MemoryRecords.withRecords(offset, CompressionType.NONE,
+                        new SimpleRecord(("k" + offset).getBytes(), ("v" + offset).getBytes()),
+                        new SimpleRecord(("k" + (offset + 1)).getBytes(), ("v" + (offset + 1)).getBytes()));
+                buffer.put(batch.buffer());
+                offset += 2;
+            }
+            buffer.flip();
+            payloads.add(MemoryRecords.readableRecords(buffer));
+        }
+        int size = payloads.stream().mapToInt(MemoryRecords::sizeInBytes).sum();
+        expected = ByteBuffer.allocate(size);
+        payloads.forEach(payload -> expected.put(payload.buffer()));
+        expected.flip();
+    }
+
+    @Test
+    public void testBatches() {
+        PooledMemoryRecords records = newRecords();
+        assertEquals(expected.remaining(), records.sizeInBytes());
+        List<Long> baseOffsets = new ArrayList<>();
+        for (MutableRecordBatch batch : records.batches()) {
+            baseOffsets.add(batch.baseOffset());
+            assertEquals(2, batch.countOrNull());
+        }
+        assertEquals(List.of(0L, 2L, 4L, 6L, 8L, 10L), baseOffsets);
+        records.release();
+    }
+
+    @Test
+    public void testWriteTo() throws Exception {
+        PooledMemoryRecords records = newRecords();
+        int size = records.sizeInBytes();
+        int payloadSize = payloads.get(0).sizeInBytes();
+        // the whole records, a slice in the middle of a payload, and a slice spanning all the payloads
+        assertWriteTo(records, 0, size);
+        assertWriteTo(records, 3, payloadSize - 10);
+        assertWriteTo(records, payloadSize / 2, size - payloadSize);
+        assertWriteTo(records, payloadSize, payloadSize);
+        assertWriteTo(records, size, 0);
+        assertThrows(IllegalArgumentException.class, () -> records.writeTo(new ByteBufferChannel(size), 1, size));
+        records.release();
+    }
+
+    @Test
+    public void testRelease() {
+        PooledMemoryRecords records = newRecords();
+        bufs.forEach(buf -> assertEquals(1, buf.refCnt()));
+        records.release();
+        bufs.forEach(buf -> assertEquals(0, buf.refCnt()));
+        // release is idempotent
+        records.release();
+        bufs.forEach(buf -> assertEquals(0, buf.refCnt()));
+        assertThrows(IllegalStateException.class, records::batchIterator);
+        assertThrows(IllegalStateException.class, () -> records.writeTo(new ByteBufferChannel(1), 0, 1));
+    }
+
+    private void assertWriteTo(PooledMemoryRecords records, int position, int length) throws Exception {
+        ByteBufferChannel channel = new ByteBufferChannel(length);
+        assertEquals(length, records.writeTo(channel, position, length));
+        // close flips the written buffer
+        channel.close();
+        ByteBuffer slice = expected.duplicate();
+        slice.position(position).limit(position + length);
+        assertEquals(slice, channel.buffer());
+    }
+
+    private PooledMemoryRecords newRecords() {
+        List<FetchResult> fetchResults = new ArrayList<>();
+        long baseOffset = 0;
+        for (MemoryRecords payload : payloads) {
+            ByteBuf buf = Unpooled.directBuffer(payload.sizeInBytes());
+            buf.writeBytes(payload.buffer());
+            bufs.add(buf);
+            RecordBatchWithContext batch = new RecordBatchWithContextWrapper(RawPayloadRecordBatch.of(buf.nioBuffer()), baseOffset);
+            baseOffset += 4;
+            fetchResults.add(new FetchResult() {
+                @Override
+                public List<RecordBatchWithContext> recordBatchList() {
+                    return Collections.singletonList(batch);
+                }
+
+                @Override
+                public void free() {
+                    buf.release();
+                }
+            });
+        }
+        return PooledMemoryRecords.of(fetchResults);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log.streamaspect;
+
+import com.automq.stream.api.FetchResult;
+import com.automq.stream.api.RecordBatchWithContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("esUnit")
+public class ReadAheadPipelineTest {
+    private ExecutorService executor;
+    private ElasticStreamSlice slice;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        slice = new DefaultElasticStreamSlice(new MemoryClient.StreamImpl(1), SliceRange.of(0, Offsets.NOOP_OFFSET), executor);
+        // 20 batches, each batch has 10 records
+        for (int i = 0; i < 20; i++) {
+            slice.append(RawPayloadRecordBatch.of(ByteBuffer.allocate(10))).get();
+        }
+    }
+
+    @AfterEach
+    public void teardown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testNext() throws Exception {
+        ReadAheadPipeline.Stats stats = new ReadAheadPipeline.Stats();
+        // each chunk covers 3 batches
+        ReadAheadPipeline pipeline = new ReadAheadPipeline(slice, 15, 200, 30, 1, Long.MAX_VALUE, Function.identity(), stats);
+        List<Long> baseOffsets = new ArrayList<>();
+        for (; ; ) {
+            FetchResult rst = pipeline.next().get();
+            if (rst == null) {
+                break;
+            }
+            for (RecordBatchWithContext record : rst.recordBatchList()) {
+                baseOffsets.add(record.baseOffset());
+            }
+            rst.free();
+        }
+        pipeline.close();
+
+        // the first batch contains the start offset, and there is no duplicated batch
+        assertEquals(19, baseOffsets.size());
+        for (int i = 0; i < baseOffsets.size(); i++) {
+            assertEquals((i + 1) * 10L, baseOffsets.get(i));
+        }
+        assertTrue(stats.hitCount() + stats.missCount() > 0);
+    }
+
+    @Test
+    public void testMaxBytes() throws Exception {
+        ReadAheadPipeline.Stats stats = new ReadAheadPipeline.Stats();
+        ReadAheadPipeline pipeline = new ReadAheadPipeline(slice, 0, 200, 30, 1, 30, Function.identity(), stats);
+        FetchResult rst = pipeline.next().get();
+        assertEquals(3, rst.recordBatchList().size());
+        rst.free();
+
+        // no read-ahead beyond the max bytes, the following records are fetched on demand
+        long misses = stats.missCount();
+        rst = pipeline.next().get();
+        assertEquals(30L, rst.recordBatchList().get(0).baseOffset());
+        assertEquals(misses + 1, stats.missCount());
+        rst.free();
+        pipeline.close();
+    }
+
+    @Test
+    public void testBudgetHeldUntilConsumed() throws Exception {
+        ReadAheadPipeline.Stats stats = new ReadAheadPipeline.Stats();
+        ReadAheadPipeline.Config config = new ReadAheadPipeline.Config(3, 60);
+        ReadAheadPipeline pipeline = new ReadAheadPipeline(slice, config, 0, 200, 30, 1, Long.MAX_VALUE, Function.identity(), stats);
+        FetchResult rst = pipeline.next().get();
+        rst.free();
+        // the first chunk is demanded by the reader, the 2 read-ahead chunks hold the budget even if they are fetched
+        executor.submit(() -> { }).get();
+        assertEquals(0, config.availableBytes());
+
+        // the chunk handed over to the reader releases its permits, which are taken again on the next read
+        rst = pipeline.next().get();
+        assertEquals(30L, rst.recordBatchList().get(0).baseOffset());
+        rst.free();
+        assertEquals(30, config.availableBytes());
+        rst = pipeline.next().get();
+        assertEquals(60L, rst.recordBatchList().get(0).baseOffset());
+        rst.free();
+        assertEquals(30, config.availableBytes());
+
+        pipeline.close();
+        executor.submit(() -> { }).get();
+        assertEquals(60, config.availableBytes());
+    }
+
+    @Test
+    public void testExtend() throws Exception {
+        ReadAheadPipeline.Stats stats = new ReadAheadPipeline.Stats();
+        ReadAheadPipeline pipeline = new ReadAheadPipeline(slice, 0, 100, 30, 1, Long.MAX_VALUE, Function.identity(), stats);
+        FetchResult rst;
+        while ((rst = pipeline.next().get()) != null) {
+            rst.free();
+        }
+        assertEquals(100L, pipeline.nextOffset());
+
+        pipeline.extend(200);
+        rst = pipeline.next().get();
+        assertEquals(100L, rst.recordBatchList().get(0).baseOffset());
+        rst.free();
+        pipeline.close();
+    }
+
+    @Test
+    public void testPipelineKeptAcrossReads() throws Exception {
+        ReadAheadPipeline.Stats stats = new ReadAheadPipeline.Stats();
+        ReadAheadPipeline.Config config = new ReadAheadPipeline.Config(4, 1000);
+        ElasticLogFileRecords records = new ElasticLogFileRecords(slice, 0, 200, config, stats);
+        ReadManualReleaseHint.mark();
+        try {
+            // each read takes a chunk of 3 batches
+            ElasticLogFileRecords.PooledMemoryRecords rst = (ElasticLogFileRecords.PooledMemoryRecords) records.read(0, 200, 30).get();
+            assertEquals(30, rst.sizeInBytes());
+            rst.release();
+            // wait for the read-ahead chunks
+            executor.submit(() -> { }).get();
+            long misses = stats.missCount();
+
+            // the next read of the reader is served by the chunks read ahead for the previous read
+            for (int i = 1; i < 4; i++) {
+                rst = (ElasticLogFileRecords.PooledMemoryRecords) records.read(i * 30, 200, 30).get();
+                assertEquals(30, rst.sizeInBytes());
+                rst.release();
+            }
+            assertEquals(misses, stats.missCount());
+            assertTrue(stats.hitCount() >= 3);
+        } finally {
+            ReadManualReleaseHint.reset();
+        }
+
+        records.close();
+        executor.submit(() -> { }).get();
+        assertEquals(1000, config.availableBytes());
+    }
+}
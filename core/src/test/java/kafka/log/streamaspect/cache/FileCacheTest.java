@@ -22,71 +22,235 @@ import io.netty.buffer.Unpooled;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Arrays;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class FileCacheTest {
 
     @Test
     public void test() throws IOException {
-        FileCache fileCache = new FileCache("/tmp/file_cache_test", 10 * 1024, 1024);
+        FileCache fileCache = new FileCache(tempPath(), 10 * 1024, 1024, 1);
 
         // occupy block 0,1
-        fileCache.put("test1", 10, genBuf((byte) 1, 2 * 1024));
+        fileCache.put(1, 10, genBuf((byte) 1, 2 * 1024));
 
-        ByteBuf rst = fileCache.get("test1", 10 + 1000, 1024).get();
+        ByteBuf rst = fileCache.get(1, 10 + 1000, 1024).get();
         assertEquals(1024, rst.readableBytes());
         assertTrue(verify(rst, (byte) 1));
+        rst.release();
 
-        Assertions.assertFalse(fileCache.get("test1", 10 + 1000, 2048).isPresent());
+        Assertions.assertFalse(fileCache.get(1, 10 + 1000, 2048).isPresent());
 
         // occupy block 2,3
-        fileCache.put("test2", 233, genBuf((byte) 2, 1025));
+        fileCache.put(2, 233, genBuf((byte) 2, 1025));
 
         // occupy block 4~8
-        fileCache.put("test2", 2048, genBuf((byte) 4, 1024 * 5));
+        fileCache.put(2, 2048, genBuf((byte) 4, 1024 * 5));
 
         // occupy block 9
-        fileCache.put("test2", 10000, genBuf((byte) 5, 1024));
+        fileCache.put(2, 10000, genBuf((byte) 5, 1024));
 
         // touch lru
-        assertEquals(1025, fileCache.get("test2", 233, 1025).get().readableBytes());
-        assertEquals(1024, fileCache.get("test2", 10000, 1024).get().readableBytes());
-        assertEquals(2048, fileCache.get("test1", 10, 2048).get().readableBytes());
-        assertEquals(1024 * 5, fileCache.get("test2", 2048, 1024 * 5).get().readableBytes());
+        assertReadable(fileCache, 2, 233, 1025);
+        assertReadable(fileCache, 2, 10000, 1024);
+        assertReadable(fileCache, 1, 10, 2048);
+        assertReadable(fileCache, 2, 2048, 1024 * 5);
 
         // expect evict test2-233 and test2-10000
-        fileCache.put("test3", 123, genBuf((byte) 6, 2049));
+        fileCache.put(3, 123, genBuf((byte) 6, 2049));
 
-        FileCache.Value value = fileCache.path2cache.get("test3").get(123L);
+        FileCache.Value value = fileCache.shard(3).stream2cache.get(3L).get(123L);
         assertEquals(2049, value.dataLength);
         assertArrayEquals(new int[] {2, 3, 9}, value.blocks);
 
 
-        rst = fileCache.get("test3", 123, 2049).get();
+        rst = fileCache.get(3, 123, 2049).get();
         assertEquals(2049, rst.readableBytes());
         assertTrue(verify(rst, (byte) 6));
+        rst.release();
 
         // expect evict test1-10 and test2-2048
-        fileCache.put("test4", 123, genBuf((byte) 7, 2049));
-        value = fileCache.path2cache.get("test4").get(123L);
+        fileCache.put(4, 123, genBuf((byte) 7, 2049));
+        value = fileCache.shard(4).stream2cache.get(4L).get(123L);
         assertArrayEquals(new int[] {0, 1, 4}, value.blocks);
-        rst = fileCache.get("test4", 123, 2049).get();
+        rst = fileCache.get(4, 123, 2049).get();
         assertTrue(verify(rst, (byte) 7));
+        rst.release();
 
-        assertEquals(4, fileCache.freeBlockCount);
+        assertEquals(4, fileCache.freeBlockCount());
 
         // expect occupy free blocks 5,6,7
-        fileCache.put("test5", 123, genBuf((byte) 8, 2049));
-        value = fileCache.path2cache.get("test5").get(123L);
+        fileCache.put(5, 123, genBuf((byte) 8, 2049));
+        value = fileCache.shard(5).stream2cache.get(5L).get(123L);
         assertArrayEquals(new int[] {5, 6, 7}, value.blocks);
-        rst = fileCache.get("test5", 123, 2049).get();
+        rst = fileCache.get(5, 123, 2049).get();
         assertTrue(verify(rst, (byte) 8));
-        assertEquals(1, fileCache.freeBlockCount);
+        rst.release();
+        assertEquals(1, fileCache.freeBlockCount());
+        assertEquals(4, fileCache.evictionCount(0));
+    }
+
+    @Test
+    public void testEvictReferencedEntry() throws IOException {
+        FileCache fileCache = new FileCache(tempPath(), 4 * 1024, 1024, 1);
+        fileCache.put(1, 0, genBuf((byte) 1, 2 * 1024));
+        ByteBuf rst = fileCache.get(1, 1000, 100).get();
+        fileCache.put(2, 0, genBuf((byte) 2, 2 * 1024));
+
+        // test1 is evicted but its blocks are still referenced, so the blocks of test2 are reused
+        fileCache.put(3, 0, genBuf((byte) 3, 2 * 1024));
+        assertFalse(fileCache.get(1, 0, 1).isPresent());
+        assertFalse(fileCache.get(2, 0, 1).isPresent());
+        assertReadable(fileCache, 3, 0, 2 * 1024);
+        assertEquals(0, fileCache.freeBlockCount());
+        assertTrue(verify(rst, (byte) 1));
+
+        rst.release();
+        assertEquals(2, fileCache.freeBlockCount());
+        fileCache.put(2, 0, genBuf((byte) 2, 1024));
+        assertReadable(fileCache, 2, 0, 1024);
+    }
+
+    @Test
+    public void testFailedAllocationKeepsEntries() throws IOException {
+        FileCache fileCache = new FileCache(tempPath(), 4 * 1024, 1024, 1);
+        fileCache.put(1, 0, genBuf((byte) 1, 2 * 1024));
+        ByteBuf rst = fileCache.get(1, 1000, 100).get();
+        fileCache.put(2, 0, genBuf((byte) 2, 2 * 1024));
+
+        // only the blocks of test2 can be reclaimed, which isn't enough, so nothing is evicted
+        fileCache.put(3, 0, genBuf((byte) 3, 4 * 1024));
+        assertFalse(fileCache.get(3, 0, 1).isPresent());
+        assertReadable(fileCache, 1, 0, 2 * 1024);
+        assertReadable(fileCache, 2, 0, 2 * 1024);
+        assertEquals(0, fileCache.evictionCount(0));
+
+        // a larger put of the same key which cannot be allocated keeps the old entry
+        fileCache.put(1, 0, genBuf((byte) 1, 4 * 1024));
+        assertReadable(fileCache, 1, 0, 2 * 1024);
+
+        rst.release();
+        fileCache.put(3, 0, genBuf((byte) 3, 4 * 1024));
+        assertReadable(fileCache, 3, 0, 4 * 1024);
+        assertFalse(fileCache.get(1, 0, 1).isPresent());
+        assertFalse(fileCache.get(2, 0, 1).isPresent());
+    }
+
+    @Test
+    public void testShards() throws IOException {
+        FileCache fileCache = new FileCache(tempPath(), 64 * 1024, 1024, 4);
+        assertEquals(4, fileCache.shardCount());
+        for (int i = 0; i < 32; i++) {
+            fileCache.put(i, 0, genBuf((byte) i, 1024));
+        }
+        int count = 0;
+        for (int i = 0; i < 32; i++) {
+            Optional<ByteBuf> rst = fileCache.get(i, 0, 1024);
+            if (rst.isPresent()) {
+                assertTrue(verify(rst.get(), (byte) i));
+                rst.get().release();
+                count++;
+            }
+        }
+        long hit = 0;
+        long miss = 0;
+        for (int i = 0; i < fileCache.shardCount(); i++) {
+            hit += fileCache.hitCount(i);
+            miss += fileCache.missCount(i);
+        }
+        assertEquals(count, hit);
+        assertEquals(32 - count, miss);
+        assertEquals(64 - count, fileCache.freeBlockCount());
+    }
+
+    @Test
+    public void testRecover() throws IOException {
+        String path = tempPath();
+        FileCache fileCache = new FileCache(path, 10 * 1024, 1024, 1);
+        fileCache.put(1, 0, genBuf((byte) 1, 2049));
+        fileCache.put(2, 100, genBuf((byte) 2, 1024));
+        fileCache.put(3, 200, genBuf((byte) 3, 1000));
+        fileCache.close();
+
+        // corrupt the data of stream 2
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            FileCache.Value value = fileCache.shard(2).stream2cache.get(2L).get(100L);
+            long dataPosition = raf.length() - 10 * 1024;
+            raf.seek(dataPosition + value.blocks[0] * 1024L + 10);
+            raf.write(0);
+        }
+
+        fileCache = new FileCache(path, 10 * 1024, 1024, 1);
+        ByteBuf rst = fileCache.get(1, 1000, 1049).get();
+        assertTrue(verify(rst, (byte) 1));
+        rst.release();
+        assertFalse(fileCache.get(2, 100, 1).isPresent());
+        rst = fileCache.get(3, 200, 1000).get();
+        assertTrue(verify(rst, (byte) 3));
+        rst.release();
+        assertEquals(6, fileCache.freeBlockCount());
+
+        // the layout changed, expect the cache is formatted
+        fileCache = new FileCache(path, 10 * 1024, 1024, 2);
+        assertFalse(fileCache.get(1, 0, 1).isPresent());
+        assertEquals(10, fileCache.freeBlockCount());
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        FileCache fileCache = new FileCache(tempPath(), 4 * 1024, 1024, 1);
+        fileCache.put(1, 0, genBuf((byte) 1, 1024));
+        fileCache.close();
+        assertTrue(fileCache.isUnmapped());
+        assertFalse(fileCache.get(1, 0, 1).isPresent());
+        fileCache.put(2, 0, genBuf((byte) 2, 1024));
+        assertFalse(fileCache.get(2, 0, 1).isPresent());
+        // close is idempotent
+        fileCache.close();
+    }
+
+    @Test
+    public void testCloseWithReferencedSlices() throws IOException {
+        String path = tempPath();
+        FileCache fileCache = new FileCache(path, 4 * 1024, 1024, 1);
+        fileCache.put(1, 0, genBuf((byte) 1, 2 * 1024));
+        ByteBuf rst1 = fileCache.get(1, 0, 1024).get();
+        ByteBuf rst2 = fileCache.get(1, 1000, 100).get();
+        fileCache.close();
+
+        // the file is kept mapped until all the slices are released
+        assertFalse(fileCache.isUnmapped());
+        assertTrue(verify(rst1, (byte) 1));
+        rst1.release();
+        assertFalse(fileCache.isUnmapped());
+        assertTrue(verify(rst2, (byte) 1));
+        rst2.release();
+        assertTrue(fileCache.isUnmapped());
+
+        // the entry is persisted
+        fileCache = new FileCache(path, 4 * 1024, 1024, 1);
+        assertReadable(fileCache, 1, 0, 2 * 1024);
+        fileCache.close();
+    }
+
+    void assertReadable(FileCache fileCache, long streamId, long position, int length) {
+        ByteBuf rst = fileCache.get(streamId, position, length).get();
+        assertEquals(length, rst.readableBytes());
+        rst.release();
+    }
+
+    static String tempPath() throws IOException {
+        File file = File.createTempFile("file_cache_test", null);
+        file.deleteOnExit();
+        return file.getPath();
     }
 
     ByteBuf genBuf(byte data, int length) {
@@ -35,7 +35,7 @@ import java.io.File
 import java.util.Properties
 import scala.collection.mutable.ArrayBuffer
 import scala.collection.{Map, Seq, mutable}
-import scala.jdk.CollectionConverters.MapHasAsJava
+import scala.jdk.CollectionConverters.{IteratorHasAsScala, MapHasAsJava}
 
 @Tag("esUnit")
 class ElasticLogSegmentTest {
@@ -223,6 +223,41 @@ class ElasticLogSegmentTest {
         assertEquals(40, seg.findOffsetByTimestamp(399).get.offset)
     }
 
+    @Test
+    def testLookupTimeIndexAsync(): Unit = {
+        val messageSize = records(0, s"msg00").sizeInBytes
+        val seg = getOrCreateSegment(40, messageSize * 2 - 1)
+        for (i <- 40 until 240)
+            seg.append(i, i * 10, i, records(i, s"msg$i"))
+
+        // the async binary search should land on the same slot as the sync one
+        for (timestamp <- 390 to 2400 by 7)
+            assertEquals(seg.timeIdx.lookup(timestamp), seg.timeIdx.lookupAsync(timestamp).get)
+
+        assertEquals(seg.findOffsetByTimestamp(431), seg.findOffsetByTimestampAsync(431).get)
+        assertEquals(None, seg.findOffsetByTimestampAsync(2391).get)
+    }
+
+    @Test
+    def testPooledBatchIterator(): Unit = {
+        val seg = getOrCreateSegment(40)
+        for (i <- 40 until 60)
+            seg.append(i, i * 10, i, records(i, s"msg$i"))
+
+        val iterator = seg.pooledBatchIterator(45)
+        try {
+            assertEquals((45 until 60).toList, iterator.asScala.map(_.baseOffset).toList)
+            assertFalse(iterator.hasNext)
+        } finally {
+            iterator.close()
+        }
+
+        // the iterator can be closed before it's exhausted
+        val partial = seg.pooledBatchIterator(40)
+        assertEquals(40, partial.next().baseOffset)
+        partial.close()
+    }
+
     /**
      * Test that offsets are assigned sequentially and that the nextOffset variable is incremented
      */
@@ -2170,7 +2170,7 @@ class KafkaApisTest {
     val isolationLevel = IsolationLevel.READ_UNCOMMITTED
     val currentLeaderEpoch = Optional.of[Integer](15)
 
-    when(replicaManager.fetchOffsetForTimestamp(
+    when(replicaManager.fetchOffsetForTimestampAsync(
       ArgumentMatchers.eq(tp),
       ArgumentMatchers.eq(ListOffsetsRequest.EARLIEST_TIMESTAMP),
       ArgumentMatchers.eq(Some(isolationLevel)),
@@ -3632,13 +3632,13 @@ class KafkaApisTest {
     val latestOffset = 15L
     val currentLeaderEpoch = Optional.empty[Integer]()
 
-    when(replicaManager.fetchOffsetForTimestamp(
+    when(replicaManager.fetchOffsetForTimestampAsync(
       ArgumentMatchers.eq(tp),
       ArgumentMatchers.eq(ListOffsetsRequest.LATEST_TIMESTAMP),
       ArgumentMatchers.eq(Some(isolationLevel)),
       ArgumentMatchers.eq(currentLeaderEpoch),
       fetchOnlyFromLeader = ArgumentMatchers.eq(true))
-    ).thenReturn(Some(new TimestampAndOffset(ListOffsetsResponse.UNKNOWN_TIMESTAMP, latestOffset, currentLeaderEpoch)))
+    ).thenReturn(CompletableFuture.completedFuture[Option[TimestampAndOffset]](Some(new TimestampAndOffset(ListOffsetsResponse.UNKNOWN_TIMESTAMP, latestOffset, currentLeaderEpoch))))
 
     val targetTimes = List(new ListOffsetsTopic()
       .setName(tp.topic)
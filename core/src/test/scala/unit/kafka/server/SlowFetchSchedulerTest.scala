@@ -0,0 +1,95 @@
+/**
+  * Licensed to the Apache Software Foundation (ASF) under one or more
+  * contributor license agreements.  See the NOTICE file distributed with
+  * this work for additional information regarding copyright ownership.
+  * The ASF licenses this file to You under the Apache License, Version 2.0
+  * (the "License"); you may not use this file except in compliance with
+  * the License.  You may obtain a copy of the License at
+  *
+  *    http://www.apache.org/licenses/LICENSE-2.0
+  *
+  * Unless required by applicable law or agreed to in writing, software
+  * distributed under the License is distributed on an "AS IS" BASIS,
+  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  * See the License for the specific language governing permissions and
+  * limitations under the License.
+  */
+
+package kafka.server
+
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+
+import kafka.utils.MockTime
+import org.junit.jupiter.api.Assertions.{assertEquals, assertTrue}
+import org.junit.jupiter.api.{AfterEach, Test}
+
+import scala.jdk.CollectionConverters._
+
+class SlowFetchSchedulerTest {
+  private var scheduler: SlowFetchScheduler = _
+
+  @AfterEach
+  def tearDown(): Unit = {
+    if (scheduler != null)
+      scheduler.shutdown()
+  }
+
+  @Test
+  def testRoundRobinAcrossClients(): Unit = {
+    scheduler = new SlowFetchScheduler(1, Long.MaxValue, new MockTime())
+    val blocker = new CountDownLatch(1)
+    val done = new CountDownLatch(5)
+    val order = new ConcurrentLinkedQueue[String]()
+    scheduler.schedule("blocker", 0, () => blocker.await())
+    // client-a queues three fetches before client-b queues two
+    for (i <- 0 until 3)
+      scheduler.schedule("a", 0, () => { order.add(s"a$i"); done.countDown() })
+    for (i <- 0 until 2)
+      scheduler.schedule("b", 0, () => { order.add(s"b$i"); done.countDown() })
+    blocker.countDown()
+
+    assertTrue(done.await(10, TimeUnit.SECONDS))
+    assertEquals(List("a0", "b0", "a1", "b1", "a2"), order.asScala.toList)
+  }
+
+  @Test
+  def testInflightBytesBudget(): Unit = {
+    scheduler = new SlowFetchScheduler(4, 100, new MockTime())
+    val blocker = new CountDownLatch(1)
+    val done = new CountDownLatch(3)
+    val running = new AtomicInteger()
+    val maxRunning = new AtomicInteger()
+    def fetch(): Unit = {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), (x, y) => math.max(x, y))
+      blocker.await()
+      running.decrementAndGet()
+      done.countDown()
+    }
+    // the fetches can't run together because each of them takes 60 bytes of the 100 bytes budget
+    for (client <- List("a", "b", "c"))
+      scheduler.schedule(client, 60, () => fetch())
+    blocker.countDown()
+
+    assertTrue(done.await(10, TimeUnit.SECONDS))
+    assertEquals(1, maxRunning.get)
+  }
+
+  @Test
+  def testLargeFetchDoesNotBlockSmallFetchesOfOtherClients(): Unit = {
+    scheduler = new SlowFetchScheduler(4, 100, new MockTime())
+    val blocker = new CountDownLatch(1)
+    val smallDone = new CountDownLatch(2)
+    val largeDone = new CountDownLatch(1)
+    scheduler.schedule("blocker", 50, () => blocker.await())
+    // the large fetch doesn't fit in the budget left by the blocker, but the small fetches queued after it do
+    scheduler.schedule("large", 80, () => largeDone.countDown())
+    scheduler.schedule("small-a", 10, () => smallDone.countDown())
+    scheduler.schedule("small-b", 10, () => smallDone.countDown())
+
+    assertTrue(smallDone.await(10, TimeUnit.SECONDS))
+    assertEquals(1, largeDone.getCount)
+    blocker.countDown()
+    assertTrue(largeDone.await(10, TimeUnit.SECONDS))
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.autobalancer;
+
+import kafka.autobalancer.common.Action;
+import kafka.autobalancer.common.Resource;
+import kafka.autobalancer.config.AutoBalancerControllerConfig;
+import kafka.autobalancer.goals.AbstractGoal;
+import kafka.autobalancer.goals.NetworkInCapacityGoal;
+import kafka.autobalancer.goals.NetworkInDistributionGoal;
+import kafka.autobalancer.goals.NetworkOutCapacityGoal;
+import kafka.autobalancer.goals.NetworkOutDistributionGoal;
+import kafka.autobalancer.model.BrokerUpdater;
+import kafka.autobalancer.model.ClusterModelSnapshot;
+import kafka.autobalancer.model.TopicPartitionReplicaUpdater;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs all the goals on a synthetic cluster, like a detect round of the AnomalyDetector. A few brokers are hot, so the
+ * goals have to evaluate the moves and swaps of their replicas with the replicas of all the other brokers.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GoalOptimizeBenchmark {
+    private static final String RACK = "default";
+    private static final int BROKER_COUNT = 20;
+    private static final int HOT_BROKER_COUNT = 2;
+    private static final double BROKER_CAPACITY = 100 * 1024 * 1024;
+
+    @Param({"10000", "100000", "1000000"})
+    private int replicaCount;
+
+    private List<AbstractGoal> goalsByPriority;
+    private ClusterModelSnapshot cluster;
+
+    @Setup(Level.Trial)
+    public void setupGoals() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_GOALS, new StringJoiner(",")
+            .add(NetworkInCapacityGoal.class.getName())
+            .add(NetworkOutCapacityGoal.class.getName())
+            .add(NetworkInDistributionGoal.class.getName())
+            .add(NetworkOutDistributionGoal.class.getName()).toString());
+        AutoBalancerControllerConfig controllerConfig = new AutoBalancerControllerConfig(config, false);
+        goalsByPriority = controllerConfig.getConfiguredInstances(AutoBalancerControllerConfig.AUTO_BALANCER_CONTROLLER_GOALS, AbstractGoal.class);
+        Collections.sort(goalsByPriority);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupCluster() {
+        // the goals apply the actions to the snapshot, so each invocation optimizes a new one
+        Random random = new Random(replicaCount);
+        cluster = new ClusterModelSnapshot();
+        for (int brokerId = 0; brokerId < BROKER_COUNT; brokerId++) {
+            BrokerUpdater.Broker broker = new BrokerUpdater.Broker(brokerId);
+            broker.setActive(true);
+            broker.setCapacity(Resource.NW_IN, BROKER_CAPACITY);
+            broker.setCapacity(Resource.NW_OUT, BROKER_CAPACITY);
+            cluster.addBroker(RACK, broker);
+        }
+        // the hot brokers get 3 times of the average load
+        double averageLoad = 0.4 * BROKER_CAPACITY * BROKER_COUNT / replicaCount;
+        for (int i = 0; i < replicaCount; i++) {
+            int brokerId = i % BROKER_COUNT;
+            double load = averageLoad * (brokerId < HOT_BROKER_COUNT ? 3 : 1) * (0.5 + random.nextDouble());
+            TopicPartitionReplicaUpdater.TopicPartitionReplica replica =
+                new TopicPartitionReplicaUpdater.TopicPartitionReplica(new TopicPartition("topic-" + i / 100, i % 100));
+            replica.setLoad(Resource.NW_IN, load);
+            replica.setLoad(Resource.NW_OUT, load * (0.5 + random.nextDouble()));
+            cluster.addTopicPartition(brokerId, replica);
+        }
+        cluster.aggregate();
+    }
+
+    @Benchmark
+    public List<Action> testOptimize() {
+        List<Action> actions = new ArrayList<>();
+        for (AbstractGoal goal : goalsByPriority) {
+            actions.addAll(goal.optimize(cluster, goalsByPriority));
+        }
+        return actions;
+    }
+}
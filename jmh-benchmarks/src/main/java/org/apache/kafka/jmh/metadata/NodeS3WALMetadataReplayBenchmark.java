@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.metadata;
+
+import org.apache.kafka.common.metadata.NodeWALMetadataRecord;
+import org.apache.kafka.common.metadata.RemoveWALObjectRecord;
+import org.apache.kafka.common.metadata.WALObjectRecord;
+import org.apache.kafka.image.NodeS3WALMetadataDelta;
+import org.apache.kafka.image.NodeS3WALMetadataImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the WAL object records of a node, which are committed one by one and compacted from the oldest ones,
+ * and applies the delta to the node's image like the metadata loader does.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NodeS3WALMetadataReplayBenchmark {
+    private static final int NODE_ID = 0;
+    private static final int STREAM_COUNT = 1000;
+    private static final int RECORDS_PER_STREAM = 100;
+    private static final int COMPACT_OBJECT_COUNT = 10;
+    private static final int REPLAY_ROUNDS = 10;
+
+    @Param({"1000", "10000"})
+    private int walObjectCount;
+
+    @Param({"16"})
+    private int streamsPerObject;
+
+    private NodeS3WALMetadataImage image;
+    // the committed objects of the image, sorted by the order id
+    private Deque<WALObjectRecord> committed;
+    private long[] streamEndOffsets;
+    private long nextObjectId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        streamEndOffsets = new long[STREAM_COUNT];
+        committed = new ArrayDeque<>();
+        nextObjectId = 0;
+        NodeS3WALMetadataDelta delta = new NodeS3WALMetadataDelta(NodeS3WALMetadataImage.EMPTY);
+        delta.replay(new NodeWALMetadataRecord().setNodeId(NODE_ID).setNodeEpoch(1));
+        for (int i = 0; i < walObjectCount; i++) {
+            WALObjectRecord record = nextWALObject();
+            delta.replay(record);
+            committed.add(record);
+        }
+        image = delta.apply();
+    }
+
+    @Benchmark
+    public NodeS3WALMetadataImage testCommit() {
+        NodeS3WALMetadataDelta delta = new NodeS3WALMetadataDelta(image);
+        delta.replay(nextWALObject());
+        return delta.apply();
+    }
+
+    @Benchmark
+    public NodeS3WALMetadataImage testCompact() {
+        NodeS3WALMetadataDelta delta = new NodeS3WALMetadataDelta(image);
+        compact(delta, new ArrayList<>(committed).subList(0, COMPACT_OBJECT_COUNT));
+        return delta.apply();
+    }
+
+    @Benchmark
+    public NodeS3WALMetadataImage testReplay() {
+        // commit the objects one by one, and compact the oldest objects at the end of each round
+        NodeS3WALMetadataImage current = image;
+        List<WALObjectRecord> compacting = new ArrayList<>(committed).subList(0, REPLAY_ROUNDS * COMPACT_OBJECT_COUNT);
+        for (int round = 0; round < REPLAY_ROUNDS; round++) {
+            for (int i = 0; i < COMPACT_OBJECT_COUNT; i++) {
+                NodeS3WALMetadataDelta delta = new NodeS3WALMetadataDelta(current);
+                delta.replay(nextWALObject());
+                current = delta.apply();
+            }
+            NodeS3WALMetadataDelta delta = new NodeS3WALMetadataDelta(current);
+            compact(delta, compacting.subList(round * COMPACT_OBJECT_COUNT, (round + 1) * COMPACT_OBJECT_COUNT));
+            current = delta.apply();
+        }
+        return current;
+    }
+
+    private WALObjectRecord nextWALObject() {
+        long objectId = nextObjectId++;
+        List<WALObjectRecord.StreamIndex> streamsIndex = new ArrayList<>(streamsPerObject);
+        for (int i = 0; i < streamsPerObject; i++) {
+            int streamId = (int) ((objectId * streamsPerObject + i) % STREAM_COUNT);
+            long startOffset = streamEndOffsets[streamId];
+            streamEndOffsets[streamId] += RECORDS_PER_STREAM;
+            streamsIndex.add(new WALObjectRecord.StreamIndex()
+                .setStreamId(streamId)
+                .setStartOffset(startOffset)
+                .setEndOffset(startOffset + RECORDS_PER_STREAM));
+        }
+        return new WALObjectRecord()
+            .setObjectId(objectId)
+            .setNodeId(NODE_ID)
+            .setOrderId(objectId)
+            .setDataTimeInMs(System.currentTimeMillis())
+            .setStreamsIndex(streamsIndex);
+    }
+
+    /**
+     * Compact the objects into a new object, which takes the order id of the first one.
+     */
+    private void compact(NodeS3WALMetadataDelta delta, List<WALObjectRecord> objects) {
+        Map<Long, WALObjectRecord.StreamIndex> streamsIndex = new LinkedHashMap<>();
+        for (WALObjectRecord object : objects) {
+            for (WALObjectRecord.StreamIndex index : object.streamsIndex()) {
+                WALObjectRecord.StreamIndex merged = streamsIndex.get(index.streamId());
+                if (merged == null) {
+                    streamsIndex.put(index.streamId(), index.duplicate());
+                } else {
+                    merged.setEndOffset(Math.max(merged.endOffset(), index.endOffset()));
+                }
+            }
+            delta.replay(new RemoveWALObjectRecord().setNodeId(NODE_ID).setObjectId(object.objectId()));
+        }
+        delta.replay(new WALObjectRecord()
+            .setObjectId(nextObjectId++)
+            .setNodeId(NODE_ID)
+            .setOrderId(objects.get(0).orderId())
+            .setDataTimeInMs(objects.get(0).dataTimeInMs())
+            .setStreamsIndex(new ArrayList<>(streamsIndex.values())));
+    }
+}
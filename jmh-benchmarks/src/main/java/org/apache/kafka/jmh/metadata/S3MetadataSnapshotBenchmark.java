@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.metadata;
+
+import org.apache.kafka.common.metadata.NodeWALMetadataRecord;
+import org.apache.kafka.common.metadata.RangeRecord;
+import org.apache.kafka.common.metadata.S3ObjectRecord;
+import org.apache.kafka.common.metadata.S3StreamObjectRecord;
+import org.apache.kafka.common.metadata.S3StreamRecord;
+import org.apache.kafka.common.metadata.WALObjectRecord;
+import org.apache.kafka.image.MetadataDelta;
+import org.apache.kafka.image.MetadataImage;
+import org.apache.kafka.image.MetadataProvenance;
+import org.apache.kafka.image.writer.ImageWriter;
+import org.apache.kafka.image.writer.ImageWriterOptions;
+import org.apache.kafka.image.writer.RecordListWriter;
+import org.apache.kafka.metadata.stream.S3ObjectState;
+import org.apache.kafka.server.common.ApiMessageAndVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the S3 stream and object metadata of a large image as a snapshot, and loads the snapshot into an empty image
+ * like a bootstrapping broker does.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx16g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class S3MetadataSnapshotBenchmark {
+    private static final int NODE_COUNT = 8;
+    private static final int STREAMS_PER_WAL_OBJECT = 16;
+    private static final long RECORDS_PER_OBJECT = 100;
+
+    @Param({"100000", "1000000"})
+    private int streamCount;
+
+    private MetadataImage image;
+    private List<ApiMessageAndVersion> snapshot;
+    // the same executor as the one owned by the metadata loader
+    private ExecutorService applyExecutor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        applyExecutor = MetadataDelta.newApplyExecutor("benchmark-");
+        MetadataDelta delta = new MetadataDelta(MetadataImage.EMPTY);
+        for (int nodeId = 0; nodeId < NODE_COUNT; nodeId++) {
+            delta.replay(new NodeWALMetadataRecord().setNodeId(nodeId).setNodeEpoch(1));
+        }
+        long nextObjectId = 0;
+        for (long streamId = 0; streamId < streamCount; streamId++) {
+            int nodeId = (int) (streamId % NODE_COUNT);
+            delta.replay(new S3StreamRecord()
+                .setStreamId(streamId)
+                .setEpoch(1)
+                .setRangeIndex(0)
+                .setStartOffset(0)
+                .setStreamState((byte) 0));
+            delta.replay(new RangeRecord()
+                .setStreamId(streamId)
+                .setEpoch(1)
+                .setRangeIndex(0)
+                .setStartOffset(0)
+                .setEndOffset(0)
+                .setNodeId(nodeId));
+            long objectId = nextObjectId++;
+            delta.replay(committedObject(objectId));
+            delta.replay(new S3StreamObjectRecord()
+                .setObjectId(objectId)
+                .setStreamId(streamId)
+                .setStartOffset(0)
+                .setEndOffset(RECORDS_PER_OBJECT)
+                .setDataTimeInMs(0));
+        }
+        // the WAL objects of each node contain the following data of its streams
+        for (long firstStreamId = 0; firstStreamId < streamCount; firstStreamId += STREAMS_PER_WAL_OBJECT * NODE_COUNT) {
+            for (int nodeId = 0; nodeId < NODE_COUNT; nodeId++) {
+                List<WALObjectRecord.StreamIndex> streamsIndex = new ArrayList<>(STREAMS_PER_WAL_OBJECT);
+                for (long streamId = firstStreamId + nodeId; streamId < Math.min(streamCount, firstStreamId + STREAMS_PER_WAL_OBJECT * NODE_COUNT);
+                     streamId += NODE_COUNT) {
+                    streamsIndex.add(new WALObjectRecord.StreamIndex()
+                        .setStreamId(streamId)
+                        .setStartOffset(RECORDS_PER_OBJECT)
+                        .setEndOffset(2 * RECORDS_PER_OBJECT));
+                }
+                if (streamsIndex.isEmpty()) {
+                    continue;
+                }
+                long objectId = nextObjectId++;
+                delta.replay(committedObject(objectId));
+                delta.replay(new WALObjectRecord()
+                    .setObjectId(objectId)
+                    .setNodeId(nodeId)
+                    .setOrderId(objectId)
+                    .setDataTimeInMs(0)
+                    .setStreamsIndex(streamsIndex));
+            }
+        }
+        image = delta.apply(MetadataProvenance.EMPTY);
+        RecordListWriter writer = new RecordListWriter();
+        image.write(writer, new ImageWriterOptions.Builder().build());
+        snapshot = writer.records();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        applyExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public long testWriteSnapshot() {
+        CountingWriter writer = new CountingWriter();
+        image.write(writer, new ImageWriterOptions.Builder().build());
+        return writer.count;
+    }
+
+    @Benchmark
+    public MetadataImage testLoadSnapshot() {
+        MetadataDelta delta = new MetadataDelta(MetadataImage.EMPTY, applyExecutor);
+        for (ApiMessageAndVersion record : snapshot) {
+            delta.replay(record.message());
+        }
+        return delta.apply(MetadataProvenance.EMPTY);
+    }
+
+    private static S3ObjectRecord committedObject(long objectId) {
+        return new S3ObjectRecord()
+            .setObjectId(objectId)
+            .setObjectSize(1024)
+            .setPreparedTimeInMs(0)
+            .setExpiredTimeInMs(Long.MAX_VALUE)
+            .setCommittedTimeInMs(0)
+            .setObjectState(S3ObjectState.COMMITTED.toByte());
+    }
+
+    /**
+     * Counts the records instead of keeping them, like a snapshot writer which flushes the batches as it goes.
+     */
+    private static class CountingWriter implements ImageWriter {
+        private long count;
+
+        @Override
+        public void write(ApiMessageAndVersion record) {
+            count++;
+        }
+
+        @Override
+        public void close(boolean complete) {
+        }
+    }
+}
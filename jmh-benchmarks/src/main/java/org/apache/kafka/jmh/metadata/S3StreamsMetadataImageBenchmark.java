@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.metadata;
+
+import org.apache.kafka.common.metadata.NodeWALMetadataRecord;
+import org.apache.kafka.common.metadata.RangeRecord;
+import org.apache.kafka.common.metadata.S3ObjectRecord;
+import org.apache.kafka.common.metadata.S3StreamObjectRecord;
+import org.apache.kafka.common.metadata.S3StreamRecord;
+import org.apache.kafka.common.metadata.WALObjectRecord;
+import org.apache.kafka.image.MetadataDelta;
+import org.apache.kafka.image.MetadataImage;
+import org.apache.kafka.image.MetadataProvenance;
+import org.apache.kafka.metadata.stream.S3ObjectState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies small deltas to a metadata image with a large number of streams and objects, like the metadata loader does
+ * for each committed record batch. The cost of an apply should be proportional to the size of the delta rather than
+ * the size of the image.
+ * <p>
+ * Run it with {@code -prof gc} to get the heap cost as well: {@code gc.alloc.rate.norm} is the bytes allocated by each
+ * apply, which is the part of the new image not shared with the previous one.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class S3StreamsMetadataImageBenchmark {
+    private static final int NODE_ID = 0;
+    private static final int STREAMS_PER_WAL_OBJECT = 16;
+    private static final long RECORDS_PER_OBJECT = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    private int streamCount;
+
+    private MetadataImage image;
+    private long nextObjectId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MetadataDelta delta = new MetadataDelta(MetadataImage.EMPTY);
+        delta.replay(new NodeWALMetadataRecord().setNodeId(NODE_ID).setNodeEpoch(1));
+        for (long streamId = 0; streamId < streamCount; streamId++) {
+            delta.replay(new S3StreamRecord()
+                .setStreamId(streamId)
+                .setEpoch(1)
+                .setRangeIndex(0)
+                .setStartOffset(0)
+                .setStreamState((byte) 0));
+            delta.replay(new RangeRecord()
+                .setStreamId(streamId)
+                .setEpoch(1)
+                .setRangeIndex(0)
+                .setStartOffset(0)
+                .setEndOffset(0)
+                .setNodeId(NODE_ID));
+            // one stream object for each stream, so the objects image grows with the streams
+            long objectId = nextObjectId++;
+            delta.replay(committedObject(objectId));
+            delta.replay(new S3StreamObjectRecord()
+                .setObjectId(objectId)
+                .setStreamId(streamId)
+                .setStartOffset(0)
+                .setEndOffset(RECORDS_PER_OBJECT)
+                .setDataTimeInMs(0));
+        }
+        image = delta.apply(MetadataProvenance.EMPTY);
+    }
+
+    @Benchmark
+    public MetadataImage testApplyStreamObject() {
+        // compact a stream object of a random stream
+        long streamId = ThreadLocalRandom.current().nextLong(streamCount);
+        long objectId = nextObjectId++;
+        MetadataDelta delta = new MetadataDelta(image);
+        delta.replay(committedObject(objectId));
+        delta.replay(new S3StreamObjectRecord()
+            .setObjectId(objectId)
+            .setStreamId(streamId)
+            .setStartOffset(RECORDS_PER_OBJECT)
+            .setEndOffset(2 * RECORDS_PER_OBJECT)
+            .setDataTimeInMs(0));
+        return delta.apply(MetadataProvenance.EMPTY);
+    }
+
+    @Benchmark
+    public MetadataImage testApplyWALObject() {
+        // commit a WAL object which contains the data of a few random streams
+        long objectId = nextObjectId++;
+        List<WALObjectRecord.StreamIndex> streamsIndex = new ArrayList<>(STREAMS_PER_WAL_OBJECT);
+        long firstStreamId = ThreadLocalRandom.current().nextLong(streamCount - STREAMS_PER_WAL_OBJECT);
+        for (int i = 0; i < STREAMS_PER_WAL_OBJECT; i++) {
+            streamsIndex.add(new WALObjectRecord.StreamIndex()
+                .setStreamId(firstStreamId + i)
+                .setStartOffset(RECORDS_PER_OBJECT)
+                .setEndOffset(2 * RECORDS_PER_OBJECT));
+        }
+        MetadataDelta delta = new MetadataDelta(image);
+        delta.replay(committedObject(objectId));
+        delta.replay(new WALObjectRecord()
+            .setObjectId(objectId)
+            .setNodeId(NODE_ID)
+            .setOrderId(objectId)
+            .setDataTimeInMs(0)
+            .setStreamsIndex(streamsIndex));
+        return delta.apply(MetadataProvenance.EMPTY);
+    }
+
+    private static S3ObjectRecord committedObject(long objectId) {
+        return new S3ObjectRecord()
+            .setObjectId(objectId)
+            .setObjectSize(1024)
+            .setPreparedTimeInMs(0)
+            .setExpiredTimeInMs(Long.MAX_VALUE)
+            .setCommittedTimeInMs(0)
+            .setObjectState(S3ObjectState.COMMITTED.toByte());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.metadata;
+
+import org.apache.kafka.common.metadata.WALObjectRecord;
+import org.apache.kafka.metadata.stream.S3WALObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the WAL object records into the columnar {@link S3WALObject}, and into a map of the offset ranges like the
+ * one it used to keep, to compare their allocations and lookup time.
+ * <p>
+ * Run it with {@code -prof gc} to compare the allocations: {@code gc.alloc.rate.norm} of the replay benchmarks is the
+ * bytes allocated per replay of all the records, including the garbage of the replay, so it isn't the retained size of
+ * the replayed objects.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class S3WALObjectBenchmark {
+    private static final int OBJECT_COUNT = 1000;
+
+    @Param({"16", "256"})
+    private int streamsPerObject;
+
+    private List<WALObjectRecord> records;
+    private List<S3WALObject> objects;
+    private List<Map<Long, OffsetRange>> offsetRangeMaps;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        records = new ArrayList<>(OBJECT_COUNT);
+        for (int objectId = 0; objectId < OBJECT_COUNT; objectId++) {
+            List<WALObjectRecord.StreamIndex> streamsIndex = new ArrayList<>(streamsPerObject);
+            for (long streamId = 0; streamId < streamsPerObject; streamId++) {
+                streamsIndex.add(new WALObjectRecord.StreamIndex()
+                    .setStreamId(streamId)
+                    .setStartOffset(objectId * 100L)
+                    .setEndOffset((objectId + 1) * 100L));
+            }
+            records.add(new WALObjectRecord()
+                .setObjectId(objectId)
+                .setNodeId(0)
+                .setOrderId(objectId)
+                .setStreamsIndex(streamsIndex));
+        }
+        objects = testReplayWALObjects();
+        offsetRangeMaps = testReplayOffsetRangeMaps();
+    }
+
+    @Benchmark
+    public List<S3WALObject> testReplayWALObjects() {
+        List<S3WALObject> objects = new ArrayList<>(OBJECT_COUNT);
+        for (WALObjectRecord record : records) {
+            objects.add(S3WALObject.of(record));
+        }
+        return objects;
+    }
+
+    @Benchmark
+    public List<Map<Long, OffsetRange>> testReplayOffsetRangeMaps() {
+        List<Map<Long, OffsetRange>> maps = new ArrayList<>(OBJECT_COUNT);
+        for (WALObjectRecord record : records) {
+            Map<Long, OffsetRange> map = new HashMap<>();
+            for (WALObjectRecord.StreamIndex index : record.streamsIndex()) {
+                map.put(index.streamId(), new OffsetRange(index.streamId(), index.startOffset(), index.endOffset()));
+            }
+            maps.add(map);
+        }
+        return maps;
+    }
+
+    @Benchmark
+    public int testContainsStreamInWALObjects() {
+        long streamId = ThreadLocalRandom.current().nextLong(streamsPerObject * 2L);
+        int count = 0;
+        for (S3WALObject object : objects) {
+            if (object.containsStream(streamId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int testContainsStreamInOffsetRangeMaps() {
+        long streamId = ThreadLocalRandom.current().nextLong(streamsPerObject * 2L);
+        int count = 0;
+        for (Map<Long, OffsetRange> map : offsetRangeMaps) {
+            if (map.containsKey(streamId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // the same layout as StreamOffsetRange
+    private static class OffsetRange {
+        private final long streamId;
+        private final long startOffset;
+        private final long endOffset;
+
+        OffsetRange(long streamId, long startOffset, long endOffset) {
+            this.streamId = streamId;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.timeline;
+
+import org.apache.kafka.common.utils.LogContext;
+import org.apache.kafka.timeline.SnapshotRegistry;
+import org.apache.kafka.timeline.TimelineHashMap;
+import org.apache.kafka.timeline.TimelineLongHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the timeline maps with boxed and primitive long keys, like the stream and object ids kept by the controller.
+ * <p>
+ * Run it with {@code -prof gc} to compare the allocations: {@code gc.alloc.rate.norm} is the bytes allocated per
+ * operation. For the add benchmarks it's the bytes allocated to build the map, including the garbage of the resizes, so
+ * it isn't the retained size of the map. For the get benchmarks it's the bytes allocated by the lookups.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TimelineLongHashMapBenchmark {
+    private final static int NUM_ENTRIES = 1_000_000;
+    private final static String VALUE = "value";
+
+    private TimelineHashMap<Long, String> boxedMap;
+    private TimelineLongHashMap<String> longMap;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        boxedMap = testAddEntriesInTimelineMap();
+        longMap = testAddEntriesInTimelineLongMap();
+    }
+
+    @Benchmark
+    public TimelineHashMap<Long, String> testAddEntriesInTimelineMap() {
+        SnapshotRegistry snapshotRegistry = new SnapshotRegistry(new LogContext());
+        TimelineHashMap<Long, String> map = new TimelineHashMap<>(snapshotRegistry, NUM_ENTRIES);
+        for (long key = 0; key < NUM_ENTRIES; key++) {
+            map.put(key, VALUE);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public TimelineLongHashMap<String> testAddEntriesInTimelineLongMap() {
+        SnapshotRegistry snapshotRegistry = new SnapshotRegistry(new LogContext());
+        TimelineLongHashMap<String> map = new TimelineLongHashMap<>(snapshotRegistry, NUM_ENTRIES);
+        for (long key = 0; key < NUM_ENTRIES; key++) {
+            map.put(key, VALUE);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public int testGetEntriesInTimelineMap() {
+        int found = 0;
+        for (long key = 0; key < NUM_ENTRIES; key++) {
+            if (boxedMap.get(key) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int testGetEntriesInTimelineLongMap() {
+        int found = 0;
+        for (long key = 0; key < NUM_ENTRIES; key++) {
+            if (longMap.get(key) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
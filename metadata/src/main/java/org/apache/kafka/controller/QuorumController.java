@@ -1273,6 +1273,9 @@ public final class QuorumController implements Controller {
                         lastCommittedEpoch + " in snapshot registry.");
             }
             snapshotRegistry.revertToSnapshot(lastCommittedOffset);
+            // AutoMQ for Kafka inject start
+            s3ObjectControlManager.deactivate();
+            // AutoMQ for Kafka inject end
             authorizer.ifPresent(a -> a.loadSnapshot(aclControlManager.idToAcl()));
             updateWriteOffset(-1);
             clusterControl.deactivate();
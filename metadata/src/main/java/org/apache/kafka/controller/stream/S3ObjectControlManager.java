@@ -21,6 +21,8 @@ import java.util.Arrays;
 
 import com.automq.stream.s3.metadata.ObjectUtils;
 import com.automq.stream.s3.operator.S3Operator;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
 import org.apache.kafka.common.message.PrepareS3ObjectRequestData;
 import org.apache.kafka.common.message.PrepareS3ObjectResponseData;
 import org.apache.kafka.common.metadata.AssignedS3ObjectIdRecord;
@@ -35,20 +37,25 @@ import org.apache.kafka.metadata.stream.S3Config;
 import org.apache.kafka.metadata.stream.S3Object;
 import org.apache.kafka.metadata.stream.S3ObjectState;
 import org.apache.kafka.server.common.ApiMessageAndVersion;
+import org.apache.kafka.server.metrics.KafkaYammerMetrics;
 import org.apache.kafka.timeline.SnapshotRegistry;
 import org.apache.kafka.timeline.TimelineHashMap;
-import org.apache.kafka.timeline.TimelineHashSet;
 import org.apache.kafka.timeline.TimelineLong;
 import org.slf4j.Logger;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.OptionalLong;
+import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -66,6 +73,15 @@ public class S3ObjectControlManager {
 
     private static final long DEFAULT_INITIAL_DELAY_MS = 5000L;
 
+    /**
+     * The interval to check an object again if its state isn't changed after it's handled, e.g. the records marking
+     * it as destroyed are not committed, or its deletion from S3 failed.
+     */
+    private static final long DEFAULT_RECHECK_INTERVAL_MS = 60 * 1000L;
+
+    private static final String METRICS_GROUP = "kafka.controller";
+    private static final String METRICS_TYPE = "S3ObjectControlManager";
+
     private final QuorumController quorumController;
     private final SnapshotRegistry snapshotRegistry;
     private final Logger log;
@@ -81,10 +97,22 @@ public class S3ObjectControlManager {
      */
     private final TimelineLong nextAssignedObjectId;
 
-    private final TimelineHashSet<Long /* objectId */> preparedObjects;
+    /**
+     * The prepared objects ordered by the expired time, and the mark destroyed objects ordered by the time to delete
+     * them from S3, so a lifecycle check only touches the due objects.
+     * <p>
+     * They are only accessed in the controller event thread, and only maintained by the active controller: they're
+     * loaded from {@link #objectsMetadata} on the first lifecycle check after the controller becomes active, and
+     * cleared when it renounces, as {@link #objectsMetadata} may be reverted then. The entries are not removed when
+     * the objects change, instead they're checked against {@link #objectsMetadata} when they're due, and the stale
+     * ones are dropped.
+     */
+    private final Queue<DueObject> preparedObjects;
 
     // TODO: support different deletion policies, based on time dimension or space dimension?
-    private final Queue<Long/*objectId*/> markDestroyedObjects;
+    private final Queue<DueObject> markDestroyedObjects;
+
+    private boolean dueObjectsLoaded;
 
     private final S3Operator operator;
 
@@ -108,14 +136,14 @@ public class S3ObjectControlManager {
         this.config = config;
         this.nextAssignedObjectId = new TimelineLong(snapshotRegistry);
         this.objectsMetadata = new TimelineHashMap<>(snapshotRegistry, 0);
-        this.preparedObjects = new TimelineHashSet<>(snapshotRegistry, 0);
-        this.markDestroyedObjects = new LinkedBlockingDeque<>();
+        this.preparedObjects = new PriorityQueue<>(DueObject.COMPARATOR);
+        this.markDestroyedObjects = new PriorityQueue<>(DueObject.COMPARATOR);
         this.operator = operator;
         this.lifecycleListeners = new ArrayList<>();
         this.lifecycleCheckTimer = Executors.newSingleThreadScheduledExecutor();
         this.lifecycleCheckTimer.scheduleWithFixedDelay(this::triggerCheckEvent,
             DEFAULT_INITIAL_DELAY_MS, DEFAULT_LIFECYCLE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
-        this.objectCleaner = new ObjectCleaner();
+        this.objectCleaner = new ObjectCleaner(config.objectDeleteConcurrency());
     }
 
     private void triggerCheckEvent() {
@@ -225,21 +253,14 @@ public class S3ObjectControlManager {
             record.preparedTimeInMs(), record.expiredTimeInMs(), record.committedTimeInMs(), record.markDestroyedTimeInMs(),
             S3ObjectState.fromByte(record.objectState()));
         objectsMetadata.put(record.objectId(), object);
-        // TODO: recover the prepared objects and mark destroyed objects when restart the controller
-        if (object.getS3ObjectState() == S3ObjectState.PREPARED) {
-            preparedObjects.add(object.getObjectId());
-        } else {
-            preparedObjects.remove(object.getObjectId());
-            if (object.getS3ObjectState() == S3ObjectState.MARK_DESTROYED) {
-                markDestroyedObjects.add(object.getObjectId());
-            }
+        if (dueObjectsLoaded) {
+            addDueObject(object);
         }
     }
 
     public void replay(RemoveS3ObjectRecord record) {
+        // the entries in preparedObjects and markDestroyedObjects are dropped when they're due
         objectsMetadata.remove(record.objectId());
-        markDestroyedObjects.remove(record.objectId());
-        preparedObjects.remove(record.objectId());
     }
 
     /**
@@ -249,9 +270,10 @@ public class S3ObjectControlManager {
      */
     public ControllerResult<Void> checkS3ObjectsLifecycle() {
         List<ApiMessageAndVersion> records = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        maybeLoadDueObjects();
         // check the expired objects
-        this.preparedObjects.stream().
-            map(objectsMetadata::get).
+        pollDueObjects(preparedObjects, S3ObjectState.PREPARED, now).stream().
             filter(S3Object::isExpired).
             forEach(obj -> {
                 S3ObjectRecord record = new S3ObjectRecord()
@@ -271,18 +293,61 @@ public class S3ObjectControlManager {
                 });
             });
         // check the mark destroyed objects
-        List<String> destroyedObjectKeys = this.markDestroyedObjects.stream()
-            .map(this.objectsMetadata::get)
-            .filter(obj -> obj.getMarkDestroyedTimeInMs() + (this.config.objectRetentionTimeInSecond() * 1000L) < System.currentTimeMillis())
-            .map(S3Object::getObjectKey)
-            .collect(Collectors.toList());
-        if (destroyedObjectKeys.isEmpty()) {
+        List<S3Object> destroyedObjects = pollDueObjects(markDestroyedObjects, S3ObjectState.MARK_DESTROYED, now);
+        if (destroyedObjects.isEmpty()) {
             return ControllerResult.of(records, null);
         }
-        this.objectCleaner.clean(destroyedObjectKeys);
+        this.objectCleaner.clean(destroyedObjects);
         return ControllerResult.of(records, null);
     }
 
+    /**
+     * Clear the due objects when the controller renounces, they're loaded again when it becomes active.
+     */
+    public void deactivate() {
+        preparedObjects.clear();
+        markDestroyedObjects.clear();
+        dueObjectsLoaded = false;
+    }
+
+    private void maybeLoadDueObjects() {
+        if (dueObjectsLoaded) {
+            return;
+        }
+        objectsMetadata.values().forEach(this::addDueObject);
+        dueObjectsLoaded = true;
+    }
+
+    private void addDueObject(S3Object object) {
+        if (object.getS3ObjectState() == S3ObjectState.PREPARED) {
+            preparedObjects.add(new DueObject(object.getExpiredTimeInMs(), object.getObjectId()));
+        } else if (object.getS3ObjectState() == S3ObjectState.MARK_DESTROYED) {
+            markDestroyedObjects.add(new DueObject(deleteTimeInMs(object), object.getObjectId()));
+        }
+    }
+
+    /**
+     * Poll the due objects which are still in the state. They're added back to be checked again later, in case
+     * their state isn't changed by the handling, and they'll be dropped then if it's changed.
+     */
+    private List<S3Object> pollDueObjects(Queue<DueObject> dueObjects, S3ObjectState state, long now) {
+        List<S3Object> objects = new ArrayList<>();
+        while (!dueObjects.isEmpty() && dueObjects.peek().dueTimeInMs < now) {
+            S3Object object = objectsMetadata.get(dueObjects.poll().objectId);
+            if (object != null && object.getS3ObjectState() == state) {
+                objects.add(object);
+            }
+        }
+        for (S3Object object : objects) {
+            dueObjects.add(new DueObject(now + DEFAULT_RECHECK_INTERVAL_MS, object.getObjectId()));
+        }
+        return objects;
+    }
+
+    private long deleteTimeInMs(S3Object object) {
+        return object.getMarkDestroyedTimeInMs() + this.config.objectRetentionTimeInSecond() * 1000L;
+    }
+
     /**
      * Generate RemoveS3ObjectRecord for the deleted S3Objects.
      *
@@ -290,7 +355,11 @@ public class S3ObjectControlManager {
      * @return the result of the generation, contains the records which should be applied to the raft.
      */
     public ControllerResult<Void> notifyS3ObjectDeleted(List<Long> deletedObjectIds) {
-        List<ApiMessageAndVersion> records = deletedObjectIds.stream().filter(markDestroyedObjects::contains)
+        List<ApiMessageAndVersion> records = deletedObjectIds.stream()
+            .filter(objectId -> {
+                S3Object object = objectsMetadata.get(objectId);
+                return object != null && object.getS3ObjectState() == S3ObjectState.MARK_DESTROYED;
+            })
             .map(objectId -> new ApiMessageAndVersion(new RemoveS3ObjectRecord()
                 .setObjectId(objectId), (short) 0)).collect(Collectors.toList());
         return ControllerResult.of(records, null);
@@ -318,29 +387,89 @@ public class S3ObjectControlManager {
         ControllerResult<Void> onDestroy(Long objectId);
     }
 
+    private static class DueObject {
+        static final Comparator<DueObject> COMPARATOR = Comparator.comparingLong(o -> o.dueTimeInMs);
+
+        private final long dueTimeInMs;
+        private final long objectId;
+
+        DueObject(long dueTimeInMs, long objectId) {
+            this.dueTimeInMs = dueTimeInMs;
+            this.objectId = objectId;
+        }
+    }
+
+    /**
+     * Delete the objects from S3 in batches, with at most {@code concurrency} batches in flight.
+     * <p>
+     * It runs in the lifecycle check timer thread rather than the controller event thread, so a large backlog of
+     * objects to delete won't delay the controller events.
+     */
     class ObjectCleaner {
 
         public static final int MAX_BATCH_DELETE_SIZE = 800;
 
-        void clean(List<String> objectKeys) {
-            for (int i = 0; i < objectKeys.size() / MAX_BATCH_DELETE_SIZE; i++) {
-                List<String> batch = objectKeys.subList(i * MAX_BATCH_DELETE_SIZE, (i + 1) * MAX_BATCH_DELETE_SIZE);
-                clean0(batch);
-            }
-            if (objectKeys.size() % MAX_BATCH_DELETE_SIZE != 0) {
-                List<String> batch = objectKeys.subList(objectKeys.size() / MAX_BATCH_DELETE_SIZE * MAX_BATCH_DELETE_SIZE, objectKeys.size());
+        private final int concurrency;
+        private final Queue<S3Object> pendingObjects = new ArrayDeque<>();
+        // the objects pending or being deleted, so an object checked again before it's deleted won't be deleted twice
+        private final Set<Long/*objectId*/> cleaningObjectIds = ConcurrentHashMap.newKeySet();
+        private int inflight;
+        private final Histogram deleteLagHist;
+
+        ObjectCleaner(int concurrency) {
+            this.concurrency = concurrency;
+            // the lag between the time the object is allowed to be deleted and the time it's deleted from S3
+            this.deleteLagHist = KafkaYammerMetrics.defaultRegistry().newHistogram(
+                KafkaYammerMetrics.getMetricName(METRICS_GROUP, METRICS_TYPE, "ObjectDeleteLagMs"), true);
+            KafkaYammerMetrics.defaultRegistry().newGauge(
+                KafkaYammerMetrics.getMetricName(METRICS_GROUP, METRICS_TYPE, "PendingDeleteObjectCount"), new Gauge<Integer>() {
+                    @Override
+                    public Integer value() {
+                        return cleaningObjectIds.size();
+                    }
+                });
+        }
+
+        void clean(List<S3Object> objects) {
+            lifecycleCheckTimer.execute(() -> {
+                for (S3Object object : objects) {
+                    if (cleaningObjectIds.add(object.getObjectId())) {
+                        pendingObjects.add(object);
+                    }
+                }
+                cleanNext();
+            });
+        }
+
+        private void cleanNext() {
+            while (inflight < concurrency && !pendingObjects.isEmpty()) {
+                List<S3Object> batch = new ArrayList<>(Math.min(pendingObjects.size(), MAX_BATCH_DELETE_SIZE));
+                while (batch.size() < MAX_BATCH_DELETE_SIZE && !pendingObjects.isEmpty()) {
+                    batch.add(pendingObjects.poll());
+                }
+                inflight++;
                 clean0(batch);
             }
         }
 
-        private void clean0(List<String> objectKeys) {
+        private void clean0(List<S3Object> objects) {
+            List<String> objectKeys = objects.stream().map(S3Object::getObjectKey).collect(Collectors.toList());
             operator.delete(objectKeys).whenCompleteAsync((resp, e) -> {
+                inflight--;
+                objects.forEach(object -> cleaningObjectIds.remove(object.getObjectId()));
+                cleanNext();
                 if (e != null) {
                     log.error("Failed to delete the S3Object from S3, objectKeys: {}",
                         String.join(",", objectKeys), e);
                     return;
                 }
                 if (resp != null && !resp.isEmpty()) {
+                    long now = System.currentTimeMillis();
+                    Set<String> deletedKeys = new HashSet<>(resp);
+                    objects.stream().filter(object -> deletedKeys.contains(object.getObjectKey()))
+                        // the expired prepared objects are allowed to be deleted since they're expired
+                        .forEach(object -> deleteLagHist.update(
+                            Math.max(0, now - Math.max(deleteTimeInMs(object), object.getExpiredTimeInMs()))));
                     List<Long> deletedObjectIds = resp.stream().map(key -> ObjectUtils.parseObjectId(0, key)).collect(Collectors.toList());
                     // notify the controller an objects deletion event to drive the removal of the objects
                     ControllerRequestContext ctx = new ControllerRequestContext(
@@ -352,7 +481,7 @@ public class S3ObjectControlManager {
                         }
                     });
                 }
-            });
+            }, lifecycleCheckTimer);
         }
     }
 
@@ -19,7 +19,6 @@ package org.apache.kafka.controller.stream;
 
 import com.automq.stream.s3.metadata.S3StreamConstant;
 import com.automq.stream.s3.metadata.StreamOffsetRange;
-import java.util.HashMap;
 import java.util.stream.Stream;
 import org.apache.kafka.common.message.CloseStreamsRequestData.CloseStreamRequest;
 import org.apache.kafka.common.message.CloseStreamsResponseData.CloseStreamResponse;
@@ -65,6 +64,7 @@ import org.apache.kafka.timeline.SnapshotRegistry;
 import org.apache.kafka.timeline.TimelineHashMap;
 import org.apache.kafka.timeline.TimelineInteger;
 import org.apache.kafka.timeline.TimelineLong;
+import org.apache.kafka.timeline.TimelineLongHashMap;
 import org.apache.kafka.timeline.TimelineObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -97,7 +97,7 @@ public class StreamControlManager {
         private final TimelineLong startOffset;
         private final TimelineObject<StreamState> currentState;
         private final TimelineHashMap<Integer/*rangeIndex*/, RangeMetadata> ranges;
-        private final TimelineHashMap<Long/*objectId*/, S3StreamObject> streamObjects;
+        private final TimelineLongHashMap<S3StreamObject> streamObjects;
 
         public S3StreamMetadata(long currentEpoch, int currentRangeIndex, long startOffset,
                                 StreamState currentState, SnapshotRegistry registry) {
@@ -109,7 +109,7 @@ public class StreamControlManager {
             this.startOffset.set(startOffset);
             this.currentState = new TimelineObject<StreamState>(registry, currentState);
             this.ranges = new TimelineHashMap<>(registry, 0);
-            this.streamObjects = new TimelineHashMap<>(registry, 0);
+            this.streamObjects = new TimelineLongHashMap<>(registry, 0);
         }
 
         public long currentEpoch() {
@@ -157,13 +157,13 @@ public class StreamControlManager {
 
         private final int nodeId;
         private final TimelineLong nodeEpoch;
-        private final TimelineHashMap<Long/*objectId*/, S3WALObject> walObjects;
+        private final TimelineLongHashMap<S3WALObject> walObjects;
 
         public NodeS3WALMetadata(int nodeId, long nodeEpoch, SnapshotRegistry registry) {
             this.nodeId = nodeId;
             this.nodeEpoch = new TimelineLong(registry);
             this.nodeEpoch.set(nodeEpoch);
-            this.walObjects = new TimelineHashMap<>(registry, 0);
+            this.walObjects = new TimelineLongHashMap<>(registry, 0);
         }
 
         public int getNodeId() {
@@ -174,7 +174,7 @@ public class StreamControlManager {
             return nodeEpoch.get();
         }
 
-        public TimelineHashMap<Long, S3WALObject> walObjects() {
+        public TimelineLongHashMap<S3WALObject> walObjects() {
             return walObjects;
         }
 
@@ -199,7 +199,7 @@ public class StreamControlManager {
      */
     private final TimelineLong nextAssignedStreamId;
 
-    private final TimelineHashMap<Long/*streamId*/, S3StreamMetadata> streamsMetadata;
+    private final TimelineLongHashMap<S3StreamMetadata> streamsMetadata;
 
     private final TimelineHashMap<Integer/*nodeId*/, NodeS3WALMetadata> nodesMetadata;
 
@@ -211,7 +211,7 @@ public class StreamControlManager {
         this.log = logContext.logger(StreamControlManager.class);
         this.s3ObjectControlManager = s3ObjectControlManager;
         this.nextAssignedStreamId = new TimelineLong(snapshotRegistry);
-        this.streamsMetadata = new TimelineHashMap<>(snapshotRegistry, 0);
+        this.streamsMetadata = new TimelineLongHashMap<>(snapshotRegistry, 0);
         this.nodesMetadata = new TimelineHashMap<>(snapshotRegistry, 0);
     }
 
@@ -556,10 +556,10 @@ public class StreamControlManager {
         this.nodesMetadata.values()
             .stream()
             .flatMap(entry -> entry.walObjects.values().stream())
-            .filter(walObject -> walObject.offsetRanges().containsKey(streamId))
-            .filter(walObject -> walObject.offsetRanges().get(streamId).getEndOffset() <= newStartOffset)
+            .filter(walObject -> walObject.containsStream(streamId))
+            .filter(walObject -> walObject.offsetRange(streamId).getEndOffset() <= newStartOffset)
             .forEach(walObj -> {
-                if (walObj.offsetRanges().size() == 1) {
+                if (walObj.streamCount() == 1) {
                     // only this range, but we will remove this range, so now we can remove this wal object
                     records.add(new ApiMessageAndVersion(
                         new RemoveWALObjectRecord()
@@ -576,15 +576,8 @@ public class StreamControlManager {
                     records.addAll(markDestroyResult.records());
                     return;
                 }
-                Map<Long, StreamOffsetRange> newOffsetRange = new HashMap<>(walObj.offsetRanges());
                 // remove offset range
-                newOffsetRange.remove(streamId);
-                records.add(new ApiMessageAndVersion(new WALObjectRecord()
-                    .setObjectId(walObj.objectId())
-                    .setNodeId(walObj.nodeId())
-                    .setStreamsIndex(newOffsetRange.values().stream().map(Convertor::to).collect(Collectors.toList()))
-                    .setDataTimeInMs(walObj.dataTimeInMs())
-                    .setOrderId(walObj.orderId()), (short) 0));
+                records.add(walObj.withoutStream(streamId).toRecord());
             });
         if (resp.errorCode() != Errors.NONE.code()) {
             return ControllerResult.of(Collections.emptyList(), resp);
@@ -633,9 +626,9 @@ public class StreamControlManager {
         this.nodesMetadata.values()
             .stream()
             .flatMap(entry -> entry.walObjects.values().stream())
-            .filter(walObject -> walObject.offsetRanges().containsKey(streamId))
+            .filter(walObject -> walObject.containsStream(streamId))
             .forEach(walObj -> {
-                if (walObj.offsetRanges().size() == 1) {
+                if (walObj.streamCount() == 1) {
                     // only this range, but we will remove this range, so now we can remove this wal object
                     records.add(new ApiMessageAndVersion(
                         new RemoveWALObjectRecord()
@@ -652,15 +645,8 @@ public class StreamControlManager {
                     records.addAll(result.records());
                     return;
                 }
-                Map<Long, StreamOffsetRange> newOffsetRange = new HashMap<>(walObj.offsetRanges());
                 // remove offset range
-                newOffsetRange.remove(streamId);
-                records.add(new ApiMessageAndVersion(new WALObjectRecord()
-                    .setObjectId(walObj.objectId())
-                    .setNodeId(walObj.nodeId())
-                    .setStreamsIndex(newOffsetRange.values().stream().map(Convertor::to).collect(Collectors.toList()))
-                    .setDataTimeInMs(walObj.dataTimeInMs())
-                    .setOrderId(walObj.orderId()), (short) 0));
+                records.add(walObj.withoutStream(streamId).toRecord());
             });
         if (resp.errorCode() != Errors.NONE.code()) {
             return ControllerResult.of(Collections.emptyList(), resp);
@@ -51,9 +51,16 @@ import org.apache.kafka.common.metadata.UnregisterBrokerRecord;
 import org.apache.kafka.common.metadata.UpdateNextNodeIdRecord;
 import org.apache.kafka.common.metadata.WALObjectRecord;
 import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.utils.ThreadUtils;
 import org.apache.kafka.server.common.MetadataVersion;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -65,16 +72,42 @@ public final class MetadataDelta {
 
         private MetadataImage image = MetadataImage.EMPTY;
 
+        // AutoMQ for Kafka inject start
+        private Executor applyExecutor = null;
+        // AutoMQ for Kafka inject end
+
         public Builder setImage(MetadataImage image) {
             this.image = image;
             return this;
         }
 
+        // AutoMQ for Kafka inject start
+        public Builder setApplyExecutor(Executor applyExecutor) {
+            this.applyExecutor = applyExecutor;
+            return this;
+        }
+        // AutoMQ for Kafka inject end
+
         public MetadataDelta build() {
-            return new MetadataDelta(image);
+            return new MetadataDelta(image, applyExecutor);
         }
     }
 
+    // AutoMQ for Kafka inject start
+    /**
+     * Create the executor which applies the large deltas in parallel. It's owned by the metadata loader, which
+     * shuts it down when it's closed.
+     */
+    public static ExecutorService newApplyExecutor(String threadNamePrefix) {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), ThreadUtils.createThreadFactory(threadNamePrefix + "metadata-delta-apply-%d", true));
+        // the executor is only busy when a snapshot is loaded
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+    // AutoMQ for Kafka inject end
+
     private final MetadataImage image;
 
     private FeaturesDelta featuresDelta = null;
@@ -98,11 +131,24 @@ public final class MetadataDelta {
 
     private KVDelta kvDelta = null;
 
+    private final Executor applyExecutor;
+
     // AutoMQ for Kafka inject end
 
+    // AutoMQ for Kafka inject start
     public MetadataDelta(MetadataImage image) {
+        this(image, null);
+    }
+
+    /**
+     * @param applyExecutor the executor which applies the large S3 deltas in parallel, or null to apply them on the
+     *                      calling thread.
+     */
+    public MetadataDelta(MetadataImage image, Executor applyExecutor) {
         this.image = image;
+        this.applyExecutor = applyExecutor;
     }
+    // AutoMQ for Kafka inject end
 
     public MetadataImage image() {
         return image;
@@ -542,8 +588,10 @@ public final class MetadataDelta {
         }
 
         // AutoMQ for Kafka inject start
+        // the objects image doesn't depend on the streams image, so a large one is built concurrently
+        CompletableFuture<S3ObjectsImage> newS3ObjectsMetadataFuture = getNewS3ObjectsMetadataImageAsync();
         S3StreamsMetadataImage newStreamMetadata = getNewS3StreamsMetadataImage();
-        S3ObjectsImage newS3ObjectsMetadata = getNewS3ObjectsMetadataImage();
+        S3ObjectsImage newS3ObjectsMetadata = S3StreamsMetadataDelta.join(newS3ObjectsMetadataFuture);
         KVImage newKVImage = getNewKVImage();
         // AutoMQ for Kafka inject end
         return new MetadataImage(
@@ -565,7 +613,7 @@ public final class MetadataDelta {
 
     private S3StreamsMetadataImage getNewS3StreamsMetadataImage() {
         return s3StreamsMetadataDelta == null ?
-            image.streamsMetadata() : s3StreamsMetadataDelta.apply();
+            image.streamsMetadata() : s3StreamsMetadataDelta.apply(applyExecutor);
     }
 
     private S3ObjectsImage getNewS3ObjectsMetadataImage() {
@@ -573,6 +621,12 @@ public final class MetadataDelta {
             image.objectsMetadata() : s3ObjectsDelta.apply();
     }
 
+    private CompletableFuture<S3ObjectsImage> getNewS3ObjectsMetadataImageAsync() {
+        return applyExecutor != null && s3ObjectsDelta != null && s3ObjectsDelta.isLarge() ?
+            CompletableFuture.supplyAsync(this::getNewS3ObjectsMetadataImage, applyExecutor) :
+            CompletableFuture.completedFuture(getNewS3ObjectsMetadataImage());
+    }
+
     private KVImage getNewKVImage() {
         return kvDelta == null ?
             image.kv() : kvDelta.apply();
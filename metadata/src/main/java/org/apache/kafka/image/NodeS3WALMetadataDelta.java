@@ -17,14 +17,20 @@
 
 package org.apache.kafka.image;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.apache.kafka.common.metadata.NodeWALMetadataRecord;
 import org.apache.kafka.common.metadata.RemoveWALObjectRecord;
 import org.apache.kafka.common.metadata.WALObjectRecord;
 import org.apache.kafka.metadata.stream.S3WALObject;
+import org.apache.kafka.metadata.stream.SortedWALObjectsList;
+import org.apache.kafka.metadata.stream.StreamOffsetIndex;
+import org.apache.kafka.server.immutable.ImmutableMap;
 
 public class NodeS3WALMetadataDelta {
 
@@ -59,12 +65,66 @@ public class NodeS3WALMetadataDelta {
     }
 
     public NodeS3WALMetadataImage apply() {
-        Map<Long, S3WALObject> newS3WALObjects = new HashMap<>(image.getWalObjects());
+        ImmutableMap<Long, S3WALObject> newS3WALObjects = image.getWalObjects();
         // add all changed WAL objects
-        newS3WALObjects.putAll(addedS3WALObjects);
+        for (Map.Entry<Long, S3WALObject> entry : addedS3WALObjects.entrySet()) {
+            newS3WALObjects = newS3WALObjects.updated(entry.getKey(), entry.getValue());
+        }
         // remove all removed WAL objects
-        removedS3WALObjects.forEach(newS3WALObjects::remove);
-        return new NodeS3WALMetadataImage(this.nodeId, this.nodeEpoch, newS3WALObjects);
+        for (Long objectId : removedS3WALObjects) {
+            newS3WALObjects = newS3WALObjects.removed(objectId);
+        }
+        return new NodeS3WALMetadataImage(this.nodeId, this.nodeEpoch, newS3WALObjects, applyOrderIndex(), applyStreamIndex());
+    }
+
+    /**
+     * Update the order index on a copy which shares the nodes with the old image's, it takes O(k * log n).
+     */
+    private SortedWALObjectsList applyOrderIndex() {
+        SortedWALObjectsList newOrderIndex = new SortedWALObjectsList(image.getOrderIndex());
+        // the updated WAL objects may have a different order id, so remove the old ones first
+        removedS3WALObjects.forEach(objectId -> removeFromOrderIndex(newOrderIndex, objectId));
+        addedS3WALObjects.keySet().forEach(objectId -> removeFromOrderIndex(newOrderIndex, objectId));
+        addedS3WALObjects.values().forEach(newOrderIndex::add);
+        return newOrderIndex;
+    }
+
+    private void removeFromOrderIndex(SortedWALObjectsList orderIndex, long objectId) {
+        S3WALObject oldObject = image.getWalObjects().get(objectId);
+        if (oldObject != null) {
+            orderIndex.remove(oldObject);
+        }
+    }
+
+    /**
+     * Update the index of the streams in the changed WAL objects only, the other streams share the index of the old image.
+     */
+    private ImmutableMap<Long, StreamOffsetIndex> applyStreamIndex() {
+        Map<Long/*streamId*/, List<StreamOffsetIndex.Entry>> addedEntries = new HashMap<>();
+        Map<Long/*streamId*/, Set<Long>> removedObjectIds = new HashMap<>();
+        // the updated WAL objects are removed from the index of their old streams first
+        Set<Long> changedObjectIds = new HashSet<>(removedS3WALObjects);
+        changedObjectIds.addAll(addedS3WALObjects.keySet());
+        changedObjectIds.forEach(objectId -> {
+            S3WALObject oldObject = image.getWalObjects().get(objectId);
+            if (oldObject != null) {
+                oldObject.offsetRangeList().forEach(offsetRange ->
+                    removedObjectIds.computeIfAbsent(offsetRange.getStreamId(), k -> new HashSet<>()).add(objectId));
+            }
+        });
+        addedS3WALObjects.values().forEach(object -> StreamOffsetIndex.entriesOf(object).forEach(entry ->
+            addedEntries.computeIfAbsent(entry.streamId(), k -> new ArrayList<>()).add(entry)));
+
+        ImmutableMap<Long, StreamOffsetIndex> newStreamIndex = image.streamIndex();
+        Set<Long> changedStreams = new HashSet<>(addedEntries.keySet());
+        changedStreams.addAll(removedObjectIds.keySet());
+        for (Long streamId : changedStreams) {
+            StreamOffsetIndex index = image.streamIndex(streamId).update(
+                addedEntries.getOrDefault(streamId, Collections.emptyList()),
+                removedObjectIds.getOrDefault(streamId, Collections.emptySet()));
+            newStreamIndex = index.isEmpty() ? newStreamIndex.removed(streamId) : newStreamIndex.updated(streamId, index);
+        }
+        return newStreamIndex;
     }
 
 }
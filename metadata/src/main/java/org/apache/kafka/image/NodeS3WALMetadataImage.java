@@ -18,42 +18,60 @@
 
 package org.apache.kafka.image;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
 
 import com.automq.stream.s3.metadata.S3StreamConstant;
 import org.apache.kafka.common.metadata.NodeWALMetadataRecord;
 import org.apache.kafka.metadata.stream.S3WALObject;
+import org.apache.kafka.metadata.stream.SortedWALObjects;
+import org.apache.kafka.metadata.stream.SortedWALObjectsList;
+import org.apache.kafka.metadata.stream.StreamOffsetIndex;
 import org.apache.kafka.image.writer.ImageWriter;
 import org.apache.kafka.image.writer.ImageWriterOptions;
 import org.apache.kafka.server.common.ApiMessageAndVersion;
+import org.apache.kafka.server.immutable.ImmutableMap;
 
 public class NodeS3WALMetadataImage {
 
     public static final NodeS3WALMetadataImage EMPTY = new NodeS3WALMetadataImage(S3StreamConstant.INVALID_BROKER_ID,
-        S3StreamConstant.INVALID_BROKER_EPOCH, Collections.emptyMap());
+        S3StreamConstant.INVALID_BROKER_EPOCH, ImmutableMap.empty());
     private final int nodeId;
     private final long nodeEpoch;
-    private final Map<Long/*objectId*/, S3WALObject> s3WalObjects;
-    private final SortedMap<Long/*orderId*/, S3WALObject> orderIndex;
+    private final ImmutableMap<Long/*objectId*/, S3WALObject> s3WalObjects;
+    // the WAL objects sorted by order id, it's shared with the next image and updated incrementally by the delta
+    private final SortedWALObjectsList orderIndex;
+    private final ImmutableMap<Long/*streamId*/, StreamOffsetIndex> streamIndex;
 
     public NodeS3WALMetadataImage(int nodeId, long nodeEpoch, Map<Long, S3WALObject> walObjects) {
+        this(nodeId, nodeEpoch, ImmutableMap.copyOf(walObjects), buildOrderIndex(walObjects), buildStreamIndex(walObjects));
+    }
+
+    NodeS3WALMetadataImage(int nodeId, long nodeEpoch, ImmutableMap<Long, S3WALObject> walObjects, SortedWALObjectsList orderIndex,
+        ImmutableMap<Long, StreamOffsetIndex> streamIndex) {
         this.nodeId = nodeId;
         this.nodeEpoch = nodeEpoch;
-        this.s3WalObjects = new HashMap<>(walObjects);
-        // build order index
-        if (s3WalObjects.isEmpty()) {
-            this.orderIndex = Collections.emptySortedMap();
-        } else {
-            this.orderIndex = new TreeMap<>();
-            s3WalObjects.values().forEach(s3WALObject -> orderIndex.put(s3WALObject.orderId(), s3WALObject));
+        this.s3WalObjects = walObjects;
+        this.orderIndex = orderIndex;
+        this.streamIndex = streamIndex;
+    }
+
+    private static SortedWALObjectsList buildOrderIndex(Map<Long, S3WALObject> walObjects) {
+        return new SortedWALObjectsList(new ArrayList<>(walObjects.values()));
+    }
+
+    private static ImmutableMap<Long, StreamOffsetIndex> buildStreamIndex(Map<Long, S3WALObject> walObjects) {
+        Map<Long, List<StreamOffsetIndex.Entry>> streamEntries = new HashMap<>();
+        walObjects.values().forEach(object -> StreamOffsetIndex.entriesOf(object).forEach(entry ->
+            streamEntries.computeIfAbsent(entry.streamId(), k -> new ArrayList<>()).add(entry)));
+        ImmutableMap<Long, StreamOffsetIndex> streamIndex = ImmutableMap.empty();
+        for (Map.Entry<Long, List<StreamOffsetIndex.Entry>> entry : streamEntries.entrySet()) {
+            streamIndex = streamIndex.updated(entry.getKey(), StreamOffsetIndex.of(entry.getValue()));
         }
+        return streamIndex;
     }
 
     @Override
@@ -82,16 +100,27 @@ public class NodeS3WALMetadataImage {
         });
     }
 
-    public Map<Long, S3WALObject> getWalObjects() {
+    public ImmutableMap<Long, S3WALObject> getWalObjects() {
         return s3WalObjects;
     }
 
-    public SortedMap<Long, S3WALObject> getOrderIndex() {
+    public SortedWALObjects getOrderIndex() {
         return orderIndex;
     }
 
+    /**
+     * Get the index of the stream's ranges in the WAL objects of the node, the index is empty if there isn't any.
+     */
+    public StreamOffsetIndex streamIndex(long streamId) {
+        return streamIndex.getOrDefault(streamId, StreamOffsetIndex.EMPTY);
+    }
+
+    ImmutableMap<Long, StreamOffsetIndex> streamIndex() {
+        return streamIndex;
+    }
+
     public List<S3WALObject> orderList() {
-        return orderIndex.values().stream().collect(Collectors.toList());
+        return orderIndex.list();
     }
 
     public int getNodeId() {
@@ -25,6 +25,7 @@ import org.apache.kafka.common.metadata.AssignedS3ObjectIdRecord;
 import org.apache.kafka.common.metadata.RemoveS3ObjectRecord;
 import org.apache.kafka.common.metadata.S3ObjectRecord;
 import org.apache.kafka.metadata.stream.S3Object;
+import org.apache.kafka.server.immutable.ImmutableMap;
 
 /**
  * Represents changes to a S3 object in the metadata image.
@@ -72,13 +73,24 @@ public final class S3ObjectsDelta {
         changedObjects.remove(record.objectId());
     }
 
+    /**
+     * Whether the delta is large enough to be applied concurrently with the other parts, e.g. a delta which loads a snapshot.
+     */
+    boolean isLarge() {
+        return changedObjects.size() + removedObjectIds.size() >= S3StreamsMetadataDelta.PARALLEL_APPLY_THRESHOLD;
+    }
+
     public S3ObjectsImage apply() {
-        // get original objects first
-        Map<Long, S3Object> newObjectsMetadata = new HashMap<>(image.objectsMetadata());
+        // get original objects first, the new map shares the unchanged objects with it
+        ImmutableMap<Long, S3Object> newObjectsMetadata = image.objectsMetadata();
         // put all new changed objects
-        newObjectsMetadata.putAll(changedObjects);
+        for (Map.Entry<Long, S3Object> entry : changedObjects.entrySet()) {
+            newObjectsMetadata = newObjectsMetadata.updated(entry.getKey(), entry.getValue());
+        }
         // remove all removed objects
-        removedObjectIds.forEach(newObjectsMetadata::remove);
+        for (Long objectId : removedObjectIds) {
+            newObjectsMetadata = newObjectsMetadata.removed(objectId);
+        }
         return new S3ObjectsImage(currentAssignedObjectId, newObjectsMetadata);
     }
 
@@ -17,7 +17,6 @@
 
 package org.apache.kafka.image;
 
-import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import org.apache.kafka.common.metadata.AssignedS3ObjectIdRecord;
@@ -25,6 +24,7 @@ import org.apache.kafka.image.writer.ImageWriter;
 import org.apache.kafka.image.writer.ImageWriterOptions;
 import org.apache.kafka.metadata.stream.S3Object;
 import org.apache.kafka.server.common.ApiMessageAndVersion;
+import org.apache.kafka.server.immutable.ImmutableMap;
 
 /**
  * Represents the S3 objects in the metadata image.
@@ -34,22 +34,22 @@ import org.apache.kafka.server.common.ApiMessageAndVersion;
 public final class S3ObjectsImage {
 
     public static final S3ObjectsImage EMPTY =
-        new S3ObjectsImage(-1, Collections.emptyMap());
+        new S3ObjectsImage(-1, ImmutableMap.empty());
 
     private long nextAssignedObjectId;
 
-    private final Map<Long/*objectId*/, S3Object> objectsMetadata;
+    private final ImmutableMap<Long/*objectId*/, S3Object> objectsMetadata;
 
     public S3ObjectsImage(long assignedObjectId, final Map<Long, S3Object> objectsMetadata) {
         this.nextAssignedObjectId = assignedObjectId + 1;
-        this.objectsMetadata = objectsMetadata;
+        this.objectsMetadata = ImmutableMap.copyOf(objectsMetadata);
     }
 
     public S3Object getObjectMetadata(long objectId) {
         return this.objectsMetadata.get(objectId);
     }
 
-    public Map<Long, S3Object> objectsMetadata() {
+    public ImmutableMap<Long, S3Object> objectsMetadata() {
         return objectsMetadata;
     }
 
@@ -61,7 +61,7 @@ public final class S3ObjectsImage {
         writer.write(
             new ApiMessageAndVersion(
                 new AssignedS3ObjectIdRecord().setAssignedS3ObjectId(nextAssignedObjectId - 1), (short) 0));
-        objectsMetadata.values().stream().map(S3Object::toRecord).forEach(writer::write);
+        objectsMetadata.values().forEach(object -> writer.write(object.toRecord()));
     }
 
     @Override
@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 import org.apache.kafka.common.metadata.AdvanceRangeRecord;
 import org.apache.kafka.common.metadata.RangeRecord;
 import org.apache.kafka.common.metadata.RemoveRangeRecord;
@@ -29,6 +30,8 @@ import org.apache.kafka.common.metadata.S3StreamObjectRecord;
 import org.apache.kafka.common.metadata.S3StreamRecord;
 import org.apache.kafka.metadata.stream.RangeMetadata;
 import org.apache.kafka.metadata.stream.S3StreamObject;
+import org.apache.kafka.metadata.stream.StreamOffsetIndex;
+import org.apache.kafka.server.immutable.ImmutableMap;
 import com.automq.stream.s3.metadata.StreamState;
 
 public class S3StreamMetadataDelta {
@@ -110,17 +113,32 @@ public class S3StreamMetadataDelta {
     }
 
     public S3StreamMetadataImage apply() {
-        Map<Integer, RangeMetadata> newRanges = new HashMap<>(image.getRanges());
+        ImmutableMap<Integer, RangeMetadata> newRanges = image.getRanges();
         // add all new changed ranges
-        newRanges.putAll(changedRanges);
+        for (Map.Entry<Integer, RangeMetadata> entry : changedRanges.entrySet()) {
+            newRanges = newRanges.updated(entry.getKey(), entry.getValue());
+        }
         // remove all removed ranges
-        removedRanges.forEach(newRanges::remove);
-        Map<Long, S3StreamObject> newS3StreamObjects = new HashMap<>(image.getStreamObjects());
+        for (Integer rangeIndex : removedRanges) {
+            newRanges = newRanges.removed(rangeIndex);
+        }
+        ImmutableMap<Long, S3StreamObject> newS3StreamObjects = image.getStreamObjects();
         // add all changed stream-objects
-        newS3StreamObjects.putAll(changedS3StreamObjects);
+        for (Map.Entry<Long, S3StreamObject> entry : changedS3StreamObjects.entrySet()) {
+            newS3StreamObjects = newS3StreamObjects.updated(entry.getKey(), entry.getValue());
+        }
         // remove all removed stream-objects
-        removedS3StreamObjectIds.forEach(newS3StreamObjects::remove);
-        return new S3StreamMetadataImage(streamId, newEpoch, currentState, currentRangeIndex, newStartOffset, newRanges, newS3StreamObjects);
+        for (Long objectId : removedS3StreamObjectIds) {
+            newS3StreamObjects = newS3StreamObjects.removed(objectId);
+        }
+        // update the index with the changed stream-objects only, the updated stream-objects are replaced
+        Set<Long> removedIndexObjectIds = new HashSet<>(removedS3StreamObjectIds);
+        removedIndexObjectIds.addAll(changedS3StreamObjects.keySet());
+        StreamOffsetIndex newStreamObjectsIndex = image.streamObjectsIndex().update(
+            changedS3StreamObjects.values().stream().map(StreamOffsetIndex::entryOf).collect(Collectors.toList()),
+            removedIndexObjectIds);
+        return new S3StreamMetadataImage(streamId, newEpoch, currentState, currentRangeIndex, newStartOffset, newRanges, newS3StreamObjects,
+            newStreamObjectsIndex);
     }
 
 }
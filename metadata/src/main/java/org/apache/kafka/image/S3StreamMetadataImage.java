@@ -26,8 +26,10 @@ import com.automq.stream.s3.metadata.StreamOffsetRange;
 import org.apache.kafka.common.metadata.S3StreamRecord;
 import org.apache.kafka.metadata.stream.RangeMetadata;
 import org.apache.kafka.metadata.stream.S3StreamObject;
+import org.apache.kafka.metadata.stream.StreamOffsetIndex;
 import org.apache.kafka.image.writer.ImageWriter;
 import org.apache.kafka.image.writer.ImageWriterOptions;
+import org.apache.kafka.server.immutable.ImmutableMap;
 import com.automq.stream.s3.metadata.StreamState;
 
 public class S3StreamMetadataImage {
@@ -46,9 +48,12 @@ public class S3StreamMetadataImage {
 
     private final StreamState state;
 
-    private final Map<Integer/*rangeIndex*/, RangeMetadata> ranges;
+    private final ImmutableMap<Integer/*rangeIndex*/, RangeMetadata> ranges;
 
-    private final Map<Long/*objectId*/, S3StreamObject> streamObjects;
+    private final ImmutableMap<Long/*objectId*/, S3StreamObject> streamObjects;
+
+    // the stream objects sorted by offset, it's derived from the streamObjects
+    private final StreamOffsetIndex streamObjectsIndex;
 
     public S3StreamMetadataImage(
         long streamId, long epoch, StreamState state,
@@ -56,6 +61,17 @@ public class S3StreamMetadataImage {
         long startOffset,
         Map<Integer, RangeMetadata> ranges,
         Map<Long, S3StreamObject> streamObjects) {
+        this(streamId, epoch, state, rangeIndex, startOffset, ImmutableMap.copyOf(ranges), ImmutableMap.copyOf(streamObjects),
+            StreamOffsetIndex.of(streamObjects.values().stream().map(StreamOffsetIndex::entryOf).collect(Collectors.toList())));
+    }
+
+    S3StreamMetadataImage(
+        long streamId, long epoch, StreamState state,
+        int rangeIndex,
+        long startOffset,
+        ImmutableMap<Integer, RangeMetadata> ranges,
+        ImmutableMap<Long, S3StreamObject> streamObjects,
+        StreamOffsetIndex streamObjectsIndex) {
         this.streamId = streamId;
         this.epoch = epoch;
         this.state = state;
@@ -63,6 +79,7 @@ public class S3StreamMetadataImage {
         this.startOffset = startOffset;
         this.ranges = ranges;
         this.streamObjects = streamObjects;
+        this.streamObjectsIndex = streamObjectsIndex;
     }
 
     public void write(ImageWriter writer, ImageWriterOptions options) {
@@ -77,14 +94,18 @@ public class S3StreamMetadataImage {
     }
 
 
-    public Map<Integer, RangeMetadata> getRanges() {
+    public ImmutableMap<Integer, RangeMetadata> getRanges() {
         return ranges;
     }
 
-    public Map<Long, S3StreamObject> getStreamObjects() {
+    public ImmutableMap<Long, S3StreamObject> getStreamObjects() {
         return streamObjects;
     }
 
+    public StreamOffsetIndex streamObjectsIndex() {
+        return streamObjectsIndex;
+    }
+
     public long getEpoch() {
         return epoch;
     }
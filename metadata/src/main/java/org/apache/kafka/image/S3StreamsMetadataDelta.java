@@ -17,10 +17,17 @@
 
 package org.apache.kafka.image;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import org.apache.kafka.common.metadata.AdvanceRangeRecord;
 import org.apache.kafka.common.metadata.AssignedStreamIdRecord;
 import org.apache.kafka.common.metadata.NodeWALMetadataRecord;
@@ -33,9 +40,20 @@ import org.apache.kafka.common.metadata.RemoveWALObjectRecord;
 import org.apache.kafka.common.metadata.S3StreamRecord;
 import org.apache.kafka.common.metadata.S3StreamObjectRecord;
 import org.apache.kafka.common.metadata.WALObjectRecord;
+import org.apache.kafka.server.immutable.ImmutableMap;
 
 public final class S3StreamsMetadataDelta {
 
+    /**
+     * The deltas changing at least this many streams are applied in parallel.
+     */
+    static final int PARALLEL_APPLY_THRESHOLD = 10_000;
+
+    /**
+     * The streams of a large delta are applied in batches of this many streams, one task per batch.
+     */
+    private static final int PARALLEL_APPLY_BATCH_SIZE = 4096;
+
     private final S3StreamsMetadataImage image;
 
     private long currentAssignedStreamId;
@@ -56,6 +74,13 @@ public final class S3StreamsMetadataDelta {
         this.currentAssignedStreamId = image.nextAssignedStreamId() - 1;
     }
 
+    /**
+     * The ids of the streams changed by the delta, excluding the deleted ones.
+     */
+    public Set<Long> changedStreams() {
+        return changedStreams.keySet();
+    }
+
     public void replay(AssignedStreamIdRecord record) {
         this.currentAssignedStreamId = record.assignedStreamId();
     }
@@ -138,29 +163,108 @@ public final class S3StreamsMetadataDelta {
         return delta;
     }
 
+    /**
+     * Whether the delta is large enough to be applied in parallel, e.g. a delta which loads a snapshot.
+     */
+    boolean isLarge() {
+        return changedStreams.size() >= PARALLEL_APPLY_THRESHOLD;
+    }
+
     S3StreamsMetadataImage apply() {
-        Map<Long, S3StreamMetadataImage> newStreams = new HashMap<>(image.streamsMetadata());
-        Map<Integer, NodeS3WALMetadataImage> newNodeStreams = new HashMap<>(image.nodeWALMetadata());
+        return apply(null);
+    }
+
+    /**
+     * @param executor the executor which builds the images of a large delta in parallel, or null to build all the
+     *                 images on the calling thread.
+     */
+    S3StreamsMetadataImage apply(Executor executor) {
+        // the new maps share the unchanged streams and nodes with the old image
+        ImmutableMap<Long, S3StreamMetadataImage> newStreams = image.streamsMetadata();
+        ImmutableMap<Integer, NodeS3WALMetadataImage> newNodeStreams = image.nodeWALMetadata();
+
+        // the images of the streams and nodes only depend on their own deltas, so they are built in parallel for a
+        // large delta, and only the insertions into the maps are sequential
+        boolean parallel = executor != null && isLarge();
+        CompletableFuture<List<Map.Entry<Integer, NodeS3WALMetadataImage>>> newNodeImages = parallel ?
+            CompletableFuture.supplyAsync(() -> applyBatch(changedNodes.entrySet(), NodeS3WALMetadataDelta::apply), executor) :
+            CompletableFuture.completedFuture(applyBatch(changedNodes.entrySet(), NodeS3WALMetadataDelta::apply));
 
         // apply the delta changes of old streams since the last image
-        this.changedStreams.forEach((streamId, delta) -> {
-            S3StreamMetadataImage newS3StreamMetadataImage = delta.apply();
-            newStreams.put(streamId, newS3StreamMetadataImage);
-        });
+        if (parallel) {
+            for (CompletableFuture<List<Map.Entry<Long, S3StreamMetadataImage>>> batch :
+                applyInBatches(changedStreams, S3StreamMetadataDelta::apply, executor)) {
+                for (Map.Entry<Long, S3StreamMetadataImage> entry : join(batch)) {
+                    newStreams = newStreams.updated(entry.getKey(), entry.getValue());
+                }
+            }
+        } else {
+            for (Map.Entry<Long, S3StreamMetadataDelta> entry : changedStreams.entrySet()) {
+                newStreams = newStreams.updated(entry.getKey(), entry.getValue().apply());
+            }
+        }
         // remove the deleted streams
-        deletedStreams.forEach(newStreams::remove);
+        for (Long streamId : deletedStreams) {
+            newStreams = newStreams.removed(streamId);
+        }
 
         // apply the delta changes of old nodes since the last image
-        this.changedNodes.forEach((nodeId, delta) -> {
-            NodeS3WALMetadataImage newNodeS3WALMetadataImage = delta.apply();
-            newNodeStreams.put(nodeId, newNodeS3WALMetadataImage);
-        });
+        for (Map.Entry<Integer, NodeS3WALMetadataImage> entry : join(newNodeImages)) {
+            newNodeStreams = newNodeStreams.updated(entry.getKey(), entry.getValue());
+        }
         // remove the deleted nodes
-        deletedNodes.forEach(newNodeStreams::remove);
+        for (Integer nodeId : deletedNodes) {
+            newNodeStreams = newNodeStreams.removed(nodeId);
+        }
 
         return new S3StreamsMetadataImage(currentAssignedStreamId, newStreams, newNodeStreams);
     }
 
+    private static <K, D, I> List<CompletableFuture<List<Map.Entry<K, I>>>> applyInBatches(Map<K, D> deltas,
+        Function<D, I> apply, Executor executor) {
+        List<CompletableFuture<List<Map.Entry<K, I>>>> batches = new ArrayList<>();
+        List<Map.Entry<K, D>> batch = new ArrayList<>(PARALLEL_APPLY_BATCH_SIZE);
+        for (Map.Entry<K, D> entry : deltas.entrySet()) {
+            batch.add(entry);
+            if (batch.size() == PARALLEL_APPLY_BATCH_SIZE) {
+                List<Map.Entry<K, D>> fullBatch = batch;
+                batches.add(CompletableFuture.supplyAsync(() -> applyBatch(fullBatch, apply), executor));
+                batch = new ArrayList<>(PARALLEL_APPLY_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            List<Map.Entry<K, D>> lastBatch = batch;
+            batches.add(CompletableFuture.supplyAsync(() -> applyBatch(lastBatch, apply), executor));
+        }
+        return batches;
+    }
+
+    private static <K, D, I> List<Map.Entry<K, I>> applyBatch(Collection<Map.Entry<K, D>> deltas, Function<D, I> apply) {
+        List<Map.Entry<K, I>> images = new ArrayList<>(deltas.size());
+        for (Map.Entry<K, D> entry : deltas) {
+            images.add(Map.entry(entry.getKey(), apply.apply(entry.getValue())));
+        }
+        return images;
+    }
+
+    /**
+     * Wait for the images built by the executor, and rethrow the failure of building them as is.
+     */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
     @Override
     public String toString() {
         return "S3StreamsMetadataDelta{" +
@@ -26,36 +26,36 @@ import org.apache.kafka.metadata.stream.InRangeObjects;
 import org.apache.kafka.metadata.stream.RangeMetadata;
 import org.apache.kafka.metadata.stream.S3StreamObject;
 import org.apache.kafka.metadata.stream.S3WALObject;
+import org.apache.kafka.metadata.stream.StreamOffsetIndex;
 import org.apache.kafka.server.common.ApiMessageAndVersion;
+import org.apache.kafka.server.immutable.ImmutableMap;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Queue;
 import java.util.stream.Collectors;
 
 public final class S3StreamsMetadataImage {
 
     public static final S3StreamsMetadataImage EMPTY =
-            new S3StreamsMetadataImage(-1, Collections.emptyMap(), Collections.emptyMap());
+            new S3StreamsMetadataImage(-1, ImmutableMap.empty(), ImmutableMap.empty());
 
     private long nextAssignedStreamId;
 
-    private final Map<Long/*streamId*/, S3StreamMetadataImage> streamsMetadata;
+    private final ImmutableMap<Long/*streamId*/, S3StreamMetadataImage> streamsMetadata;
 
-    private final Map<Integer/*nodeId*/, NodeS3WALMetadataImage> nodeWALMetadata;
+    private final ImmutableMap<Integer/*nodeId*/, NodeS3WALMetadataImage> nodeWALMetadata;
 
     public S3StreamsMetadataImage(
             long assignedStreamId,
             Map<Long, S3StreamMetadataImage> streamsMetadata,
             Map<Integer, NodeS3WALMetadataImage> nodeWALMetadata) {
         this.nextAssignedStreamId = assignedStreamId + 1;
-        this.streamsMetadata = streamsMetadata;
-        this.nodeWALMetadata = nodeWALMetadata;
+        this.streamsMetadata = ImmutableMap.copyOf(streamsMetadata);
+        this.nodeWALMetadata = ImmutableMap.copyOf(nodeWALMetadata);
     }
 
 
@@ -174,49 +174,6 @@ public final class S3StreamsMetadataImage {
             this.nodeId = nodeId;
         }
 
-        private Queue<S3ObjectMetadataWrapper> rangeOfWalObjects() {
-            NodeS3WALMetadataImage wal = nodeWALMetadata.get(nodeId);
-            return wal.orderList().stream()
-                .filter(obj -> obj.offsetRanges().containsKey(streamId))
-                .filter(obj -> {
-                    StreamOffsetRange offsetRange = obj.offsetRanges().get(streamId);
-                    long objectStartOffset = offsetRange.getStartOffset();
-                    long objectEndOffset = offsetRange.getEndOffset();
-                    return objectStartOffset < endOffset && objectEndOffset > startOffset;
-                }).map(obj -> {
-                    StreamOffsetRange offsetRange = obj.offsetRanges().get(streamId);
-                    long startOffset = offsetRange.getStartOffset();
-                    long endOffset = offsetRange.getEndOffset();
-                    List<StreamOffsetRange> offsetRanges = obj.offsetRanges().values().stream().sorted()
-                        .collect(Collectors.toList());
-                    S3ObjectMetadata s3ObjectMetadata = new S3ObjectMetadata(
-                        obj.objectId(), obj.objectType(), offsetRanges, obj.dataTimeInMs(),
-                        obj.orderId());
-                    return new S3ObjectMetadataWrapper(s3ObjectMetadata, startOffset, endOffset);
-                })
-                .collect(Collectors.toCollection(LinkedList::new));
-        }
-
-        private Queue<S3ObjectMetadataWrapper> rangeOfStreamObjects() {
-            S3StreamMetadataImage stream = streamsMetadata.get(streamId);
-            Map<Long, S3StreamObject> streamObjectsMetadata = stream.getStreamObjects();
-            // TODO: refactor to make stream objects in order
-            if (streamObjectsMetadata != null && !streamObjectsMetadata.isEmpty()) {
-                return streamObjectsMetadata.values().stream().filter(obj -> {
-                    long objectStartOffset = obj.streamOffsetRange().getStartOffset();
-                    long objectEndOffset = obj.streamOffsetRange().getEndOffset();
-                    return objectStartOffset < endOffset && objectEndOffset > startOffset;
-                }).sorted(Comparator.comparing(S3StreamObject::streamOffsetRange)).map(obj -> {
-                    long startOffset = obj.streamOffsetRange().getStartOffset();
-                    long endOffset = obj.streamOffsetRange().getEndOffset();
-                    S3ObjectMetadata s3ObjectMetadata = new S3ObjectMetadata(
-                            obj.objectId(), obj.objectType(), List.of(obj.streamOffsetRange()), obj.dataTimeInMs());
-                    return new S3ObjectMetadataWrapper(s3ObjectMetadata, startOffset, endOffset);
-                }).collect(Collectors.toCollection(LinkedList::new));
-            }
-            return new LinkedList<>();
-        }
-
         public InRangeObjects getObjects(int limit) {
             if (limit <= 0) {
                 return InRangeObjects.INVALID;
@@ -225,19 +182,23 @@ public final class S3StreamsMetadataImage {
                 return InRangeObjects.INVALID;
             }
 
-            Queue<S3ObjectMetadataWrapper> streamObjects = rangeOfStreamObjects();
-            Queue<S3ObjectMetadataWrapper> walObjects = rangeOfWalObjects();
+            // both indexes are sorted by the start offset, so the objects are merged from the first ones which may cover the start offset
+            StreamOffsetIndex streamObjects = streamsMetadata.get(streamId).streamObjectsIndex();
+            StreamOffsetIndex walObjects = nodeWALMetadata.get(nodeId).streamIndex(streamId);
+            int streamObjectsCursor = streamObjects.floor(startOffset);
+            int walObjectsCursor = walObjects.floor(startOffset);
             List<S3ObjectMetadata> inRangeObjects = new ArrayList<>();
             long nextStartOffset = startOffset;
 
             while (limit > 0
                     && nextStartOffset < endOffset
-                    && (!streamObjects.isEmpty() || !walObjects.isEmpty())) {
-                S3ObjectMetadataWrapper streamRange = null;
-                if (walObjects.isEmpty() || (!streamObjects.isEmpty() && streamObjects.peek().startOffset() < walObjects.peek().startOffset())) {
-                    streamRange = streamObjects.poll();
+                    && (streamObjectsCursor < streamObjects.size() || walObjectsCursor < walObjects.size())) {
+                StreamOffsetIndex.Entry streamRange;
+                if (walObjectsCursor >= walObjects.size() || (streamObjectsCursor < streamObjects.size()
+                        && streamObjects.get(streamObjectsCursor).startOffset() < walObjects.get(walObjectsCursor).startOffset())) {
+                    streamRange = streamObjects.get(streamObjectsCursor++);
                 } else {
-                    streamRange = walObjects.poll();
+                    streamRange = walObjects.get(walObjectsCursor++);
                 }
                 long objectStartOffset = streamRange.startOffset();
                 long objectEndOffset = streamRange.endOffset();
@@ -247,7 +208,7 @@ public final class S3StreamsMetadataImage {
                 if (objectEndOffset <= nextStartOffset) {
                     continue;
                 }
-                inRangeObjects.add(streamRange.metadata);
+                inRangeObjects.add(streamRange.toMetadata());
                 limit--;
                 nextStartOffset = objectEndOffset;
             }
@@ -265,31 +226,6 @@ public final class S3StreamsMetadataImage {
         }
     }
 
-    static class S3ObjectMetadataWrapper {
-
-        private final S3ObjectMetadata metadata;
-        private final long startOffset;
-        private final long endOffset;
-
-        public S3ObjectMetadataWrapper(S3ObjectMetadata metadata, long startOffset, long endOffset) {
-            this.metadata = metadata;
-            this.startOffset = startOffset;
-            this.endOffset = endOffset;
-        }
-
-        public S3ObjectMetadata metadata() {
-            return metadata;
-        }
-
-        public long startOffset() {
-            return startOffset;
-        }
-
-        public long endOffset() {
-            return endOffset;
-        }
-    }
-
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -309,11 +245,11 @@ public final class S3StreamsMetadataImage {
         return Objects.hash(nextAssignedStreamId, streamsMetadata, nodeWALMetadata);
     }
 
-    public Map<Integer, NodeS3WALMetadataImage> nodeWALMetadata() {
+    public ImmutableMap<Integer, NodeS3WALMetadataImage> nodeWALMetadata() {
         return nodeWALMetadata;
     }
 
-    public Map<Long, S3StreamMetadataImage> streamsMetadata() {
+    public ImmutableMap<Long, S3StreamMetadataImage> streamsMetadata() {
         return streamsMetadata;
     }
 
@@ -41,6 +41,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.OptionalLong;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Supplier;
 
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
@@ -193,6 +194,13 @@ public class MetadataLoader implements RaftClient.Listener<ApiMessageAndVersion>
      */
     private final KafkaEventQueue eventQueue;
 
+    // AutoMQ for Kafka inject start
+    /**
+     * The executor which applies the large S3 deltas in parallel, e.g. the delta loading a snapshot.
+     */
+    private final ExecutorService deltaApplyExecutor;
+    // AutoMQ for Kafka inject end
+
     private MetadataLoader(
         Time time,
         LogContext logContext,
@@ -210,6 +218,9 @@ public class MetadataLoader implements RaftClient.Listener<ApiMessageAndVersion>
         this.publishers = new LinkedHashMap<>();
         this.image = MetadataImage.EMPTY;
         this.eventQueue = new KafkaEventQueue(time, logContext, threadNamePrefix);
+        // AutoMQ for Kafka inject start
+        this.deltaApplyExecutor = MetadataDelta.newApplyExecutor(threadNamePrefix);
+        // AutoMQ for Kafka inject end
     }
 
     private boolean stillNeedToCatchUp(long offset) {
@@ -273,6 +284,9 @@ public class MetadataLoader implements RaftClient.Listener<ApiMessageAndVersion>
             try {
                 MetadataDelta delta = new MetadataDelta.Builder().
                         setImage(image).
+                        // AutoMQ for Kafka inject start
+                        setApplyExecutor(deltaApplyExecutor).
+                        // AutoMQ for Kafka inject end
                         build();
                 LogDeltaManifest manifest = loadLogDelta(delta, reader);
                 if (log.isDebugEnabled()) {
@@ -371,6 +385,9 @@ public class MetadataLoader implements RaftClient.Listener<ApiMessageAndVersion>
             try {
                 MetadataDelta delta = new MetadataDelta.Builder().
                         setImage(image).
+                        // AutoMQ for Kafka inject start
+                        setApplyExecutor(deltaApplyExecutor).
+                        // AutoMQ for Kafka inject end
                         build();
                 SnapshotManifest manifest = loadSnapshot(delta, reader);
                 if (log.isDebugEnabled()) {
@@ -569,5 +586,8 @@ public class MetadataLoader implements RaftClient.Listener<ApiMessageAndVersion>
     public void close() throws Exception {
         beginShutdown();
         eventQueue.close();
+        // AutoMQ for Kafka inject start
+        deltaApplyExecutor.shutdownNow();
+        // AutoMQ for Kafka inject end
     }
 }
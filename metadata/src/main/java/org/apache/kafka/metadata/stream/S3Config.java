@@ -23,12 +23,15 @@ package org.apache.kafka.metadata.stream;
 public class S3Config {
     public static final String ACCESS_KEY_NAME = "KAFKA_S3_ACCESS_KEY";
     public static final String SECRET_KEY_NAME = "KAFKA_S3_SECRET_KEY";
+    public static final int DEFAULT_OBJECT_DELETE_CONCURRENCY = 4;
 
     // Only for test, if true, use mocked S3 related classes
     private final boolean mock;
 
     private final long objectRetentionTimeInSecond;
 
+    private final int objectDeleteConcurrency;
+
     private final String endpoint;
 
     private final String region;
@@ -50,10 +53,16 @@ public class S3Config {
 
     public S3Config(final String endpoint, final String region, final String bucket, final long objectRetentionTimeInSecond,
         final boolean mock) {
+        this(endpoint, region, bucket, objectRetentionTimeInSecond, DEFAULT_OBJECT_DELETE_CONCURRENCY, mock);
+    }
+
+    public S3Config(final String endpoint, final String region, final String bucket, final long objectRetentionTimeInSecond,
+        final int objectDeleteConcurrency, final boolean mock) {
         this.endpoint = endpoint;
         this.region = region;
         this.bucket = bucket;
         this.objectRetentionTimeInSecond = objectRetentionTimeInSecond;
+        this.objectDeleteConcurrency = objectDeleteConcurrency;
         this.mock = mock;
     }
 
@@ -77,6 +86,10 @@ public class S3Config {
         return objectRetentionTimeInSecond;
     }
 
+    public int objectDeleteConcurrency() {
+        return objectDeleteConcurrency;
+    }
+
     public String getAccessKey() {
         return accessKey;
     }
@@ -17,6 +17,9 @@
 
 package org.apache.kafka.metadata.stream;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -29,9 +32,19 @@ import org.apache.kafka.server.common.ApiMessageAndVersion;
 
 public class S3WALObject implements Comparable<S3WALObject> {
 
+    private static final int STREAM_ID_INDEX = 0;
+    private static final int START_OFFSET_INDEX = 1;
+    private static final int END_OFFSET_INDEX = 2;
+    private static final int RANGE_SIZE = 3;
+
     private final long objectId;
     private final int nodeId;
-    private final Map<Long/*streamId*/, StreamOffsetRange> streamOffsetRanges;
+    /**
+     * The offset ranges of the streams, encoded as {@code [streamId, startOffset, endOffset]} triples sorted by the
+     * stream id in a single array. It's much more compact than a map of the ranges, as there are no boxed stream ids,
+     * map entries or range objects, and a range is looked up by binary search.
+     */
+    private final long[] streamOffsetRanges;
 
     /**
      * The order id of the object. Sort by this field to get the order of the objects which contains logically increasing streams.
@@ -48,6 +61,10 @@ public class S3WALObject implements Comparable<S3WALObject> {
     }
 
     public S3WALObject(long objectId, int nodeId, final Map<Long, StreamOffsetRange> streamOffsetRanges, long orderId, long dataTimeInMs) {
+        this(objectId, nodeId, streamOffsetRanges != null ? encode(streamOffsetRanges.values()) : new long[0], orderId, dataTimeInMs);
+    }
+
+    private S3WALObject(long objectId, int nodeId, long[] streamOffsetRanges, long orderId, long dataTimeInMs) {
         this.orderId = orderId;
         this.objectId = objectId;
         this.nodeId = nodeId;
@@ -55,39 +72,134 @@ public class S3WALObject implements Comparable<S3WALObject> {
         this.dataTimeInMs = dataTimeInMs;
     }
 
+    private static long[] encode(Iterable<StreamOffsetRange> offsetRanges) {
+        List<StreamOffsetRange> sorted = new ArrayList<>();
+        offsetRanges.forEach(sorted::add);
+        sorted.sort((r1, r2) -> Long.compare(r1.getStreamId(), r2.getStreamId()));
+        long[] encoded = new long[sorted.size() * RANGE_SIZE];
+        for (int i = 0; i < sorted.size(); i++) {
+            StreamOffsetRange offsetRange = sorted.get(i);
+            encoded[i * RANGE_SIZE + STREAM_ID_INDEX] = offsetRange.getStreamId();
+            encoded[i * RANGE_SIZE + START_OFFSET_INDEX] = offsetRange.getStartOffset();
+            encoded[i * RANGE_SIZE + END_OFFSET_INDEX] = offsetRange.getEndOffset();
+        }
+        return encoded;
+    }
+
+    /**
+     * Get the position of the range of the stream, or -1 if the object doesn't contain the stream.
+     */
+    private int indexOf(long streamId) {
+        int low = 0;
+        int high = streamCount() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midStreamId = streamOffsetRanges[mid * RANGE_SIZE + STREAM_ID_INDEX];
+            if (midStreamId < streamId) {
+                low = mid + 1;
+            } else if (midStreamId > streamId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private StreamOffsetRange offsetRangeAt(int index) {
+        int base = index * RANGE_SIZE;
+        return new StreamOffsetRange(streamOffsetRanges[base + STREAM_ID_INDEX],
+            streamOffsetRanges[base + START_OFFSET_INDEX], streamOffsetRanges[base + END_OFFSET_INDEX]);
+    }
+
     public boolean intersect(long streamId, long startOffset, long endOffset) {
-        StreamOffsetRange offsetRange = streamOffsetRanges.get(streamId);
-        if (offsetRange == null) {
+        int index = indexOf(streamId);
+        if (index < 0) {
             return false;
         }
-        return startOffset >= offsetRange.getStartOffset() && startOffset <= offsetRange.getEndOffset();
+        int base = index * RANGE_SIZE;
+        return startOffset >= streamOffsetRanges[base + START_OFFSET_INDEX] && startOffset <= streamOffsetRanges[base + END_OFFSET_INDEX];
     }
 
+    public boolean containsStream(long streamId) {
+        return indexOf(streamId) >= 0;
+    }
+
+    /**
+     * Get the offset range of the stream, or null if the object doesn't contain the stream.
+     */
+    public StreamOffsetRange offsetRange(long streamId) {
+        int index = indexOf(streamId);
+        return index < 0 ? null : offsetRangeAt(index);
+    }
+
+    public int streamCount() {
+        return streamOffsetRanges.length / RANGE_SIZE;
+    }
+
+    /**
+     * Get the offset ranges sorted by the stream id. The ranges are decoded on each call.
+     */
+    public List<StreamOffsetRange> offsetRangeList() {
+        List<StreamOffsetRange> offsetRanges = new ArrayList<>(streamCount());
+        for (int i = 0; i < streamCount(); i++) {
+            offsetRanges.add(offsetRangeAt(i));
+        }
+        return offsetRanges;
+    }
+
+    /**
+     * Get the offset ranges by the stream id. The map is decoded on each call, so prefer {@link #offsetRange(long)}
+     * or {@link #offsetRangeList()} unless a map is needed.
+     */
     public Map<Long, StreamOffsetRange> offsetRanges() {
-        return streamOffsetRanges;
+        Map<Long, StreamOffsetRange> offsetRanges = new HashMap<>(streamCount() * 2);
+        for (int i = 0; i < streamCount(); i++) {
+            StreamOffsetRange offsetRange = offsetRangeAt(i);
+            offsetRanges.put(offsetRange.getStreamId(), offsetRange);
+        }
+        return offsetRanges;
+    }
+
+    /**
+     * Get a copy of the object without the range of the stream.
+     */
+    public S3WALObject withoutStream(long streamId) {
+        int index = indexOf(streamId);
+        if (index < 0) {
+            return this;
+        }
+        long[] newOffsetRanges = new long[streamOffsetRanges.length - RANGE_SIZE];
+        System.arraycopy(streamOffsetRanges, 0, newOffsetRanges, 0, index * RANGE_SIZE);
+        System.arraycopy(streamOffsetRanges, (index + 1) * RANGE_SIZE, newOffsetRanges, index * RANGE_SIZE,
+            newOffsetRanges.length - index * RANGE_SIZE);
+        return new S3WALObject(objectId, nodeId, newOffsetRanges, orderId, dataTimeInMs);
     }
 
     public ApiMessageAndVersion toRecord() {
+        List<WALObjectRecord.StreamIndex> streamsIndex = new ArrayList<>(streamCount());
+        for (int i = 0; i < streamCount(); i++) {
+            int base = i * RANGE_SIZE;
+            streamsIndex.add(new WALObjectRecord.StreamIndex()
+                .setStreamId(streamOffsetRanges[base + STREAM_ID_INDEX])
+                .setStartOffset(streamOffsetRanges[base + START_OFFSET_INDEX])
+                .setEndOffset(streamOffsetRanges[base + END_OFFSET_INDEX]));
+        }
         return new ApiMessageAndVersion(new WALObjectRecord()
             .setObjectId(objectId)
             .setNodeId(nodeId)
             .setOrderId(orderId)
             .setDataTimeInMs(dataTimeInMs)
-            .setStreamsIndex(
-                streamOffsetRanges
-                    .values()
-                    .stream()
-                    .map(Convertor::to)
-                    .collect(Collectors.toList())), (short) 0);
+            .setStreamsIndex(streamsIndex), (short) 0);
     }
 
     public static S3WALObject of(WALObjectRecord record) {
-        Map<Long, StreamOffsetRange> offsetRanges = record.streamsIndex()
+        List<StreamOffsetRange> offsetRanges = record.streamsIndex()
             .stream()
-            .collect(Collectors.toMap(index -> index.streamId(),
-                index -> new StreamOffsetRange(index.streamId(), index.startOffset(), index.endOffset())));
+            .map(index -> new StreamOffsetRange(index.streamId(), index.startOffset(), index.endOffset()))
+            .collect(Collectors.toList());
         S3WALObject s3WalObject = new S3WALObject(record.objectId(), record.nodeId(),
-            offsetRanges, record.orderId(), record.dataTimeInMs());
+            encode(offsetRanges), record.orderId(), record.dataTimeInMs());
         return s3WalObject;
     }
 
@@ -134,7 +246,7 @@ public class S3WALObject implements Comparable<S3WALObject> {
             "objectId=" + objectId +
             ", orderId=" + orderId +
             ", nodeId=" + nodeId +
-            ", streamOffsetRanges=" + streamOffsetRanges +
+            ", streamOffsetRanges=" + offsetRangeList() +
             ", dataTimeInMs=" + dataTimeInMs +
             '}';
     }
@@ -17,87 +17,156 @@
 
 package org.apache.kafka.metadata.stream;
 
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Objects;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+/**
+ * The WAL objects sorted by the order id, which is backed by a persistent AVL tree.
+ * <p>
+ * The tree is never modified in place, an update copies the nodes on the path from the root, and shares the other
+ * nodes with the old tree. So add, remove and get by index take O(log n), and a copy only takes O(1), which makes
+ * the snapshot of the image cheap. This class requires external synchronization.
+ */
 public class SortedWALObjectsList implements SortedWALObjects {
 
-    private final List<S3WALObject> list;
+    private static final Comparator<S3WALObject> COMPARATOR = Comparator.comparingLong(S3WALObject::orderId)
+        .thenComparingLong(S3WALObject::objectId);
+
+    private Node root;
 
+    /**
+     * Construct a copy of the source, it's O(1) if the source is a SortedWALObjectsList.
+     */
     public SortedWALObjectsList(SortedWALObjects source) {
-        this.list = new LinkedList<>(source.list());
+        if (source instanceof SortedWALObjectsList) {
+            this.root = ((SortedWALObjectsList) source).root;
+        } else {
+            this.root = build(source.list());
+        }
     }
 
     public SortedWALObjectsList() {
-        this.list = new LinkedList<>();
+        this.root = null;
     }
 
     /**
-     * Construct a SortedWALObjectsList from a list of S3WALObjects.
-     * @param list the list of S3WALObjects, must guarantee that the list is sorted
+     * Construct a SortedWALObjectsList from a list of S3WALObjects, it takes O(n) if the list is already sorted.
+     * @param list the list of S3WALObjects
      */
     public SortedWALObjectsList(List<S3WALObject> list) {
-        this.list = list;
+        this.root = build(list);
     }
 
     @Override
     public int size() {
-        return this.list.size();
+        return size(root);
     }
 
     @Override
     public boolean isEmpty() {
-        return this.list.isEmpty();
+        return root == null;
     }
 
     @Override
     public Iterator<S3WALObject> iterator() {
-        return this.list.iterator();
+        return new NodeIterator(root);
     }
 
+    /**
+     * Get an unmodifiable view of the objects. The view reflects the later changes of this list.
+     */
     @Override
     public List<S3WALObject> list() {
-        return list;
+        return new AbstractList<S3WALObject>() {
+            @Override
+            public S3WALObject get(int index) {
+                return SortedWALObjectsList.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return SortedWALObjectsList.this.size();
+            }
+
+            @Override
+            public Iterator<S3WALObject> iterator() {
+                return SortedWALObjectsList.this.iterator();
+            }
+        };
     }
 
     @Override
     public boolean contains(Object o) {
-        return this.list.contains(o);
+        if (!(o instanceof S3WALObject)) {
+            return false;
+        }
+        return lookup((S3WALObject) o) != null;
     }
 
+    /**
+     * Add the object, an object with the same order id and object id is replaced.
+     */
     @Override
     public boolean add(S3WALObject s3WALObject) {
-        // TODO: optimize by binary search
-        for (int index = 0; index < this.list.size(); index++) {
-            S3WALObject current = this.list.get(index);
-            if (s3WALObject.compareTo(current) <= 0) {
-                this.list.add(index, s3WALObject);
-                return true;
-            }
-        }
-        this.list.add(s3WALObject);
+        this.root = insert(root, s3WALObject);
         return true;
     }
 
     @Override
     public boolean remove(Object o) {
-        // TODO: optimize by binary search
-        return this.list.remove(o);
+        if (!(o instanceof S3WALObject)) {
+            return false;
+        }
+        S3WALObject object = lookup((S3WALObject) o);
+        if (object == null) {
+            return false;
+        }
+        this.root = delete(root, object);
+        return true;
     }
 
-
+    @Override
+    public boolean removeIf(Predicate<S3WALObject> filter) {
+        List<S3WALObject> removed = new ArrayList<>();
+        iterator().forEachRemaining(object -> {
+            if (filter.test(object)) {
+                removed.add(object);
+            }
+        });
+        removed.forEach(this::remove);
+        return !removed.isEmpty();
+    }
 
     @Override
     public S3WALObject get(int index) {
-        return this.list.get(index);
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = root;
+        for (; ; ) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.value;
+            }
+        }
     }
 
     @Override
     public void clear() {
-        this.list.clear();
+        this.root = null;
     }
 
     @Override
@@ -109,18 +178,175 @@ public class SortedWALObjectsList implements SortedWALObjects {
             return false;
         }
         SortedWALObjectsList that = (SortedWALObjectsList) o;
-        return Objects.equals(list, that.list);
+        return list().equals(that.list());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(list);
+        return list().hashCode();
     }
 
     @Override
     public String toString() {
         return "SortedWALObjectsList{" +
-            "list=" + list.stream().map(S3WALObject::toString).collect(Collectors.joining(",")) +
+            "list=" + list().stream().map(S3WALObject::toString).collect(Collectors.joining(",")) +
             '}';
     }
+
+    /**
+     * Get the object equal to the given one, i.e. with the same object id. It's found by the order id in O(log n),
+     * and the objects are scanned if the order id doesn't match, e.g. it's not set by the caller.
+     */
+    private S3WALObject lookup(S3WALObject value) {
+        Node node = find(root, value);
+        if (node != null) {
+            return node.value;
+        }
+        Iterator<S3WALObject> iterator = iterator();
+        while (iterator.hasNext()) {
+            S3WALObject object = iterator.next();
+            if (object.equals(value)) {
+                return object;
+            }
+        }
+        return null;
+    }
+
+    private static Node find(Node node, S3WALObject value) {
+        while (node != null) {
+            int cmp = COMPARATOR.compare(value, node.value);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private static Node insert(Node node, S3WALObject value) {
+        if (node == null) {
+            return new Node(value, null, null);
+        }
+        int cmp = COMPARATOR.compare(value, node.value);
+        if (cmp == 0) {
+            return new Node(value, node.left, node.right);
+        } else if (cmp < 0) {
+            return balance(node.value, insert(node.left, value), node.right);
+        } else {
+            return balance(node.value, node.left, insert(node.right, value));
+        }
+    }
+
+    private static Node delete(Node node, S3WALObject value) {
+        int cmp = COMPARATOR.compare(value, node.value);
+        if (cmp < 0) {
+            return balance(node.value, delete(node.left, value), node.right);
+        } else if (cmp > 0) {
+            return balance(node.value, node.left, delete(node.right, value));
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        // replace the node with its successor
+        Node successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.value, node.left, delete(node.right, successor.value));
+    }
+
+    private static Node balance(S3WALObject value, Node left, Node right) {
+        int diff = height(left) - height(right);
+        if (diff > 1) {
+            if (height(left.left) < height(left.right)) {
+                left = rotateLeft(left.value, left.left, left.right);
+            }
+            return rotateRight(value, left, right);
+        } else if (diff < -1) {
+            if (height(right.right) < height(right.left)) {
+                right = rotateRight(right.value, right.left, right.right);
+            }
+            return rotateLeft(value, left, right);
+        }
+        return new Node(value, left, right);
+    }
+
+    private static Node rotateLeft(S3WALObject value, Node left, Node right) {
+        return new Node(right.value, new Node(value, left, right.left), right.right);
+    }
+
+    private static Node rotateRight(S3WALObject value, Node left, Node right) {
+        return new Node(left.value, left.left, new Node(value, left.right, right));
+    }
+
+    private static Node build(List<S3WALObject> list) {
+        List<S3WALObject> sorted = new ArrayList<>(list);
+        sorted.sort(COMPARATOR);
+        return build(sorted, 0, sorted.size());
+    }
+
+    private static Node build(List<S3WALObject> sorted, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        return new Node(sorted.get(mid), build(sorted, from, mid), build(sorted, mid + 1, to));
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node {
+        private final S3WALObject value;
+        private final Node left;
+        private final Node right;
+        private final int height;
+        private final int size;
+
+        Node(S3WALObject value, Node left, Node right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+
+    private static final class NodeIterator implements Iterator<S3WALObject> {
+        private final Deque<Node> stack = new ArrayDeque<>();
+
+        NodeIterator(Node root) {
+            pushLeft(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public S3WALObject next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node node = stack.pop();
+            pushLeft(node.right);
+            return node.value;
+        }
+
+        private void pushLeft(Node node) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+        }
+    }
 }
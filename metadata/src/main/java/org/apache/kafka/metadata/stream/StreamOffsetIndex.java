@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.metadata.stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import com.automq.stream.s3.metadata.S3ObjectMetadata;
+import com.automq.stream.s3.metadata.S3ObjectType;
+import com.automq.stream.s3.metadata.S3StreamConstant;
+import com.automq.stream.s3.metadata.StreamOffsetRange;
+
+/**
+ * An immutable index of the objects of a stream, sorted by the start offset of the stream in the objects.
+ * <p>
+ * The index is built once when the image is applied, and it's updated incrementally by {@link #update}, so a search
+ * only takes O(log n) to locate the first object which covers an offset, instead of filtering and sorting all the objects.
+ */
+public final class StreamOffsetIndex {
+
+    public static final StreamOffsetIndex EMPTY = new StreamOffsetIndex(new Entry[0]);
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR = Comparator.comparingLong(Entry::startOffset)
+        .thenComparingLong(Entry::orderId)
+        .thenComparingLong(Entry::objectId);
+
+    private final Entry[] entries;
+    // the max end offset of entries[0..i], which is non-decreasing so it can be searched by binary search
+    private final long[] maxEndOffsets;
+
+    private StreamOffsetIndex(Entry[] entries) {
+        this.entries = entries;
+        this.maxEndOffsets = new long[entries.length];
+        long maxEndOffset = Long.MIN_VALUE;
+        for (int i = 0; i < entries.length; i++) {
+            maxEndOffset = Math.max(maxEndOffset, entries[i].endOffset);
+            maxEndOffsets[i] = maxEndOffset;
+        }
+    }
+
+    public static StreamOffsetIndex of(Collection<Entry> entries) {
+        if (entries.isEmpty()) {
+            return EMPTY;
+        }
+        Entry[] sorted = entries.toArray(new Entry[0]);
+        Arrays.sort(sorted, ENTRY_COMPARATOR);
+        return new StreamOffsetIndex(sorted);
+    }
+
+    /**
+     * Get a new index with the changes applied, it takes O(n + k * log k), n is the size of the index and k is the count of the changes.
+     *
+     * @param added            the added or updated entries.
+     * @param removedObjectIds the ids of the removed objects, the updated objects should be included too.
+     */
+    public StreamOffsetIndex update(Collection<Entry> added, Set<Long> removedObjectIds) {
+        if (added.isEmpty() && removedObjectIds.isEmpty()) {
+            return this;
+        }
+        Entry[] sortedAdded = added.toArray(new Entry[0]);
+        Arrays.sort(sortedAdded, ENTRY_COMPARATOR);
+        List<Entry> merged = new ArrayList<>(entries.length + sortedAdded.length);
+        int i = 0;
+        int j = 0;
+        while (i < entries.length || j < sortedAdded.length) {
+            if (i < entries.length && removedObjectIds.contains(entries[i].objectId)) {
+                i++;
+                continue;
+            }
+            if (j >= sortedAdded.length || (i < entries.length && ENTRY_COMPARATOR.compare(entries[i], sortedAdded[j]) <= 0)) {
+                merged.add(entries[i++]);
+            } else {
+                merged.add(sortedAdded[j++]);
+            }
+        }
+        if (merged.isEmpty()) {
+            return EMPTY;
+        }
+        return new StreamOffsetIndex(merged.toArray(new Entry[0]));
+    }
+
+    /**
+     * Get the position of the first entry whose end offset is larger than the offset, or {@link #size()} if there isn't.
+     * The entries before the position don't contain any offset not less than the offset.
+     */
+    public int floor(long offset) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (maxEndOffsets[mid] > offset) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    public Entry get(int index) {
+        return entries[index];
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    public boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    /**
+     * Get the entries of a WAL object, one for each stream in it. The sorted offset ranges are shared by the entries.
+     */
+    public static List<Entry> entriesOf(S3WALObject object) {
+        List<StreamOffsetRange> offsetRanges = Collections.unmodifiableList(object.offsetRangeList());
+        List<Entry> entries = new ArrayList<>(offsetRanges.size());
+        for (StreamOffsetRange offsetRange : offsetRanges) {
+            entries.add(new Entry(offsetRange.getStreamId(), object.objectId(), S3ObjectType.WAL, offsetRanges,
+                offsetRange.getStartOffset(), offsetRange.getEndOffset(), object.dataTimeInMs(), object.orderId()));
+        }
+        return entries;
+    }
+
+    public static Entry entryOf(S3StreamObject object) {
+        StreamOffsetRange offsetRange = object.streamOffsetRange();
+        return new Entry(offsetRange.getStreamId(), object.objectId(), S3ObjectType.STREAM, List.of(offsetRange),
+            offsetRange.getStartOffset(), offsetRange.getEndOffset(), object.dataTimeInMs(), S3StreamConstant.INVALID_ORDER_ID);
+    }
+
+    public static final class Entry {
+        private final long streamId;
+        private final long objectId;
+        private final S3ObjectType objectType;
+        private final List<StreamOffsetRange> offsetRanges;
+        private final long startOffset;
+        private final long endOffset;
+        private final long dataTimeInMs;
+        private final long orderId;
+
+        private Entry(long streamId, long objectId, S3ObjectType objectType, List<StreamOffsetRange> offsetRanges,
+            long startOffset, long endOffset, long dataTimeInMs, long orderId) {
+            this.streamId = streamId;
+            this.objectId = objectId;
+            this.objectType = objectType;
+            this.offsetRanges = offsetRanges;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.dataTimeInMs = dataTimeInMs;
+            this.orderId = orderId;
+        }
+
+        public long streamId() {
+            return streamId;
+        }
+
+        public long objectId() {
+            return objectId;
+        }
+
+        public long startOffset() {
+            return startOffset;
+        }
+
+        public long endOffset() {
+            return endOffset;
+        }
+
+        public long orderId() {
+            return orderId;
+        }
+
+        /**
+         * Create a new metadata of the object. It's created on each call, because the callers fill the size and the
+         * committed timestamp into the metadata.
+         */
+        public S3ObjectMetadata toMetadata() {
+            if (objectType == S3ObjectType.WAL) {
+                return new S3ObjectMetadata(objectId, objectType, offsetRanges, dataTimeInMs, orderId);
+            }
+            return new S3ObjectMetadata(objectId, objectType, offsetRanges, dataTimeInMs);
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                "objectId=" + objectId +
+                ", startOffset=" + startOffset +
+                ", endOffset=" + endOffset +
+                ", orderId=" + orderId +
+                '}';
+        }
+    }
+}
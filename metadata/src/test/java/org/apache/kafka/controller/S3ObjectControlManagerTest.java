@@ -24,6 +24,8 @@ import static org.mockito.ArgumentMatchers.anyList;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.automq.stream.s3.operator.S3Operator;
@@ -41,6 +43,7 @@ import org.apache.kafka.metadata.stream.S3Config;
 import org.apache.kafka.metadata.stream.S3Object;
 import org.apache.kafka.metadata.stream.S3ObjectState;
 import org.apache.kafka.server.common.ApiMessageAndVersion;
+import org.apache.kafka.test.TestUtils;
 import org.apache.kafka.timeline.SnapshotRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
@@ -265,6 +268,85 @@ public class S3ObjectControlManagerTest {
         Mockito.verify(operator, Mockito.times(3)).delete(anyList());
     }
 
+    @Test
+    public void testDeleteWithConcurrencyLimit() throws Exception {
+        LogContext logContext = new LogContext();
+        manager = new S3ObjectControlManager(controller, new SnapshotRegistry(logContext), logContext, CLUSTER,
+            new S3Config(S3_ENDPOINT, S3_REGION, S3_BUCKET, 5, 1, false), operator);
+        AtomicInteger checks = new AtomicInteger();
+        Mockito.when(controller.checkS3ObjectsLifecycle(any(ControllerRequestContext.class)))
+            .then(inv -> {
+                checks.incrementAndGet();
+                ControllerResult<Void> result = manager.checkS3ObjectsLifecycle();
+                replay(manager, result.records());
+                return CompletableFuture.completedFuture(null);
+            });
+        Mockito.when(controller.notifyS3ObjectDeleted(any(ControllerRequestContext.class), anyList()))
+            .then(inv -> {
+                ControllerResult<Void> result = manager.notifyS3ObjectDeleted(inv.getArgument(1));
+                replay(manager, result.records());
+                return CompletableFuture.completedFuture(null);
+            });
+        List<List<String>> deleteKeys = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<List<String>>> deletes = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(ink -> {
+            CompletableFuture<List<String>> cf = new CompletableFuture<>();
+            deleteKeys.add(ink.getArgument(0));
+            deletes.add(cf);
+            return cf;
+        }).when(operator).delete(anyList());
+        // 1. prepare 1700 object
+        ControllerResult<PrepareS3ObjectResponseData> result0 = manager.prepareObject(new PrepareS3ObjectRequestData()
+            .setNodeId(BROKER0)
+            .setPreparedCount(1700)
+            .setTimeToLiveInMs(1000));
+        replay(manager, result0.records());
+
+        // 2. only one batch is deleted at the same time
+        TestUtils.waitForCondition(() -> deletes.size() == 1, "the first batch isn't deleted");
+        // the cleaner runs on the lifecycle check thread, so it's done with the pending batches once the next check runs
+        int checked = checks.get();
+        TestUtils.waitForCondition(() -> checks.get() > checked, "the lifecycle isn't checked again");
+        assertEquals(1, deletes.size());
+
+        // 3. the next batch is deleted after the previous one is done
+        deletes.get(0).complete(deleteKeys.get(0));
+        TestUtils.waitForCondition(() -> deletes.size() == 2, "the second batch isn't deleted");
+        deletes.get(1).complete(deleteKeys.get(1));
+        TestUtils.waitForCondition(() -> deletes.size() == 3, "the third batch isn't deleted");
+        deletes.get(2).complete(deleteKeys.get(2));
+        TestUtils.waitForCondition(() -> manager.objectsMetadata().isEmpty(), "the objects aren't removed");
+        Mockito.verify(operator, Mockito.times(3)).delete(anyList());
+    }
+
+    @Test
+    public void testLoadDueObjectsOnActivation() {
+        // the objects replayed before the first lifecycle check are loaded by it
+        manager.replay(expiredObjectRecord(0));
+        ControllerResult<Void> result = manager.checkS3ObjectsLifecycle();
+        assertEquals(1, result.records().size());
+        assertEquals(0L, ((S3ObjectRecord) result.records().get(0).message()).objectId());
+
+        // the objects replayed after it are added on replay, and the handled ones aren't due until the recheck
+        manager.replay(expiredObjectRecord(1));
+        result = manager.checkS3ObjectsLifecycle();
+        assertEquals(1, result.records().size());
+        assertEquals(1L, ((S3ObjectRecord) result.records().get(0).message()).objectId());
+
+        // the objects are loaded again after the controller renounces
+        manager.deactivate();
+        result = manager.checkS3ObjectsLifecycle();
+        assertEquals(2, result.records().size());
+    }
+
+    private S3ObjectRecord expiredObjectRecord(long objectId) {
+        return new S3ObjectRecord()
+            .setObjectId(objectId)
+            .setObjectState(S3ObjectState.PREPARED.toByte())
+            .setPreparedTimeInMs(0)
+            .setExpiredTimeInMs(1);
+    }
+
     private void prepareOneObject(long ttl) {
         ControllerResult<PrepareS3ObjectResponseData> result0 = manager.prepareObject(new PrepareS3ObjectRequestData()
             .setNodeId(BROKER0)
@@ -18,6 +18,7 @@
 package org.apache.kafka.image;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -114,7 +115,13 @@ public class NodeS3WALMetadataImageTest {
                     STREAM1, new StreamOffsetRange(STREAM1, 0L, 200L)), 0L),
                 1L, new S3WALObject(1L, BROKER0, Map.of(
                     STREAM0, new StreamOffsetRange(STREAM0, 101L, 200L)), 1L)));
-        assertEquals(image2, delta1.apply());
+        NodeS3WALMetadataImage appliedImage2 = delta1.apply();
+        assertEquals(image2, appliedImage2);
+        // the stream index is updated incrementally
+        assertEquals(1, appliedImage2.streamIndex(STREAM0).size());
+        assertEquals(1L, appliedImage2.streamIndex(STREAM0).get(0).objectId());
+        assertEquals(1, appliedImage2.streamIndex(STREAM1).size());
+        assertEquals(0L, appliedImage2.streamIndex(STREAM1).get(0).objectId());
         testToImageAndBack(image2);
 
         // 3. remove WALObject1
@@ -128,7 +135,10 @@ public class NodeS3WALMetadataImageTest {
             Map.of(
                 0L, new S3WALObject(0L, BROKER0, Map.of(
                     STREAM1, new StreamOffsetRange(STREAM1, 0L, 200L)), 0L)));
-        assertEquals(image3, delta2.apply());
+        NodeS3WALMetadataImage appliedImage3 = delta2.apply();
+        assertEquals(image3, appliedImage3);
+        assertTrue(appliedImage3.streamIndex(STREAM0).isEmpty());
+        assertEquals(1, appliedImage3.streamIndex(STREAM1).size());
         testToImageAndBack(image3);
     }
 
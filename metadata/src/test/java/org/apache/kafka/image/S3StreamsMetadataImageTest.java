@@ -22,6 +22,11 @@ import com.automq.stream.s3.metadata.S3StreamConstant;
 import com.automq.stream.s3.metadata.StreamOffsetRange;
 import com.automq.stream.s3.metadata.StreamState;
 import org.apache.kafka.common.metadata.AssignedStreamIdRecord;
+import org.apache.kafka.common.metadata.NodeWALMetadataRecord;
+import org.apache.kafka.common.metadata.RangeRecord;
+import org.apache.kafka.common.metadata.S3StreamObjectRecord;
+import org.apache.kafka.common.metadata.S3StreamRecord;
+import org.apache.kafka.common.metadata.WALObjectRecord;
 import org.apache.kafka.image.writer.ImageWriterOptions;
 import org.apache.kafka.image.writer.RecordListWriter;
 import org.apache.kafka.metadata.RecordTestUtils;
@@ -34,13 +39,17 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @Timeout(value = 40)
 @Tag("S3Unit")
@@ -89,6 +98,62 @@ public class S3StreamsMetadataImageTest {
         assertEquals(image2, delta1.apply());
     }
 
+    @Test
+    public void testJoinRethrowsCause() {
+        CompletableFuture<Void> future = CompletableFuture.supplyAsync(() -> {
+            throw new IllegalStateException("apply failed");
+        });
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> S3StreamsMetadataDelta.join(future));
+        assertEquals("apply failed", e.getMessage());
+    }
+
+    @Test
+    public void testApplyLargeDelta() {
+        // a delta like the one loading a snapshot, which is applied in parallel
+        int streamCount = S3StreamsMetadataDelta.PARALLEL_APPLY_THRESHOLD + 1;
+        List<ApiMessageAndVersion> records = new ArrayList<>();
+        records.add(new ApiMessageAndVersion(new AssignedStreamIdRecord().setAssignedStreamId(streamCount - 1), (short) 0));
+        records.add(new ApiMessageAndVersion(new NodeWALMetadataRecord().setNodeId(BROKER0).setNodeEpoch(1), (short) 0));
+        records.add(new ApiMessageAndVersion(new NodeWALMetadataRecord().setNodeId(BROKER1).setNodeEpoch(1), (short) 0));
+        for (long streamId = 0; streamId < streamCount; streamId++) {
+            int nodeId = streamId % 2 == 0 ? BROKER0 : BROKER1;
+            records.add(new ApiMessageAndVersion(new S3StreamRecord().setStreamId(streamId).setEpoch(1).setRangeIndex(0)
+                .setStartOffset(0).setStreamState(StreamState.OPENED.toByte()), (short) 0));
+            records.add(new ApiMessageAndVersion(new RangeRecord().setStreamId(streamId).setEpoch(1).setRangeIndex(0)
+                .setStartOffset(0).setEndOffset(0).setNodeId(nodeId), (short) 0));
+            records.add(new ApiMessageAndVersion(new S3StreamObjectRecord().setObjectId(streamId).setStreamId(streamId)
+                .setStartOffset(0).setEndOffset(100), (short) 0));
+            records.add(new ApiMessageAndVersion(new WALObjectRecord().setObjectId(streamCount + streamId)
+                .setNodeId(nodeId).setOrderId(streamId)
+                .setStreamsIndex(List.of(new WALObjectRecord.StreamIndex().setStreamId(streamId).setStartOffset(100).setEndOffset(200))),
+                (short) 0));
+        }
+        S3StreamsMetadataDelta delta = new S3StreamsMetadataDelta(S3StreamsMetadataImage.EMPTY);
+        RecordTestUtils.replayAll(delta, records);
+        ExecutorService executor = MetadataDelta.newApplyExecutor("test-");
+        S3StreamsMetadataImage image;
+        try {
+            image = delta.apply(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+        // the same as the image applied on the calling thread
+        assertEquals(delta.apply(), image);
+
+        assertEquals(streamCount, image.nextAssignedStreamId());
+        assertEquals(streamCount, image.streamsMetadata().size());
+        assertEquals(streamCount / 2 + 1, image.getWALObjects(BROKER0).size());
+        assertEquals(streamCount / 2, image.getWALObjects(BROKER1).size());
+        for (long streamId = 0; streamId < streamCount; streamId += 997) {
+            S3StreamMetadataImage streamImage = image.streamsMetadata().get(streamId);
+            assertEquals(200, streamImage.getRanges().get(0).endOffset());
+            InRangeObjects objects = image.getObjects(streamId, 0, 200, 2);
+            assertEquals(List.of(streamId, streamCount + streamId),
+                objects.objects().stream().map(S3ObjectMetadata::objectId).collect(Collectors.toList()));
+        }
+        testToImageAndBack(image);
+    }
+
     private void testToImageAndBack(S3StreamsMetadataImage image) {
         RecordListWriter writer = new RecordListWriter();
         ImageWriterOptions options = new ImageWriterOptions.Builder().build();
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.metadata.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.automq.stream.s3.metadata.StreamOffsetRange;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.kafka.common.metadata.WALObjectRecord;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("S3Unit")
+public class S3WALObjectTest {
+
+    private static final long STREAM0 = 0;
+    private static final long STREAM1 = 1;
+    private static final long STREAM2 = 2;
+
+    @Test
+    public void testOffsetRanges() {
+        S3WALObject object = new S3WALObject(0, 1, Map.of(
+            STREAM2, new StreamOffsetRange(STREAM2, 200, 300),
+            STREAM0, new StreamOffsetRange(STREAM0, 0, 100),
+            STREAM1, new StreamOffsetRange(STREAM1, 100, 200)), 5, 10);
+        assertEquals(3, object.streamCount());
+        assertTrue(object.containsStream(STREAM1));
+        assertFalse(object.containsStream(3));
+        assertNull(object.offsetRange(3));
+        assertRange(STREAM1, 100, 200, object.offsetRange(STREAM1));
+        // the ranges are sorted by the stream id
+        assertEquals(List.of(
+            List.of(STREAM0, 0L, 100L),
+            List.of(STREAM1, 100L, 200L),
+            List.of(STREAM2, 200L, 300L)), ranges(object));
+        assertEquals(3, object.offsetRanges().size());
+        assertRange(STREAM2, 200, 300, object.offsetRanges().get(STREAM2));
+
+        assertTrue(object.intersect(STREAM1, 150, 160));
+        assertFalse(object.intersect(STREAM1, 250, 260));
+        assertFalse(object.intersect(3, 0, 10));
+    }
+
+    @Test
+    public void testWithoutStream() {
+        S3WALObject object = new S3WALObject(0, 1, Map.of(
+            STREAM0, new StreamOffsetRange(STREAM0, 0, 100),
+            STREAM1, new StreamOffsetRange(STREAM1, 100, 200),
+            STREAM2, new StreamOffsetRange(STREAM2, 200, 300)), 5, 10);
+        assertSame(object, object.withoutStream(3));
+
+        S3WALObject newObject = object.withoutStream(STREAM1);
+        assertEquals(List.of(
+            List.of(STREAM0, 0L, 100L),
+            List.of(STREAM2, 200L, 300L)), ranges(newObject));
+        assertEquals(0L, newObject.objectId());
+        assertEquals(5, newObject.orderId());
+        assertEquals(10, newObject.dataTimeInMs());
+        // the original object isn't changed
+        assertEquals(3, object.streamCount());
+
+        assertEquals(List.of(List.of(STREAM2, 200L, 300L)), ranges(newObject.withoutStream(STREAM0)));
+        assertEquals(0, newObject.withoutStream(STREAM0).withoutStream(STREAM2).streamCount());
+    }
+
+    @Test
+    public void testRecordRoundTrip() {
+        WALObjectRecord record = new WALObjectRecord()
+            .setObjectId(0)
+            .setNodeId(1)
+            .setOrderId(5)
+            .setDataTimeInMs(10)
+            .setStreamsIndex(List.of(
+                new WALObjectRecord.StreamIndex().setStreamId(STREAM1).setStartOffset(100).setEndOffset(200),
+                new WALObjectRecord.StreamIndex().setStreamId(STREAM0).setStartOffset(0).setEndOffset(100)));
+        S3WALObject object = S3WALObject.of(record);
+        assertRange(STREAM0, 0, 100, object.offsetRange(STREAM0));
+        assertRange(STREAM1, 100, 200, object.offsetRange(STREAM1));
+
+        WALObjectRecord newRecord = (WALObjectRecord) object.toRecord().message();
+        assertEquals(0, newRecord.objectId());
+        assertEquals(1, newRecord.nodeId());
+        assertEquals(5, newRecord.orderId());
+        assertEquals(10, newRecord.dataTimeInMs());
+        assertEquals(ranges(object), ranges(S3WALObject.of(newRecord)));
+    }
+
+    private static void assertRange(long streamId, long startOffset, long endOffset, StreamOffsetRange offsetRange) {
+        assertEquals(streamId, offsetRange.getStreamId());
+        assertEquals(startOffset, offsetRange.getStartOffset());
+        assertEquals(endOffset, offsetRange.getEndOffset());
+    }
+
+    private static List<List<Long>> ranges(S3WALObject object) {
+        return object.offsetRangeList().stream()
+            .map(range -> List.of(range.getStreamId(), range.getStartOffset(), range.getEndOffset()))
+            .collect(Collectors.toList());
+    }
+}
@@ -18,8 +18,13 @@
 package org.apache.kafka.metadata.stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -66,5 +71,60 @@ public class SortedWALObjectsListTest {
             .collect(Collectors.toList()));
     }
 
+    @Test
+    public void testCopyIsIndependent() {
+        SortedWALObjectsList objects = new SortedWALObjectsList();
+        for (int i = 0; i < 10; i++) {
+            objects.add(new S3WALObject(i, -1, null, i));
+        }
+        SortedWALObjectsList copy = new SortedWALObjectsList(objects);
+        copy.remove(new S3WALObject(3, -1, null, 3));
+        copy.add(new S3WALObject(10, -1, null, 3));
+
+        assertEquals(10, objects.size());
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), objects.list()
+            .stream()
+            .map(S3WALObject::objectId)
+            .collect(Collectors.toList()));
+        assertEquals(10, copy.size());
+        assertEquals(10L, copy.get(3).objectId());
+        assertFalse(copy.contains(new S3WALObject(3, -1, null, 3)));
+        assertTrue(objects.contains(new S3WALObject(3, -1, null, 3)));
+    }
 
+    @Test
+    public void testLookupByObjectId() {
+        SortedWALObjectsList objects = new SortedWALObjectsList();
+        for (int i = 0; i < 10; i++) {
+            objects.add(new S3WALObject(i, -1, null, i + 100));
+        }
+        // the objects are equal by the object id, no matter the order id
+        assertTrue(objects.contains(new S3WALObject(3, -1, null, 0)));
+        assertFalse(objects.contains(new S3WALObject(10, -1, null, 103)));
+        assertFalse(objects.remove(new S3WALObject(10, -1, null, 103)));
+        assertTrue(objects.remove(new S3WALObject(3, -1, null, 0)));
+        assertEquals(9, objects.size());
+        assertFalse(objects.contains(new S3WALObject(3, -1, null, 103)));
+    }
+
+    @Test
+    public void testRandomUpdates() {
+        Random random = new Random(0);
+        SortedWALObjectsList objects = new SortedWALObjectsList();
+        TreeMap<Long, S3WALObject> expected = new TreeMap<>();
+        for (int i = 0; i < 10000; i++) {
+            long orderId = random.nextInt(1000);
+            S3WALObject object = new S3WALObject(orderId, -1, null, orderId);
+            if (random.nextBoolean()) {
+                objects.add(object);
+                expected.put(orderId, object);
+            } else {
+                assertEquals(expected.remove(orderId) != null, objects.remove(object));
+            }
+        }
+        assertEquals(new ArrayList<>(expected.values()), objects.list());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(objects.list().get(i), objects.get(i));
+        }
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.metadata.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.automq.stream.s3.metadata.StreamOffsetRange;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("S3Unit")
+public class StreamOffsetIndexTest {
+
+    private static final long STREAM0 = 0;
+    private static final long STREAM1 = 1;
+
+    @Test
+    public void testUpdate() {
+        StreamOffsetIndex index = StreamOffsetIndex.of(List.of(
+            StreamOffsetIndex.entryOf(new S3StreamObject(2, STREAM0, 200, 300, 0)),
+            StreamOffsetIndex.entryOf(new S3StreamObject(0, STREAM0, 0, 100, 0)),
+            StreamOffsetIndex.entryOf(new S3StreamObject(1, STREAM0, 100, 200, 0))));
+        assertEquals(List.of(0L, 1L, 2L), objectIds(index));
+
+        // no change
+        assertSame(index, index.update(List.of(), Set.of()));
+
+        // remove object 1, and add object 3 and 4
+        StreamOffsetIndex newIndex = index.update(List.of(
+            StreamOffsetIndex.entryOf(new S3StreamObject(4, STREAM0, 400, 500, 0)),
+            StreamOffsetIndex.entryOf(new S3StreamObject(3, STREAM0, 100, 200, 0))), Set.of(1L));
+        assertEquals(List.of(0L, 3L, 2L, 4L), objectIds(newIndex));
+        // the old index isn't changed
+        assertEquals(List.of(0L, 1L, 2L), objectIds(index));
+
+        assertSame(StreamOffsetIndex.EMPTY, newIndex.update(List.of(), Set.of(0L, 2L, 3L, 4L)));
+    }
+
+    @Test
+    public void testFloor() {
+        StreamOffsetIndex index = StreamOffsetIndex.of(List.of(
+            StreamOffsetIndex.entryOf(new S3StreamObject(0, STREAM0, 0, 100, 0)),
+            StreamOffsetIndex.entryOf(new S3StreamObject(1, STREAM0, 100, 200, 0)),
+            StreamOffsetIndex.entryOf(new S3StreamObject(2, STREAM0, 300, 400, 0))));
+        assertEquals(0, index.floor(0));
+        assertEquals(0, index.floor(99));
+        assertEquals(1, index.floor(100));
+        assertEquals(2, index.floor(200));
+        assertEquals(2, index.floor(399));
+        assertEquals(3, index.floor(400));
+        assertEquals(0, StreamOffsetIndex.EMPTY.floor(0));
+    }
+
+    @Test
+    public void testWALObjectEntries() {
+        S3WALObject object = new S3WALObject(0, 0, Map.of(
+            STREAM1, new StreamOffsetRange(STREAM1, 10, 20),
+            STREAM0, new StreamOffsetRange(STREAM0, 100, 200)), 5);
+        List<StreamOffsetIndex.Entry> entries = StreamOffsetIndex.entriesOf(object);
+        assertEquals(2, entries.size());
+        for (StreamOffsetIndex.Entry entry : entries) {
+            assertEquals(0L, entry.objectId());
+            assertEquals(5L, entry.orderId());
+            StreamOffsetRange offsetRange = object.offsetRanges().get(entry.streamId());
+            assertEquals(offsetRange.getStartOffset(), entry.startOffset());
+            assertEquals(offsetRange.getEndOffset(), entry.endOffset());
+        }
+    }
+
+    private static List<Long> objectIds(StreamOffsetIndex index) {
+        List<Long> objectIds = new ArrayList<>();
+        for (int i = 0; i < index.size(); i++) {
+            objectIds.add(index.get(i).objectId());
+        }
+        return objectIds;
+    }
+}
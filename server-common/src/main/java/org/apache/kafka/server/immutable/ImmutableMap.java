@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.server.immutable;
+
+import java.util.Map;
+
+/**
+ * A persistent map: it's never modified in place, and an update returns a new map which shares most of its
+ * structure with the old one. The mutating methods of {@link Map} throw {@link UnsupportedOperationException}.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public interface ImmutableMap<K, V> extends Map<K, V> {
+
+    static <K, V> ImmutableMap<K, V> empty() {
+        return PersistentHashMap.empty();
+    }
+
+    static <K, V> ImmutableMap<K, V> singleton(K key, V value) {
+        return PersistentHashMap.<K, V>empty().updated(key, value);
+    }
+
+    /**
+     * Get an immutable map with the mappings of the map, it returns the map itself if it's already immutable.
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> ImmutableMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof ImmutableMap) {
+            return (ImmutableMap<K, V>) map;
+        }
+        ImmutableMap<K, V> result = empty();
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            result = result.updated(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Get a new map with the key mapped to the value, or this map if the key is already mapped to the same value.
+     */
+    ImmutableMap<K, V> updated(K key, V value);
+
+    /**
+     * Get a new map without the key, or this map if the key isn't in it.
+     */
+    ImmutableMap<K, V> removed(K key);
+}
@@ -0,0 +1,425 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.server.immutable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A persistent hash map backed by a hash array mapped trie (HAMT).
+ * <p>
+ * Each level of the trie consumes 5 bits of the hash, and a node only allocates the slots of its present children,
+ * which are located by a 32-bit bitmap. An update copies the O(log32 n) nodes on the path from the root, and shares
+ * the other nodes with the old map. The keys with the same hash are kept in a collision node.
+ * <p>
+ * This class is thread-safe, because it's never modified after it's created. Null keys and values are not supported.
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> implements ImmutableMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(BitmapNode.EMPTY, 0);
+
+    private final BitmapNode root;
+    private final int size;
+
+    private PersistentHashMap(BitmapNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        Leaf leaf = root.find(hash(key), 0, key);
+        return leaf == null ? null : (V) leaf.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && root.find(hash(key), 0, key) != null;
+    }
+
+    @Override
+    public PersistentHashMap<K, V> updated(K key, V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        int hash = hash(key);
+        Leaf found = root.find(hash, 0, key);
+        if (found != null && found.value == value) {
+            return this;
+        }
+        BitmapNode newRoot = root.updated(hash, 0, new Leaf(hash, key, value));
+        return new PersistentHashMap<>(newRoot, found == null ? size + 1 : size);
+    }
+
+    @Override
+    public PersistentHashMap<K, V> removed(K key) {
+        if (key == null) {
+            return this;
+        }
+        int hash = hash(key);
+        if (root.find(hash, 0, key) == null) {
+            return this;
+        }
+        if (size == 1) {
+            return empty();
+        }
+        Object newRoot = root.removed(hash, 0, key);
+        if (newRoot instanceof Leaf) {
+            // the root is always a bitmap node
+            Leaf leaf = (Leaf) newRoot;
+            newRoot = new BitmapNode(bit(leaf.hash, 0), new Object[] {leaf});
+        } else if (newRoot instanceof CollisionNode) {
+            newRoot = new BitmapNode(bit(((CollisionNode) newRoot).hash, 0), new Object[] {newRoot});
+        }
+        return new PersistentHashMap<>((BitmapNode) newRoot, size - 1);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Entry)) {
+                    return false;
+                }
+                Entry<?, ?> entry = (Entry<?, ?>) o;
+                Object key = entry.getKey();
+                return key != null && Objects.equals(get(key), entry.getValue());
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * Create the node containing both leaves, whose hashes are equal in the bits before the shift.
+     */
+    private static Object merge(int shift, Object a, int hashA, Leaf b) {
+        if (hashA == b.hash) {
+            if (a instanceof CollisionNode) {
+                return ((CollisionNode) a).updated(b);
+            }
+            return new CollisionNode(hashA, new Leaf[] {(Leaf) a, b});
+        }
+        int bitA = bit(hashA, shift);
+        int bitB = bit(b.hash, shift);
+        if (bitA == bitB) {
+            return new BitmapNode(bitA, new Object[] {merge(shift + BITS, a, hashA, b)});
+        }
+        return bitA < bitB
+            ? new BitmapNode(bitA | bitB, new Object[] {a, b})
+            : new BitmapNode(bitA | bitB, new Object[] {b, a});
+    }
+
+    private static final class Leaf implements Entry<Object, Object> {
+        private final int hash;
+        private final Object key;
+        private final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> that = (Entry<?, ?>) o;
+            return key.equals(that.getKey()) && value.equals(that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * A trie node, whose slots are either {@link Leaf}s or child nodes.
+     */
+    private static final class BitmapNode {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        Leaf find(int hash, int shift, Object key) {
+            BitmapNode node = this;
+            for (; ; ) {
+                int bit = bit(hash, shift);
+                if ((node.bitmap & bit) == 0) {
+                    return null;
+                }
+                Object slot = node.slots[node.index(bit)];
+                if (slot instanceof Leaf) {
+                    Leaf leaf = (Leaf) slot;
+                    return leaf.hash == hash && leaf.key.equals(key) ? leaf : null;
+                }
+                if (slot instanceof CollisionNode) {
+                    return ((CollisionNode) slot).find(hash, key);
+                }
+                node = (BitmapNode) slot;
+                shift += BITS;
+            }
+        }
+
+        BitmapNode updated(int hash, int shift, Leaf leaf) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = leaf;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Leaf) {
+                Leaf old = (Leaf) slot;
+                if (old.hash == hash && old.key.equals(leaf.key)) {
+                    newSlot = leaf;
+                } else {
+                    newSlot = merge(shift + BITS, old, old.hash, leaf);
+                }
+            } else if (slot instanceof CollisionNode) {
+                CollisionNode collision = (CollisionNode) slot;
+                newSlot = merge(shift + BITS, collision, collision.hash, leaf);
+            } else {
+                newSlot = ((BitmapNode) slot).updated(hash, shift + BITS, leaf);
+            }
+            return withSlot(index, newSlot);
+        }
+
+        /**
+         * Remove the key which must be in the node, it returns the single remaining leaf or collision node, if any,
+         * so the parent can inline it.
+         */
+        Object removed(int hash, int shift, Object key) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Leaf) {
+                newSlot = null;
+            } else if (slot instanceof CollisionNode) {
+                newSlot = ((CollisionNode) slot).removed(key);
+            } else {
+                newSlot = ((BitmapNode) slot).removed(hash, shift + BITS, key);
+            }
+            if (newSlot != null) {
+                if (slots.length == 1 && !(newSlot instanceof BitmapNode)) {
+                    return newSlot;
+                }
+                return withSlot(index, newSlot);
+            }
+            if (slots.length == 2 && !(slots[index ^ 1] instanceof BitmapNode)) {
+                return slots[index ^ 1];
+            }
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index, slots.length - index - 1);
+            return new BitmapNode(bitmap & ~bit, newSlots);
+        }
+
+        private BitmapNode withSlot(int index, Object slot) {
+            Object[] newSlots = slots.clone();
+            newSlots[index] = slot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+    }
+
+    /**
+     * The leaves whose keys have the same hash.
+     */
+    private static final class CollisionNode {
+        private final int hash;
+        private final Leaf[] leaves;
+
+        CollisionNode(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        Leaf find(int hash, Object key) {
+            if (hash != this.hash) {
+                return null;
+            }
+            for (Leaf leaf : leaves) {
+                if (leaf.key.equals(key)) {
+                    return leaf;
+                }
+            }
+            return null;
+        }
+
+        CollisionNode updated(Leaf leaf) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(leaf.key)) {
+                    Leaf[] newLeaves = leaves.clone();
+                    newLeaves[i] = leaf;
+                    return new CollisionNode(hash, newLeaves);
+                }
+            }
+            Leaf[] newLeaves = Arrays.copyOf(leaves, leaves.length + 1);
+            newLeaves[leaves.length] = leaf;
+            return new CollisionNode(hash, newLeaves);
+        }
+
+        /**
+         * Remove the key which must be in the node, it returns the remaining leaf if there is only one.
+         */
+        Object removed(Object key) {
+            if (leaves.length == 2) {
+                return leaves[0].key.equals(key) ? leaves[1] : leaves[0];
+            }
+            Leaf[] newLeaves = new Leaf[leaves.length - 1];
+            int j = 0;
+            for (Leaf leaf : leaves) {
+                if (!leaf.key.equals(key)) {
+                    newLeaves[j++] = leaf;
+                }
+            }
+            return new CollisionNode(hash, newLeaves);
+        }
+    }
+
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+        // the pending slots of the nodes on the path, the top one is the current node's
+        private final Deque<Iterator<Object>> stack = new ArrayDeque<>();
+        private Leaf next;
+
+        EntryIterator(BitmapNode root) {
+            stack.push(Arrays.asList(root.slots).iterator());
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (!stack.isEmpty()) {
+                Iterator<Object> slots = stack.peek();
+                if (!slots.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                Object slot = slots.next();
+                if (slot instanceof Leaf) {
+                    next = (Leaf) slot;
+                    return;
+                } else if (slot instanceof CollisionNode) {
+                    stack.push(Arrays.<Object>asList(((CollisionNode) slot).leaves).iterator());
+                } else {
+                    stack.push(Arrays.asList(((BitmapNode) slot).slots).iterator());
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> entry = (Entry<K, V>) (Entry<?, ?>) next;
+            advance();
+            return entry;
+        }
+    }
+}
@@ -49,6 +49,14 @@ class BaseHashTable<T> {
      */
     final static int MAX_CAPACITY = 1 << 30;
 
+    /**
+     * An element with a primitive long key, which can be looked up by the key without creating a probe element.
+     * Its hash code must be the same as {@link Long#hashCode(long)} of the key.
+     */
+    interface LongKeyElement {
+        long getLongKey();
+    }
+
     private Object[] elements;
     private int size = 0;
 
@@ -154,17 +162,7 @@ class BaseHashTable<T> {
             Object[] curArray = (Object[]) object;
             for (int i = 0; i < curArray.length; i++) {
                 if (curArray[i].equals(key)) {
-                    size--;
-                    if (curArray.length <= 2) {
-                        int j = i == 0 ? 1 : 0;
-                        elements[slot] = curArray[j];
-                    } else {
-                        Object[] newArray = new Object[curArray.length - 1];
-                        System.arraycopy(curArray, 0, newArray, 0, i);
-                        System.arraycopy(curArray, i + 1, newArray, i, curArray.length - 1 - i);
-                        elements[slot] = newArray;
-                    }
-                    return (T) curArray[i];
+                    return removeFromArray(slot, curArray, i);
                 }
             }
             return null;
@@ -177,6 +175,61 @@ class BaseHashTable<T> {
         }
     }
 
+    final T baseGetByLongKey(long key) {
+        int slot = findSlot(Long.hashCode(key), elements.length);
+        Object value = elements[slot];
+        if (value == null) {
+            return null;
+        } else if (value instanceof Object[]) {
+            for (Object object : (Object[]) value) {
+                if (((LongKeyElement) object).getLongKey() == key) {
+                    return (T) object;
+                }
+            }
+            return null;
+        } else if (((LongKeyElement) value).getLongKey() == key) {
+            return (T) value;
+        } else {
+            return null;
+        }
+    }
+
+    final T baseRemoveByLongKey(long key) {
+        int slot = findSlot(Long.hashCode(key), elements.length);
+        Object object = elements[slot];
+        if (object == null) {
+            return null;
+        } else if (object instanceof Object[]) {
+            Object[] curArray = (Object[]) object;
+            for (int i = 0; i < curArray.length; i++) {
+                if (((LongKeyElement) curArray[i]).getLongKey() == key) {
+                    return removeFromArray(slot, curArray, i);
+                }
+            }
+            return null;
+        } else if (((LongKeyElement) object).getLongKey() == key) {
+            size--;
+            elements[slot] = null;
+            return (T) object;
+        } else {
+            return null;
+        }
+    }
+
+    private T removeFromArray(int slot, Object[] curArray, int i) {
+        size--;
+        if (curArray.length <= 2) {
+            int j = i == 0 ? 1 : 0;
+            elements[slot] = curArray[j];
+        } else {
+            Object[] newArray = new Object[curArray.length - 1];
+            System.arraycopy(curArray, 0, newArray, 0, i);
+            System.arraycopy(curArray, i + 1, newArray, i, curArray.length - 1 - i);
+            elements[slot] = newArray;
+        }
+        return (T) curArray[i];
+    }
+
     /**
      * Expand the hash table to a new size.  Existing elements will be copied to new slots.
      */
@@ -209,11 +262,14 @@ class BaseHashTable<T> {
      * Find the slot in the array that an element should go into.
      */
     static int findSlot(Object object, int numElements) {
+        return findSlot(object.hashCode(), numElements);
+    }
+
+    static int findSlot(int objectHashCode, int numElements) {
         // This performs a secondary hash using Knuth's multiplicative Fibonacci
         // hashing.  Then, we choose some of the highest bits.  The number of bits
         // we choose is based on the table size.  If the size is 2, we need 1 bit;
         // if the size is 4, we need 2 bits, etc.
-        int objectHashCode = object.hashCode();
         int log2size = 32 - Integer.numberOfLeadingZeros(numElements);
         int shift = 65 - log2size;
         return (int) ((objectHashCode * -7046029254386353131L) >>> shift);
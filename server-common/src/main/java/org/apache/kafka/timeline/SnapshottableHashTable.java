@@ -311,12 +311,31 @@ class SnapshottableHashTable<T extends SnapshottableHashTable.ElementWithStartEp
         if (epoch == LATEST_EPOCH) {
             return null;
         }
+        return snapshotGet(key, false, 0, epoch);
+    }
+
+    /**
+     * Get the element by its primitive long key, the elements must be {@link BaseHashTable.LongKeyElement}s.
+     */
+    T snapshottableGetByLongKey(long key, long epoch) {
+        T result = baseGetByLongKey(key);
+        if (result != null && result.startEpoch() <= epoch) {
+            return result;
+        }
+        if (epoch == LATEST_EPOCH) {
+            return null;
+        }
+        return snapshotGet(null, true, key, epoch);
+    }
+
+    private T snapshotGet(Object key, boolean byLongKey, long longKey, long epoch) {
+        T result;
         Iterator<Snapshot> iterator = snapshotRegistry.iterator(epoch);
         while (iterator.hasNext()) {
             Snapshot snapshot = iterator.next();
             HashTier<T> tier = snapshot.getDelta(SnapshottableHashTable.this);
             if (tier != null && tier.deltaTable != null) {
-                result = tier.deltaTable.baseGet(key);
+                result = byLongKey ? tier.deltaTable.baseGetByLongKey(longKey) : tier.deltaTable.baseGet(key);
                 if (result != null) {
                     if (result.startEpoch() <= epoch) {
                         return result;
@@ -363,6 +382,16 @@ class SnapshottableHashTable<T extends SnapshottableHashTable.ElementWithStartEp
         }
     }
 
+    T snapshottableRemoveByLongKey(long key) {
+        T prev = baseRemoveByLongKey(key);
+        if (prev == null) {
+            return null;
+        } else {
+            updateTierData(prev, baseSize() + 1);
+            return prev;
+        }
+    }
+
     private void updateTierData(int prevSize) {
         Iterator<Snapshot> iterator = snapshotRegistry.reverseIterator();
         if (iterator.hasNext()) {
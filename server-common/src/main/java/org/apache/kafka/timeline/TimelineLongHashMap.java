@@ -0,0 +1,429 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.timeline;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * This is a hash map with primitive long keys which can be snapshotted.
+ *
+ * It's the same as {@link TimelineHashMap}, except that the keys are stored as primitive longs in the entries, so
+ * there isn't a boxed key object for each entry, and the lookups by {@link #get(long)}, {@link #containsKey(long)}
+ * and {@link #remove(long)} don't box the key. It still implements {@code Map<Long, V>}, and the keys are boxed on
+ * demand when they're accessed through the {@link Map} views.
+ *
+ * See {@SnapshottableHashTable} for more details about the implementation.
+ *
+ * This class requires external synchronization.  Null values are not supported.
+ *
+ * @param <V>   The value type of the map.
+ */
+public class TimelineLongHashMap<V>
+        extends SnapshottableHashTable<TimelineLongHashMap.TimelineLongHashMapEntry<V>>
+        implements Map<Long, V> {
+    static class TimelineLongHashMapEntry<V>
+            implements SnapshottableHashTable.ElementWithStartEpoch, BaseHashTable.LongKeyElement, Map.Entry<Long, V> {
+        private final long key;
+        private final V value;
+        private long startEpoch;
+
+        TimelineLongHashMapEntry(long key, V value) {
+            this.key = key;
+            this.value = value;
+            this.startEpoch = SnapshottableHashTable.LATEST_EPOCH;
+        }
+
+        @Override
+        public Long getKey() {
+            return key;
+        }
+
+        @Override
+        public long getLongKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            // See TimelineHashMapEntry#setValue
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setStartEpoch(long startEpoch) {
+            this.startEpoch = startEpoch;
+        }
+
+        @Override
+        public long startEpoch() {
+            return startEpoch;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TimelineLongHashMapEntry)) return false;
+            TimelineLongHashMapEntry<?> other = (TimelineLongHashMapEntry<?>) o;
+            return key == other.key;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(key);
+        }
+    }
+
+    public TimelineLongHashMap(SnapshotRegistry snapshotRegistry, int expectedSize) {
+        super(snapshotRegistry, expectedSize);
+    }
+
+    @Override
+    public int size() {
+        return size(SnapshottableHashTable.LATEST_EPOCH);
+    }
+
+    public int size(long epoch) {
+        return snapshottableSize(epoch);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return isEmpty(SnapshottableHashTable.LATEST_EPOCH);
+    }
+
+    public boolean isEmpty(long epoch) {
+        return snapshottableSize(epoch) == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Long && containsKey((long) (Long) key);
+    }
+
+    public boolean containsKey(long key) {
+        return containsKey(key, SnapshottableHashTable.LATEST_EPOCH);
+    }
+
+    public boolean containsKey(long key, long epoch) {
+        return snapshottableGetByLongKey(key, epoch) != null;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        Iterator<V> iter = values().iterator();
+        while (iter.hasNext()) {
+            if (value.equals(iter.next())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Long ? get((long) (Long) key) : null;
+    }
+
+    public V get(long key) {
+        return get(key, SnapshottableHashTable.LATEST_EPOCH);
+    }
+
+    public V get(long key, long epoch) {
+        TimelineLongHashMapEntry<V> entry = snapshottableGetByLongKey(key, epoch);
+        if (entry == null) {
+            return null;
+        }
+        return entry.getValue();
+    }
+
+    @Override
+    public V put(Long key, V value) {
+        Objects.requireNonNull(key);
+        return put((long) key, value);
+    }
+
+    public V put(long key, V value) {
+        Objects.requireNonNull(value);
+        TimelineLongHashMapEntry<V> prev = snapshottableAddOrReplace(new TimelineLongHashMapEntry<>(key, value));
+        if (prev == null) {
+            return null;
+        }
+        return prev.getValue();
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Long ? remove((long) (Long) key) : null;
+    }
+
+    public V remove(long key) {
+        TimelineLongHashMapEntry<V> result = snapshottableRemoveByLongKey(key);
+        return result == null ? null : result.value;
+    }
+
+    @Override
+    public void putAll(Map<? extends Long, ? extends V> map) {
+        for (Map.Entry<? extends Long, ? extends V> e : map.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    @Override
+    public void clear() {
+        reset();
+    }
+
+    final class KeySet extends AbstractSet<Long> {
+        private final long epoch;
+
+        KeySet(long epoch) {
+            this.epoch = epoch;
+        }
+
+        public final int size() {
+            return TimelineLongHashMap.this.size(epoch);
+        }
+
+        public final void clear() {
+            if (epoch != SnapshottableHashTable.LATEST_EPOCH) {
+                throw new RuntimeException("can't modify snapshot");
+            }
+            TimelineLongHashMap.this.clear();
+        }
+
+        public final Iterator<Long> iterator() {
+            return new KeyIterator(epoch);
+        }
+
+        public final boolean contains(Object o) {
+            return o instanceof Long && TimelineLongHashMap.this.containsKey((long) (Long) o, epoch);
+        }
+
+        public final boolean remove(Object o) {
+            if (epoch != SnapshottableHashTable.LATEST_EPOCH) {
+                throw new RuntimeException("can't modify snapshot");
+            }
+            return TimelineLongHashMap.this.remove(o) != null;
+        }
+    }
+
+    final class KeyIterator implements Iterator<Long> {
+        private final Iterator<TimelineLongHashMapEntry<V>> iter;
+
+        KeyIterator(long epoch) {
+            this.iter = snapshottableIterator(epoch);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iter.hasNext();
+        }
+
+        @Override
+        public Long next() {
+            return iter.next().getKey();
+        }
+
+        @Override
+        public void remove() {
+            iter.remove();
+        }
+    }
+
+    @Override
+    public Set<Long> keySet() {
+        return keySet(SnapshottableHashTable.LATEST_EPOCH);
+    }
+
+    public Set<Long> keySet(long epoch) {
+        return new KeySet(epoch);
+    }
+
+    final class Values extends AbstractCollection<V> {
+        private final long epoch;
+
+        Values(long epoch) {
+            this.epoch = epoch;
+        }
+
+        public final int size() {
+            return TimelineLongHashMap.this.size(epoch);
+        }
+
+        public final void clear() {
+            if (epoch != SnapshottableHashTable.LATEST_EPOCH) {
+                throw new RuntimeException("can't modify snapshot");
+            }
+            TimelineLongHashMap.this.clear();
+        }
+
+        public final Iterator<V> iterator() {
+            return new ValueIterator(epoch);
+        }
+    }
+
+    final class ValueIterator implements Iterator<V> {
+        private final Iterator<TimelineLongHashMapEntry<V>> iter;
+
+        ValueIterator(long epoch) {
+            this.iter = snapshottableIterator(epoch);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iter.hasNext();
+        }
+
+        @Override
+        public V next() {
+            return iter.next().getValue();
+        }
+
+        @Override
+        public void remove() {
+            iter.remove();
+        }
+    }
+
+    @Override
+    public Collection<V> values() {
+        return values(SnapshottableHashTable.LATEST_EPOCH);
+    }
+
+    public Collection<V> values(long epoch) {
+        return new Values(epoch);
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<Long, V>> {
+        private final long epoch;
+
+        EntrySet(long epoch) {
+            this.epoch = epoch;
+        }
+
+        public final int size() {
+            return TimelineLongHashMap.this.size(epoch);
+        }
+
+        public final void clear() {
+            if (epoch != SnapshottableHashTable.LATEST_EPOCH) {
+                throw new RuntimeException("can't modify snapshot");
+            }
+            TimelineLongHashMap.this.clear();
+        }
+
+        public final Iterator<Map.Entry<Long, V>> iterator() {
+            return new EntryIterator(epoch);
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            if (!(entry.getKey() instanceof Long)) {
+                return false;
+            }
+            V value = TimelineLongHashMap.this.get((long) (Long) entry.getKey(), epoch);
+            return value != null && value.equals(entry.getValue());
+        }
+
+        public final boolean remove(Object o) {
+            if (epoch != SnapshottableHashTable.LATEST_EPOCH) {
+                throw new RuntimeException("can't modify snapshot");
+            }
+            if (!contains(o)) {
+                return false;
+            }
+            return TimelineLongHashMap.this.remove(((Map.Entry<?, ?>) o).getKey()) != null;
+        }
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<Long, V>> {
+        private final Iterator<TimelineLongHashMapEntry<V>> iter;
+
+        EntryIterator(long epoch) {
+            this.iter = snapshottableIterator(epoch);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iter.hasNext();
+        }
+
+        @Override
+        public Map.Entry<Long, V> next() {
+            return iter.next();
+        }
+
+        @Override
+        public void remove() {
+            iter.remove();
+        }
+    }
+
+    @Override
+    public Set<Entry<Long, V>> entrySet() {
+        return entrySet(SnapshottableHashTable.LATEST_EPOCH);
+    }
+
+    public Set<Entry<Long, V>> entrySet(long epoch) {
+        return new EntrySet(epoch);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        Iterator<TimelineLongHashMapEntry<V>> iter = snapshottableIterator(SnapshottableHashTable.LATEST_EPOCH);
+        while (iter.hasNext()) {
+            TimelineLongHashMapEntry<V> entry = iter.next();
+            // the same as the hash code of the entries of the other maps
+            hash += Long.hashCode(entry.key) ^ entry.value.hashCode();
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof Map))
+            return false;
+        Map<?, ?> m = (Map<?, ?>) o;
+        if (m.size() != size())
+            return false;
+        Iterator<TimelineLongHashMapEntry<V>> iter = snapshottableIterator(SnapshottableHashTable.LATEST_EPOCH);
+        while (iter.hasNext()) {
+            TimelineLongHashMapEntry<V> entry = iter.next();
+            if (!entry.value.equals(m.get(entry.key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.server.immutable;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 60)
+public class PersistentHashMapTest {
+
+    @Test
+    public void testUpdatedAndRemoved() {
+        ImmutableMap<String, Integer> empty = ImmutableMap.empty();
+        ImmutableMap<String, Integer> map1 = empty.updated("foo", 1);
+        ImmutableMap<String, Integer> map2 = map1.updated("bar", 2).updated("foo", 3);
+        ImmutableMap<String, Integer> map3 = map2.removed("foo");
+
+        assertTrue(empty.isEmpty());
+        assertEquals(Map.of("foo", 1), map1);
+        assertEquals(Map.of("foo", 3, "bar", 2), map2);
+        assertEquals(Map.of("bar", 2), map3);
+        assertNull(map3.get("foo"));
+        assertFalse(map3.containsKey("foo"));
+
+        // no change
+        assertSame(map3, map3.removed("foo"));
+        Integer value = map3.get("bar");
+        assertSame(map3, map3.updated("bar", value));
+        assertThrows(UnsupportedOperationException.class, () -> map3.put("baz", 4));
+    }
+
+    @Test
+    public void testCopyOf() {
+        Map<Long, String> source = new HashMap<>();
+        for (long i = 0; i < 1000; i++) {
+            source.put(i, String.valueOf(i));
+        }
+        ImmutableMap<Long, String> map = ImmutableMap.copyOf(source);
+        assertEquals(source, map);
+        assertEquals(source.hashCode(), map.hashCode());
+        assertSame(map, ImmutableMap.copyOf(map));
+    }
+
+    @Test
+    public void testRandomUpdatesWithCollisions() {
+        Random random = new Random(0);
+        Map<CollidingKey, Integer> expected = new HashMap<>();
+        ImmutableMap<CollidingKey, Integer> map = ImmutableMap.empty();
+        for (int i = 0; i < 50_000; i++) {
+            // a small hash space makes many keys share a hash
+            CollidingKey key = new CollidingKey(random.nextInt(5000), random.nextInt(2000));
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.removed(key);
+            } else {
+                expected.put(key, i);
+                map = map.updated(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        for (Map.Entry<CollidingKey, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        for (CollidingKey key : expected.keySet().toArray(new CollidingKey[0])) {
+            map = map.removed(key);
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    private static final class CollidingKey {
+        private final int id;
+        private final int hash;
+
+        CollidingKey(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).id == id && ((CollidingKey) o).hash == hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.timeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.utils.LogContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 40)
+public class TimelineLongHashMapTest {
+
+    @Test
+    public void testEmptyMap() {
+        SnapshotRegistry registry = new SnapshotRegistry(new LogContext());
+        TimelineLongHashMap<String> map = new TimelineLongHashMap<>(registry, 1);
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testNullsForbidden() {
+        SnapshotRegistry registry = new SnapshotRegistry(new LogContext());
+        TimelineLongHashMap<Boolean> map = new TimelineLongHashMap<>(registry, 1);
+        assertThrows(NullPointerException.class, () -> map.put(null, true));
+        assertThrows(NullPointerException.class, () -> map.put(1L, null));
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+    }
+
+    @Test
+    public void testPrimitiveMethods() {
+        SnapshotRegistry registry = new SnapshotRegistry(new LogContext());
+        TimelineLongHashMap<String> map = new TimelineLongHashMap<>(registry, 1);
+        assertNull(map.put(123, "abc"));
+        assertEquals("abc", map.put(123, "def"));
+        assertNull(map.put(Long.MAX_VALUE, "max"));
+        assertNull(map.put(-1, "neg"));
+        assertEquals(3, map.size());
+        assertEquals("def", map.get(123));
+        assertEquals("max", map.get(Long.MAX_VALUE));
+        assertEquals("neg", map.get(-1));
+        assertNull(map.get(456));
+        assertTrue(map.containsKey(123));
+        assertFalse(map.containsKey(456));
+        assertEquals("def", map.remove(123));
+        assertNull(map.remove(123));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testPrimitiveMethodsWithCollisions() {
+        SnapshotRegistry registry = new SnapshotRegistry(new LogContext());
+        TimelineLongHashMap<String> map = new TimelineLongHashMap<>(registry, 1);
+        // the slots hold several entries
+        for (long key = 0; key < 100; key++) {
+            map.put(key << 32, "v" + key);
+        }
+        registry.getOrCreateSnapshot(1);
+        for (long key = 0; key < 100; key += 2) {
+            assertEquals("v" + key, map.remove(key << 32));
+        }
+        for (long key = 0; key < 100; key++) {
+            assertEquals(key % 2 == 1, map.containsKey(key << 32));
+            assertEquals(key % 2 == 1 ? "v" + key : null, map.get(key << 32));
+            // the removed entries are still in the snapshot
+            assertTrue(map.containsKey(key << 32, 1));
+            assertEquals("v" + key, map.get(key << 32, 1));
+        }
+        assertNull(map.get(1, 1));
+        assertEquals(50, map.size());
+        assertEquals(100, map.size(1));
+    }
+
+    @Test
+    public void testBoxedKeys() {
+        SnapshotRegistry registry = new SnapshotRegistry(new LogContext());
+        TimelineLongHashMap<String> map = new TimelineLongHashMap<>(registry, 1);
+        map.put(Long.valueOf(123), "abc");
+        assertEquals("abc", map.get(Long.valueOf(123)));
+        assertTrue(map.containsKey(Long.valueOf(123)));
+        // the keys of other types never match
+        assertNull(map.get((Object) 123));
+        assertNull(map.get("123"));
+        assertFalse(map.containsKey((Object) 123));
+        assertNull(map.remove((Object) 123));
+        assertEquals("abc", map.remove(Long.valueOf(123)));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testIteration() {
+        SnapshotRegistry registry = new SnapshotRegistry(new LogContext());
+        TimelineLongHashMap<String> map = new TimelineLongHashMap<>(registry, 1);
+        map.put(123, "abc");
+        map.put(456, "def");
+        assertThat(TimelineHashMapTest.iteratorToList(map.keySet().iterator()), containsInAnyOrder(123L, 456L));
+        assertThat(TimelineHashMapTest.iteratorToList(map.values().iterator()), containsInAnyOrder("abc", "def"));
+        assertTrue(map.containsValue("abc"));
+        assertTrue(map.containsKey(456));
+        assertFalse(map.isEmpty());
+        registry.getOrCreateSnapshot(2);
+        Iterator<Map.Entry<Long, String>> iter = map.entrySet(2).iterator();
+        map.clear();
+        List<String> snapshotValues = new ArrayList<>();
+        snapshotValues.add(iter.next().getValue());
+        snapshotValues.add(iter.next().getValue());
+        assertFalse(iter.hasNext());
+        assertThat(snapshotValues, containsInAnyOrder("abc", "def"));
+        assertFalse(map.isEmpty(2));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testSnapshotAndRevert() {
+        SnapshotRegistry registry = new SnapshotRegistry(new LogContext());
+        TimelineLongHashMap<String> map = new TimelineLongHashMap<>(registry, 1);
+        map.put(1, "a");
+        map.put(2, "b");
+        registry.getOrCreateSnapshot(2);
+        map.put(1, "c");
+        map.remove(2);
+        map.put(3, "d");
+        assertEquals("a", map.get(1, 2));
+        assertEquals("b", map.get(2, 2));
+        assertTrue(map.containsKey(2, 2));
+        assertFalse(map.containsKey(3, 2));
+        assertThat(TimelineHashMapTest.iteratorToList(map.keySet(2).iterator()), containsInAnyOrder(1L, 2L));
+        assertThat(TimelineHashMapTest.iteratorToList(map.values(2).iterator()), containsInAnyOrder("a", "b"));
+        assertEquals(2, map.size(2));
+
+        registry.revertToSnapshot(2);
+        assertEquals(2, map.size());
+        assertEquals("a", map.get(1));
+        assertEquals("b", map.get(2));
+        assertNull(map.get(3));
+    }
+
+    @Test
+    public void testMapMethods() {
+        SnapshotRegistry registry = new SnapshotRegistry(new LogContext());
+        TimelineLongHashMap<String> map = new TimelineLongHashMap<>(registry, 1);
+        assertNull(map.putIfAbsent(1L, "xyz"));
+        assertEquals("xyz", map.putIfAbsent(1L, "123"));
+        assertEquals("xyz", map.putIfAbsent(1L, "ghi"));
+        map.putAll(Collections.singletonMap(2L, "b"));
+        assertTrue(map.containsKey(2));
+        assertTrue(map.entrySet().contains(Map.entry(2L, "b")));
+        assertFalse(map.entrySet().contains(Map.entry(2L, "c")));
+        assertEquals("xyz", map.remove(1));
+        assertEquals("b", map.remove(2));
+    }
+
+    @Test
+    public void testMapEquals() {
+        SnapshotRegistry registry = new SnapshotRegistry(new LogContext());
+        TimelineLongHashMap<String> map1 = new TimelineLongHashMap<>(registry, 1);
+        map1.put(1, "xyz");
+        map1.put(2, "abc");
+        Map<Long, String> map2 = new HashMap<>();
+        map2.put(1L, "xyz");
+        assertFalse(map1.equals(map2));
+        map2.put(2L, "abc");
+        assertEquals(map2, map1);
+        assertEquals(map1, map2);
+        assertEquals(map2.hashCode(), map1.hashCode());
+    }
+}